@@ -22,9 +22,12 @@ import org.olap4j.impl.Named;
 import org.olap4j.impl.NamedListImpl;
 import org.olap4j.metadata.NamedList;
 
-import java.util.AbstractList;
-import java.util.Map;
+import org.w3c.dom.Element;
+
+import java.util.*;
 import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Named list which instantiates itself on first use.
@@ -41,6 +44,11 @@ import java.util.concurrent.Semaphore;
  * garbage-collected. Support for weak references might be a future enhancement
  * to this class.</p>
  *
+ * <p>The list is populated into a new {@link NamedListImpl}, which is then
+ * published through a volatile field and never modified again. Reads of a
+ * populated list therefore take no lock. {@link #reset()} discards the
+ * published list; readers which already hold it keep a consistent view.</p>
+ *
  * @author jhyde
  * @since Dec 4, 2007
  */
@@ -48,8 +56,20 @@ class DeferredNamedListImpl<T extends Named>
     extends AbstractList<T>
     implements NamedList<T>
 {
-    private final NamedList<T> list = new NamedListImpl<T>();
-    private State state = State.NEW;
+    private static final Logger LOGGER =
+        Logger.getLogger(DeferredNamedListImpl.class.getName());
+
+    /**
+     * Populated list, or null if the list has not been populated. Never
+     * modified once published.
+     */
+    private volatile NamedList<T> list;
+
+    /**
+     * Thread which is populating the list, or null. Guarded by
+     * {@link #semaphore}, but read without it to detect recursion.
+     */
+    private volatile Thread populatingThread;
 
     protected final XmlaOlap4jConnection.MetadataRequest metadataRequest;
     protected final XmlaOlap4jConnection.Context context;
@@ -74,35 +94,185 @@ class DeferredNamedListImpl<T extends Named>
      * Flushes the contents of the list. Next access will re-populate.
      */
     void reset() {
-        state = State.NEW;
-        list.clear();
+        semaphore.acquireUninterruptibly();
+        try {
+            list = null;
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Returns whether the list has been populated. Unlike other methods,
+     * does not populate the list.
+     *
+     * @return whether the list has been populated
+     */
+    boolean isPopulated() {
+        return list != null;
+    }
+
+    /**
+     * Populates the list with elements which were fetched by a request for a
+     * wider scope, such as all of the hierarchies of a cube. Does nothing if
+     * the list is already populated.
+     *
+     * @param elements Elements which belong in this list
+     */
+    void populate(List<T> elements) {
+        semaphore.acquireUninterruptibly();
+        try {
+            if (list == null) {
+                final NamedList<T> newList = new NamedListImpl<T>(elements);
+                handler.sortList(newList);
+                list = newList;
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Replaces the element which has the same name as a given element. Does
+     * nothing if the list is not populated or has no such element; unlike
+     * {@link #reset()}, leaves the other elements as they are.
+     *
+     * @param element Element
+     * @return Whether an element was replaced
+     */
+    boolean replace(T element) {
+        semaphore.acquireUninterruptibly();
+        try {
+            final NamedList<T> populatedList = list;
+            if (populatedList == null) {
+                return false;
+            }
+            final int index = populatedList.indexOfName(element.getName());
+            if (index < 0) {
+                return false;
+            }
+            final NamedList<T> newList =
+                new NamedListImpl<T>(populatedList);
+            newList.set(index, element);
+            list = newList;
+            return true;
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Populates several lists, sending their requests at most
+     * {@code parallelism} at a time. Lists which are already populated are
+     * skipped.
+     *
+     * <p>This is an optimization. If a request fails, or its response
+     * cannot be handled, the failure is logged as a warning and the lists
+     * are left to populate themselves on first use.
+     *
+     * @param lists Lists to populate
+     * @param parallelism Maximum number of requests to send at the same time
+     */
+    static void populateAll(
+        List<? extends DeferredNamedListImpl<?>> lists,
+        int parallelism)
+    {
+        final List<DeferredNamedListImpl<?>> newLists =
+            new ArrayList<DeferredNamedListImpl<?>>();
+        final List<String> requests = new ArrayList<String>();
+        try {
+            for (DeferredNamedListImpl<?> list : lists) {
+                if (list.list == null) {
+                    newLists.add(list);
+                    requests.add(
+                        list.context.olap4jConnection.generateRequest(
+                            list.context,
+                            list.metadataRequest,
+                            list.restrictions));
+                }
+            }
+            if (newLists.isEmpty()) {
+                return;
+            }
+            final Element[] roots =
+                newLists.get(0).context.olap4jConnection
+                    .executeMetadataRequests(requests, parallelism);
+            for (int i = 0; i < roots.length; i++) {
+                newLists.get(i).populate(roots[i]);
+            }
+        } catch (OlapException e) {
+            // Each list will populate itself on first use.
+            populateAllFailed(e);
+        } catch (RuntimeException e) {
+            populateAllFailed(e);
+        }
+    }
+
+    private static void populateAllFailed(Exception e) {
+        LOGGER.log(
+            Level.WARNING,
+            "Parallel discovery failed; fetching the remaining lists one at "
+            + "a time",
+            e);
+    }
+
+    /**
+     * Populates the list from the response to its request, if it is not
+     * populated yet.
+     *
+     * @param root Root element of the response
+     * @throws OlapException on error
+     */
+    private void populate(Element root) throws OlapException {
+        semaphore.acquireUninterruptibly();
+        try {
+            if (list == null) {
+                final NamedList<T> newList = new NamedListImpl<T>();
+                for (Element o : XmlaOlap4jUtil.childElements(root)) {
+                    if (o.getLocalName().equals("row")) {
+                        handler.handle(o, context, newList);
+                    }
+                }
+                handler.sortList(newList);
+                list = newList;
+            }
+        } finally {
+            semaphore.release();
+        }
     }
 
     private NamedList<T> getList() {
+        // Fast path: a populated list is immutable, so needs no lock.
+        final NamedList<T> populatedList = list;
+        if (populatedList != null) {
+            return populatedList;
+        }
+        if (populatingThread == Thread.currentThread()) {
+            throw new RuntimeException("recursive population");
+        }
         try {
             semaphore.acquire();
-            switch (state) {
-            case POPULATING:
-                throw new RuntimeException("recursive population");
-            case NEW:
+        } catch (InterruptedException e) {
+            // No permit was acquired, so none must be released.
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            if (list == null) {
+                final NamedList<T> newList = new NamedListImpl<T>();
+                populatingThread = Thread.currentThread();
                 try {
-                    state = State.POPULATING;
-                    populateList(list);
-                    state = State.POPULATED;
+                    populateList(newList);
                 } catch (Exception e) {
-                    state = State.NEW;
                     // TODO: fetch metadata on getCollection() method, so we
                     // can't get an exception while traversing the list
                     throw new RuntimeException(e);
+                } finally {
+                    populatingThread = null;
                 }
-                // fall through
-            case POPULATED:
-            default:
-                return list;
+                list = newList;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException(e);
+            return list;
         } finally {
             semaphore.release();
         }
@@ -137,11 +307,6 @@ class DeferredNamedListImpl<T extends Named>
             list, context, metadataRequest, handler, restrictions);
     }
 
-    private enum State {
-        NEW,
-        POPULATING,
-        POPULATED
-    }
 }
 
 // End DeferredNamedListImpl.java
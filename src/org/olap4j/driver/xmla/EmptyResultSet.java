@@ -35,8 +35,15 @@ import javax.sql.rowset.RowSetMetaDataImpl;
  * methods for querying object types where those object types never have
  * any instances for this particular driver.</p>
  *
+ * <p>It is also used, with a fixed list of rows or with a {@link Cursor}
+ * which reads rows one at a time, to return the results of
+ * {@link java.sql.DatabaseMetaData} methods. A result set over a cursor is
+ * forward-only.</p>
+ *
  * <p>This class has sub-classes which implement JDBC 3.0 and JDBC 4.0 APIs;
- * it is instantiated using {@link Factory#newEmptyResultSet}.</p>
+ * it is instantiated using {@link Factory#newEmptyResultSet},
+ * {@link Factory#newFixedResultSet} and
+ * {@link Factory#newStreamingResultSet}.</p>
  *
  * @author jhyde
  * @since May 24, 2007
@@ -45,7 +52,14 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     final XmlaOlap4jConnection olap4jConnection;
     private final List<String> headerList;
     private final List<List<Object>> rowList;
+    private final Cursor cursor;
     private int rowOrdinal = -1;
+
+    /**
+     * Current row, if this result set reads its rows from a cursor; null
+     * before the first row and after the last.
+     */
+    private List<Object> row;
     private final RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
 
     /**
@@ -59,10 +73,35 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
         XmlaOlap4jConnection olap4jConnection,
         List<String> headerList,
         List<List<Object>> rowList)
+    {
+        this(olap4jConnection, headerList, rowList, null);
+    }
+
+    /**
+     * Creates an EmptyResultSet which reads its rows from a cursor.
+     *
+     * @param olap4jConnection Connection
+     * @param headerList Column names
+     * @param cursor Cursor
+     */
+    EmptyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Cursor cursor)
+    {
+        this(olap4jConnection, headerList, null, cursor);
+    }
+
+    private EmptyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        List<List<Object>> rowList,
+        Cursor cursor)
     {
         this.olap4jConnection = olap4jConnection;
         this.headerList = headerList;
         this.rowList = rowList;
+        this.cursor = cursor;
         try {
             metaData.setColumnCount(headerList.size());
             for (int i = 0; i < headerList.size(); i++) {
@@ -78,8 +117,8 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
      * @param columnOrdinal 0-based ordinal
      * @return Value
      */
-    private Object getColumn(int columnOrdinal) {
-        return rowList.get(rowOrdinal).get(columnOrdinal);
+    private Object getColumn(int columnOrdinal) throws SQLException {
+        return currentRow().get(columnOrdinal);
     }
 
     private Object getColumn(String columnLabel) throws SQLException {
@@ -87,12 +126,43 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
         if (column < 0) {
             throw new SQLException("Column not found: " + columnLabel);
         }
-        return rowList.get(rowOrdinal).get(column);
+        return currentRow().get(column);
+    }
+
+    private List<Object> currentRow() throws SQLException {
+        if (cursor == null) {
+            return rowList.get(rowOrdinal);
+        }
+        if (row == null) {
+            throw new SQLException("No current row");
+        }
+        return row;
+    }
+
+    /**
+     * Throws if this result set is forward-only.
+     */
+    private void checkScrollable() throws SQLException {
+        if (cursor != null) {
+            throw new SQLException("Result set is forward-only");
+        }
     }
 
     // implement ResultSet
 
     public boolean next() throws SQLException {
+        if (cursor != null) {
+            if (row == null && rowOrdinal >= 0) {
+                return false;
+            }
+            row = cursor.nextRow();
+            ++rowOrdinal;
+            if (row == null) {
+                cursor.close();
+                return false;
+            }
+            return true;
+        }
         // note that if rowOrdinal == rowList.size - 1, we move but then return
         // false
         if (rowOrdinal < rowList.size()) {
@@ -102,6 +172,9 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public void close() throws SQLException {
+        if (cursor != null) {
+            cursor.close();
+        }
     }
 
     public boolean wasNull() throws SQLException {
@@ -428,6 +501,9 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean isAfterLast() throws SQLException {
+        if (cursor != null) {
+            return row == null && rowOrdinal >= 0;
+        }
         return rowOrdinal >= rowList.size();
     }
 
@@ -436,18 +512,22 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean isLast() throws SQLException {
+        checkScrollable();
         return rowOrdinal == rowList.size() - 1;
     }
 
     public void beforeFirst() throws SQLException {
+        checkScrollable();
         rowOrdinal = -1;
     }
 
     public void afterLast() throws SQLException {
+        checkScrollable();
         rowOrdinal = rowList.size();
     }
 
     public boolean first() throws SQLException {
+        checkScrollable();
         if (rowList.size() == 0) {
             return false;
         } else {
@@ -457,6 +537,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean last() throws SQLException {
+        checkScrollable();
         if (rowList.size() == 0) {
             return false;
         } else {
@@ -470,6 +551,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean absolute(int row) throws SQLException {
+        checkScrollable();
         int newRowOrdinal = row - 1;// convert to 0-based
         if (newRowOrdinal >= 0 && newRowOrdinal < rowList.size()) {
             rowOrdinal = newRowOrdinal;
@@ -480,6 +562,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean relative(int rows) throws SQLException {
+        checkScrollable();
         int newRowOrdinal = rowOrdinal + (rows - 1);
         if (newRowOrdinal >= 0 && newRowOrdinal < rowList.size()) {
             rowOrdinal = newRowOrdinal;
@@ -490,6 +573,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean previous() throws SQLException {
+        checkScrollable();
         // converse of next(); note that if rowOrdinal == 0, we decrement
         // but return false
         if (rowOrdinal >= 0) {
@@ -515,7 +599,9 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public int getType() throws SQLException {
-        throw new UnsupportedOperationException();
+        return cursor == null
+            ? TYPE_SCROLL_INSENSITIVE
+            : TYPE_FORWARD_ONLY;
     }
 
     public int getConcurrency() throws SQLException {
@@ -1068,6 +1154,25 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Source of the rows of a result set, which reads them one at a time.
+     */
+    interface Cursor {
+        /**
+         * Reads the next row.
+         *
+         * @return Values of the next row, or null if there are no more rows
+         * @throws SQLException on error
+         */
+        List<Object> nextRow() throws SQLException;
+
+        /**
+         * Releases the resources held by this cursor. May be called more
+         * than once.
+         */
+        void close();
+    }
 }
 
 // End EmptyResultSet.java
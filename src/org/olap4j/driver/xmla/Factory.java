@@ -74,6 +74,19 @@ interface Factory {
         List<String> headerList,
         List<List<Object>> rowList);
 
+    /**
+     * Creates a forward-only result set which reads its rows from a cursor.
+     *
+     * @param olap4jConnection Connection
+     * @param headerList Column headers
+     * @param cursor Cursor
+     * @return Result set
+     */
+    ResultSet newStreamingResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        EmptyResultSet.Cursor cursor);
+
     /**
      * Creates a cell set.
      *
@@ -64,6 +64,14 @@ class FactoryJdbc3Impl implements Factory {
         return new EmptyResultSetJdbc3(olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newStreamingResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        EmptyResultSet.Cursor cursor)
+    {
+        return new EmptyResultSetJdbc3(olap4jConnection, headerList, cursor);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -132,6 +140,14 @@ class FactoryJdbc3Impl implements Factory {
         {
             super(olap4jConnection, headerList, rowList);
         }
+
+        public EmptyResultSetJdbc3(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Cursor cursor)
+        {
+            super(olap4jConnection, headerList, cursor);
+        }
     }
 
     private class XmlaOlap4jConnectionJdbc3 extends XmlaOlap4jConnection {
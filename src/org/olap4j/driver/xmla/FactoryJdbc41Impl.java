@@ -65,6 +65,14 @@ class FactoryJdbc41Impl implements Factory {
             olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newStreamingResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        EmptyResultSet.Cursor cursor)
+    {
+        return new EmptyResultSetJdbc41(olap4jConnection, headerList, cursor);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -110,6 +118,21 @@ class FactoryJdbc41Impl implements Factory {
             super(olap4jConnection, headerList, rowList);
         }
 
+        /**
+         * Creates a EmptyResultSetJdbc41 which reads its rows from a cursor.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param cursor Cursor
+         */
+        EmptyResultSetJdbc41(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Cursor cursor)
+        {
+            super(olap4jConnection, headerList, cursor);
+        }
+
         public <T> T getObject(
             int columnIndex,
             Class<T> type) throws SQLException
@@ -64,6 +64,14 @@ class FactoryJdbc4Impl implements Factory {
             olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newStreamingResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        EmptyResultSet.Cursor cursor)
+    {
+        return new EmptyResultSetJdbc4(olap4jConnection, headerList, cursor);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -108,6 +116,21 @@ class FactoryJdbc4Impl implements Factory {
         {
             super(olap4jConnection, headerList, rowList);
         }
+
+        /**
+         * Creates a EmptyResultSetJdbc4 which reads its rows from a cursor.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param cursor Cursor
+         */
+        EmptyResultSetJdbc4(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Cursor cursor)
+        {
+            super(olap4jConnection, headerList, cursor);
+        }
     }
 
     private static class XmlaOlap4jConnectionJdbc4
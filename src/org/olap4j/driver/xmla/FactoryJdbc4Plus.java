@@ -50,6 +50,22 @@ class FactoryJdbc4Plus {
             super(olap4jConnection, headerList, rowList);
         }
 
+        /**
+         * Creates an AbstractEmptyResultSet which reads its rows from a
+         * cursor.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param cursor Cursor
+         */
+        AbstractEmptyResultSet(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Cursor cursor)
+        {
+            super(olap4jConnection, headerList, cursor);
+        }
+
         // implement java.sql.ResultSet methods
         // introduced in JDBC 4.0/JDK 1.6
 
@@ -80,6 +80,44 @@ interface MetadataReader {
         String memberUniqueName,
         List<XmlaOlap4jMember> list) throws OlapException;
 
+    /**
+     * Looks up the ancestors of a member, if possible in a single request.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param member Member
+     *
+     * @return list of ancestors of the member, in no particular order; empty
+     * if the member has no parent, and possibly incomplete if the provider
+     * does not support the ANCESTORS tree-operation, or if the reader holds
+     * the member's parent, in which case it may return only the ancestors
+     * it holds
+     *
+     * @throws org.olap4j.OlapException if error occurs
+     */
+    List<XmlaOlap4jMember> lookupMemberAncestors(XmlaOlap4jMember member)
+        throws OlapException;
+
+    /**
+     * Looks up the children of several members, if possible in a single
+     * request, and writes them into a map. Each child's parent is set to
+     * the member.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param members Members whose children to look up
+     *
+     * @param childrenMap Map to populate, from the unique name of each
+     * member to its children in hierarchy order; the lists must not be
+     * modified
+     *
+     * @throws org.olap4j.OlapException if error occurs
+     */
+    void lookupMemberChildren(
+        List<XmlaOlap4jMember> members,
+        Map<String, List<XmlaOlap4jMember>> childrenMap)
+        throws OlapException;
+
     /**
      * Looks up members of a given level.
      *
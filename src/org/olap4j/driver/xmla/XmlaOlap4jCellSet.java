@@ -19,6 +19,8 @@ package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
 import org.olap4j.impl.Olap4jUtil;
+import org.olap4j.impl.SharedKeys;
+import org.olap4j.impl.UnmodifiableArrayMap;
 import org.olap4j.mdx.*;
 import org.olap4j.metadata.*;
 
@@ -87,8 +89,17 @@ abstract class XmlaOlap4jCellSet implements CellSet {
     final XmlaOlap4jStatement olap4jStatement;
     protected boolean closed;
     private XmlaOlap4jCellSetMetaData metaData;
-    private final Map<Integer, Cell> cellMap =
-        new HashMap<Integer, Cell>();
+
+    /**
+     * Ordinals of the cells which have values, in ascending order.
+     */
+    private int[] cellOrdinals = new int[0];
+
+    /**
+     * Cells which have values; the cell at each index has the ordinal at the
+     * same index of {@link #cellOrdinals}.
+     */
+    private XmlaOlap4jCell[] cells = new XmlaOlap4jCell[0];
     private final List<XmlaOlap4jCellSetAxis> axisList =
         new ArrayList<XmlaOlap4jCellSetAxis>();
     private final List<CellSetAxis> immutableAxisList =
@@ -341,6 +352,11 @@ abstract class XmlaOlap4jCellSet implements CellSet {
         }
 
         final Element cellDataNode = findChild(root, MDDATASET_NS, "CellData");
+        final List<XmlaOlap4jCell> cellList = new ArrayList<XmlaOlap4jCell>();
+        // Cells usually all have the same properties, so their property
+        // maps share keys.
+        final Map<List<Property>, SharedKeys<Property>> sharedKeysMap =
+            new HashMap<List<Property>, SharedKeys<Property>>();
         for (Element cell : findChildren(cellDataNode, MDDATASET_NS, "Cell")) {
             propertyValues.clear();
             final int cellOrdinal =
@@ -357,14 +373,90 @@ abstract class XmlaOlap4jCellSet implements CellSet {
                     propertyValues.put(property, element.getTextContent());
                 }
             }
-            cellMap.put(
-                cellOrdinal,
+            cellList.add(
                 new XmlaOlap4jCell(
                     this,
                     cellOrdinal,
                     value,
                     formattedValue,
-                    propertyValues));
+                    cellPropertyMap(propertyValues, sharedKeysMap)));
+        }
+        setCells(cellList);
+    }
+
+    /**
+     * Returns an unmodifiable copy of the property values of a cell, whose
+     * keys are shared with those of other cells which have the same
+     * properties.
+     *
+     * @param propertyValues Property values
+     * @param sharedKeysMap Map from a list of properties to the keys shared
+     *     by cells which have those properties
+     * @return Unmodifiable map with the same contents as propertyValues
+     */
+    private static Map<Property, Object> cellPropertyMap(
+        Map<Property, Object> propertyValues,
+        Map<List<Property>, SharedKeys<Property>> sharedKeysMap)
+    {
+        if (propertyValues.size() <= 1) {
+            return UnmodifiableArrayMap.of(propertyValues);
+        }
+        final List<Property> keyList =
+            new ArrayList<Property>(propertyValues.keySet());
+        SharedKeys<Property> keys = sharedKeysMap.get(keyList);
+        if (keys == null) {
+            keys = SharedKeys.of(keyList);
+            sharedKeysMap.put(keyList, keys);
+        }
+        return keys.map(propertyValues);
+    }
+
+    /**
+     * Sets the cells which have values, sorting them by ordinal. Servers
+     * return cells in ordinal order, so usually there is nothing to sort. If
+     * several cells have the same ordinal, the last one wins.
+     *
+     * @param cellList Cells, in the order returned by the server
+     */
+    private void setCells(List<XmlaOlap4jCell> cellList) {
+        for (int i = 1; i < cellList.size(); i++) {
+            if (cellList.get(i - 1).getOrdinal()
+                >= cellList.get(i).getOrdinal())
+            {
+                // Stable, so that the last of several equal cells stays last.
+                Collections.sort(
+                    cellList,
+                    new Comparator<XmlaOlap4jCell>() {
+                        public int compare(
+                            XmlaOlap4jCell c1, XmlaOlap4jCell c2)
+                        {
+                            final int o1 = c1.getOrdinal();
+                            final int o2 = c2.getOrdinal();
+                            return o1 < o2 ? -1 : o1 == o2 ? 0 : 1;
+                        }
+                    });
+                break;
+            }
+        }
+        final int[] ordinals = new int[cellList.size()];
+        final XmlaOlap4jCell[] cellArray = new XmlaOlap4jCell[cellList.size()];
+        int n = 0;
+        for (XmlaOlap4jCell cell : cellList) {
+            if (n > 0 && ordinals[n - 1] == cell.getOrdinal()) {
+                --n;
+            }
+            ordinals[n] = cell.getOrdinal();
+            cellArray[n] = cell;
+            ++n;
+        }
+        if (n < ordinals.length) {
+            this.cellOrdinals = new int[n];
+            this.cells = new XmlaOlap4jCell[n];
+            System.arraycopy(ordinals, 0, cellOrdinals, 0, n);
+            System.arraycopy(cellArray, 0, cells, 0, n);
+        } else {
+            this.cellOrdinals = ordinals;
+            this.cells = cellArray;
         }
     }
 
@@ -663,8 +755,8 @@ abstract class XmlaOlap4jCellSet implements CellSet {
      * @throws IndexOutOfBoundsException if ordinal is not in range
      */
     private Cell getCellInternal(int pos) {
-        final Cell cell = cellMap.get(pos);
-        if (cell == null) {
+        final int i = Arrays.binarySearch(cellOrdinals, pos);
+        if (i < 0) {
             if (pos < 0 || pos >= maxOrdinal()) {
                 throw new IndexOutOfBoundsException();
             } else {
@@ -675,7 +767,19 @@ abstract class XmlaOlap4jCellSet implements CellSet {
                     Collections.<Property, Object>emptyMap());
             }
         }
-        return cell;
+        return cells[i];
+    }
+
+    /**
+     * Returns the ordinals of the cells of this cell set which have values,
+     * in ascending order.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @return Ordinals of non-empty cells; the caller may modify the array
+     */
+    int[] getNonEmptyOrdinals() {
+        return cellOrdinals.clone();
     }
 
     /**
@@ -31,6 +31,7 @@ import org.olap4j.metadata.Database.ProviderType;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
@@ -38,8 +39,12 @@ import java.net.URL;
 import java.sql.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
@@ -48,13 +53,18 @@ import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
  * Implementation of {@link org.olap4j.OlapConnection}
  * for XML/A providers.
  *
+ * <p>It also implements {@link XmlaOlap4jExtra}, which clients obtain by
+ * calling {@link #unwrap(Class)}.
+ *
  * <p>This class has sub-classes which implement JDBC 3.0 and JDBC 4.0 APIs;
  * it is instantiated using {@link Factory#newConnection}.</p>
  *
  * @author jhyde
  * @since May 23, 2007
  */
-abstract class XmlaOlap4jConnection implements OlapConnection {
+abstract class XmlaOlap4jConnection
+    implements OlapConnection, XmlaOlap4jExtra
+{
     /**
      * Handler for errors.
      */
@@ -87,6 +97,124 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
 
     private boolean closed = false;
 
+    /**
+     * Task which checks whether cubes have changed on the server, or null if
+     * the {@link XmlaOlap4jDriver.Property#UPDATEPOLLINTERVAL} property is not
+     * set.
+     */
+    private final XmlaOlap4jUpdatePoller updatePoller;
+
+    /**
+     * Log in which the proxy records requests, or null if the
+     * {@link XmlaOlap4jDriver.Property#WARMUPLOG} property is not set.
+     */
+    private final XmlaOlap4jRequestLog requestLog;
+
+    /**
+     * Snapshot of metadata responses, or null if the
+     * {@link XmlaOlap4jDriver.Property#METADATASNAPSHOT} property is not set.
+     */
+    private final XmlaOlap4jMetadataSnapshot metadataSnapshot;
+
+    /**
+     * Maximum number of members cached by each cube.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERCACHESIZE
+     */
+    final int memberCacheSize;
+
+    /**
+     * Eviction policy of the member cache of each cube.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERCACHEEVICTION
+     */
+    final XmlaOlap4jMemberCache.Eviction memberCacheEviction;
+
+    /**
+     * Maximum number of members to look up in one request, on servers which
+     * accept a list of member unique names.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERLOOKUPBATCHSIZE
+     */
+    final int memberLookupBatchSize;
+
+    /**
+     * Maximum number of member lookup requests to send at the same time.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERLOOKUPPARALLELISM
+     */
+    final int memberLookupParallelism;
+
+    /**
+     * Unique names of the hierarchies whose members are all loaded at once.
+     *
+     * @see XmlaOlap4jDriver.Property#PRELOADHIERARCHIES
+     */
+    final Set<String> preloadHierarchies;
+
+    /**
+     * Maximum number of members of a hierarchy which is preloaded because
+     * of its size, or 0 if hierarchies are not preloaded because of their
+     * size.
+     *
+     * @see XmlaOlap4jDriver.Property#PRELOADTHRESHOLD
+     */
+    final int preloadThreshold;
+
+    /**
+     * Whether to fetch the hierarchies and levels of a cube with one request
+     * each, rather than one request per dimension and hierarchy.
+     *
+     * @see XmlaOlap4jDriver.Property#BULKDISCOVERY
+     */
+    final boolean bulkDiscovery;
+
+    /**
+     * Maximum number of metadata requests to send at the same time when
+     * the dimensions of a cube are first needed, or 0 to send them one by
+     * one as each list is used.
+     *
+     * @see XmlaOlap4jDriver.Property#DISCOVERYPARALLELISM
+     */
+    final int discoveryParallelism;
+
+    /**
+     * Number of members in each page of the member list of a large level, or
+     * 0 if level member lists are not paged.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERPAGESIZE
+     */
+    final int memberPageSize;
+
+    /**
+     * Maximum number of pages held by the member list of a large level.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERPAGECOUNT
+     */
+    final int memberPageCount;
+
+    /**
+     * Whether each cube indexes the members it loads, for searching by
+     * caption or name.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERSEARCHINDEX
+     */
+    final boolean memberSearchIndex;
+
+    /**
+     * Whether to share the responses to metadata requests with other
+     * connections.
+     *
+     * @see XmlaOlap4jDriver.Property#SHAREMETADATA
+     */
+    private final boolean shareMetadata;
+
+    /**
+     * Entry of the shared metadata registry for the current catalog, role
+     * and locale, or null. Guarded by this.
+     */
+    private XmlaOlap4jMetadataRegistry.Entry sharedMetadata;
+
     /**
      * URL of the HTTP server to which to send XML requests.
      */
@@ -131,9 +259,19 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
     private boolean readOnly;
 
     /**
-     * Root of the metadata hierarchy of this connection.
+     * Root of the metadata hierarchy of this connection, for the current
+     * locale.
      */
-    private final NamedList<XmlaOlap4jDatabase> olapDatabases;
+    private volatile DeferredNamedListImpl<XmlaOlap4jDatabase> olapDatabases;
+
+    /**
+     * Map from a locale to the root of the metadata hierarchy for that
+     * locale, least recently used first. Holds at most
+     * {@link XmlaOlap4jDriver.Property#LOCALECACHESIZE} locales. Guarded by
+     * itself.
+     */
+    private final LinkedHashMap<Locale,
+        DeferredNamedListImpl<XmlaOlap4jDatabase>> olapDatabasesByLocale;
 
     private final URL serverUrlObject;
 
@@ -199,6 +337,70 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         this.databaseName =
             map.get(XmlaOlap4jDriver.Property.DATABASE.name());
 
+        final String memberCacheSize =
+            map.get(XmlaOlap4jDriver.Property.MEMBERCACHESIZE.name());
+        final String memberCacheEviction =
+            map.get(XmlaOlap4jDriver.Property.MEMBERCACHEEVICTION.name());
+        try {
+            this.memberCacheSize =
+                memberCacheSize == null
+                    ? XmlaOlap4jMemberCache.DEFAULT_SIZE
+                    : Integer.parseInt(memberCacheSize);
+            this.memberCacheEviction =
+                memberCacheEviction == null
+                    ? XmlaOlap4jMemberCache.Eviction.LRU
+                    : XmlaOlap4jMemberCache.Eviction.valueOf(
+                        memberCacheEviction.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw getHelper().createException(
+                "Invalid member cache parameters", e);
+        }
+        if (this.memberCacheSize < 0) {
+            throw getHelper().createException(
+                "Invalid value for connection property '"
+                + XmlaOlap4jDriver.Property.MEMBERCACHESIZE.name()
+                + "': " + memberCacheSize);
+        }
+        this.memberLookupBatchSize =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.MEMBERLOOKUPBATCHSIZE, 500);
+        this.memberLookupParallelism =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.MEMBERLOOKUPPARALLELISM, 4);
+        final Set<String> preloadHierarchies = new HashSet<String>();
+        final String preloadHierarchyList =
+            map.get(XmlaOlap4jDriver.Property.PRELOADHIERARCHIES.name());
+        if (preloadHierarchyList != null) {
+            for (String hierarchy : preloadHierarchyList.split(",")) {
+                if (hierarchy.trim().length() > 0) {
+                    preloadHierarchies.add(hierarchy.trim());
+                }
+            }
+        }
+        this.preloadHierarchies =
+            Collections.unmodifiableSet(preloadHierarchies);
+        this.preloadThreshold =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.PRELOADTHRESHOLD, 0);
+        this.bulkDiscovery =
+            Boolean.valueOf(
+                map.get(XmlaOlap4jDriver.Property.BULKDISCOVERY.name()));
+        this.discoveryParallelism =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.DISCOVERYPARALLELISM, 0);
+        this.memberPageSize =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.MEMBERPAGESIZE, 0);
+        this.memberPageCount =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.MEMBERPAGECOUNT, 10);
+        this.memberSearchIndex =
+            Boolean.valueOf(
+                map.get(XmlaOlap4jDriver.Property.MEMBERSEARCHINDEX.name()));
+        this.shareMetadata =
+            Boolean.valueOf(
+                map.get(XmlaOlap4jDriver.Property.SHAREMETADATA.name()));
+
         this.catalogName =
             map.get(XmlaOlap4jDriver.Property.CATALOG.name());
 
@@ -248,18 +450,84 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                 }
             };
 
+        this.requestLog = initRequestLog(map);
+
+        final String snapshotFileName =
+            map.get(XmlaOlap4jDriver.Property.METADATASNAPSHOT.name());
+        this.metadataSnapshot =
+            snapshotFileName == null
+                ? null
+                : XmlaOlap4jMetadataSnapshot.get(new File(snapshotFileName));
+
         this.olap4jDatabaseMetaData =
             factory.newDatabaseMetaData(this);
 
-        this.olapDatabases =
-            new DeferredNamedListImpl<XmlaOlap4jDatabase>(
-                XmlaOlap4jConnection.MetadataRequest.DISCOVER_DATASOURCES,
-                new XmlaOlap4jConnection.Context(
-                    this,
-                    this.olap4jDatabaseMetaData,
-                    null, null, null, null, null, null),
-                new XmlaOlap4jConnection.DatabaseHandler(),
-                null);
+        final int localeCacheSize =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.LOCALECACHESIZE, 1);
+        this.olapDatabasesByLocale =
+            new LinkedHashMap<Locale,
+                DeferredNamedListImpl<XmlaOlap4jDatabase>>(16, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(
+                    Map.Entry<Locale,
+                        DeferredNamedListImpl<XmlaOlap4jDatabase>> eldest)
+                {
+                    return size() > localeCacheSize;
+                }
+            };
+        this.olapDatabases = getOlapDatabases(getLocale());
+
+        final int updatePollInterval =
+            positiveIntProperty(
+                map, XmlaOlap4jDriver.Property.UPDATEPOLLINTERVAL, 0);
+        this.updatePoller =
+            updatePollInterval > 0
+                ? new XmlaOlap4jUpdatePoller(this, updatePollInterval)
+                : null;
+    }
+
+    /**
+     * Starts the tasks which this connection runs in the background. Called
+     * by the driver once the connection has been constructed, so that no
+     * task sees a partially constructed connection.
+     */
+    void startBackgroundTasks() {
+        if (updatePoller != null) {
+            updatePoller.start();
+        }
+    }
+
+    /**
+     * Reads a connection property whose value must be a positive integer.
+     *
+     * @param map The parameters from the jdbc url
+     * @param property Property
+     * @param defaultValue Value if the property is not set
+     * @return Value of the property
+     * @throws OlapException if the value is not a positive integer
+     */
+    private int positiveIntProperty(
+        Map<String, String> map,
+        XmlaOlap4jDriver.Property property,
+        int defaultValue)
+        throws OlapException
+    {
+        final String value = map.get(property.name());
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int i = Integer.parseInt(value);
+            if (i > 0) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw getHelper().createException(
+            "Invalid value for connection property '" + property.name()
+            + "': " + value);
     }
 
     /**
@@ -304,6 +572,48 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
 
 
 
+    /**
+     * Starts recording requests if a warm-up log was specified in the jdbc
+     * url, and replays the log in the background if a SOAP cache is enabled
+     * and the log has not yet been replayed to this server.
+     *
+     * @param map The parameters from the jdbc url.
+     * @return Request log, or null
+     * @throws OlapException if a warm-up parameter is invalid
+     */
+    private XmlaOlap4jRequestLog initRequestLog(Map<String, String> map)
+        throws OlapException
+    {
+        final String fileName =
+            map.get(XmlaOlap4jDriver.Property.WARMUPLOG.name());
+        if (fileName == null
+            || !(proxy instanceof XmlaOlap4jCacheControlProxy))
+        {
+            return null;
+        }
+        final XmlaOlap4jRequestLog log =
+            XmlaOlap4jRequestLog.get(new File(fileName));
+        ((XmlaOlap4jCacheControlProxy) proxy).setRequestLog(log);
+        if (map.containsKey(XmlaOlap4jDriver.Property.CACHE.name())) {
+            final String count =
+                map.get(XmlaOlap4jDriver.Property.WARMUPCOUNT.name());
+            final String concurrency =
+                map.get(XmlaOlap4jDriver.Property.WARMUPCONCURRENCY.name());
+            try {
+                log.replay(
+                    proxy,
+                    serverInfos,
+                    count == null ? 100 : Integer.parseInt(count),
+                    concurrency == null ? 4 : Integer.parseInt(concurrency),
+                    XmlaOlap4jDriver.getExecutor());
+            } catch (IllegalArgumentException e) {
+                throw getHelper().createException(
+                    "Invalid warm-up parameters", e);
+            }
+        }
+        return log;
+    }
+
     static Map<String, String> parseConnectString(String url, Properties info) {
         String x = url.substring(CONNECT_STRING_PREFIX.length());
         Map<String, String> map =
@@ -434,6 +744,21 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
 
     public void close() throws SQLException {
         closed = true;
+        if (updatePoller != null) {
+            updatePoller.stop();
+        }
+        if (requestLog != null) {
+            requestLog.release();
+        }
+        if (metadataSnapshot != null) {
+            metadataSnapshot.save();
+        }
+        synchronized (this) {
+            if (sharedMetadata != null) {
+                XmlaOlap4jMetadataRegistry.release(sharedMetadata);
+                sharedMetadata = null;
+            }
+        }
     }
 
     public boolean isClosed() throws SQLException {
@@ -778,25 +1103,148 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         final Locale previousLocale = this.locale;
         this.locale = locale;
 
-        // If locale has changed, clear the cache. This is necessary because
-        // metadata elements (e.g. Cubes) only store the caption & description
-        // of the current locale. The SOAP cache, if enabled, will speed things
-        // up a little if a client JVM uses connections to the same server with
-        // different locales.
+        // If locale has changed, switch to the metadata of the new locale.
+        // This is necessary because metadata elements (e.g. Cubes) only store
+        // the caption & description of one locale. The metadata of recently
+        // used locales is kept, so switching back costs no requests. The
+        // current database, catalog and schema are found again by name.
         if (!Olap4jUtil.equal(previousLocale, locale)) {
-            clearCache();
+            this.olapDatabases = getOlapDatabases(locale);
+            this.olap4jCatalog = null;
+            this.olap4jDatabase = null;
+            this.olap4jSchema = null;
         }
     }
 
     /**
-     * Clears the cache.
+     * Returns the root of the metadata hierarchy for a locale, creating it
+     * if it has not been used recently.
+     *
+     * @param locale Locale
+     * @return List of databases, whose metadata has the captions and
+     *     descriptions of the locale
      */
-    private void clearCache() {
-        ((DeferredNamedListImpl<XmlaOlap4jDatabase>)this.olapDatabases)
-            .reset();
-        this.olap4jCatalog = null;
-        this.olap4jDatabase = null;
-        this.olap4jSchema = null;
+    private DeferredNamedListImpl<XmlaOlap4jDatabase> getOlapDatabases(
+        Locale locale)
+    {
+        synchronized (olapDatabasesByLocale) {
+            DeferredNamedListImpl<XmlaOlap4jDatabase> databases =
+                olapDatabasesByLocale.get(locale);
+            if (databases == null) {
+                databases =
+                    new DeferredNamedListImpl<XmlaOlap4jDatabase>(
+                        MetadataRequest.DISCOVER_DATASOURCES,
+                        new Context(
+                            this,
+                            this.olap4jDatabaseMetaData,
+                            null, null, null, null, null, null),
+                        new DatabaseHandler(locale),
+                        null);
+                olapDatabasesByLocale.put(locale, databases);
+            }
+            return databases;
+        }
+    }
+
+    /**
+     * Discards the cached metadata and SOAP responses of a cube which has
+     * changed on the server.
+     *
+     * <p>Only cubes which have already been loaded are affected; this method
+     * does not populate the metadata tree. If only the data of the cube has
+     * changed, the cube keeps its metadata objects but discards its cached
+     * members. If its schema has changed, the cube is replaced by a new
+     * object, which fetches its metadata again. Only if a cube has been
+     * added or removed is the schema's list of cubes fetched again. Other
+     * cubes are not affected.
+     *
+     * @param catalogName Catalog name
+     * @param schemaName Schema name, or null to look for the cube in every
+     *     schema of the catalog
+     * @param cubeName Cube name
+     * @param change How the cube has changed
+     * @throws OlapException on error
+     */
+    void invalidateCube(
+        String catalogName,
+        String schemaName,
+        String cubeName,
+        CubeChange change)
+        throws OlapException
+    {
+        if (proxy instanceof XmlaOlap4jCacheControlProxy) {
+            ((XmlaOlap4jCacheControlProxy) proxy).invalidateCache(
+                catalogName, cubeName);
+        }
+        if (shareMetadata) {
+            XmlaOlap4jMetadataRegistry.invalidate(
+                serverUrlObject.toExternalForm());
+        }
+        if (metadataSnapshot != null && change != CubeChange.DATA) {
+            metadataSnapshot.invalidate(serverUrlObject.toExternalForm());
+        }
+        final List<DeferredNamedListImpl<XmlaOlap4jDatabase>> databaseLists;
+        synchronized (olapDatabasesByLocale) {
+            databaseLists =
+                new ArrayList<DeferredNamedListImpl<XmlaOlap4jDatabase>>(
+                    olapDatabasesByLocale.values());
+        }
+        for (DeferredNamedListImpl<XmlaOlap4jDatabase> databases
+            : databaseLists)
+        {
+            if (!databases.isPopulated()) {
+                continue;
+            }
+            for (XmlaOlap4jDatabase database : databases) {
+                if (database.catalogs.isPopulated()) {
+                    invalidateCube(
+                        database.catalogs.get(catalogName),
+                        schemaName,
+                        cubeName,
+                        change);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the cached metadata of a cube in one catalog.
+     */
+    private static void invalidateCube(
+        XmlaOlap4jCatalog catalog,
+        String schemaName,
+        String cubeName,
+        CubeChange change)
+        throws OlapException
+    {
+        if (catalog == null || !catalog.schemas.isPopulated()) {
+            return;
+        }
+        for (XmlaOlap4jSchema schema : catalog.schemas) {
+            if (!schema.cubes.isPopulated()
+                || schemaName != null && !schemaName.equals(schema.getName()))
+            {
+                continue;
+            }
+            if (change == CubeChange.ADDED_OR_REMOVED) {
+                // The list of cubes will be fetched on next access.
+                schema.cubes.reset();
+                continue;
+            }
+            final XmlaOlap4jCube cube = schema.cubes.get(cubeName);
+            if (cube == null) {
+                continue;
+            }
+            cube.clearCache();
+            if (change == CubeChange.SCHEMA) {
+                schema.cubes.replace(
+                    new XmlaOlap4jCube(
+                        schema,
+                        cube.getName(),
+                        cube.getCaption(),
+                        cube.getDescription()));
+            }
+        }
     }
 
     public Locale getLocale() {
@@ -836,6 +1284,130 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         throw new UnsupportedOperationException();
     }
 
+    // implement XmlaOlap4jExtra
+
+    public Map<XmlaOlap4jMemberCache.Statistic, Long>
+    getMemberCacheStatistics(Cube cube)
+    {
+        return ownCube(cube).getMemberCacheStatistics();
+    }
+
+    public Map<Member, List<Member>> getChildMembers(
+        List<? extends Member> members)
+        throws OlapException
+    {
+        final Map<XmlaOlap4jCube, List<XmlaOlap4jMember>> membersByCube =
+            new LinkedHashMap<XmlaOlap4jCube, List<XmlaOlap4jMember>>();
+        final Map<Member, List<Member>> map =
+            new LinkedHashMap<Member, List<Member>>();
+        for (Member member : members) {
+            if (member instanceof XmlaOlap4jMember) {
+                final XmlaOlap4jMember xmlaMember = (XmlaOlap4jMember) member;
+                List<XmlaOlap4jMember> list =
+                    membersByCube.get(xmlaMember.getCube());
+                if (list == null) {
+                    list = new ArrayList<XmlaOlap4jMember>();
+                    membersByCube.put(xmlaMember.getCube(), list);
+                }
+                list.add(xmlaMember);
+            } else {
+                map.put(
+                    member,
+                    new ArrayList<Member>(member.getChildMembers()));
+            }
+        }
+        for (Map.Entry<XmlaOlap4jCube, List<XmlaOlap4jMember>> entry
+            : membersByCube.entrySet())
+        {
+            final Map<String, List<XmlaOlap4jMember>> childrenMap =
+                new HashMap<String, List<XmlaOlap4jMember>>();
+            entry.getKey().getMetadataReader().lookupMemberChildren(
+                entry.getValue(), childrenMap);
+            for (XmlaOlap4jMember member : entry.getValue()) {
+                final List<XmlaOlap4jMember> children =
+                    childrenMap.get(member.getUniqueName());
+                map.put(
+                    member,
+                    children == null
+                        ? Collections.<Member>emptyList()
+                        : Collections.<Member>unmodifiableList(children));
+            }
+        }
+        return map;
+    }
+
+    public List<Member> searchMembers(
+        Hierarchy hierarchy,
+        String searchString,
+        int limit)
+    {
+        if (!(hierarchy instanceof XmlaOlap4jHierarchy)) {
+            throw new IllegalArgumentException(
+                "Not an XMLA hierarchy: " + hierarchy);
+        }
+        final XmlaOlap4jHierarchy xmlaHierarchy =
+            (XmlaOlap4jHierarchy) hierarchy;
+        return ownCube(xmlaHierarchy.olap4jDimension.olap4jCube)
+            .searchMembers(xmlaHierarchy, null, searchString, limit);
+    }
+
+    public List<Member> searchMembers(
+        Level level,
+        String searchString,
+        int limit)
+    {
+        if (!(level instanceof XmlaOlap4jLevel)) {
+            throw new IllegalArgumentException(
+                "Not an XMLA level: " + level);
+        }
+        final XmlaOlap4jLevel xmlaLevel = (XmlaOlap4jLevel) level;
+        return ownCube(xmlaLevel.olap4jHierarchy.olap4jDimension.olap4jCube)
+            .searchMembers(
+                xmlaLevel.olap4jHierarchy, xmlaLevel, searchString, limit);
+    }
+
+    public int[] getNonEmptyOrdinals(CellSet cellSet) {
+        if (!(cellSet instanceof XmlaOlap4jCellSet)
+            || ((XmlaOlap4jCellSet) cellSet).olap4jStatement.olap4jConnection
+                != this)
+        {
+            throw new IllegalArgumentException(
+                "Not a cell set of this connection: " + cellSet);
+        }
+        return ((XmlaOlap4jCellSet) cellSet).getNonEmptyOrdinals();
+    }
+
+    public Future<Void> prefetch(
+        Cube cube,
+        Collection<? extends MetadataElement> elements)
+    {
+        return ownCube(cube).prefetch(elements);
+    }
+
+    public void invalidateSharedMetadata() {
+        XmlaOlap4jMetadataRegistry.invalidate(serverUrlObject.toExternalForm());
+    }
+
+    /**
+     * Casts a cube to the XMLA implementation, checking that it belongs to
+     * this connection.
+     *
+     * @param cube Cube
+     * @return Cube as an XMLA cube
+     * @throws IllegalArgumentException if the cube does not belong to this
+     *     connection
+     */
+    private XmlaOlap4jCube ownCube(Cube cube) {
+        if (!(cube instanceof XmlaOlap4jCube)
+            || ((XmlaOlap4jCube) cube).olap4jSchema.olap4jCatalog
+                .olap4jDatabaseMetaData.olap4jConnection != this)
+        {
+            throw new IllegalArgumentException(
+                "Not a cube of this connection: " + cube);
+        }
+        return (XmlaOlap4jCube) cube;
+    }
+
     /**
      * This is a special rewrite of
      * {@link BackendFlavor#getFlavor(OlapConnection, boolean)} to get the
@@ -849,6 +1421,20 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         return BackendFlavor.getFlavor(dataSourceInfo, provider, fail);
     }
 
+    /**
+     * Enumeration of the ways in which a cube can change on the server.
+     *
+     * @see #invalidateCube(String, String, String, CubeChange)
+     */
+    enum CubeChange {
+        /** The data of the cube has changed, but not its structure. */
+        DATA,
+        /** The structure of the cube has changed. */
+        SCHEMA,
+        /** The cube has been added or removed. */
+        ADDED_OR_REMOVED
+    }
+
     /**
      * Enumeration of server backends. Use
      * {@link BackendFlavor#getFlavor(XmlaOlap4jConnection)}
@@ -915,6 +1501,106 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         handler.sortList(list);
     }
 
+    /**
+     * Populates a list by sending several metadata requests, at most
+     * {@code parallelism} at a time.
+     *
+     * <p>The rows are handled on the calling thread, in the order of the
+     * restrictions, because handlers may populate the metadata tree.
+     *
+     * @param list List to populate
+     * @param context Context
+     * @param metadataRequest Metadata request
+     * @param handler Handler for rows
+     * @param restrictionsList Restrictions of each request
+     * @param parallelism Maximum number of requests to send at the same time
+     * @throws OlapException on error
+     *
+     * @see #executeMetadataRequests(java.util.List, int)
+     */
+    <T extends Named> void populateList(
+        List<T> list,
+        Context context,
+        MetadataRequest metadataRequest,
+        Handler<T> handler,
+        List<Object[]> restrictionsList,
+        int parallelism) throws OlapException
+    {
+        final List<String> requests = new ArrayList<String>();
+        for (Object[] restrictions : restrictionsList) {
+            requests.add(
+                generateRequest(context, metadataRequest, restrictions));
+        }
+        for (Element root : executeMetadataRequests(requests, parallelism)) {
+            for (Element o : childElements(root)) {
+                if (o.getLocalName().equals("row")) {
+                    handler.handle(o, context, list);
+                }
+            }
+        }
+        handler.sortList(list);
+    }
+
+    /**
+     * Executes several XMLA metadata requests, at most {@code parallelism}
+     * at a time, and returns the root elements of their responses.
+     *
+     * <p>The requests are sent and their responses parsed on the driver's
+     * executor, unless there is only one request or {@code parallelism} is
+     * 1.
+     *
+     * @param requests XMLA request strings
+     * @param parallelism Maximum number of requests to send at the same time
+     * @return Root element of the response to each request
+     * @throws OlapException on error
+     */
+    Element[] executeMetadataRequests(
+        final List<String> requests,
+        int parallelism) throws OlapException
+    {
+        final Element[] roots = new Element[requests.size()];
+        final int workerCount = Math.min(parallelism, roots.length);
+        if (workerCount <= 1) {
+            for (int i = 0; i < roots.length; i++) {
+                roots[i] = executeMetadataRequest(requests.get(i));
+            }
+            return roots;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(
+                XmlaOlap4jDriver.submit(
+                    new Callable<Void>() {
+                        public Void call() throws OlapException {
+                            int i;
+                            while ((i = next.getAndIncrement())
+                                   < roots.length)
+                            {
+                                roots[i] =
+                                    executeMetadataRequest(requests.get(i));
+                            }
+                            return null;
+                        }
+                    }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw getHelper().createException(
+                    "Interrupted while discovering metadata", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OlapException) {
+                    throw (OlapException) e.getCause();
+                }
+                throw getHelper().createException(
+                    "error discovering metadata", e.getCause());
+            }
+        }
+        return roots;
+    }
+
     /**
      * Executes an XMLA metadata request and returns the root element of the
      * response.
@@ -924,19 +1610,175 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
      * @throws OlapException on error
      */
     Element executeMetadataRequest(String request) throws OlapException {
-        byte[] bytes;
+        return executeMetadataRequest(request, true);
+    }
+
+    /**
+     * Executes an XMLA metadata request and returns the root element of the
+     * response, optionally bypassing the SOAP cache.
+     *
+     * @param request XMLA request string
+     * @param useCache Whether the response may come from, and be stored in,
+     *     the SOAP cache
+     * @return Root element of the response
+     * @throws OlapException on error
+     */
+    Element executeMetadataRequest(
+        String request,
+        boolean useCache)
+        throws OlapException
+    {
+        final XmlaOlap4jMetadataRegistry.Entry entry =
+            useCache && XmlaOlap4jMetadataRegistry.isShared(request)
+                ? getSharedMetadata()
+                : null;
+        if (entry != null) {
+            final Element root = entry.get(request);
+            if (root != null) {
+                return root;
+            }
+        }
+        final Element root = sendMetadataRequest(request, useCache);
+        if (entry != null && root != null) {
+            entry.put(request, root);
+        }
+        return root;
+    }
+
+    /**
+     * Returns whether the response to a metadata request may be read as it
+     * is parsed, rather than as a DOM tree: that is, whether the response is
+     * not held, as a tree, by the shared metadata registry, or by the
+     * metadata snapshot. Both hold only the responses to requests which
+     * discover the structure of cubes.
+     *
+     * @param request XMLA request string
+     * @return whether the response may be streamed
+     */
+    boolean isStreamable(String request) {
+        return (!shareMetadata && metadataSnapshot == null)
+            || !XmlaOlap4jMetadataSnapshot.isSnapshotRequest(request);
+    }
+
+    /**
+     * Returns the entry of the shared metadata registry for the current
+     * catalog, role and locale of this connection, or null if metadata is
+     * not shared.
+     *
+     * @return Registry entry, or null
+     */
+    private synchronized XmlaOlap4jMetadataRegistry.Entry getSharedMetadata()
+    {
+        if (!shareMetadata || closed) {
+            return null;
+        }
+        final String serverUrl = serverUrlObject.toExternalForm();
+        final String credentials =
+            XmlaOlap4jUtil.credentialsDigest(
+                serverInfos.getUsername(), serverInfos.getPassword());
+        final Locale locale = getLocale();
+        if (sharedMetadata == null
+            || !sharedMetadata.matches(
+                serverUrl, credentials, catalogName, roleName, locale))
+        {
+            if (sharedMetadata != null) {
+                XmlaOlap4jMetadataRegistry.release(sharedMetadata);
+            }
+            sharedMetadata =
+                XmlaOlap4jMetadataRegistry.acquire(
+                    serverUrl, credentials, catalogName, roleName, locale);
+        }
+        return sharedMetadata;
+    }
+
+    /**
+     * Sends an XMLA metadata request to the server, through the proxy, and
+     * returns the root element of the response. If the connection has a
+     * metadata snapshot which holds the response, does not send the request.
+     *
+     * @param request XMLA request string
+     * @param useCache Whether the response may come from, and be stored in,
+     *     the SOAP cache and the metadata snapshot
+     * @return Root element of the response
+     * @throws OlapException on error
+     */
+    private Element sendMetadataRequest(
+        String request,
+        boolean useCache)
+        throws OlapException
+    {
+        final XmlaOlap4jMetadataSnapshot snapshot =
+            useCache
+                && metadataSnapshot != null
+                && XmlaOlap4jMetadataSnapshot.isSnapshotRequest(request)
+                ? metadataSnapshot
+                : null;
+        if (snapshot != null) {
+            final byte[] bytes = snapshot.get(this, request);
+            if (bytes != null) {
+                return parseMetadataResponse(request, bytes, false);
+            }
+        }
+        final byte[] bytes = sendRequest(request, useCache);
+        final Element root = parseMetadataResponse(request, bytes, true);
+        if (snapshot != null) {
+            snapshot.put(this, request, bytes);
+        }
+        return root;
+    }
+
+    /**
+     * Sends an XMLA request to the server, through the proxy, and returns
+     * the response.
+     *
+     * @param request XMLA request string
+     * @param useCache Whether the response may come from, and be stored in,
+     *     the SOAP cache
+     * @return Response
+     * @throws OlapException on error
+     */
+    byte[] sendRequest(
+        String request,
+        boolean useCache)
+        throws OlapException
+    {
         if (DEBUG) {
             System.out.println("********************************************");
             System.out.println("** SENDING REQUEST :");
             System.out.println(request);
         }
         try {
-            bytes = proxy.get(serverInfos, request);
+            if (!useCache && proxy instanceof XmlaOlap4jCacheControlProxy) {
+                return
+                    ((XmlaOlap4jCacheControlProxy) proxy).getUncached(
+                        serverInfos, request);
+            } else {
+                return proxy.get(serverInfos, request);
+            }
         } catch (XmlaOlap4jProxyException e) {
             throw getHelper().createException(
                 "This connection encountered an exception while executing a query.",
                 e);
         }
+    }
+
+    /**
+     * Parses the response to an XMLA metadata request and returns its root
+     * element.
+     *
+     * @param request XMLA request string, for error messages
+     * @param bytes Response
+     * @param updateSession Whether to take the session id from the header
+     *     of the response; false if the response was not just received
+     * @return Root element of the response
+     * @throws OlapException if the response cannot be parsed or is a fault
+     */
+    Element parseMetadataResponse(
+        String request,
+        byte[] bytes,
+        boolean updateSession)
+        throws OlapException
+    {
         Document doc;
         try {
             doc = parse(bytes);
@@ -995,7 +1837,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                 + "Request was:\n"
                 + request);
         }
-        if (header != null) {
+        if (header != null && updateSession) {
             Element session =
                 findChild(header, XMLA_NS, "Session");
             if (session != null) {
@@ -1172,7 +2014,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         }
 
         if (metadataRequest.allowsLocale()) {
-            final Locale locale1 = context.olap4jConnection.getLocale();
+            final Locale locale1 = context.getLocale();
             if (locale1 != null) {
                 final short lcid = LcidLocale.localeToLcid(locale1);
                 buf.append("<LocaleIdentifier>")
@@ -1285,6 +2127,17 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
     static class DatabaseHandler
         extends HandlerImpl<XmlaOlap4jDatabase>
     {
+        private final Locale locale;
+
+        /**
+         * Creates a DatabaseHandler.
+         *
+         * @param locale Locale of the metadata of the databases
+         */
+        DatabaseHandler(Locale locale) {
+            this.locale = locale;
+        }
+
         public void handle(
             Element row,
             Context context,
@@ -1324,7 +2177,8 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     url,
                     dsInfo,
                     pTypeList,
-                    aModeList));
+                    aModeList,
+                    locale));
         }
     }
 
@@ -1434,22 +2288,23 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             //     <DIMENSION_UNIQUE_SETTINGS>0</DIMENSION_UNIQUE_SETTINGS>
             //     <DIMENSION_IS_VISIBLE>true</DIMENSION_IS_VISIBLE>
             // </row>
+            final Map<String, Element> columns = indexColumns(row);
             final String dimensionName =
-                stringElement(row, "DIMENSION_NAME");
+                stringElement(columns, "DIMENSION_NAME");
             final String dimensionUniqueName =
-                stringElement(row, "DIMENSION_UNIQUE_NAME");
+                stringElement(columns, "DIMENSION_UNIQUE_NAME");
             final String dimensionCaption =
-                stringElement(row, "DIMENSION_CAPTION");
+                stringElement(columns, "DIMENSION_CAPTION");
             final String description =
-                stringElement(row, "DESCRIPTION");
+                stringElement(columns, "DESCRIPTION");
             final int dimensionType =
-                integerElement(row, "DIMENSION_TYPE");
+                integerElement(columns, "DIMENSION_TYPE");
             final Dimension.Type type =
                 Dimension.Type.getDictionary().forOrdinal(dimensionType);
             final String defaultHierarchyUniqueName =
-                stringElement(row, "DEFAULT_HIERARCHY");
+                stringElement(columns, "DEFAULT_HIERARCHY");
             final Integer dimensionOrdinal =
-                integerElement(row, "DIMENSION_ORDINAL");
+                integerElement(columns, "DIMENSION_ORDINAL");
             XmlaOlap4jDimension dimension =
                 new XmlaOlap4jDimension(
                     context.olap4jCube,
@@ -1518,27 +2373,28 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             //     <DIMENSION_IS_SHARED>true</DIMENSION_IS_SHARED>
             //     <PARENT_CHILD>false</PARENT_CHILD>
             // </row>
+            final Map<String, Element> columns = indexColumns(row);
             final String hierarchyUniqueName =
-                stringElement(row, "HIERARCHY_UNIQUE_NAME");
+                stringElement(columns, "HIERARCHY_UNIQUE_NAME");
             // SAP BW doesn't return a HIERARCHY_NAME attribute,
             // so try to use the unique name instead
             final String hierarchyName =
-                stringElement(row, "HIERARCHY_NAME") == null
+                stringElement(columns, "HIERARCHY_NAME") == null
                 ? (hierarchyUniqueName != null
                         ? hierarchyUniqueName.replaceAll("^\\[", "")
                              .replaceAll("\\]$", "")
                         : null)
-                : stringElement(row, "HIERARCHY_NAME");
+                : stringElement(columns, "HIERARCHY_NAME");
             final String hierarchyCaption =
-                stringElement(row, "HIERARCHY_CAPTION");
+                stringElement(columns, "HIERARCHY_CAPTION");
             final String description =
-                stringElement(row, "DESCRIPTION");
+                stringElement(columns, "DESCRIPTION");
             final String allMember =
-                stringElement(row, "ALL_MEMBER");
+                stringElement(columns, "ALL_MEMBER");
             final String defaultMemberUniqueName =
-                stringElement(row, "DEFAULT_MEMBER");
+                stringElement(columns, "DEFAULT_MEMBER");
             final String hierarchyDisplayFolder =
-                stringElement(row, "HIERARCHY_DISPLAY_FOLDER");
+                stringElement(columns, "HIERARCHY_DISPLAY_FOLDER");
 
             XmlaOlap4jHierarchy hierarchy = new XmlaOlap4jHierarchy(
                 context.getDimension(row),
@@ -1589,24 +2445,25 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             //     <DESCRIPTION>Sales Cube - Customers Hierarchy - (All)
             //     Level</DESCRIPTION>
             // </row>
+            final Map<String, Element> columns = indexColumns(row);
             final String levelUniqueName =
-                stringElement(row, "LEVEL_UNIQUE_NAME");
+                stringElement(columns, "LEVEL_UNIQUE_NAME");
             // SAP BW doesn't return a HIERARCHY_NAME attribute,
             // so try to use the unique name instead
             final String levelName =
-                stringElement(row, "LEVEL_NAME") == null
+                stringElement(columns, "LEVEL_NAME") == null
                     ? (levelUniqueName != null
                             ? levelUniqueName.replaceAll("^\\[", "")
                                     .replaceAll("\\]$", "")
                             : null)
-                    : stringElement(row, "LEVEL_NAME");
+                    : stringElement(columns, "LEVEL_NAME");
             final String levelCaption =
-                stringElement(row, "LEVEL_CAPTION");
+                stringElement(columns, "LEVEL_CAPTION");
             final String description =
-                stringElement(row, "DESCRIPTION");
+                stringElement(columns, "DESCRIPTION");
             final int levelNumber =
-                integerElement(row, "LEVEL_NUMBER");
-            final Integer levelTypeCode = integerElement(row, "LEVEL_TYPE");
+                integerElement(columns, "LEVEL_NUMBER");
+            final Integer levelTypeCode = integerElement(columns, "LEVEL_TYPE");
             Level.Type optionalLevelType =
                 Level.Type.getDictionary().forOrdinal(levelTypeCode);
             final Level.Type levelType =
@@ -1614,7 +2471,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     : optionalLevelType;
             boolean calculated = (levelTypeCode & MDLEVEL_TYPE_CALCULATED) != 0;
             final int levelCardinality =
-                integerElement(row, "LEVEL_CARDINALITY");
+                integerElement(columns, "LEVEL_CARDINALITY");
             XmlaOlap4jLevel level = new XmlaOlap4jLevel(
                 context.getHierarchy(row), levelUniqueName, levelName,
                 levelCaption, description, levelNumber, levelType,
@@ -1777,58 +2634,59 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             //    <PARENT_COUNT>1</PARENT_COUNT>
             //    <DEPTH>1</DEPTH>          <!-- mondrian-specific -->
             // </row>
+            final Map<String, Element> columns = indexColumns(row);
             if (false) {
             int levelNumber =
                 integerElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.LEVEL_NUMBER.name());
             }
             int memberOrdinal =
                 integerElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.MEMBER_ORDINAL.name());
             String memberUniqueName =
                 stringElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.MEMBER_UNIQUE_NAME.name());
             String memberName =
                 stringElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.MEMBER_NAME.name());
             String parentUniqueName =
                 stringElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.PARENT_UNIQUE_NAME.name());
             Member.Type memberType =
                 MEMBER_TYPE_VALUES[
                     integerElement(
-                        row,
+                        columns,
                         Property.StandardMemberProperty.MEMBER_TYPE.name())];
             String memberCaption =
                 stringElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.MEMBER_CAPTION.name());
             int childrenCardinality =
                 integerElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.CHILDREN_CARDINALITY
                         .name());
 
             // Gather member property values into a temporary map, so we can
             // create the member with all properties known. XmlaOlap4jMember
-            // uses an ArrayMap for property values and it is not efficient to
-            // add entries to the map one at a time.
+            // holds property values in an unmodifiable map, to which entries
+            // cannot be added one at a time.
             final XmlaOlap4jLevel level = context.getLevel(row);
             final Map<Property, Object> map =
                 new HashMap<Property, Object>();
-            addUserDefinedDimensionProperties(row, level, map);
+            addUserDefinedDimensionProperties(columns, level, map);
 
             // Usually members have the same depth as their level. (Ragged and
             // parent-child hierarchies are an exception.) Only store depth for
             // the unusual ones.
             final Integer depth =
                 integerElement(
-                    row,
+                    columns,
                     Property.StandardMemberProperty.DEPTH.name());
             if (depth != null
                 && depth.intValue() != level.getDepth())
@@ -1843,32 +2701,46 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             // need to retrieve the properties that occur in MDSCHEMA_MEMBERS
             // that are not available in MDSCHEMA_MEASURES, so we create a
             // member for internal use.
+            //
+            // Strings and property keys come from the cube's pool, so that
+            // siblings share their parent's unique name, and members with
+            // the same properties share an array of property keys.
+            final XmlaOlap4jCube cube =
+                level.olap4jHierarchy.olap4jDimension.olap4jCube;
+            final XmlaOlap4jMemberPool pool = cube.memberPool;
+            memberName = pool.share(memberName);
+            memberCaption =
+                Olap4jUtil.equal(memberCaption, memberName)
+                    ? memberName
+                    : pool.share(memberCaption);
             XmlaOlap4jMember member =
                 new XmlaOlap4jMember(
-                    level, memberUniqueName, memberName,
-                    memberCaption, "", parentUniqueName, memberType,
-                    childrenCardinality, memberOrdinal, map);
+                    level, pool.share(memberUniqueName), memberName,
+                    memberCaption, "", pool.share(parentUniqueName),
+                    memberType, childrenCardinality, memberOrdinal,
+                    pool.propertyMap(map));
             list.add(member);
         }
 
         private void addUserDefinedDimensionProperties(
-            Element row,
+            Map<String, Element> columns,
             XmlaOlap4jLevel level,
             Map<Property, Object> map)
         {
-            NodeList nodes = row.getChildNodes();
-            for (int i = 0; i < nodes.getLength(); i++) {
-                Node node = nodes.item(i);
-                if (EXCLUDED_PROPERTY_NAMES.contains(node.getLocalName())) {
+            final Map<String, XmlaOlap4jProperty> propertyMap =
+                level.getPropertyMap();
+            if (propertyMap.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, Element> column : columns.entrySet()) {
+                if (EXCLUDED_PROPERTY_NAMES.contains(column.getKey())) {
                     continue;
                 }
-                for (Property property : level.getProperties()) {
-                    if (property instanceof XmlaOlap4jProperty
-                        && property.getName().equalsIgnoreCase(
-                            node.getLocalName()))
-                    {
-                        map.put(property, node.getTextContent());
-                    }
+                final XmlaOlap4jProperty property =
+                    propertyMap.get(
+                        column.getKey().toUpperCase(Locale.ENGLISH));
+                if (property != null) {
+                    map.put(property, column.getValue().getTextContent());
                 }
             }
         }
@@ -2148,6 +3020,21 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                 olap4jLevel);
         }
 
+        /**
+         * Returns the locale in which to request metadata: that of the
+         * catalog, if known, otherwise the connection's current locale.
+         *
+         * @return Locale
+         */
+        Locale getLocale() {
+            if (olap4jCatalog != null
+                && olap4jCatalog.getDatabase() != null)
+            {
+                return olap4jCatalog.getDatabase().locale;
+            }
+            return olap4jConnection.getLocale();
+        }
+
         XmlaOlap4jHierarchy getHierarchy(Element row) {
             if (olap4jHierarchy != null) {
                 return olap4jHierarchy;
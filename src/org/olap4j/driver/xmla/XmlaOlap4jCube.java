@@ -23,8 +23,10 @@ import org.olap4j.impl.*;
 import org.olap4j.mdx.IdentifierSegment;
 import org.olap4j.metadata.*;
 
-import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
  * Implementation of {@link Cube}
@@ -35,6 +37,9 @@ import java.util.*;
  */
 class XmlaOlap4jCube implements Cube, Named
 {
+    private static final Logger LOGGER =
+        Logger.getLogger(XmlaOlap4jCube.class.getName());
+
     final XmlaOlap4jSchema olap4jSchema;
     private final String name;
     private final String caption;
@@ -50,8 +55,32 @@ class XmlaOlap4jCube implements Cube, Named
         new HashMap<String, XmlaOlap4jLevel>();
     final List<XmlaOlap4jMeasure> measures =
         new ArrayList<XmlaOlap4jMeasure>();
-    private final NamedList<XmlaOlap4jNamedSet> namedSets;
-    private final MetadataReader metadataReader;
+    private final DeferredNamedListImpl<XmlaOlap4jNamedSet> namedSets;
+    private final CachingMetadataReader metadataReader;
+    private final PreloadingMetadataReader preloadingMetadataReader;
+
+    /**
+     * Map from the unique name of a hierarchy to the index of its loaded
+     * members, or null if the
+     * {@link XmlaOlap4jDriver.Property#MEMBERSEARCHINDEX} property is not
+     * set.
+     */
+    private final ConcurrentMap<String, XmlaOlap4jMemberIndex> memberIndexes;
+
+    /**
+     * Map from the unique name of a level to the list which fetches its
+     * members a page at a time.
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERPAGESIZE
+     */
+    private final ConcurrentMap<String, XmlaOlap4jPagedMemberList>
+        pagedMemberLists =
+            new ConcurrentHashMap<String, XmlaOlap4jPagedMemberList>();
+
+    /**
+     * Pool of the strings and property keys of this cube's members.
+     */
+    final XmlaOlap4jMemberPool memberPool = new XmlaOlap4jMemberPool();
 
     /**
      * Creates an XmlaOlap4jCube.
@@ -77,10 +106,39 @@ class XmlaOlap4jCube implements Cube, Named
         this.description = description;
         final Map<String, XmlaOlap4jMeasure> measuresMap =
             new HashMap<String, XmlaOlap4jMeasure>();
+        final XmlaOlap4jConnection olap4jConnection =
+            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection;
+        this.memberIndexes =
+            olap4jConnection.memberSearchIndex
+                ? new ConcurrentHashMap<String, XmlaOlap4jMemberIndex>()
+                : null;
         this.metadataReader =
             new CachingMetadataReader(
                 new RawMetadataReader(),
-                measuresMap);
+                measuresMap,
+                new XmlaOlap4jMemberCache(
+                    olap4jConnection.memberCacheSize,
+                    olap4jConnection.memberCacheEviction,
+                    memberIndexes == null
+                        ? null
+                        : new XmlaOlap4jMemberCache.Listener() {
+                            public void added(
+                                List<XmlaOlap4jMember> members)
+                            {
+                                indexMembers(members);
+                            }
+
+                            public void removed(
+                                List<XmlaOlap4jMember> members)
+                            {
+                                unindexMembers(members);
+                            }
+                        }));
+        this.preloadingMetadataReader =
+            new PreloadingMetadataReader(
+                metadataReader,
+                olap4jConnection.preloadHierarchies,
+                olap4jConnection.preloadThreshold);
         // In case this is the dummy cube for shared dimensions stop here
         // to avoid unnecessary calls and errors with unique members
         if ("".equals(name)) {
@@ -89,9 +147,6 @@ class XmlaOlap4jCube implements Cube, Named
             return;
         }
 
-        final XmlaOlap4jConnection olap4jConnection =
-            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection;
-
         final XmlaOlap4jConnection.Context context =
             new XmlaOlap4jConnection.Context(this, null, null, null);
 
@@ -105,6 +160,28 @@ class XmlaOlap4jCube implements Cube, Named
             XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_DIMENSIONS,
             context,
             new XmlaOlap4jConnection.DimensionHandler(this),
+            restrictions)
+        {
+            protected void populateList(NamedList<XmlaOlap4jDimension> list)
+                throws OlapException
+            {
+                super.populateList(list);
+                if (olap4jConnection.bulkDiscovery) {
+                    populateHierarchiesAndLevels();
+                } else if (olap4jConnection.discoveryParallelism > 0) {
+                    populateInParallel(
+                        list, olap4jConnection.discoveryParallelism);
+                }
+            }
+        };
+
+        // populate named sets on first use; created before the measures
+        // are populated, which may populate the dimensions, which may
+        // populate the named sets in parallel
+        namedSets = new DeferredNamedListImpl<XmlaOlap4jNamedSet>(
+            XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_SETS,
+            context,
+            new XmlaOlap4jConnection.NamedSetHandler(),
             restrictions);
 
         // populate measures up front; a measure is needed in every query
@@ -117,13 +194,130 @@ class XmlaOlap4jCube implements Cube, Named
         for (XmlaOlap4jMeasure measure : measures) {
             measuresMap.put(measure.getUniqueName(), measure);
         }
+    }
 
-        // populate named sets
-        namedSets = new DeferredNamedListImpl<XmlaOlap4jNamedSet>(
-            XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_SETS,
-            context,
-            new XmlaOlap4jConnection.NamedSetHandler(),
-            restrictions);
+    /**
+     * Fetches the hierarchies and levels of all dimensions of this cube, with
+     * one request each, and populates the hierarchy list of each dimension
+     * and the level list of each hierarchy. Called when the dimensions have
+     * been fetched, if the
+     * {@link XmlaOlap4jDriver.Property#BULKDISCOVERY} property is set.
+     *
+     * <p>This is an optimization. If it fails, or if the server returns no
+     * rows for a dimension or hierarchy, its list is populated on first use
+     * as usual. A failure is logged as a warning.
+     */
+    private void populateHierarchiesAndLevels() {
+        final XmlaOlap4jConnection olap4jConnection =
+            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection;
+        final XmlaOlap4jConnection.Context context =
+            new XmlaOlap4jConnection.Context(this, null, null, null);
+        final Object[] restrictions = {
+            "CATALOG_NAME", olap4jSchema.olap4jCatalog.getName(),
+            "SCHEMA_NAME", olap4jSchema.getName(),
+            "CUBE_NAME", getName()
+        };
+        try {
+            final List<XmlaOlap4jHierarchy> hierarchyList =
+                new ArrayList<XmlaOlap4jHierarchy>();
+            olap4jConnection.populateList(
+                hierarchyList,
+                context,
+                XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_HIERARCHIES,
+                new XmlaOlap4jConnection.HierarchyHandler(this),
+                restrictions);
+            final Map<XmlaOlap4jDimension, List<XmlaOlap4jHierarchy>>
+                hierarchyMap =
+                    new HashMap<
+                        XmlaOlap4jDimension, List<XmlaOlap4jHierarchy>>();
+            for (XmlaOlap4jHierarchy hierarchy : hierarchyList) {
+                List<XmlaOlap4jHierarchy> list =
+                    hierarchyMap.get(hierarchy.olap4jDimension);
+                if (list == null) {
+                    list = new ArrayList<XmlaOlap4jHierarchy>();
+                    hierarchyMap.put(hierarchy.olap4jDimension, list);
+                }
+                list.add(hierarchy);
+            }
+            for (Map.Entry<XmlaOlap4jDimension, List<XmlaOlap4jHierarchy>>
+                entry : hierarchyMap.entrySet())
+            {
+                entry.getKey().hierarchies.populate(entry.getValue());
+            }
+
+            final List<XmlaOlap4jLevel> levelList =
+                new ArrayList<XmlaOlap4jLevel>();
+            olap4jConnection.populateList(
+                levelList,
+                context,
+                XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_LEVELS,
+                new XmlaOlap4jConnection.LevelHandler(this),
+                restrictions);
+            final Map<XmlaOlap4jHierarchy, List<XmlaOlap4jLevel>> levelMap =
+                new HashMap<XmlaOlap4jHierarchy, List<XmlaOlap4jLevel>>();
+            for (XmlaOlap4jLevel level : levelList) {
+                List<XmlaOlap4jLevel> list =
+                    levelMap.get(level.olap4jHierarchy);
+                if (list == null) {
+                    list = new ArrayList<XmlaOlap4jLevel>();
+                    levelMap.put(level.olap4jHierarchy, list);
+                }
+                list.add(level);
+            }
+            for (Map.Entry<XmlaOlap4jHierarchy, List<XmlaOlap4jLevel>> entry
+                : levelMap.entrySet())
+            {
+                entry.getKey().levels.populate(entry.getValue());
+            }
+        } catch (OlapException e) {
+            // Fall back to populating each list on first use.
+            bulkDiscoveryFailed(e);
+        } catch (RuntimeException e) {
+            bulkDiscoveryFailed(e);
+        }
+    }
+
+    private void bulkDiscoveryFailed(Exception e) {
+        LOGGER.log(
+            java.util.logging.Level.WARNING,
+            "Bulk discovery of the hierarchies and levels of cube '" + name
+            + "' failed; fetching them one dimension at a time",
+            e);
+    }
+
+    /**
+     * Fetches the named sets of this cube, the hierarchies of its
+     * dimensions, then the levels of those hierarchies, sending several
+     * requests at the same time. Called when the dimensions have been
+     * fetched, if the
+     * {@link XmlaOlap4jDriver.Property#DISCOVERYPARALLELISM} property is set.
+     *
+     * @param dimensionList Dimensions of this cube
+     * @param parallelism Maximum number of requests to send at the same time
+     */
+    private void populateInParallel(
+        List<XmlaOlap4jDimension> dimensionList,
+        int parallelism)
+    {
+        final List<DeferredNamedListImpl<?>> lists =
+            new ArrayList<DeferredNamedListImpl<?>>();
+        lists.add(namedSets);
+        for (XmlaOlap4jDimension dimension : dimensionList) {
+            lists.add(dimension.hierarchies);
+        }
+        DeferredNamedListImpl.populateAll(lists, parallelism);
+
+        lists.clear();
+        for (XmlaOlap4jDimension dimension : dimensionList) {
+            // If a request failed, do not populate the list now, one
+            // request at a time.
+            if (dimension.hierarchies.isPopulated()) {
+                for (XmlaOlap4jHierarchy hierarchy : dimension.hierarchies) {
+                    lists.add(hierarchy.levels);
+                }
+            }
+        }
+        DeferredNamedListImpl.populateAll(lists, parallelism);
     }
 
     public Schema getSchema() {
@@ -207,7 +401,320 @@ class XmlaOlap4jCube implements Cube, Named
      * @return metadata reader
      */
     MetadataReader getMetadataReader() {
-        return metadataReader;
+        return preloadingMetadataReader;
+    }
+
+    /**
+     * Returns the preloaded member tree of a hierarchy of this cube, loading
+     * it if necessary.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param hierarchy Hierarchy
+     * @return Member tree, or null if the hierarchy is not preloaded
+     * @throws OlapException on error
+     */
+    XmlaOlap4jMemberTree getMemberTree(XmlaOlap4jHierarchy hierarchy)
+        throws OlapException
+    {
+        return preloadingMetadataReader.getTree(hierarchy);
+    }
+
+    /**
+     * Discards the members cached by this cube's metadata reader. Called when
+     * the cube has changed on the server.
+     *
+     * <p>Not part of public olap4j API.
+     */
+    void clearCache() {
+        preloadingMetadataReader.clear();
+        metadataReader.clear();
+        if (memberIndexes != null) {
+            memberIndexes.clear();
+        }
+        pagedMemberLists.clear();
+    }
+
+    /**
+     * Returns the list which fetches the members of a level a page at a
+     * time, creating it the first time it is needed. The list holds its
+     * pages until the cache of this cube is cleared.
+     *
+     * <p>Mondrian computes the cardinality of a level by counting its
+     * members, so the list starts with that as its size; for other servers,
+     * whose cardinalities may be rough estimates, the list counts the members
+     * itself.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param level Level
+     * @return Paged list of the members of the level
+     * @throws OlapException on error
+     */
+    XmlaOlap4jPagedMemberList getPagedMembers(XmlaOlap4jLevel level)
+        throws OlapException
+    {
+        final String levelUniqueName = level.getUniqueName();
+        XmlaOlap4jPagedMemberList list =
+            pagedMemberLists.get(levelUniqueName);
+        if (list == null) {
+            final XmlaOlap4jConnection olap4jConnection =
+                olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection;
+            final int estimatedSize =
+                BackendFlavor.getFlavor(olap4jConnection, false)
+                    == BackendFlavor.MONDRIAN
+                    ? level.getCardinality()
+                    : -1;
+            pagedMemberLists.putIfAbsent(
+                levelUniqueName,
+                new XmlaOlap4jPagedMemberList(
+                    level,
+                    olap4jConnection.memberPageSize,
+                    olap4jConnection.memberPageCount,
+                    estimatedSize));
+            list = pagedMemberLists.get(levelUniqueName);
+        }
+        return list;
+    }
+
+    /**
+     * Adds a reference to each of a list of members, which this cube has
+     * started to hold, to the search index of its hierarchy. Does nothing if
+     * members are not indexed; measures are never indexed.
+     *
+     * <p>Members are held by the member cache, by preloaded member trees,
+     * and by the member lists of levels.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param members Members
+     */
+    void indexMembers(List<XmlaOlap4jMember> members) {
+        if (memberIndexes == null) {
+            return;
+        }
+        for (XmlaOlap4jMember member : members) {
+            if (member.getMemberType() == Member.Type.MEASURE) {
+                continue;
+            }
+            final String hierarchyUniqueName =
+                member.getLevel().getHierarchy().getUniqueName();
+            XmlaOlap4jMemberIndex index =
+                memberIndexes.get(hierarchyUniqueName);
+            if (index == null) {
+                memberIndexes.putIfAbsent(
+                    hierarchyUniqueName, new XmlaOlap4jMemberIndex());
+                index = memberIndexes.get(hierarchyUniqueName);
+            }
+            index.add(member);
+        }
+    }
+
+    /**
+     * Removes a reference to each of a list of members, which this cube no
+     * longer holds, from the search index of its hierarchy.
+     *
+     * @param members Members
+     */
+    private void unindexMembers(List<XmlaOlap4jMember> members) {
+        if (memberIndexes == null) {
+            return;
+        }
+        for (XmlaOlap4jMember member : members) {
+            final XmlaOlap4jMemberIndex index =
+                memberIndexes.get(
+                    member.getLevel().getHierarchy().getUniqueName());
+            if (index != null) {
+                index.remove(member);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of members in the search index of a hierarchy.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param hierarchy Hierarchy
+     * @return Number of indexed members
+     */
+    int getIndexedMemberCount(XmlaOlap4jHierarchy hierarchy) {
+        final XmlaOlap4jMemberIndex index =
+            memberIndexes == null
+                ? null
+                : memberIndexes.get(hierarchy.getUniqueName());
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Returns the loaded members of a hierarchy which match a search string.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param hierarchy Hierarchy
+     * @param level Level to which members must belong, or null
+     * @param searchString Search string
+     * @param limit Maximum number of members to return
+     * @return Matching members
+     *
+     * @see XmlaOlap4jMemberIndex#search
+     */
+    List<Member> searchMembers(
+        XmlaOlap4jHierarchy hierarchy,
+        XmlaOlap4jLevel level,
+        String searchString,
+        int limit)
+    {
+        final XmlaOlap4jMemberIndex index =
+            memberIndexes == null
+                ? null
+                : memberIndexes.get(hierarchy.getUniqueName());
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        return Olap4jUtil.cast(index.search(searchString, level, limit));
+    }
+
+    /**
+     * Returns the statistics of the member cache of this cube.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @return Map from statistic to value
+     */
+    Map<XmlaOlap4jMemberCache.Statistic, Long> getMemberCacheStatistics() {
+        return metadataReader.getStatistics();
+    }
+
+    /**
+     * Starts loading, in the background, the structure of this cube and the
+     * members of some of its hierarchies and levels.
+     *
+     * <p>The dimensions, hierarchies, levels and named sets of the cube are
+     * loaded first; then, for each hierarchy, its root members, and for each
+     * level, its members (or, if the level is paged, its first page).
+     * Members are loaded several at a time if the connection discovers
+     * metadata in parallel.
+     *
+     * <p>The metadata is loaded into the same lists and caches that are
+     * populated when it is first used, so a later call which needs it sends
+     * no request. A call made while the request is in progress waits for
+     * it: the lists of dimensions, hierarchies, levels and members are
+     * populated under a lock, as are paged member lists and member trees,
+     * and the metadata reader shares its fetch of the members of a level
+     * with other threads which need them.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param elements Hierarchies and levels of this cube
+     * @return Future which completes when the metadata has been loaded
+     * @throws IllegalArgumentException if an element is not a hierarchy or
+     *     level of this cube
+     */
+    Future<Void> prefetch(Collection<? extends MetadataElement> elements) {
+        final List<MetadataElement> list =
+            new ArrayList<MetadataElement>(elements);
+        for (MetadataElement element : list) {
+            final XmlaOlap4jHierarchy hierarchy;
+            if (element instanceof XmlaOlap4jHierarchy) {
+                hierarchy = (XmlaOlap4jHierarchy) element;
+            } else if (element instanceof XmlaOlap4jLevel) {
+                hierarchy = ((XmlaOlap4jLevel) element).olap4jHierarchy;
+            } else {
+                throw new IllegalArgumentException(
+                    "Not an XMLA hierarchy or level: " + element);
+            }
+            if (hierarchy.olap4jDimension.olap4jCube != this) {
+                throw new IllegalArgumentException(
+                    "Not an element of cube " + getUniqueName() + ": "
+                    + element);
+            }
+        }
+        return XmlaOlap4jDriver.submit(
+            new Callable<Void>() {
+                public Void call() throws OlapException {
+                    if (dimensions != null) {
+                        for (XmlaOlap4jDimension dimension : dimensions) {
+                            for (XmlaOlap4jHierarchy hierarchy
+                                : dimension.hierarchies)
+                            {
+                                hierarchy.levels.size();
+                            }
+                        }
+                        namedSets.size();
+                    }
+                    prefetchMembers(list);
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Loads the members of some hierarchies and levels, at most
+     * {@link XmlaOlap4jConnection#discoveryParallelism} at a time.
+     */
+    private void prefetchMembers(final List<MetadataElement> elements)
+        throws OlapException
+    {
+        final XmlaOlap4jConnection connection =
+            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection;
+        final int workerCount =
+            Math.min(connection.discoveryParallelism, elements.size());
+        if (workerCount <= 1) {
+            for (MetadataElement element : elements) {
+                prefetchMembers(element);
+            }
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(
+                XmlaOlap4jDriver.submit(
+                    new Callable<Void>() {
+                        public Void call() throws OlapException {
+                            int i;
+                            while ((i = next.getAndIncrement())
+                                   < elements.size())
+                            {
+                                prefetchMembers(elements.get(i));
+                            }
+                            return null;
+                        }
+                    }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw connection.helper.createException(
+                    "Interrupted while prefetching members", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OlapException) {
+                    throw (OlapException) e.getCause();
+                }
+                throw connection.helper.createException(
+                    "error prefetching members", e.getCause());
+            }
+        }
+    }
+
+    private void prefetchMembers(MetadataElement element)
+        throws OlapException
+    {
+        if (element instanceof XmlaOlap4jHierarchy) {
+            ((XmlaOlap4jHierarchy) element).getRootMembers();
+            return;
+        }
+        final XmlaOlap4jLevel level = (XmlaOlap4jLevel) element;
+        if (getMemberTree(level.olap4jHierarchy) == null && level.isPaged()) {
+            // The list which the level returns from getMembers. Fetch its
+            // first page, but do not count the members of the level.
+            getPagedMembers(level).prefetch();
+        } else {
+            level.getMembers().size();
+        }
     }
 
     public List<Member> lookupMembers(
@@ -270,6 +777,20 @@ class XmlaOlap4jCube implements Cube, Named
                 treeOps, memberUniqueName, list);
         }
 
+        public List<XmlaOlap4jMember> lookupMemberAncestors(
+            XmlaOlap4jMember member) throws OlapException
+        {
+            return metadataReader.lookupMemberAncestors(member);
+        }
+
+        public void lookupMemberChildren(
+            List<XmlaOlap4jMember> members,
+            Map<String, List<XmlaOlap4jMember>> childrenMap)
+            throws OlapException
+        {
+            metadataReader.lookupMemberChildren(members, childrenMap);
+        }
+
         public List<XmlaOlap4jMember> getLevelMembers(
             XmlaOlap4jLevel level)
             throws OlapException
@@ -282,24 +803,26 @@ class XmlaOlap4jCube implements Cube, Named
      * Implementation of MemberReader that reads from an underlying member
      * reader and caches the results.
      *
-     * <p>Caches are {@link Map}s containing
-     * {@link java.lang.ref.SoftReference}s to cached objects, so can be
-     * cleared when memory is in short supply.
+     * <p>Members and level member lists are held in a bounded
+     * {@link XmlaOlap4jMemberCache}, which may be used by several threads at
+     * once.
      */
     private static class CachingMetadataReader
         extends DelegatingMetadataReader
     {
         private final Map<String, XmlaOlap4jMeasure> measuresMap;
 
-        private final Map<String, SoftReference<XmlaOlap4jMember>> memberMap =
-            new HashMap<String, SoftReference<XmlaOlap4jMember>>();
+        private final XmlaOlap4jMemberCache cache;
 
-        private final Map<
-            XmlaOlap4jLevel,
-            SoftReference<List<XmlaOlap4jMember>>> levelMemberListMap =
-            new HashMap<
-                XmlaOlap4jLevel,
-                SoftReference<List<XmlaOlap4jMember>>>();
+        /**
+         * Map from a level to the task which is fetching its members, while
+         * it is in progress.
+         */
+        private final ConcurrentMap<
+            XmlaOlap4jLevel, FutureTask<List<XmlaOlap4jMember>>>
+            levelMembersInFlight =
+                new ConcurrentHashMap<
+                    XmlaOlap4jLevel, FutureTask<List<XmlaOlap4jMember>>>();
 
         /**
          * Creates a CachingMetadataReader.
@@ -307,13 +830,32 @@ class XmlaOlap4jCube implements Cube, Named
          * @param metadataReader Underlying metadata reader
          * @param measuresMap Map of measures by unique name, inherited from the
          *     cube and used read-only by this reader
+         * @param cache Cache of members and level member lists
          */
         CachingMetadataReader(
             MetadataReader metadataReader,
-            Map<String, XmlaOlap4jMeasure> measuresMap)
+            Map<String, XmlaOlap4jMeasure> measuresMap,
+            XmlaOlap4jMemberCache cache)
         {
             super(metadataReader);
             this.measuresMap = measuresMap;
+            this.cache = cache;
+        }
+
+        /**
+         * Discards all cached members.
+         */
+        void clear() {
+            cache.clear();
+        }
+
+        /**
+         * Returns the statistics of this reader's cache.
+         *
+         * @return Map from statistic to value
+         */
+        Map<XmlaOlap4jMemberCache.Statistic, Long> getStatistics() {
+            return cache.getStatistics();
         }
 
         public XmlaOlap4jMember lookupMemberByUniqueName(
@@ -327,23 +869,16 @@ class XmlaOlap4jCube implements Cube, Named
             }
 
             // Next, look in cache.
-            final SoftReference<XmlaOlap4jMember> memberRef =
-                memberMap.get(memberUniqueName);
-            if (memberRef != null) {
-                final XmlaOlap4jMember member = memberRef.get();
-                if (member != null) {
-                    return member;
-                }
+            XmlaOlap4jMember member = cache.getMember(memberUniqueName);
+            if (member != null) {
+                return member;
             }
 
-            final XmlaOlap4jMember member =
-                super.lookupMemberByUniqueName(memberUniqueName);
+            member = super.lookupMemberByUniqueName(memberUniqueName);
             if (member != null
                 && member.getDimension().type != Dimension.Type.MEASURE)
             {
-                memberMap.put(
-                    memberUniqueName,
-                    new SoftReference<XmlaOlap4jMember>(member));
+                cache.putMember(memberUniqueName, member);
             }
             return member;
         }
@@ -364,12 +899,9 @@ class XmlaOlap4jCube implements Cube, Named
                 }
 
                 // Next, look in cache.
-                final SoftReference<XmlaOlap4jMember> memberRef =
-                    this.memberMap.get(memberUniqueName);
-                final XmlaOlap4jMember member;
-                if (memberRef != null
-                    && (member = memberRef.get()) != null)
-                {
+                final XmlaOlap4jMember member =
+                    cache.getMember(memberUniqueName);
+                if (member != null) {
                     memberMap.put(memberUniqueName, member);
                     continue;
                 }
@@ -391,40 +923,449 @@ class XmlaOlap4jCube implements Cube, Named
                             && member.getDimension().type
                                != Dimension.Type.MEASURE)
                         {
-                            this.memberMap.put(
-                                memberName,
-                                new SoftReference<XmlaOlap4jMember>(member));
+                            cache.putMember(memberName, member);
                         }
                     }
                 }
             }
         }
 
-        public List<XmlaOlap4jMember> getLevelMembers(
-            XmlaOlap4jLevel level)
+        public List<XmlaOlap4jMember> lookupMemberAncestors(
+            XmlaOlap4jMember member) throws OlapException
+        {
+            // First, walk up the chain of cached ancestors. If the parent is
+            // cached, return the chain without a request; the ancestors
+            // above it are fetched when the top of the chain needs its
+            // parent.
+            final List<XmlaOlap4jMember> ancestors =
+                new ArrayList<XmlaOlap4jMember>();
+            XmlaOlap4jMember m = member;
+            while (m.getParentMemberUniqueName() != null) {
+                final XmlaOlap4jMember parent =
+                    cache.getMember(m.getParentMemberUniqueName());
+                if (parent == null) {
+                    break;
+                }
+                ancestors.add(parent);
+                m = parent;
+            }
+            if (!ancestors.isEmpty()
+                || member.getParentMemberUniqueName() == null)
+            {
+                return ancestors;
+            }
+
+            // Fetch all ancestors in one request. Prefer members which are
+            // already cached, so that a member has one instance.
+            for (XmlaOlap4jMember ancestor
+                : super.lookupMemberAncestors(member))
+            {
+                final XmlaOlap4jMember cached =
+                    cache.getMember(ancestor.getUniqueName());
+                if (cached != null) {
+                    ancestors.add(cached);
+                } else {
+                    if (ancestor.getDimension().type
+                        != Dimension.Type.MEASURE)
+                    {
+                        cache.putMember(ancestor.getUniqueName(), ancestor);
+                    }
+                    ancestors.add(ancestor);
+                }
+            }
+            return ancestors;
+        }
+
+        public void lookupMemberChildren(
+            List<XmlaOlap4jMember> members,
+            Map<String, List<XmlaOlap4jMember>> childrenMap)
             throws OlapException
         {
-            final SoftReference<List<XmlaOlap4jMember>> memberListRef =
-                levelMemberListMap.get(level);
-            if (memberListRef != null) {
-                final List<XmlaOlap4jMember> memberList = memberListRef.get();
-                if (memberList != null) {
-                    return memberList;
+            final List<XmlaOlap4jMember> remainingMembers =
+                new ArrayList<XmlaOlap4jMember>();
+            for (XmlaOlap4jMember member : members) {
+                final List<XmlaOlap4jMember> children =
+                    cache.getChildren(member.getUniqueName());
+                if (children != null) {
+                    childrenMap.put(member.getUniqueName(), children);
+                } else {
+                    remainingMembers.add(member);
+                }
+            }
+            if (remainingMembers.isEmpty()) {
+                return;
+            }
+            final Map<String, List<XmlaOlap4jMember>> remainingChildrenMap =
+                new HashMap<String, List<XmlaOlap4jMember>>();
+            super.lookupMemberChildren(remainingMembers, remainingChildrenMap);
+            for (XmlaOlap4jMember member : remainingMembers) {
+                final List<XmlaOlap4jMember> children =
+                    new ArrayList<XmlaOlap4jMember>();
+                final List<XmlaOlap4jMember> fetchedChildren =
+                    remainingChildrenMap.get(member.getUniqueName());
+                if (fetchedChildren != null) {
+                    // Prefer members which are already cached, so that a
+                    // member has one instance.
+                    for (XmlaOlap4jMember child : fetchedChildren) {
+                        final XmlaOlap4jMember cached =
+                            cache.getMember(child.getUniqueName());
+                        if (cached != null) {
+                            children.add(cached);
+                        } else {
+                            cache.putMember(child.getUniqueName(), child);
+                            children.add(child);
+                        }
+                    }
+                }
+                final List<XmlaOlap4jMember> unmodifiableChildren =
+                    Collections.unmodifiableList(children);
+                if (member.getDimension().type != Dimension.Type.MEASURE) {
+                    cache.putChildren(
+                        member.getUniqueName(), unmodifiableChildren);
                 }
+                childrenMap.put(member.getUniqueName(), unmodifiableChildren);
             }
+        }
+
+        public List<XmlaOlap4jMember> getLevelMembers(
+            final XmlaOlap4jLevel level)
+            throws OlapException
+        {
             final List<XmlaOlap4jMember> memberList =
-                super.getLevelMembers(level);
+                cache.getLevelMembers(level);
+            if (memberList != null) {
+                return memberList;
+            }
+            // If another thread, say one prefetching the cube, is fetching
+            // the members of this level, wait for it rather than sending
+            // the same request.
+            final FutureTask<List<XmlaOlap4jMember>> task =
+                new FutureTask<List<XmlaOlap4jMember>>(
+                    new Callable<List<XmlaOlap4jMember>>() {
+                        public List<XmlaOlap4jMember> call()
+                            throws OlapException
+                        {
+                            return fetchLevelMembers(level);
+                        }
+                    });
+            FutureTask<List<XmlaOlap4jMember>> inFlightTask =
+                levelMembersInFlight.putIfAbsent(level, task);
+            if (inFlightTask == null) {
+                inFlightTask = task;
+                try {
+                    task.run();
+                } finally {
+                    levelMembersInFlight.remove(level, task);
+                }
+            }
+            try {
+                return inFlightTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw level.olap4jHierarchy.olap4jDimension.olap4jCube
+                    .olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection.helper.createException(
+                        "Interrupted while fetching members of level "
+                        + level.getUniqueName(), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OlapException) {
+                    throw (OlapException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw (Error) e.getCause();
+            }
+        }
+
+        private List<XmlaOlap4jMember> fetchLevelMembers(
+            XmlaOlap4jLevel level)
+            throws OlapException
+        {
+            // The thread which fetched them may have finished between this
+            // thread's lookup and its claim on the level.
+            List<XmlaOlap4jMember> memberList = cache.getLevelMembers(level);
+            if (memberList != null) {
+                return memberList;
+            }
+            memberList = super.getLevelMembers(level);
             if (level.olap4jHierarchy.olap4jDimension.type
                 != Dimension.Type.MEASURE)
             {
-                levelMemberListMap.put(
-                    level,
-                    new SoftReference<List<XmlaOlap4jMember>>(memberList));
+                cache.putLevelMembers(level, memberList);
             }
             return memberList;
         }
     }
 
+    /**
+     * Implementation of MetadataReader that answers requests for members of
+     * preloaded hierarchies from an in-memory {@link XmlaOlap4jMemberTree},
+     * and delegates other requests to an underlying reader.
+     *
+     * <p>A hierarchy is preloaded if it is listed in the
+     * {@link XmlaOlap4jDriver.Property#PRELOADHIERARCHIES} property, or if the
+     * sum of the cardinalities of its levels is at most
+     * {@link XmlaOlap4jDriver.Property#PRELOADTHRESHOLD}. Its tree is loaded,
+     * in one request, the first time one of its members is needed.
+     */
+    private class PreloadingMetadataReader extends DelegatingMetadataReader {
+        private final Set<String> hierarchyUniqueNames;
+        private final int threshold;
+
+        /**
+         * Map from hierarchy unique name to the hierarchy's member tree.
+         */
+        private final ConcurrentMap<String, XmlaOlap4jMemberTree> treeMap =
+            new ConcurrentHashMap<String, XmlaOlap4jMemberTree>();
+
+        /**
+         * Map from hierarchy unique name to whether the hierarchy is to be
+         * preloaded.
+         */
+        private final ConcurrentMap<String, Boolean> preloadMap =
+            new ConcurrentHashMap<String, Boolean>();
+
+        /**
+         * Creates a PreloadingMetadataReader.
+         *
+         * @param metadataReader Underlying metadata reader
+         * @param hierarchyUniqueNames Unique names of the hierarchies to
+         *     preload
+         * @param threshold Maximum number of members of a hierarchy which is
+         *     preloaded because of its size, or 0
+         */
+        PreloadingMetadataReader(
+            MetadataReader metadataReader,
+            Set<String> hierarchyUniqueNames,
+            int threshold)
+        {
+            super(metadataReader);
+            this.hierarchyUniqueNames = hierarchyUniqueNames;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Discards all member trees.
+         */
+        void clear() {
+            treeMap.clear();
+            preloadMap.clear();
+        }
+
+        /**
+         * Returns the member tree of a hierarchy, loading it if necessary.
+         *
+         * @param hierarchy Hierarchy
+         * @return Member tree, or null if the hierarchy is not preloaded
+         * @throws OlapException on error
+         */
+        XmlaOlap4jMemberTree getTree(XmlaOlap4jHierarchy hierarchy)
+            throws OlapException
+        {
+            final String uniqueName = hierarchy.getUniqueName();
+            XmlaOlap4jMemberTree tree = treeMap.get(uniqueName);
+            if (tree != null || !isPreloaded(hierarchy)) {
+                return tree;
+            }
+            synchronized (this) {
+                tree = treeMap.get(uniqueName);
+                if (tree == null) {
+                    tree = load(hierarchy);
+                    treeMap.put(uniqueName, tree);
+                }
+                return tree;
+            }
+        }
+
+        private boolean isPreloaded(XmlaOlap4jHierarchy hierarchy) {
+            final String uniqueName = hierarchy.getUniqueName();
+            Boolean preload = preloadMap.get(uniqueName);
+            if (preload == null) {
+                if (hierarchy.olap4jDimension.type == Dimension.Type.MEASURE) {
+                    preload = false;
+                } else if (hierarchyUniqueNames.contains(uniqueName)) {
+                    preload = true;
+                } else if (threshold > 0) {
+                    long memberCount = 0;
+                    for (XmlaOlap4jLevel level : hierarchy.levels) {
+                        memberCount += level.getCardinality();
+                    }
+                    preload = memberCount <= threshold;
+                } else {
+                    preload = false;
+                }
+                preloadMap.put(uniqueName, preload);
+            }
+            return preload;
+        }
+
+        private XmlaOlap4jMemberTree load(XmlaOlap4jHierarchy hierarchy)
+            throws OlapException
+        {
+            final List<XmlaOlap4jMember> list =
+                new ArrayList<XmlaOlap4jMember>();
+            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection
+                .populateList(
+                    list,
+                    new XmlaOlap4jConnection.Context(
+                        XmlaOlap4jCube.this,
+                        hierarchy.olap4jDimension,
+                        hierarchy,
+                        null),
+                    XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_MEMBERS,
+                    new XmlaOlap4jConnection.MemberHandler(),
+                    new Object[] {
+                        "CATALOG_NAME", olap4jSchema.olap4jCatalog.getName(),
+                        "SCHEMA_NAME", olap4jSchema.getName(),
+                        "CUBE_NAME", getName(),
+                        "DIMENSION_UNIQUE_NAME",
+                        hierarchy.olap4jDimension.getUniqueName(),
+                        "HIERARCHY_UNIQUE_NAME", hierarchy.getUniqueName()
+                    });
+            // The tree holds its members until the cache is cleared.
+            indexMembers(list);
+            return new XmlaOlap4jMemberTree(list);
+        }
+
+        /**
+         * Returns the member tree which contains a member, loading it if the
+         * member belongs to a hierarchy which is listed for preloading.
+         *
+         * @param memberUniqueName Unique name of member
+         * @return Member tree, or null
+         * @throws OlapException on error
+         */
+        private XmlaOlap4jMemberTree getTree(String memberUniqueName)
+            throws OlapException
+        {
+            for (XmlaOlap4jMemberTree tree : treeMap.values()) {
+                if (tree.lookupMember(memberUniqueName) != null) {
+                    return tree;
+                }
+            }
+            for (String hierarchyUniqueName : hierarchyUniqueNames) {
+                if (memberUniqueName.startsWith(hierarchyUniqueName + ".")
+                    && !treeMap.containsKey(hierarchyUniqueName))
+                {
+                    for (Hierarchy hierarchy : getHierarchies()) {
+                        if (hierarchy.getUniqueName().equals(
+                                hierarchyUniqueName))
+                        {
+                            return getTree((XmlaOlap4jHierarchy) hierarchy);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        public XmlaOlap4jMember lookupMemberByUniqueName(
+            String memberUniqueName) throws OlapException
+        {
+            final XmlaOlap4jMemberTree tree = getTree(memberUniqueName);
+            if (tree != null) {
+                final XmlaOlap4jMember member =
+                    tree.lookupMember(memberUniqueName);
+                if (member != null) {
+                    return member;
+                }
+            }
+            return super.lookupMemberByUniqueName(memberUniqueName);
+        }
+
+        public void lookupMembersByUniqueName(
+            List<String> memberUniqueNames,
+            Map<String, XmlaOlap4jMember> memberMap) throws OlapException
+        {
+            final List<String> remainingMemberUniqueNames =
+                new ArrayList<String>();
+            for (String memberUniqueName : memberUniqueNames) {
+                final XmlaOlap4jMemberTree tree = getTree(memberUniqueName);
+                final XmlaOlap4jMember member =
+                    tree == null ? null : tree.lookupMember(memberUniqueName);
+                if (member != null) {
+                    memberMap.put(memberUniqueName, member);
+                } else {
+                    remainingMemberUniqueNames.add(memberUniqueName);
+                }
+            }
+            if (!remainingMemberUniqueNames.isEmpty()) {
+                super.lookupMembersByUniqueName(
+                    remainingMemberUniqueNames, memberMap);
+            }
+        }
+
+        public void lookupMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            String memberUniqueName,
+            List<XmlaOlap4jMember> list) throws OlapException
+        {
+            final XmlaOlap4jMemberTree tree = getTree(memberUniqueName);
+            if (tree != null) {
+                final XmlaOlap4jMember member =
+                    tree.lookupMember(memberUniqueName);
+                if (member != null) {
+                    tree.getRelatives(treeOps, member, list);
+                    return;
+                }
+            }
+            super.lookupMemberRelatives(treeOps, memberUniqueName, list);
+        }
+
+        public List<XmlaOlap4jMember> lookupMemberAncestors(
+            XmlaOlap4jMember member) throws OlapException
+        {
+            final XmlaOlap4jMemberTree tree = getTree(member.getHierarchy());
+            if (tree != null) {
+                final XmlaOlap4jMember treeMember =
+                    tree.lookupMember(member.getUniqueName());
+                if (treeMember != null) {
+                    return tree.getAncestors(treeMember);
+                }
+            }
+            return super.lookupMemberAncestors(member);
+        }
+
+        public void lookupMemberChildren(
+            List<XmlaOlap4jMember> members,
+            Map<String, List<XmlaOlap4jMember>> childrenMap)
+            throws OlapException
+        {
+            final List<XmlaOlap4jMember> remainingMembers =
+                new ArrayList<XmlaOlap4jMember>();
+            for (XmlaOlap4jMember member : members) {
+                final XmlaOlap4jMemberTree tree =
+                    getTree(member.getHierarchy());
+                final XmlaOlap4jMember treeMember =
+                    tree == null
+                        ? null
+                        : tree.lookupMember(member.getUniqueName());
+                if (treeMember != null) {
+                    childrenMap.put(
+                        member.getUniqueName(), tree.getChildren(treeMember));
+                } else {
+                    remainingMembers.add(member);
+                }
+            }
+            if (!remainingMembers.isEmpty()) {
+                super.lookupMemberChildren(remainingMembers, childrenMap);
+            }
+        }
+
+        public List<XmlaOlap4jMember> getLevelMembers(
+            XmlaOlap4jLevel level)
+            throws OlapException
+        {
+            final XmlaOlap4jMemberTree tree =
+                getTree(level.olap4jHierarchy);
+            if (tree != null) {
+                return tree.getLevelMembers(level);
+            }
+            return super.getLevelMembers(level);
+        }
+    }
+
     /**
      * Implementation of MetadataReader that reads from the XMLA provider,
      * without caching.
@@ -475,7 +1416,11 @@ class XmlaOlap4jCube implements Cube, Named
         }
 
         /**
-         * Looks up members; optimized for Mondrian servers.
+         * Looks up members; optimized for Mondrian servers, which accept a
+         * list of member unique names in one request.
+         *
+         * <p>The names are sent in batches of at most
+         * {@link XmlaOlap4jConnection#memberLookupBatchSize}.
          *
          * @param memberUniqueNames A list of the members to lookup
          * @param memberMap Output map of members keyed by unique name
@@ -485,32 +1430,25 @@ class XmlaOlap4jCube implements Cube, Named
             List<String> memberUniqueNames,
             Map<String, XmlaOlap4jMember> memberMap) throws OlapException
         {
-            final XmlaOlap4jConnection.Context context =
-                new XmlaOlap4jConnection.Context(
-                    XmlaOlap4jCube.this, null, null, null);
-            final List<XmlaOlap4jMember> memberList =
-                new ArrayList<XmlaOlap4jMember>();
-            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection
-                .populateList(
-                    memberList,
-                    context,
-                    XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_MEMBERS,
-                    new XmlaOlap4jConnection.MemberHandler(),
-                    new Object[] {
-                        "CATALOG_NAME", olap4jSchema.olap4jCatalog.getName(),
-                        "SCHEMA_NAME", olap4jSchema.getName(),
-                        "CUBE_NAME", getName(),
-                        "MEMBER_UNIQUE_NAME", memberUniqueNames
-                    });
-            for (XmlaOlap4jMember member : memberList) {
-                if (member != null) {
-                    memberMap.put(member.getUniqueName(), member);
-                }
+            final int batchSize =
+                olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection.memberLookupBatchSize;
+            final List<Object[]> restrictionsList = new ArrayList<Object[]>();
+            for (int i = 0; i < memberUniqueNames.size(); i += batchSize) {
+                restrictionsList.add(
+                    membersRestrictions(
+                        memberUniqueNames.subList(
+                            i,
+                            Math.min(
+                                i + batchSize, memberUniqueNames.size()))));
             }
+            populateMemberMap(restrictionsList, memberMap);
         }
 
         /**
-         * Looks up members.
+         * Looks up members, sending one request per member. The requests are
+         * sent at most {@link XmlaOlap4jConnection#memberLookupParallelism}
+         * at a time.
          *
          * @param memberUniqueNames A list of the members to lookup
          * @param memberMap Output map of members keyed by unique name
@@ -520,20 +1458,74 @@ class XmlaOlap4jCube implements Cube, Named
             List<String> memberUniqueNames,
             Map<String, XmlaOlap4jMember> memberMap) throws OlapException
         {
-            // Iterates through member names
-            for (String currentMemberName : memberUniqueNames) {
+            final List<Object[]> restrictionsList = new ArrayList<Object[]>();
+            final Set<String> seen = new HashSet<String>();
+            for (String memberUniqueName : memberUniqueNames) {
                 // Only lookup if it is not in the map yet
-                if (!memberMap.containsKey(currentMemberName)) {
-                    XmlaOlap4jMember member =
-                        this.lookupMemberByUniqueName(currentMemberName);
-                    // Null members might mean calculated members
-                    if (member != null) {
-                        memberMap.put(member.getUniqueName(), member);
-                    }
+                if (!memberMap.containsKey(memberUniqueName)
+                    && seen.add(memberUniqueName))
+                {
+                    restrictionsList.add(
+                        membersRestrictions(memberUniqueName));
+                }
+            }
+            populateMemberMap(restrictionsList, memberMap);
+        }
+
+        /**
+         * Sends MDSCHEMA_MEMBERS requests and adds the members returned
+         * to a map.
+         *
+         * @param restrictionsList Restrictions of each request
+         * @param memberMap Output map of members keyed by unique name
+         * @throws OlapException Gets thrown for communication errors
+         */
+        private void populateMemberMap(
+            List<Object[]> restrictionsList,
+            Map<String, XmlaOlap4jMember> memberMap) throws OlapException
+        {
+            final XmlaOlap4jConnection olap4jConnection =
+                olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection;
+            final XmlaOlap4jConnection.Context context =
+                new XmlaOlap4jConnection.Context(
+                    XmlaOlap4jCube.this, null, null, null);
+            final List<XmlaOlap4jMember> memberList =
+                new ArrayList<XmlaOlap4jMember>();
+            olap4jConnection.populateList(
+                memberList,
+                context,
+                XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_MEMBERS,
+                new XmlaOlap4jConnection.MemberHandler(),
+                restrictionsList,
+                olap4jConnection.memberLookupParallelism);
+            for (XmlaOlap4jMember member : memberList) {
+                // Null members might mean calculated members
+                if (member != null
+                    && !memberMap.containsKey(member.getUniqueName()))
+                {
+                    memberMap.put(member.getUniqueName(), member);
                 }
             }
         }
 
+        /**
+         * Returns the restrictions of an MDSCHEMA_MEMBERS request for
+         * members of this cube.
+         *
+         * @param memberUniqueName Unique name of a member, or a list of
+         *     unique names
+         * @return Restrictions
+         */
+        private Object[] membersRestrictions(Object memberUniqueName) {
+            return new Object[] {
+                "CATALOG_NAME", olap4jSchema.olap4jCatalog.getName(),
+                "SCHEMA_NAME", olap4jSchema.getName(),
+                "CUBE_NAME", getName(),
+                "MEMBER_UNIQUE_NAME", memberUniqueName
+            };
+        }
+
         public void lookupMemberRelatives(
             Set<Member.TreeOp> treeOps,
             String memberUniqueName,
@@ -565,6 +1557,106 @@ class XmlaOlap4jCube implements Cube, Named
                     });
         }
 
+        public List<XmlaOlap4jMember> lookupMemberAncestors(
+            XmlaOlap4jMember member) throws OlapException
+        {
+            final List<XmlaOlap4jMember> list =
+                new ArrayList<XmlaOlap4jMember>();
+            lookupMemberRelatives(
+                Olap4jUtil.enumSetOf(Member.TreeOp.ANCESTORS),
+                member.getUniqueName(),
+                list);
+            return list;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Mondrian servers are sent the unique names of the members in
+         * batches of at most
+         * {@link XmlaOlap4jConnection#memberLookupBatchSize}; other servers
+         * are sent one request per member. Requests are sent at most
+         * {@link XmlaOlap4jConnection#memberLookupParallelism} at a time.
+         */
+        public void lookupMemberChildren(
+            List<XmlaOlap4jMember> members,
+            Map<String, List<XmlaOlap4jMember>> childrenMap)
+            throws OlapException
+        {
+            final XmlaOlap4jConnection olap4jConnection =
+                olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection;
+            final List<String> memberUniqueNames = new ArrayList<String>();
+            final Map<String, XmlaOlap4jMember> memberMap =
+                new HashMap<String, XmlaOlap4jMember>();
+            for (XmlaOlap4jMember member : members) {
+                if (memberMap.put(member.getUniqueName(), member) == null) {
+                    memberUniqueNames.add(member.getUniqueName());
+                }
+            }
+            final String treeOp =
+                String.valueOf(Member.TreeOp.CHILDREN.xmlaOrdinal());
+            final List<Object[]> restrictionsList = new ArrayList<Object[]>();
+            switch (BackendFlavor.getFlavor(olap4jConnection, false)) {
+            case MONDRIAN:
+                final int batchSize = olap4jConnection.memberLookupBatchSize;
+                for (int i = 0; i < memberUniqueNames.size(); i += batchSize) {
+                    restrictionsList.add(
+                        childrenRestrictions(
+                            memberUniqueNames.subList(
+                                i,
+                                Math.min(
+                                    i + batchSize, memberUniqueNames.size())),
+                            treeOp));
+                }
+                break;
+            default:
+                for (String memberUniqueName : memberUniqueNames) {
+                    restrictionsList.add(
+                        childrenRestrictions(memberUniqueName, treeOp));
+                }
+            }
+            final List<XmlaOlap4jMember> list =
+                new ArrayList<XmlaOlap4jMember>();
+            olap4jConnection.populateList(
+                list,
+                new XmlaOlap4jConnection.Context(
+                    XmlaOlap4jCube.this, null, null, null),
+                XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_MEMBERS,
+                new XmlaOlap4jConnection.MemberHandler(),
+                restrictionsList,
+                olap4jConnection.memberLookupParallelism);
+            for (String memberUniqueName : memberUniqueNames) {
+                childrenMap.put(
+                    memberUniqueName, new ArrayList<XmlaOlap4jMember>());
+            }
+            for (XmlaOlap4jMember child : list) {
+                final XmlaOlap4jMember parent =
+                    child == null
+                        ? null
+                        : memberMap.get(child.getParentMemberUniqueName());
+                if (parent != null) {
+                    child.setParentMember(parent);
+                    childrenMap.get(parent.getUniqueName()).add(child);
+                }
+            }
+        }
+
+        private Object[] childrenRestrictions(
+            Object memberUniqueName,
+            String treeOp)
+        {
+            final Object[] restrictions =
+                membersRestrictions(memberUniqueName);
+            final Object[] childrenRestrictions =
+                new Object[restrictions.length + 2];
+            System.arraycopy(
+                restrictions, 0, childrenRestrictions, 0, restrictions.length);
+            childrenRestrictions[restrictions.length] = "TREE_OP";
+            childrenRestrictions[restrictions.length + 1] = treeOp;
+            return childrenRestrictions;
+        }
+
         public List<XmlaOlap4jMember> getLevelMembers(
             XmlaOlap4jLevel level)
             throws OlapException
@@ -25,6 +25,7 @@ import org.olap4j.metadata.*;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * XMLA implementation of a database metadata object.
@@ -33,8 +34,16 @@ import java.util.List;
  */
 class XmlaOlap4jDatabase implements Database, Named {
 
-    private final NamedList<XmlaOlap4jCatalog> catalogs;
+    final DeferredNamedListImpl<XmlaOlap4jCatalog> catalogs;
     private final XmlaOlap4jConnection olap4jConnection;
+
+    /**
+     * Locale of the captions and descriptions of this database's metadata.
+     * Metadata requests on behalf of its catalogs use this locale, even if
+     * the connection's locale has since changed.
+     */
+    final Locale locale;
+
     private final String name;
     private final String description;
     private final String providerName;
@@ -51,9 +60,11 @@ class XmlaOlap4jDatabase implements Database, Named {
         String url,
         String dataSourceInfo,
         List<ProviderType> providerType,
-        List<AuthenticationMode> authenticationMode)
+        List<AuthenticationMode> authenticationMode,
+        Locale locale)
     {
         this.olap4jConnection = olap4jConnection;
+        this.locale = locale;
         this.name = name;
         this.description = description;
         this.providerName = providerName;
@@ -42,6 +42,14 @@ import java.util.regex.Pattern;
  * @since May 23, 2007
  */
 abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
+    /**
+     * Whether responses can be parsed as a stream, by
+     * {@link XmlaOlap4jMetadataCursor}. JDK 1.5 has no StAX parser unless
+     * one is on the class path; without one, responses are parsed into a
+     * DOM tree.
+     */
+    private static final boolean STREAMING = isStreamingAvailable();
+
     final XmlaOlap4jConnection olap4jConnection;
 
     /**
@@ -135,7 +143,52 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
                 patternValueList.toArray(
                     new String[patternValueList.size()]));
 
+        List<String> headerList = new ArrayList<String>();
+        for (XmlaOlap4jConnection.MetadataColumn column
+            : metadataRequest.columns)
+        {
+            headerList.add(column.name);
+        }
+
+        // Unless the response is shared as a DOM tree, parse the rows as the
+        // result set reads them, so that a large response (say, the members
+        // of a large level) is not held as a tree and as a list of rows.
+        if (STREAMING && olap4jConnection.isStreamable(request)) {
+            final byte[] response = olap4jConnection.sendRequest(request, true);
+            return olap4jConnection.factory.newStreamingResultSet(
+                olap4jConnection,
+                headerList,
+                new XmlaOlap4jMetadataCursor(
+                    olap4jConnection, request, response,
+                    metadataRequest.columns, overrides, predicateList));
+        }
+
         final Element root = olap4jConnection.executeMetadataRequest(request);
+        return olap4jConnection.factory.newFixedResultSet(
+            olap4jConnection,
+            headerList,
+            rowList(root, metadataRequest.columns, overrides, predicateList));
+    }
+
+    /**
+     * Returns the values of the rows of the DOM tree of a response to a
+     * metadata request which satisfy the predicates, with the same values as
+     * {@link XmlaOlap4jMetadataCursor} reads from the response.
+     *
+     * @param root Root element of the response
+     * @param columns Columns of the result
+     * @param overrides Map of columns to values which override those
+     *     returned by the server
+     * @param predicates Map from the name of a column to a matcher which its
+     *     value must match
+     * @return List of rows, each a list of values
+     */
+    static List<List<Object>> rowList(
+        Element root,
+        List<XmlaOlap4jConnection.MetadataColumn> columns,
+        Map<XmlaOlap4jConnection.MetadataColumn, String> overrides,
+        Map<String, Matcher> predicates)
+    {
         List<List<Object>> rowList = new ArrayList<List<Object>>();
         rowLoop:
         for (Element row : XmlaOlap4jUtil.childElements(root)) {
@@ -148,18 +201,16 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
                 continue;
             }
             final ArrayList<Object> valueList = new ArrayList<Object>();
-            for (Map.Entry<String, Matcher> entry : predicateList.entrySet()) {
+            for (Map.Entry<String, Matcher> entry : predicates.entrySet()) {
                 final String column = entry.getKey();
                 final String value =
                     XmlaOlap4jUtil.stringElement(row, column);
                 final Matcher matcher = entry.getValue();
-                if (!matcher.reset(value).matches()) {
+                if (value == null || !matcher.reset(value).matches()) {
                     continue rowLoop;
                 }
             }
-            for (XmlaOlap4jConnection.MetadataColumn column
-                : metadataRequest.columns)
-            {
+            for (XmlaOlap4jConnection.MetadataColumn column : columns) {
                 if (overrides.containsKey(column)) {
                     valueList.add(overrides.get(column));
                 } else {
@@ -170,14 +221,23 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
             }
             rowList.add(valueList);
         }
-        List<String> headerList = new ArrayList<String>();
-        for (XmlaOlap4jConnection.MetadataColumn column
-            : metadataRequest.columns)
-        {
-            headerList.add(column.name);
+        return rowList;
+    }
+
+    private static boolean isStreamingAvailable() {
+        // javax.xml.stream appeared in JDK 1.6, and this code compiles
+        // against JDK 1.5, so look for a parser reflectively. Do not load
+        // XmlaOlap4jMetadataCursor, which refers to javax.xml.stream,
+        // until one has been found.
+        try {
+            Class.forName("javax.xml.stream.XMLInputFactory")
+                .getMethod("newInstance")
+                .invoke(null);
+            return true;
+        } catch (Exception e) {
+            // JDK 1.5, without a StAX parser.
+            return false;
         }
-        return olap4jConnection.factory.newFixedResultSet(
-            olap4jConnection, headerList, rowList);
     }
 
     /**
@@ -35,7 +35,7 @@ class XmlaOlap4jDimension
 {
     final XmlaOlap4jCube olap4jCube;
     final Type type;
-    final NamedList<XmlaOlap4jHierarchy> hierarchies;
+    final DeferredNamedListImpl<XmlaOlap4jHierarchy> hierarchies;
     private final String defaultHierarchyUniqueName;
     private final int ordinal;
 
@@ -88,7 +88,9 @@ import java.util.logging.Logger;
  *                             Must implement interface
  *              {@link org.olap4j.driver.xmla.proxy.XmlaOlap4jCachedProxy}.
  *                             A built-in memory cache is available with
- *              {@link org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache}.
+ *              {@link org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache},
+ *                             and a memory cache over a disk cache with
+ *              {@link org.olap4j.driver.xmla.cache.XmlaOlap4jCompositeCache}.
  *
  *                         <p>By default, no SOAP query cache will be
  *                             used.
@@ -121,6 +123,137 @@ import java.util.logging.Logger;
  *                             protocol, but are also sent as part of the SOAP
  *                             Security headers.
  *                             </td></tr>
+ * <tr><td>UpdatePollInterval</td><td>Number of seconds between checks for
+ *                             cubes which have changed on the server. The
+ *                             driver reads the LAST_SCHEMA_UPDATE and
+ *                             LAST_DATA_UPDATE columns of MDSCHEMA_CUBES in
+ *                             the background, and discards the cached metadata
+ *                             and SOAP responses of each cube which has
+ *                             changed. This makes it safe to use a long cache
+ *                             timeout. By default, the driver does not poll.
+ *                             </td></tr>
+ * <tr><td>WarmUpLog</td>  <td>File in which to record the requests sent to
+ *                             the server, with the number of times each was
+ *                             sent. When the first connection which uses the
+ *                             file in the JVM is created, the most frequent
+ *                             requests are replayed in the background to
+ *                             warm up the SOAP cache. Requires the Cache
+ *                             property.
+ *                             </td></tr>
+ * <tr><td>WarmUpCount</td><td>Number of requests to replay. Default 100.
+ *                             </td></tr>
+ * <tr><td>WarmUpConcurrency</td><td>Maximum number of requests to replay at
+ *                             the same time. Default 4.
+ *                             </td></tr>
+ * <tr><td>MemberCacheSize</td><td>Maximum number of members cached by each
+ *                             cube. The member list of a level counts as
+ *                             its number of members. Default 100,000; 0
+ *                             disables the cache.
+ *                             </td></tr>
+ * <tr><td>MemberCacheEviction</td><td>Which members to evict when the
+ *                             member cache of a cube is full:
+ *                             <code>LRU</code> (least recently used, the
+ *                             default) or <code>FIFO</code> (first cached).
+ *                             Statistics are returned by
+ *                             {@link XmlaOlap4jExtra#getMemberCacheStatistics}.
+ *                             </td></tr>
+ * <tr><td>MemberLookupBatchSize</td><td>Maximum number of members to look up
+ *                             in one MDSCHEMA_MEMBERS request, on servers
+ *                             which accept a list of member unique names
+ *                             (Mondrian). Other servers are sent one request
+ *                             per member. Default 500.
+ *                             </td></tr>
+ * <tr><td>MemberLookupParallelism</td><td>Maximum number of member lookup
+ *                             requests to send at the same time when
+ *                             resolving the members of a query. Default 4.
+ *                             </td></tr>
+ * <tr><td>PreloadHierarchies</td><td>Comma-separated list of the unique names
+ *                             of hierarchies, such as
+ *                             <code>[Time],[Store]</code>, whose members are
+ *                             all loaded in one request the first time one of
+ *                             them is needed. Member lookups, children,
+ *                             parents, ancestors and level member lists in
+ *                             these hierarchies then need no further
+ *                             requests.
+ *                             </td></tr>
+ * <tr><td>PreloadThreshold</td><td>Also preload every hierarchy whose levels
+ *                             have at most this many members in total, as
+ *                             reported by LEVEL_CARDINALITY. By default,
+ *                             only the hierarchies listed in
+ *                             PreloadHierarchies are preloaded.
+ *                             </td></tr>
+ * <tr><td>BulkDiscovery</td><td>If <code>true</code>, when the dimensions of
+ *                             a cube are first needed, the driver also
+ *                             fetches the hierarchies and levels of the whole
+ *                             cube, with one request each, rather than one
+ *                             request per dimension and per hierarchy.
+ *                             Default <code>false</code>.
+ *                             </td></tr>
+ * <tr><td>DiscoveryParallelism</td><td>If set, when the dimensions of a cube
+ *                             are first needed, the driver also fetches the
+ *                             cube's named sets, the hierarchies of every
+ *                             dimension, then the levels of every hierarchy,
+ *                             sending at most this many requests at the same
+ *                             time. Ignored if BulkDiscovery is
+ *                             <code>true</code>. By default, each list is
+ *                             fetched when it is first used.
+ *                             </td></tr>
+ * <tr><td>ShareMetadata</td><td>If <code>true</code>, the responses to
+ *                             the requests which discover cubes, dimensions,
+ *                             hierarchies, levels, measures, properties and
+ *                             sets are shared by all connections in the JVM
+ *                             which have the same server, user, password,
+ *                             catalog, role and locale, and also set this
+ *                             property. A pool of connections then sends each
+ *                             such request once. Members are not shared. Each
+ *                             connection still builds its own metadata
+ *                             objects. See
+ *                             {@link XmlaOlap4jExtra#invalidateSharedMetadata}.
+ *                             Default <code>false</code>.
+ *                             </td></tr>
+ * <tr><td>MemberPageSize</td><td>If set, <code>Level.getMembers()</code> on
+ *                             a level with more members than this returns a
+ *                             list which fetches its members this many at a
+ *                             time, by MDX queries, as they are accessed. The
+ *                             level must belong to the connection's current
+ *                             catalog. Each level keeps its list, and the
+ *                             pages it holds, until the cube's cache is
+ *                             cleared. By default, all members of a level are
+ *                             fetched at once.
+ *                             </td></tr>
+ * <tr><td>MemberPageCount</td><td>Maximum number of pages held by such a
+ *                             list. Default 10.
+ *                             </td></tr>
+ * <tr><td>MetadataSnapshot</td><td>File in which to keep the responses to the
+ *                             requests which discover databases, catalogs,
+ *                             schemas, cubes, dimensions, hierarchies, levels,
+ *                             measures, properties and named sets, so that a
+ *                             new JVM need not send them again. Responses
+ *                             are kept per server, user and password. The
+ *                             first connection to a server with given
+ *                             credentials checks, with one MDSCHEMA_CUBES
+ *                             request per catalog, that the schema of no cube
+ *                             has changed since, and otherwise discards the
+ *                             responses.
+ *                             </td></tr>
+ * <tr><td>LocaleCacheSize</td><td>Number of locales whose metadata a
+ *                             connection keeps. When
+ *                             <code>setLocale</code> switches to a locale
+ *                             whose metadata is kept, no metadata need be
+ *                             fetched again. Default 1; that is, switching
+ *                             locale discards the metadata of the previous
+ *                             locale.
+ *                             </td></tr>
+ * <tr><td>MemberSearchIndex</td><td>If <code>true</code>, each cube indexes
+ *                             the members it holds in its member cache and
+ *                             preloaded hierarchies by caption and name,
+ *                             ignoring case and accents, so that they can be
+ *                             found by
+ *                             {@link XmlaOlap4jExtra#searchMembers} without a
+ *                             request to the server. A member evicted from
+ *                             the cache leaves the index. Default
+ *                             <code>false</code>.
+ *                             </td></tr>
  * </table>
  *
  * @author jhyde, Luc Boudreau
@@ -135,16 +268,22 @@ public class XmlaOlap4jDriver implements Driver {
      */
     private static final ExecutorService executor;
 
+    /**
+     * Executor shared by all connections running periodic tasks.
+     */
+    private static final ScheduledExecutorService scheduler;
+
     static {
-        executor = Executors.newCachedThreadPool(
+        final ThreadFactory threadFactory =
             new ThreadFactory() {
                 public Thread newThread(Runnable r) {
                     Thread t = Executors.defaultThreadFactory().newThread(r);
                     t.setDaemon(true);
                     return t;
                }
-            }
-        );
+            };
+        executor = Executors.newCachedThreadPool(threadFactory);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
     }
 
     private static int nextCookie;
@@ -228,7 +367,10 @@ public class XmlaOlap4jDriver implements Driver {
         XmlaOlap4jProxy proxy = createProxy(map);
 
         // returns a connection object to the java API
-        return factory.newConnection(this, proxy, url, info);
+        final Connection connection =
+            factory.newConnection(this, proxy, url, info);
+        ((XmlaOlap4jConnection) connection).startBackgroundTasks();
+        return connection;
     }
 
     public boolean acceptsURL(String url) throws SQLException {
@@ -329,6 +471,46 @@ public class XmlaOlap4jDriver implements Driver {
         );
     }
 
+    /**
+     * Submits a task for background execution on the executor shared by all
+     * connections. Proxies use it to send requests in the background.
+     *
+     * @param task Task
+     * @return Future object representing the submitted task
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Returns the executor shared by all connections, for components outside
+     * this package which a connection asks to work in the background.
+     *
+     * @return Executor
+     */
+    static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Schedules a task to run once, after a delay, on the scheduler shared by
+     * all connections.
+     *
+     * <p>The scheduler has a single thread, so the task must be quick; a
+     * task which does blocking work should submit it to the executor (see
+     * {@link #submit}).
+     *
+     * @param task Task
+     * @param delayMillis Delay before the task runs, in milliseconds
+     * @return Future object with which to cancel the task
+     */
+    static ScheduledFuture<?> schedule(
+        Runnable task,
+        long delayMillis)
+    {
+        return scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * For testing. Map from a cookie value (which is uniquely generated for
      * each test) to a proxy object. Uses a weak hash map so that, if the code
@@ -361,7 +543,52 @@ public class XmlaOlap4jDriver implements Driver {
         CACHE("Class name of the SOAP cache implementation"),
         ROLE("Comma separated list of roles this connection impersonates"),
         USER("Username to use when creating connections to the server."),
-        PASSWORD("Password to use when creating connections to the server.");
+        PASSWORD("Password to use when creating connections to the server."),
+        UPDATEPOLLINTERVAL(
+            "Number of seconds between checks for cubes whose schema or data "
+            + "has changed on the server."),
+        WARMUPLOG(
+            "File in which to record requests, and from which to replay them "
+            + "to warm up the SOAP cache."),
+        WARMUPCOUNT("Number of most frequent requests to replay."),
+        WARMUPCONCURRENCY(
+            "Maximum number of requests to replay at the same time."),
+        MEMBERCACHESIZE("Maximum number of members cached by each cube."),
+        MEMBERCACHEEVICTION(
+            "Order in which members are evicted from the cache of a cube: "
+            + "LRU or FIFO."),
+        MEMBERLOOKUPBATCHSIZE(
+            "Maximum number of members to look up in one request."),
+        MEMBERLOOKUPPARALLELISM(
+            "Maximum number of member lookup requests to send at the same "
+            + "time."),
+        PRELOADHIERARCHIES(
+            "Comma-separated list of the unique names of hierarchies whose "
+            + "members to load all at once."),
+        PRELOADTHRESHOLD(
+            "Maximum number of members of a hierarchy whose members to load "
+            + "all at once."),
+        BULKDISCOVERY(
+            "Whether to fetch the hierarchies and levels of each cube with "
+            + "one request each."),
+        DISCOVERYPARALLELISM(
+            "Maximum number of metadata requests to send at the same time "
+            + "when loading the dimensions of a cube."),
+        SHAREMETADATA(
+            "Whether to share the responses to metadata requests with other "
+            + "connections to the same server."),
+        MEMBERPAGESIZE(
+            "Number of members of a large level to fetch at a time."),
+        MEMBERPAGECOUNT(
+            "Maximum number of pages of members of a large level to hold."),
+        METADATASNAPSHOT(
+            "File in which to keep the responses to metadata requests "
+            + "between runs."),
+        MEMBERSEARCHINDEX(
+            "Whether to index loaded members for searching by caption or "
+            + "name."),
+        LOCALECACHESIZE(
+            "Number of locales whose metadata a connection keeps.");
 
         /**
          * Creates a property.
@@ -0,0 +1,174 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.CellSet;
+import org.olap4j.OlapException;
+import org.olap4j.metadata.*;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Operations which a connection of the XMLA driver offers beyond the olap4j
+ * API.
+ *
+ * <p>Obtain it by unwrapping the connection:
+ *
+ * <blockquote><pre>
+ * XmlaOlap4jExtra extra = connection.unwrap(XmlaOlap4jExtra.class);
+ * </pre></blockquote>
+ *
+ * <p>Cubes, hierarchies, levels and cell sets passed to these methods must
+ * have been obtained from the same connection.
+ */
+public interface XmlaOlap4jExtra {
+    /**
+     * Returns the statistics of the member cache of a cube.
+     *
+     * @param cube Cube
+     * @return Map from statistic to value
+     * @throws IllegalArgumentException if the cube does not belong to this
+     *     connection
+     */
+    Map<XmlaOlap4jMemberCache.Statistic, Long> getMemberCacheStatistics(
+        Cube cube);
+
+    /**
+     * Returns the children of several members, fetching those which are not
+     * cached in as few requests as possible: on Mondrian, one request per
+     * cube for up to
+     * {@link XmlaOlap4jDriver.Property#MEMBERLOOKUPBATCHSIZE} members.
+     * Expanding a whole level of a tree therefore costs one request rather
+     * than one per member.
+     *
+     * <p>Children are cached by the member cache of each cube, so calling
+     * {@link Member#getChildMembers()} afterwards sends no request.
+     *
+     * @param members Members
+     * @return Map from each member to its children, in hierarchy order
+     * @throws OlapException on error
+     */
+    Map<Member, List<Member>> getChildMembers(List<? extends Member> members)
+        throws OlapException;
+
+    /**
+     * Returns the loaded members of a hierarchy whose caption or name, or
+     * any word of them onwards, starts with a given string, ignoring case
+     * and accents. Members whose caption or name starts with the string come
+     * first.
+     *
+     * <p>Only members which the cube holds, in its member cache after
+     * {@link Member#getChildMembers()} for example, or by preloading the
+     * hierarchy, are found; members which the cache has evicted are not.
+     * No request is sent to the server. Requires the
+     * {@link XmlaOlap4jDriver.Property#MEMBERSEARCHINDEX} property.
+     *
+     * @param hierarchy Hierarchy
+     * @param searchString String to search for
+     * @param limit Maximum number of members to return
+     * @return Matching members
+     * @throws IllegalArgumentException if the hierarchy does not belong to
+     *     this connection
+     */
+    List<Member> searchMembers(
+        Hierarchy hierarchy,
+        String searchString,
+        int limit);
+
+    /**
+     * Returns the loaded members of a level whose caption or name, or any
+     * word of them onwards, starts with a given string, ignoring case and
+     * accents.
+     *
+     * @param level Level
+     * @param searchString String to search for
+     * @param limit Maximum number of members to return
+     * @return Matching members
+     * @throws IllegalArgumentException if the level does not belong to this
+     *     connection
+     *
+     * @see #searchMembers(Hierarchy, String, int)
+     */
+    List<Member> searchMembers(
+        Level level,
+        String searchString,
+        int limit);
+
+    /**
+     * Returns the ordinals of the cells of a cell set which have values, in
+     * ascending order.
+     *
+     * <p>Lets a client which formats or exports a cell set visit only its
+     * non-empty cells, without creating the empty ones:
+     *
+     * <blockquote><pre>
+     * int[] coordinates = new int[cellSet.getAxes().size()];
+     * for (int ordinal : extra.getNonEmptyOrdinals(cellSet)) {
+     *     Cell cell = cellSet.getCell(ordinal);
+     *     Olap4jUtil.ordinalToCoordinates(cellSet, ordinal, coordinates);
+     *     ...
+     * }</pre></blockquote>
+     *
+     * <p>Neither {@link CellSet#getCell(int)} nor the loop allocates
+     * anything for a non-empty cell.
+     *
+     * @param cellSet Cell set
+     * @return Ordinals of the non-empty cells
+     * @throws IllegalArgumentException if the cell set does not belong to
+     *     this connection
+     */
+    int[] getNonEmptyOrdinals(CellSet cellSet);
+
+    /**
+     * Starts loading, in the background, the metadata of a cube which a
+     * client expects to need: the cube's dimensions, hierarchies, levels and
+     * named sets, the root members of some of its hierarchies, and the
+     * members of some of its levels.
+     *
+     * <p>The requests are sent on the driver's executor, and populate the
+     * same caches as when the metadata is first used, so a client may call
+     * this method when it opens a report and then use the olap4j API as
+     * usual; calls which need metadata that is still loading wait for it
+     * rather than sending their own request. Members of a paged level are
+     * loaded only as far as its first page, without counting them.
+     *
+     * @param cube Cube
+     * @param elements Hierarchies and levels of the cube whose members to
+     *     load
+     * @return Future which completes when the metadata has been loaded, and
+     *     throws {@link ExecutionException} if a request failed
+     * @throws IllegalArgumentException if the cube does not belong to this
+     *     connection, or if an element is not a hierarchy or level of the
+     *     cube
+     */
+    Future<Void> prefetch(
+        Cube cube,
+        Collection<? extends MetadataElement> elements);
+
+    /**
+     * Discards the metadata responses which connections to this
+     * connection's server share because they set the
+     * {@link XmlaOlap4jDriver.Property#SHAREMETADATA} property. Connections
+     * already holding metadata objects are not affected.
+     */
+    void invalidateSharedMetadata();
+}
+
+// End XmlaOlap4jExtra.java
@@ -35,7 +35,7 @@ class XmlaOlap4jHierarchy
     implements Hierarchy, DisplayFolder, Named
 {
     final XmlaOlap4jDimension olap4jDimension;
-    final NamedList<XmlaOlap4jLevel> levels;
+    final DeferredNamedListImpl<XmlaOlap4jLevel> levels;
     private final boolean all;
     private final String defaultMemberUniqueName;
     private final String hierarchyDisplayFolder;
@@ -21,8 +21,7 @@ import org.olap4j.OlapException;
 import org.olap4j.impl.*;
 import org.olap4j.metadata.*;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 /**
  * Implementation of {@link org.olap4j.metadata.Level}
@@ -43,6 +42,12 @@ class XmlaOlap4jLevel
     final NamedList<XmlaOlap4jMember> memberList;
     private final boolean calculated;
 
+    /**
+     * Map from the upper-case name of each level-specific property to the
+     * property, or null if not yet built.
+     */
+    private volatile Map<String, XmlaOlap4jProperty> propertyMap;
+
     /**
      * Creates an XmlaOlap4jLevel.
      *
@@ -149,7 +154,19 @@ class XmlaOlap4jLevel
                         olap4jHierarchy,
                         this),
                     new XmlaOlap4jConnection.MemberHandler(),
-                    levelRestrictions);
+                    levelRestrictions)
+                {
+                    protected void populateList(
+                        NamedList<XmlaOlap4jMember> list)
+                        throws OlapException
+                    {
+                        super.populateList(list);
+                        // The level holds its members for as long as the
+                        // cube, so they stay searchable.
+                        XmlaOlap4jLevel.this.olap4jHierarchy.olap4jDimension
+                            .olap4jCube.indexMembers(list);
+                    }
+                };
             }
         } catch (OlapException e) {
             throw new RuntimeException("Programming error", e);
@@ -190,10 +207,66 @@ class XmlaOlap4jLevel
         return list;
     }
 
+    /**
+     * Returns the level-specific properties of this level, indexed by name
+     * in upper case, for matching the columns of member rows.
+     *
+     * @return Map from upper-case name to property
+     */
+    Map<String, XmlaOlap4jProperty> getPropertyMap() {
+        Map<String, XmlaOlap4jProperty> map = propertyMap;
+        if (map == null) {
+            map = new HashMap<String, XmlaOlap4jProperty>();
+            for (XmlaOlap4jProperty property : propertyList) {
+                map.put(
+                    property.getName().toUpperCase(Locale.ENGLISH),
+                    property);
+            }
+            propertyMap = map;
+        }
+        return map;
+    }
+
     public List<Member> getMembers() throws OlapException {
+        final XmlaOlap4jMemberTree tree =
+            olap4jHierarchy.olap4jDimension.olap4jCube.getMemberTree(
+                olap4jHierarchy);
+        if (tree != null) {
+            return Olap4jUtil.cast(tree.getLevelMembers(this));
+        }
+        if (isPaged()) {
+            return olap4jHierarchy.olap4jDimension.olap4jCube
+                .getPagedMembers(this);
+        }
         return Olap4jUtil.cast(this.memberList);
     }
 
+    /**
+     * Returns whether the members of this level, unless its hierarchy is
+     * preloaded, are fetched a page at a time.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @return Whether this level is paged
+     * @throws OlapException on error
+     *
+     * @see XmlaOlap4jDriver.Property#MEMBERPAGESIZE
+     */
+    boolean isPaged() throws OlapException {
+        final XmlaOlap4jCube cube = olap4jHierarchy.olap4jDimension.olap4jCube;
+        final XmlaOlap4jConnection connection =
+            cube.olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                .olap4jConnection;
+        // MDX queries run in the connection's current catalog, so only
+        // levels of that catalog can be paged.
+        return connection.memberPageSize > 0
+            && cardinality > connection.memberPageSize
+            && olap4jHierarchy.olap4jDimension.getDimensionType()
+                != Dimension.Type.MEASURE
+            && cube.olap4jSchema.olap4jCatalog.getName().equals(
+                connection.getCatalog());
+    }
+
     public int getCardinality() {
         return cardinality;
     }
@@ -47,7 +47,7 @@ class XmlaOlap4jMember
     // tricky to populate.
     private final String parentMemberUniqueName;
     private final Type type;
-    private XmlaOlap4jMember parentMember;
+    private volatile XmlaOlap4jMember parentMember;
     private final int childMemberCount;
     private final int ordinal;
     private final Map<Property, Object> propertyValueMap;
@@ -64,7 +64,8 @@ class XmlaOlap4jMember
      * @param type Type
      * @param childMemberCount Number of children
      * @param ordinal Ordinal in its hierarchy
-     * @param propertyValueMap Property values
+     * @param propertyValueMap Property values; held, not copied, so must
+     *     be unmodifiable
      */
     XmlaOlap4jMember(
         XmlaOlap4jLevel olap4jLevel,
@@ -86,7 +87,7 @@ class XmlaOlap4jMember
         this.parentMemberUniqueName = parentMemberUniqueName;
         this.type = type;
         this.childMemberCount = childMemberCount;
-        this.propertyValueMap = UnmodifiableArrayMap.of(propertyValueMap);
+        this.propertyValueMap = propertyValueMap;
     }
 
     public int hashCode() {
@@ -99,14 +100,19 @@ class XmlaOlap4jMember
     }
 
     public NamedList<? extends Member> getChildMembers() throws OlapException {
-        final NamedList<XmlaOlap4jMember> list =
-            new NamedListImpl<XmlaOlap4jMember>();
+        final Map<String, List<XmlaOlap4jMember>> childrenMap =
+            new HashMap<String, List<XmlaOlap4jMember>>();
         getCube()
             .getMetadataReader()
-            .lookupMemberRelatives(
-                Olap4jUtil.enumSetOf(TreeOp.CHILDREN),
-                uniqueName,
-                list);
+            .lookupMemberChildren(
+                Collections.singletonList(this),
+                childrenMap);
+        final NamedList<XmlaOlap4jMember> list =
+            new NamedListImpl<XmlaOlap4jMember>();
+        final List<XmlaOlap4jMember> children = childrenMap.get(uniqueName);
+        if (children != null) {
+            list.addAll(children);
+        }
         return list;
     }
 
@@ -120,16 +126,71 @@ class XmlaOlap4jMember
         }
         if (parentMember == null) {
             try {
-                parentMember =
-                    getCube().getMetadataReader()
-                        .lookupMemberByUniqueName(parentMemberUniqueName);
+                // Fetch all ancestors at once, so that walking up the
+                // hierarchy does not cost a request per level. If the
+                // parent is cached, this costs no request.
+                final MetadataReader metadataReader =
+                    getCube().getMetadataReader();
+                linkAncestors(metadataReader.lookupMemberAncestors(this));
+                if (parentMember == null) {
+                    parentMember =
+                        metadataReader.lookupMemberByUniqueName(
+                            parentMemberUniqueName);
+                }
             } catch (OlapException e) {
-                throw new RuntimeException("yuck!"); // FIXME
+                throw new RuntimeException(
+                    "Failed to retrieve parent of " + uniqueName, e);
             }
         }
         return parentMember;
     }
 
+    /**
+     * Returns the unique name of this member's parent, without looking up
+     * the parent.
+     *
+     * @return Unique name of parent, or null if no parent
+     */
+    String getParentMemberUniqueName() {
+        return parentMemberUniqueName;
+    }
+
+    /**
+     * Sets the parent of this member. Called when the parent is already
+     * known, so that {@link #getParentMember()} need not look it up.
+     *
+     * @param parentMember Parent member
+     */
+    void setParentMember(XmlaOlap4jMember parentMember) {
+        assert parentMember.uniqueName.equals(parentMemberUniqueName);
+        this.parentMember = parentMember;
+    }
+
+    /**
+     * Sets the parent of this member, and the parents of its ancestors,
+     * from a list of ancestors. Stops at the first ancestor which is
+     * missing from the list, or whose parent is already known.
+     *
+     * @param ancestors Ancestors of this member, in any order
+     */
+    private void linkAncestors(List<XmlaOlap4jMember> ancestors) {
+        final Map<String, XmlaOlap4jMember> ancestorMap =
+            new HashMap<String, XmlaOlap4jMember>();
+        for (XmlaOlap4jMember ancestor : ancestors) {
+            ancestorMap.put(ancestor.uniqueName, ancestor);
+        }
+        XmlaOlap4jMember member = this;
+        while (member != null
+            && member.parentMemberUniqueName != null
+            && member.parentMember == null)
+        {
+            final XmlaOlap4jMember parent =
+                ancestorMap.get(member.parentMemberUniqueName);
+            member.parentMember = parent;
+            member = parent;
+        }
+    }
+
     public XmlaOlap4jLevel getLevel() {
         return olap4jLevel;
     }
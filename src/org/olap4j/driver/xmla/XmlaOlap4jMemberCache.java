@@ -0,0 +1,415 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the members of a cube, of the member lists of its
+ * levels, and of the children of its members.
+ *
+ * <p>The bound is a number of members: a member counts as one, and a list
+ * of members counts as its length. A list which exceeds the bound on its own
+ * is not cached.
+ *
+ * <p>The cache is safe for use by several threads at once. Lookups do not
+ * lock; each entry carries a stamp from a shared clock, set when the entry is
+ * added and, if the {@link Eviction} policy is LRU, when it is used. When the
+ * cache is full, the thread which added the last entry evicts the entries
+ * with the oldest stamps until the cache is at seven eighths of its bound, so
+ * that the cost of sorting the entries is shared by many additions. Under
+ * concurrent use, the eviction order is therefore approximate.
+ *
+ * <p>A {@link Listener} is told of the members of each entry as it is added
+ * and removed, so that structures which refer to cached members, such as
+ * the search index of the cube, can release them in step with the cache.
+ *
+ * @see XmlaOlap4jDriver.Property#MEMBERCACHESIZE
+ * @see XmlaOlap4jDriver.Property#MEMBERCACHEEVICTION
+ * @see XmlaOlap4jExtra#getMemberCacheStatistics(org.olap4j.metadata.Cube)
+ */
+public class XmlaOlap4jMemberCache {
+    /**
+     * Default maximum number of members held by the cache of each cube.
+     */
+    static final int DEFAULT_SIZE = 100000;
+
+    /**
+     * Order in which entries are evicted when the cache is full.
+     */
+    public static enum Eviction {
+        /** Evicts the entry which was least recently used. */
+        LRU,
+        /** Evicts the entry which was added first. */
+        FIFO
+    }
+
+    /**
+     * Statistics maintained by the cache of each cube.
+     */
+    public static enum Statistic {
+        /** Number of lookups answered from the cache. */
+        HITS,
+        /** Number of lookups not found in the cache. */
+        MISSES,
+        /** Number of entries removed to make room. */
+        EVICTIONS
+    }
+
+    private final int maxWeight;
+
+    private final boolean lru;
+
+    private final Listener listener;
+
+    /**
+     * Map from a member unique name to a member, from a level to its list of
+     * members, or from a {@link ChildrenKey} to a list of children, each with
+     * its weight and stamp.
+     */
+    private final ConcurrentMap<Object, Entry> map =
+        new ConcurrentHashMap<Object, Entry>();
+
+    /**
+     * Total weight of the entries in {@link #map}.
+     */
+    private final AtomicInteger weight = new AtomicInteger();
+
+    /**
+     * Source of the stamps of entries.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Held while evicting, so that only one thread sorts the entries.
+     */
+    private final Object evictionLock = new Object();
+
+    private final Map<Statistic, AtomicLong> statistics =
+        new EnumMap<Statistic, AtomicLong>(Statistic.class);
+
+    /**
+     * Creates an XmlaOlap4jMemberCache.
+     *
+     * @param maxWeight Maximum number of members to hold
+     * @param eviction Eviction policy
+     */
+    XmlaOlap4jMemberCache(int maxWeight, Eviction eviction) {
+        this(maxWeight, eviction, null);
+    }
+
+    /**
+     * Creates an XmlaOlap4jMemberCache with a listener.
+     *
+     * @param maxWeight Maximum number of members to hold
+     * @param eviction Eviction policy
+     * @param listener Listener to entries being added and removed, or null
+     */
+    XmlaOlap4jMemberCache(
+        int maxWeight,
+        Eviction eviction,
+        Listener listener)
+    {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException(
+                "Member cache size must not be negative, but was "
+                + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.lru = eviction == Eviction.LRU;
+        this.listener = listener;
+        for (Statistic statistic : Statistic.values()) {
+            statistics.put(statistic, new AtomicLong());
+        }
+    }
+
+    /**
+     * Returns a cached member.
+     *
+     * @param memberUniqueName Unique name of member
+     * @return Member, or null if not cached
+     */
+    XmlaOlap4jMember getMember(String memberUniqueName) {
+        return (XmlaOlap4jMember) lookup(memberUniqueName);
+    }
+
+    /**
+     * Adds a member to the cache.
+     *
+     * @param memberUniqueName Unique name of member
+     * @param member Member
+     */
+    void putMember(String memberUniqueName, XmlaOlap4jMember member) {
+        put(memberUniqueName, member, 1);
+    }
+
+    /**
+     * Returns the cached member list of a level.
+     *
+     * @param level Level
+     * @return List of members, or null if not cached
+     */
+    @SuppressWarnings({"unchecked"})
+    List<XmlaOlap4jMember> getLevelMembers(XmlaOlap4jLevel level) {
+        return (List<XmlaOlap4jMember>) lookup(level);
+    }
+
+    /**
+     * Adds the member list of a level to the cache.
+     *
+     * @param level Level
+     * @param members List of members
+     */
+    void putLevelMembers(XmlaOlap4jLevel level, List<XmlaOlap4jMember> members)
+    {
+        put(level, members, Math.max(1, members.size()));
+    }
+
+    /**
+     * Returns the cached children of a member.
+     *
+     * @param memberUniqueName Unique name of member
+     * @return List of children, or null if not cached
+     */
+    @SuppressWarnings({"unchecked"})
+    List<XmlaOlap4jMember> getChildren(String memberUniqueName) {
+        return (List<XmlaOlap4jMember>) lookup(
+            new ChildrenKey(memberUniqueName));
+    }
+
+    /**
+     * Adds the children of a member to the cache.
+     *
+     * @param memberUniqueName Unique name of member
+     * @param children List of children
+     */
+    void putChildren(
+        String memberUniqueName,
+        List<XmlaOlap4jMember> children)
+    {
+        put(
+            new ChildrenKey(memberUniqueName),
+            children,
+            Math.max(1, children.size()));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        for (Map.Entry<Object, Entry> entry : map.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the total weight of the entries in this cache.
+     *
+     * @return Number of members held
+     */
+    int getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return Map from statistic to value
+     */
+    Map<Statistic, Long> getStatistics() {
+        final Map<Statistic, Long> map =
+            new EnumMap<Statistic, Long>(Statistic.class);
+        for (Map.Entry<Statistic, AtomicLong> entry : statistics.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    private Object lookup(Object key) {
+        final Entry entry = map.get(key);
+        if (entry == null) {
+            statistics.get(Statistic.MISSES).incrementAndGet();
+            return null;
+        }
+        statistics.get(Statistic.HITS).incrementAndGet();
+        if (lru) {
+            entry.stamp = clock.incrementAndGet();
+        }
+        return entry.value;
+    }
+
+    private void put(Object key, Object value, int valueWeight) {
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        final Entry entry =
+            new Entry(value, valueWeight, clock.incrementAndGet());
+        if (listener != null) {
+            // Before the entry is visible, so that the listener hears of
+            // each entry being added before it hears of it being removed.
+            listener.added(members(value));
+        }
+        final Entry previous = map.put(key, entry);
+        weight.addAndGet(
+            previous == null ? valueWeight : valueWeight - previous.weight);
+        if (previous != null && listener != null) {
+            listener.removed(members(previous.value));
+        }
+        if (weight.get() > maxWeight) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * Removes an entry, if it is still mapped to its key.
+     *
+     * @return Whether the entry was removed
+     */
+    private boolean remove(Object key, Entry entry) {
+        if (map.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+            if (listener != null) {
+                listener.removed(members(entry.value));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evicts the entries with the oldest stamps until the weight of the cache
+     * is at most seven eighths of its bound.
+     *
+     * @param keep Entry just added, which is never evicted
+     */
+    private void evict(Entry keep) {
+        synchronized (evictionLock) {
+            if (weight.get() <= maxWeight) {
+                // Another thread made room while this one waited.
+                return;
+            }
+            final List<Map.Entry<Object, Entry>> entries =
+                new ArrayList<Map.Entry<Object, Entry>>(map.entrySet());
+            final long[] stamps = new long[entries.size()];
+            final Integer[] order = new Integer[entries.size()];
+            for (int i = 0; i < order.length; i++) {
+                // Copy the stamps, which lookups may change during the sort.
+                stamps[i] = entries.get(i).getValue().stamp;
+                order[i] = i;
+            }
+            Arrays.sort(
+                order,
+                new Comparator<Integer>() {
+                    public int compare(Integer o1, Integer o2) {
+                        final long t1 = stamps[o1];
+                        final long t2 = stamps[o2];
+                        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+                    }
+                });
+            final int target = maxWeight - maxWeight / 8;
+            for (Integer i : order) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                final Map.Entry<Object, Entry> entry = entries.get(i);
+                if (entry.getValue() != keep
+                    && remove(entry.getKey(), entry.getValue()))
+                {
+                    statistics.get(Statistic.EVICTIONS).incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the members held by the value of an entry.
+     */
+    @SuppressWarnings({"unchecked"})
+    private static List<XmlaOlap4jMember> members(Object value) {
+        return value instanceof XmlaOlap4jMember
+            ? Collections.singletonList((XmlaOlap4jMember) value)
+            : (List<XmlaOlap4jMember>) value;
+    }
+
+    /**
+     * Receives the members of each entry as it is added to and removed from
+     * the cache. A member may belong to several entries: for example, to
+     * the member list of its level and to the children of its parent.
+     *
+     * <p>Called by the thread which adds or removes the entry, which may
+     * hold the lock of the cache's eviction.
+     */
+    interface Listener {
+        /**
+         * Called before an entry is added.
+         *
+         * @param members Members of the entry
+         */
+        void added(List<XmlaOlap4jMember> members);
+
+        /**
+         * Called after an entry has been evicted, replaced or cleared.
+         *
+         * @param members Members of the entry
+         */
+        void removed(List<XmlaOlap4jMember> members);
+    }
+
+    /**
+     * Key of the entry which holds the children of a member, distinct from
+     * the key of the member itself.
+     */
+    private static class ChildrenKey {
+        final String memberUniqueName;
+
+        ChildrenKey(String memberUniqueName) {
+            this.memberUniqueName = memberUniqueName;
+        }
+
+        public int hashCode() {
+            return memberUniqueName.hashCode() * 31 + 1;
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof ChildrenKey
+                && ((ChildrenKey) obj).memberUniqueName.equals(
+                    memberUniqueName);
+        }
+    }
+
+    /**
+     * Value of a cache entry, with its weight and stamp.
+     */
+    private static class Entry {
+        final Object value;
+        final int weight;
+        volatile long stamp;
+
+        Entry(Object value, int weight, long stamp) {
+            this.value = value;
+            this.weight = weight;
+            this.stamp = stamp;
+        }
+    }
+}
+
+// End XmlaOlap4jMemberCache.java
@@ -0,0 +1,285 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the members of a hierarchy which have been loaded, for searching
+ * by caption or name.
+ *
+ * <p>Captions and names are compared ignoring case and accents, and
+ * treating each run of characters other than letters and digits as one
+ * space. A member matches a search string if its caption or name, or any
+ * word of them onwards, starts with the search string. For example,
+ * "Los Angeles" is matched by "los", "LOS AN" and "angeles", but not by
+ * "geles".
+ *
+ * <p>The index holds the members which the cube holds: those in its member
+ * cache, in its preloaded member trees and in the member lists of its
+ * levels. Each member is counted once for each of these which holds it, and
+ * leaves the index when the last of them lets it go, so the index does not
+ * keep alive members which the cache has evicted. The index may be read and
+ * updated by several threads at once.
+ *
+ * @see XmlaOlap4jDriver.Property#MEMBERSEARCHINDEX
+ * @see XmlaOlap4jExtra#searchMembers(org.olap4j.metadata.Hierarchy, String,
+ *     int)
+ */
+class XmlaOlap4jMemberIndex {
+    /**
+     * Separates the text of a key from the unique name of its member. Sorts
+     * before every other character, so that the keys of a text are
+     * contiguous.
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern NON_WORD =
+        Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The method {@code java.text.Normalizer.normalize(CharSequence, Form)},
+     * or null if this JDK does not have it.
+     */
+    private static final Method NORMALIZE_METHOD;
+
+    /**
+     * The value {@code java.text.Normalizer.Form.NFD}, or null.
+     */
+    private static final Object NFD;
+
+    static {
+        // java.text.Normalizer appeared in JDK 1.6, and this code compiles
+        // against JDK 1.5, so call it reflectively.
+        Method method = null;
+        Object form = null;
+        try {
+            final Class<?> formClass =
+                Class.forName("java.text.Normalizer$Form");
+            form = formClass.getField("NFD").get(null);
+            method =
+                Class.forName("java.text.Normalizer").getMethod(
+                    "normalize", CharSequence.class, formClass);
+        } catch (Exception e) {
+            // JDK 1.5. Accents are not ignored.
+            method = null;
+        }
+        NORMALIZE_METHOD = method;
+        NFD = form;
+    }
+
+    /**
+     * Map from the text of a caption or name, followed by the unique name of
+     * the member, to the member.
+     */
+    private final SortedMap<String, XmlaOlap4jMember> textMap =
+        new TreeMap<String, XmlaOlap4jMember>();
+
+    /**
+     * Map from the text of a caption or name from its second or later word
+     * onwards, followed by the unique name of the member, to the member.
+     */
+    private final SortedMap<String, XmlaOlap4jMember> wordMap =
+        new TreeMap<String, XmlaOlap4jMember>();
+
+    /**
+     * Map from the unique name of each indexed member to the member and its
+     * number of references. Guarded by this index, as are
+     * {@link #textMap} and {@link #wordMap}.
+     */
+    private final Map<String, Reference> referenceMap =
+        new HashMap<String, Reference>();
+
+    /**
+     * Adds a reference to a member, adding the member to the index if it has
+     * none. While the member is referenced, a second instance with the same
+     * unique name adds a reference but does not replace it.
+     *
+     * @param member Member
+     */
+    synchronized void add(XmlaOlap4jMember member) {
+        final Reference reference = referenceMap.get(member.getUniqueName());
+        if (reference != null) {
+            ++reference.count;
+            return;
+        }
+        referenceMap.put(member.getUniqueName(), new Reference(member));
+        put(member, normalize(member.getCaption()));
+        put(member, normalize(member.getName()));
+    }
+
+    /**
+     * Removes a reference to a member, removing the member from the index
+     * when it has none left. Does nothing if the member is not indexed.
+     *
+     * @param member Member
+     */
+    synchronized void remove(XmlaOlap4jMember member) {
+        final Reference reference = referenceMap.get(member.getUniqueName());
+        if (reference == null || --reference.count > 0) {
+            return;
+        }
+        referenceMap.remove(member.getUniqueName());
+        remove(reference.member, normalize(reference.member.getCaption()));
+        remove(reference.member, normalize(reference.member.getName()));
+    }
+
+    /**
+     * Returns the number of members in the index.
+     *
+     * @return Number of members
+     */
+    synchronized int size() {
+        return referenceMap.size();
+    }
+
+    private void put(XmlaOlap4jMember member, String text) {
+        if (text.length() == 0) {
+            return;
+        }
+        final String suffix = SEPARATOR + member.getUniqueName();
+        textMap.put(text + suffix, member);
+        for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+            wordMap.put(text.substring(i + 1) + suffix, member);
+        }
+    }
+
+    private void remove(XmlaOlap4jMember member, String text) {
+        if (text.length() == 0) {
+            return;
+        }
+        final String suffix = SEPARATOR + member.getUniqueName();
+        textMap.remove(text + suffix);
+        for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+            wordMap.remove(text.substring(i + 1) + suffix);
+        }
+    }
+
+    /**
+     * Returns the members which match a search string, those whose caption
+     * or name starts with it first.
+     *
+     * @param searchString Search string
+     * @param level Level to which members must belong, or null
+     * @param limit Maximum number of members to return
+     * @return Matching members
+     */
+    synchronized List<XmlaOlap4jMember> search(
+        String searchString,
+        XmlaOlap4jLevel level,
+        int limit)
+    {
+        final String text = normalize(searchString);
+        final Map<String, XmlaOlap4jMember> matches =
+            new LinkedHashMap<String, XmlaOlap4jMember>();
+        if (text.length() > 0) {
+            search(textMap, text, level, limit, matches);
+            search(wordMap, text, level, limit, matches);
+        }
+        return new ArrayList<XmlaOlap4jMember>(matches.values());
+    }
+
+    private static void search(
+        SortedMap<String, XmlaOlap4jMember> map,
+        String text,
+        XmlaOlap4jLevel level,
+        int limit,
+        Map<String, XmlaOlap4jMember> matches)
+    {
+        for (Map.Entry<String, XmlaOlap4jMember> entry
+            : map.tailMap(text).entrySet())
+        {
+            if (matches.size() >= limit || !entry.getKey().startsWith(text)) {
+                return;
+            }
+            final XmlaOlap4jMember member = entry.getValue();
+            if (level == null || level.equals(member.getLevel())) {
+                if (!matches.containsKey(member.getUniqueName())) {
+                    matches.put(member.getUniqueName(), member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all members from the index.
+     */
+    synchronized void clear() {
+        referenceMap.clear();
+        textMap.clear();
+        wordMap.clear();
+    }
+
+    /**
+     * Converts a caption, name or search string to the form held in the
+     * index: without accents (on JDK 1.6 and later), in lower case, and
+     * with each run of characters other than letters and digits replaced by
+     * a space.
+     *
+     * @param s String, or null
+     * @return Normalized string, empty if s is null
+     */
+    static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        final String withoutAccents =
+            MARKS.matcher(decompose(s)).replaceAll("");
+        return NON_WORD.matcher(withoutAccents.toLowerCase(Locale.ENGLISH))
+            .replaceAll(" ")
+            .trim();
+    }
+
+    /**
+     * Decomposes each accented character of a string into its base
+     * character followed by its accents, or returns the string unchanged if
+     * this JDK cannot.
+     *
+     * @param s String
+     * @return Decomposed string
+     */
+    private static String decompose(String s) {
+        if (NORMALIZE_METHOD == null) {
+            return s;
+        }
+        try {
+            return (String) NORMALIZE_METHOD.invoke(null, s, NFD);
+        } catch (Exception e) {
+            return s;
+        }
+    }
+
+    /**
+     * An indexed member and the number of cache entries, trees and level
+     * lists which hold it.
+     */
+    private static class Reference {
+        final XmlaOlap4jMember member;
+        int count = 1;
+
+        Reference(XmlaOlap4jMember member) {
+            this.member = member;
+        }
+    }
+}
+
+// End XmlaOlap4jMemberIndex.java
@@ -0,0 +1,112 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.impl.SharedKeys;
+import org.olap4j.metadata.Property;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pool of the strings and property keys of the members of a cube, which
+ * lets members share them rather than each holding its own copies.
+ *
+ * <p>Strings are pooled in a fixed number of slots, indexed by hash code.
+ * A string which finds an equal string in its slot is replaced by it;
+ * otherwise it takes the slot. The pool therefore never holds more than a
+ * fixed number of strings, and needs no locking, but only finds duplicates
+ * which are loaded close together. That is the usual case: the members of
+ * a response are in hierarchy order, so siblings, which have the same
+ * parent unique name, are adjacent, and follow their parent.
+ *
+ * <p>Property values are held in maps whose keys are shared by all members
+ * which have the same set of properties, typically all members of a level,
+ * so that each map holds only an array of values.
+ *
+ * <p>The pool may be used by several threads at once.
+ */
+class XmlaOlap4jMemberPool {
+    /**
+     * Number of string slots. Must be a power of 2.
+     */
+    private static final int SLOT_COUNT = 4096;
+
+    private final String[] slots = new String[SLOT_COUNT];
+
+    /**
+     * Map from a list of property keys to the keys shared by property maps.
+     */
+    private final ConcurrentMap<List<Property>, SharedKeys<Property>>
+        sharedKeysMap =
+            new ConcurrentHashMap<List<Property>, SharedKeys<Property>>();
+
+    /**
+     * Returns a string equal to a given string, from the pool if possible.
+     *
+     * @param s String, or null
+     * @return Equal string, or null if s is null
+     */
+    String share(String s) {
+        if (s == null) {
+            return null;
+        }
+        final int h = s.hashCode();
+        final int slot = (h ^ (h >>> 16)) & (SLOT_COUNT - 1);
+        final String pooled = slots[slot];
+        if (s.equals(pooled)) {
+            return pooled;
+        }
+        slots[slot] = s;
+        return s;
+    }
+
+    /**
+     * Returns an unmodifiable copy of a map of property values, whose keys
+     * are shared with other maps with the same keys.
+     *
+     * @param map Property values
+     * @return Unmodifiable map with the same contents
+     */
+    Map<Property, Object> propertyMap(Map<Property, Object> map) {
+        switch (map.size()) {
+        case 0:
+            return Collections.emptyMap();
+        case 1:
+            final Map.Entry<Property, Object> entry =
+                map.entrySet().iterator().next();
+            return Collections.singletonMap(entry.getKey(), entry.getValue());
+        default:
+            final List<Property> keyList =
+                new ArrayList<Property>(map.keySet());
+            SharedKeys<Property> keys = sharedKeysMap.get(keyList);
+            if (keys == null) {
+                keys = SharedKeys.of(keyList);
+                final SharedKeys<Property> existing =
+                    sharedKeysMap.putIfAbsent(keyList, keys);
+                if (existing != null) {
+                    keys = existing;
+                }
+            }
+            return keys.map(map);
+        }
+    }
+}
+
+// End XmlaOlap4jMemberPool.java
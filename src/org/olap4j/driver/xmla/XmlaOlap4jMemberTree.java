@@ -0,0 +1,244 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.metadata.Member;
+
+import java.util.*;
+
+/**
+ * All of the members of a hierarchy, loaded in one request, and indexed so
+ * that navigation needs no further requests.
+ *
+ * <p>The tree is immutable once built, so may be read by several threads at
+ * once. Each member's parent is linked when the tree is built.
+ *
+ * @see XmlaOlap4jDriver.Property#PRELOADHIERARCHIES
+ * @see XmlaOlap4jDriver.Property#PRELOADTHRESHOLD
+ */
+class XmlaOlap4jMemberTree {
+    private final Map<String, XmlaOlap4jMember> memberMap =
+        new HashMap<String, XmlaOlap4jMember>();
+    private final Map<String, List<XmlaOlap4jMember>> childrenMap =
+        new HashMap<String, List<XmlaOlap4jMember>>();
+    private final Map<XmlaOlap4jLevel, List<XmlaOlap4jMember>> levelMap =
+        new HashMap<XmlaOlap4jLevel, List<XmlaOlap4jMember>>();
+    private final List<XmlaOlap4jMember> rootMembers =
+        new ArrayList<XmlaOlap4jMember>();
+
+    /**
+     * Position of each member in a pre-order traversal of the tree, used to
+     * sort lists of relatives into hierarchy order.
+     */
+    private final Map<XmlaOlap4jMember, Integer> positionMap =
+        new HashMap<XmlaOlap4jMember, Integer>();
+
+    private final Comparator<XmlaOlap4jMember> positionComparator =
+        new Comparator<XmlaOlap4jMember>() {
+            public int compare(XmlaOlap4jMember o1, XmlaOlap4jMember o2) {
+                return positionMap.get(o1) - positionMap.get(o2);
+            }
+        };
+
+    /**
+     * Creates an XmlaOlap4jMemberTree.
+     *
+     * @param members All members of a hierarchy, in the order returned by
+     *     the server
+     */
+    XmlaOlap4jMemberTree(List<XmlaOlap4jMember> members) {
+        for (XmlaOlap4jMember member : members) {
+            memberMap.put(member.getUniqueName(), member);
+        }
+        for (XmlaOlap4jMember member : members) {
+            final String parentUniqueName =
+                member.getParentMemberUniqueName();
+            final XmlaOlap4jMember parent =
+                parentUniqueName == null
+                    ? null
+                    : memberMap.get(parentUniqueName);
+            if (parent == null) {
+                rootMembers.add(member);
+            } else {
+                member.setParentMember(parent);
+                List<XmlaOlap4jMember> children =
+                    childrenMap.get(parentUniqueName);
+                if (children == null) {
+                    children = new ArrayList<XmlaOlap4jMember>();
+                    childrenMap.put(parentUniqueName, children);
+                }
+                children.add(member);
+            }
+            List<XmlaOlap4jMember> levelMembers =
+                levelMap.get(member.getLevel());
+            if (levelMembers == null) {
+                levelMembers = new ArrayList<XmlaOlap4jMember>();
+                levelMap.put(member.getLevel(), levelMembers);
+            }
+            levelMembers.add(member);
+        }
+        int position = 0;
+        final List<XmlaOlap4jMember> stack =
+            new ArrayList<XmlaOlap4jMember>();
+        pushReversed(stack, rootMembers);
+        while (!stack.isEmpty()) {
+            final XmlaOlap4jMember member = stack.remove(stack.size() - 1);
+            positionMap.put(member, position++);
+            pushReversed(stack, getChildren(member));
+        }
+    }
+
+    private static void pushReversed(
+        List<XmlaOlap4jMember> stack,
+        List<XmlaOlap4jMember> members)
+    {
+        for (int i = members.size() - 1; i >= 0; i--) {
+            stack.add(members.get(i));
+        }
+    }
+
+    /**
+     * Returns the number of members in the tree.
+     *
+     * @return number of members
+     */
+    int size() {
+        return memberMap.size();
+    }
+
+    /**
+     * Looks up a member by its unique name.
+     *
+     * @param memberUniqueName Unique name of member
+     * @return Member, or null if not in the tree
+     */
+    XmlaOlap4jMember lookupMember(String memberUniqueName) {
+        return memberMap.get(memberUniqueName);
+    }
+
+    /**
+     * Returns the members of a level.
+     *
+     * @param level Level
+     * @return list of members, empty if the level has none
+     */
+    List<XmlaOlap4jMember> getLevelMembers(XmlaOlap4jLevel level) {
+        final List<XmlaOlap4jMember> list = levelMap.get(level);
+        return list == null
+            ? Collections.<XmlaOlap4jMember>emptyList()
+            : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the ancestors of a member, parent first.
+     *
+     * @param member Member
+     * @return list of ancestors
+     */
+    List<XmlaOlap4jMember> getAncestors(XmlaOlap4jMember member) {
+        final List<XmlaOlap4jMember> list = new ArrayList<XmlaOlap4jMember>();
+        for (XmlaOlap4jMember m = getParent(member); m != null;
+            m = getParent(m))
+        {
+            list.add(m);
+        }
+        return list;
+    }
+
+    /**
+     * Adds the members related to a member by a set of tree-operations to a
+     * list, in hierarchy order.
+     *
+     * @param treeOps Tree operations
+     * @param member Member
+     * @param list List to which to add members
+     */
+    void getRelatives(
+        Set<Member.TreeOp> treeOps,
+        XmlaOlap4jMember member,
+        List<XmlaOlap4jMember> list)
+    {
+        final Set<XmlaOlap4jMember> set =
+            new HashSet<XmlaOlap4jMember>();
+        final XmlaOlap4jMember parent = getParent(member);
+        for (Member.TreeOp treeOp : treeOps) {
+            switch (treeOp) {
+            case SELF:
+                set.add(member);
+                break;
+            case PARENT:
+                if (parent != null) {
+                    set.add(parent);
+                }
+                break;
+            case ANCESTORS:
+                set.addAll(getAncestors(member));
+                break;
+            case CHILDREN:
+                set.addAll(getChildren(member));
+                break;
+            case SIBLINGS:
+                for (XmlaOlap4jMember sibling
+                    : parent == null ? rootMembers : getChildren(parent))
+                {
+                    if (sibling != member) {
+                        set.add(sibling);
+                    }
+                }
+                break;
+            case DESCENDANTS:
+                final List<XmlaOlap4jMember> stack =
+                    new ArrayList<XmlaOlap4jMember>(getChildren(member));
+                while (!stack.isEmpty()) {
+                    final XmlaOlap4jMember descendant =
+                        stack.remove(stack.size() - 1);
+                    set.add(descendant);
+                    stack.addAll(getChildren(descendant));
+                }
+                break;
+            }
+        }
+        final List<XmlaOlap4jMember> relatives =
+            new ArrayList<XmlaOlap4jMember>(set);
+        Collections.sort(relatives, positionComparator);
+        list.addAll(relatives);
+    }
+
+    private XmlaOlap4jMember getParent(XmlaOlap4jMember member) {
+        final String parentUniqueName = member.getParentMemberUniqueName();
+        return parentUniqueName == null
+            ? null
+            : memberMap.get(parentUniqueName);
+    }
+
+    /**
+     * Returns the children of a member, in hierarchy order.
+     *
+     * @param member Member
+     * @return list of children, empty if the member has none
+     */
+    List<XmlaOlap4jMember> getChildren(XmlaOlap4jMember member) {
+        final List<XmlaOlap4jMember> children =
+            childrenMap.get(member.getUniqueName());
+        return children == null
+            ? Collections.<XmlaOlap4jMember>emptyList()
+            : Collections.unmodifiableList(children);
+    }
+}
+
+// End XmlaOlap4jMemberTree.java
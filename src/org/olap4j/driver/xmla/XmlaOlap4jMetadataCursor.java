@@ -0,0 +1,288 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapException;
+
+import java.io.ByteArrayInputStream;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.regex.Matcher;
+import javax.xml.stream.*;
+
+import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
+
+/**
+ * Cursor over the rows of the response to an XMLA metadata request, which
+ * parses each row as it is read, rather than building a DOM tree of the
+ * whole response.
+ *
+ * <p>Rows which do not satisfy the predicates are skipped as they are read.
+ * Apart from the response itself, the cursor therefore holds only the
+ * current row, however many rows the response has.
+ *
+ * <p>The constructor reads the response up to its first row, so that a
+ * fault returned by the server is reported when the cursor is created.
+ *
+ * <p>The cursor uses the StAX parser which JDK 1.6 and later include. On
+ * JDK 1.5 without a StAX parser, {@link XmlaOlap4jDatabaseMetaData} parses
+ * responses into a DOM tree instead, and never loads this class.
+ *
+ * @see XmlaOlap4jDatabaseMetaData
+ */
+class XmlaOlap4jMetadataCursor implements EmptyResultSet.Cursor {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final XmlaOlap4jConnection olap4jConnection;
+    private final List<XmlaOlap4jConnection.MetadataColumn> columns;
+    private final Map<XmlaOlap4jConnection.MetadataColumn, String> overrides;
+    private final Map<String, Matcher> predicates;
+    private final XMLStreamReader reader;
+    private boolean closed;
+
+    /**
+     * Creates an XmlaOlap4jMetadataCursor.
+     *
+     * @param olap4jConnection Connection
+     * @param request XMLA request string, for error messages
+     * @param response Response
+     * @param columns Columns of the result
+     * @param overrides Map of columns to values which override those
+     *     returned by the server
+     * @param predicates Map from the name of a column to a matcher which its
+     *     value must match
+     * @throws OlapException if the response cannot be parsed or is a fault
+     */
+    XmlaOlap4jMetadataCursor(
+        XmlaOlap4jConnection olap4jConnection,
+        String request,
+        byte[] response,
+        List<XmlaOlap4jConnection.MetadataColumn> columns,
+        Map<XmlaOlap4jConnection.MetadataColumn, String> overrides,
+        Map<String, Matcher> predicates)
+        throws OlapException
+    {
+        this.olap4jConnection = olap4jConnection;
+        this.columns = columns;
+        this.overrides = overrides;
+        this.predicates = predicates;
+        try {
+            this.reader =
+                INPUT_FACTORY.createXMLStreamReader(
+                    new ByteArrayInputStream(response));
+            if (!moveToRoot(request)) {
+                close();
+            }
+        } catch (XMLStreamException e) {
+            throw olap4jConnection.helper.createException(
+                "error discovering metadata", e);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * Reads the envelope of the response up to the start of the element
+     * which contains the rows, taking the session id from its header.
+     *
+     * <pre>
+     * &lt;SOAP-ENV:Envelope&gt;
+     *   &lt;SOAP-ENV:Header&gt;
+     *     &lt;Session SessionId="..."/&gt;
+     *   &lt;/SOAP-ENV:Header&gt;
+     *   &lt;SOAP-ENV:Body&gt;
+     *     &lt;xmla:DiscoverResponse&gt;
+     *       &lt;xmla:return&gt;
+     *         &lt;root&gt;
+     *           &lt;xsd:schema&gt;...&lt;/xsd:schema&gt;
+     *           &lt;row&gt;...&lt;/row&gt;
+     *         &lt;/root&gt;
+     *       &lt;/xmla:return&gt;
+     *     &lt;/xmla:DiscoverResponse&gt;
+     *   &lt;/SOAP-ENV:Body&gt;
+     * &lt;/SOAP-ENV:Envelope&gt;
+     * </pre>
+     *
+     * @param request Request, for error messages
+     * @return whether the response contains rows
+     */
+    private boolean moveToRoot(String request)
+        throws XMLStreamException, OlapException
+    {
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            final String namespace = reader.getNamespaceURI();
+            final String name = reader.getLocalName();
+            if (SOAP_NS.equals(namespace) && name.equals("Fault")) {
+                throw olap4jConnection.helper.createException(
+                    "XMLA provider gave exception: "
+                    + readText().trim()
+                    + "\n"
+                    + "Request was:\n"
+                    + request);
+            }
+            if (XMLA_NS.equals(namespace) && name.equals("Session")) {
+                String sessionId =
+                    reader.getAttributeValue(null, "SessionId");
+                if ("".equals(sessionId)) {
+                    sessionId = null;
+                }
+                olap4jConnection.serverInfos.setSessionId(sessionId);
+            }
+            if (ROWSET_NS.equals(namespace) && name.equals("root")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Object> nextRow() throws SQLException {
+        if (closed) {
+            return null;
+        }
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    final String namespace = reader.getNamespaceURI();
+                    if (namespace != null
+                        && namespace.length() > 0
+                        && !namespace.equals(ROWSET_NS))
+                    {
+                        // Ignore any vendor specific namespaced elements,
+                        // such as the schema, that are not part of the
+                        // rowset namespace
+                        skipElement();
+                        break;
+                    }
+                    final List<Object> row = readRow();
+                    if (row != null) {
+                        return row;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    // end of the root element
+                    close();
+                    return null;
+                }
+            }
+            close();
+            return null;
+        } catch (XMLStreamException e) {
+            close();
+            throw olap4jConnection.helper.createException(
+                "error discovering metadata", e);
+        }
+    }
+
+    /**
+     * Reads a row, and returns its values, or null if it does not satisfy
+     * the predicates. If a column occurs more than once, the first
+     * occurrence counts, as in {@link XmlaOlap4jUtil#stringElement}.
+     */
+    private List<Object> readRow() throws XMLStreamException {
+        final Map<String, String> values = new HashMap<String, String>();
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                final String value = readText();
+                if (!values.containsKey(name)) {
+                    values.put(name, value);
+                }
+            }
+        }
+        for (Map.Entry<String, Matcher> entry : predicates.entrySet()) {
+            final String value = values.get(entry.getKey());
+            if (value == null || !entry.getValue().reset(value).matches()) {
+                return null;
+            }
+        }
+        final List<Object> row = new ArrayList<Object>(columns.size());
+        for (XmlaOlap4jConnection.MetadataColumn column : columns) {
+            if (overrides.containsKey(column)) {
+                row.add(overrides.get(column));
+            } else {
+                row.add(values.get(column.xmlaName));
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Reads the text content of the current element, including that of
+     * its descendants, and moves to its end.
+     */
+    private String readText() throws XMLStreamException {
+        final StringBuilder buf = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                ++depth;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                --depth;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                buf.append(reader.getText());
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Moves to the end of the current element.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                ++depth;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                --depth;
+                break;
+            }
+        }
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // ignore
+            }
+        }
+    }
+}
+
+// End XmlaOlap4jMetadataCursor.java
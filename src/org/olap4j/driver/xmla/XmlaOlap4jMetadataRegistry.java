@@ -0,0 +1,259 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Registry, shared by all connections in the JVM, of the parsed responses
+ * to metadata requests.
+ *
+ * <p>Connections which have the same server URL, credentials, catalog, role
+ * and locale share an {@link Entry}. The credentials are held as a digest
+ * of the user and password, so connections share responses only if they
+ * authenticate as the same user with the same password. The first
+ * connection to send a metadata request stores the parsed response; the
+ * others receive a copy of it, without sending a request or parsing a
+ * response.
+ *
+ * <p>Only the responses to requests which discover the structure of cubes
+ * are held (see {@link #isShared(String)}); member requests are not. Each
+ * entry holds at most {@link #MAX_RESPONSES} responses, discarding the
+ * oldest first.
+ *
+ * <p>Each connection builds its own metadata objects from the response,
+ * because those objects refer to their connection.
+ *
+ * <p>A DOM tree may not be read by several threads at once, so each
+ * response is held in a document of its own, and is copied under the lock
+ * of that document.
+ *
+ * <p>An entry is reference-counted: it is removed when the last connection
+ * which uses it is closed.
+ *
+ * @see XmlaOlap4jDriver.Property#SHAREMETADATA
+ * @see XmlaOlap4jExtra#invalidateSharedMetadata()
+ */
+class XmlaOlap4jMetadataRegistry {
+    /**
+     * Maximum number of responses held by an entry.
+     */
+    static final int MAX_RESPONSES = 1000;
+
+    /**
+     * Map from a key to its entry. Guarded by itself.
+     */
+    private static final Map<List<Object>, Entry> ENTRIES =
+        new HashMap<List<Object>, Entry>();
+
+    private XmlaOlap4jMetadataRegistry() {
+    }
+
+    /**
+     * Returns whether the response to a request may be held by the
+     * registry: that is, whether the request discovers the structure of
+     * cubes. These are the requests which a metadata snapshot holds.
+     *
+     * @param request XMLA request string
+     * @return whether the response may be shared
+     */
+    static boolean isShared(String request) {
+        return XmlaOlap4jMetadataSnapshot.isSnapshotRequest(request);
+    }
+
+    /**
+     * Returns the entry for a key, creating it if necessary, and increments
+     * its reference count.
+     *
+     * @param serverUrl URL of the server
+     * @param credentials Digest of the user and password, as returned by
+     *     {@link XmlaOlap4jUtil#credentialsDigest(String, String)}
+     * @param catalogName Catalog name, or null
+     * @param roleName Role name, or null
+     * @param locale Locale
+     * @return Entry
+     */
+    static Entry acquire(
+        String serverUrl,
+        String credentials,
+        String catalogName,
+        String roleName,
+        Locale locale)
+    {
+        final List<Object> key =
+            Arrays.<Object>asList(
+                serverUrl, credentials, catalogName, roleName, locale);
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                ENTRIES.put(key, entry);
+            }
+            ++entry.refCount;
+            return entry;
+        }
+    }
+
+    /**
+     * Decrements the reference count of an entry, and removes the entry if
+     * no connection uses it.
+     *
+     * @param entry Entry
+     */
+    static void release(Entry entry) {
+        synchronized (ENTRIES) {
+            if (--entry.refCount == 0) {
+                ENTRIES.remove(entry.key);
+            }
+        }
+    }
+
+    /**
+     * Discards the responses held for a server.
+     *
+     * @param serverUrl URL of the server, or null to discard the responses
+     *     of all servers
+     */
+    static void invalidate(String serverUrl) {
+        synchronized (ENTRIES) {
+            for (Entry entry : ENTRIES.values()) {
+                if (serverUrl == null || serverUrl.equals(entry.key.get(0))) {
+                    entry.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Responses shared by the connections with a given server URL,
+     * credentials, catalog, role and locale.
+     */
+    static class Entry {
+        private final List<Object> key;
+
+        /**
+         * Number of connections using this entry. Guarded by
+         * {@link XmlaOlap4jMetadataRegistry#ENTRIES}.
+         */
+        private int refCount;
+
+        /**
+         * Map from a request to the root element of its response, each in
+         * a document of its own.
+         */
+        private final ConcurrentMap<String, Element> responses =
+            new ConcurrentHashMap<String, Element>();
+
+        /**
+         * Requests whose responses are held, oldest first.
+         */
+        private final Queue<String> requests =
+            new ConcurrentLinkedQueue<String>();
+
+        private Entry(List<Object> key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns whether this entry is for a given server URL,
+         * credentials, catalog, role and locale.
+         */
+        boolean matches(
+            String serverUrl,
+            String credentials,
+            String catalogName,
+            String roleName,
+            Locale locale)
+        {
+            return key.equals(
+                Arrays.<Object>asList(
+                    serverUrl, credentials, catalogName, roleName, locale));
+        }
+
+        /**
+         * Returns a copy of the response to a request, or null if no
+         * connection has stored one.
+         *
+         * @param request XMLA request string
+         * @return Root element of a copy of the response, or null
+         */
+        Element get(String request) {
+            final Element root = responses.get(request);
+            if (root == null) {
+                return null;
+            }
+            final Document document = root.getOwnerDocument();
+            synchronized (document) {
+                return copy(root);
+            }
+        }
+
+        /**
+         * Stores the response to a request, if the request is one whose
+         * response may be shared, discarding the oldest response if the
+         * entry is full. The caller may continue to use the response,
+         * because a copy is stored.
+         *
+         * @param request XMLA request string
+         * @param root Root element of the response
+         */
+        void put(String request, Element root) {
+            if (!isShared(request) || responses.containsKey(request)) {
+                return;
+            }
+            if (responses.putIfAbsent(request, copy(root)) != null) {
+                return;
+            }
+            requests.add(request);
+            while (responses.size() > MAX_RESPONSES) {
+                final String oldest = requests.poll();
+                if (oldest == null) {
+                    break;
+                }
+                responses.remove(oldest);
+            }
+        }
+
+        /**
+         * Returns the number of responses held.
+         *
+         * @return number of responses
+         */
+        int size() {
+            return responses.size();
+        }
+
+        private void clear() {
+            responses.clear();
+            requests.clear();
+        }
+
+        private static Element copy(Element root) {
+            final Document document =
+                root.getOwnerDocument().getImplementation()
+                    .createDocument(null, null, null);
+            return (Element) document.importNode(root, true);
+        }
+    }
+}
+
+// End XmlaOlap4jMetadataRegistry.java
@@ -0,0 +1,553 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapException;
+
+import org.w3c.dom.Element;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
+
+/**
+ * Snapshot, kept in a local file, of the responses to the requests which
+ * discover the structure of a server's cubes, so that a new JVM can create
+ * its metadata without sending them.
+ *
+ * <p>Only requests for databases, catalogs, schemas, cubes, dimensions,
+ * hierarchies, levels, measures, properties and named sets are held;
+ * members are not. Responses are held per server URL and credentials; the
+ * credentials are held as a digest of the user and password, so a
+ * connection whose password differs does not see the responses, and the
+ * file does not reveal the password.
+ *
+ * <p>The first time a connection uses the snapshot for a given server and
+ * credentials, the snapshot is validated: each <code>MDSCHEMA_CUBES</code>
+ * request it holds is sent to the server, and the LAST_SCHEMA_UPDATE of each
+ * cube compared with that of the held response. If any differs, or if there
+ * is no such request to check, the responses for that server and credentials
+ * are discarded, and the connection discovers its metadata from the server
+ * as usual, recording the responses afresh. Connections which need the same
+ * responses while they are being validated wait for the validation; others
+ * do not.
+ *
+ * <p>A snapshot holds at most {@link #MAX_RESPONSES} responses, discarding
+ * the oldest first.
+ *
+ * <p>There is one snapshot per file in the JVM, shared by all connections
+ * which use that file. The snapshot is loaded when it is first used, and
+ * saved, compressed, when a connection is closed and when the JVM exits;
+ * one shutdown hook saves every snapshot.
+ *
+ * @see XmlaOlap4jDriver.Property#METADATASNAPSHOT
+ */
+class XmlaOlap4jMetadataSnapshot {
+    /**
+     * Maximum number of responses held by a snapshot.
+     */
+    static final int MAX_RESPONSES = 10000;
+
+    /**
+     * Version of the file format. Files of another version are ignored.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Types of the requests which are held in a snapshot.
+     */
+    private static final Set<String> REQUEST_TYPES =
+        new HashSet<String>(
+            Arrays.asList(
+                "DISCOVER_DATASOURCES",
+                "DBSCHEMA_CATALOGS",
+                "DBSCHEMA_SCHEMATA",
+                "MDSCHEMA_CUBES",
+                "MDSCHEMA_DIMENSIONS",
+                "MDSCHEMA_HIERARCHIES",
+                "MDSCHEMA_LEVELS",
+                "MDSCHEMA_MEASURES",
+                "MDSCHEMA_PROPERTIES",
+                "MDSCHEMA_SETS"));
+
+    /**
+     * Map from the canonical path of a snapshot file to the snapshot.
+     */
+    private static final Map<String, XmlaOlap4jMetadataSnapshot> SNAPSHOTS =
+        new HashMap<String, XmlaOlap4jMetadataSnapshot>();
+
+    /**
+     * Whether the shutdown hook which saves the snapshots has been
+     * registered. Guarded by {@link #SNAPSHOTS}.
+     */
+    private static boolean shutdownHookAdded = false;
+
+    private final File file;
+
+    /**
+     * Map from a (URL, credentials digest, request) triple to the
+     * response.
+     */
+    private final ConcurrentMap<List<String>, byte[]> responses =
+        new ConcurrentHashMap<List<String>, byte[]>();
+
+    /**
+     * Keys of {@link #responses}, oldest first. May hold keys which have
+     * since been removed.
+     */
+    private final Queue<List<String>> keys =
+        new ConcurrentLinkedQueue<List<String>>();
+
+    /**
+     * Map from each (URL, credentials digest) pair whose responses are
+     * being or have been validated to a latch which is released when the
+     * validation has finished.
+     */
+    private final ConcurrentMap<List<String>, CountDownLatch> validations =
+        new ConcurrentHashMap<List<String>, CountDownLatch>();
+
+    /**
+     * Whether responses have been added or removed since the snapshot was
+     * last saved.
+     */
+    private volatile boolean dirty = false;
+
+    /**
+     * Creates a snapshot and loads the contents of its file, if it exists.
+     * Connections use {@link #get(java.io.File)}, which creates one snapshot
+     * per file.
+     *
+     * @param file File
+     */
+    XmlaOlap4jMetadataSnapshot(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the snapshot which uses a given file, creating it if
+     * necessary.
+     *
+     * @param file Snapshot file
+     * @return Snapshot
+     */
+    static XmlaOlap4jMetadataSnapshot get(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        synchronized (SNAPSHOTS) {
+            XmlaOlap4jMetadataSnapshot snapshot = SNAPSHOTS.get(path);
+            if (snapshot == null) {
+                snapshot = new XmlaOlap4jMetadataSnapshot(new File(path));
+                SNAPSHOTS.put(path, snapshot);
+                if (!shutdownHookAdded) {
+                    Runtime.getRuntime().addShutdownHook(
+                        new Thread() {
+                            public void run() {
+                                saveAll();
+                            }
+                        });
+                    shutdownHookAdded = true;
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Saves every snapshot in the JVM which has changed.
+     */
+    private static void saveAll() {
+        final List<XmlaOlap4jMetadataSnapshot> snapshots;
+        synchronized (SNAPSHOTS) {
+            snapshots =
+                new ArrayList<XmlaOlap4jMetadataSnapshot>(SNAPSHOTS.values());
+        }
+        for (XmlaOlap4jMetadataSnapshot snapshot : snapshots) {
+            snapshot.save();
+        }
+    }
+
+    /**
+     * Returns whether the response to a request may be held in a snapshot.
+     *
+     * @param request XMLA request string
+     * @return whether request discovers the structure of cubes
+     */
+    static boolean isSnapshotRequest(String request) {
+        return REQUEST_TYPES.contains(requestType(request));
+    }
+
+    /**
+     * Returns the held response to a request, validating the responses for
+     * the connection's server and credentials if this is the first time.
+     *
+     * @param connection Connection
+     * @param request XMLA request string
+     * @return Response, or null if none is held
+     */
+    byte[] get(XmlaOlap4jConnection connection, String request) {
+        final String url = connection.serverInfos.getUrl().toExternalForm();
+        final String credentials = credentials(connection);
+        validate(connection, url, credentials);
+        return responses.get(Arrays.asList(url, credentials, request));
+    }
+
+    /**
+     * Records the response to a request.
+     *
+     * @param connection Connection
+     * @param request XMLA request string
+     * @param response Response
+     */
+    void put(XmlaOlap4jConnection connection, String request, byte[] response)
+    {
+        final String url = connection.serverInfos.getUrl().toExternalForm();
+        final String credentials = credentials(connection);
+        add(Arrays.asList(url, credentials, request), response);
+        dirty = true;
+    }
+
+    /**
+     * Adds a response, discarding the oldest responses if the snapshot is
+     * full.
+     */
+    private void add(List<String> key, byte[] response) {
+        if (responses.put(key, response) != null) {
+            return;
+        }
+        keys.add(key);
+        while (responses.size() > MAX_RESPONSES) {
+            final List<String> oldest = keys.poll();
+            if (oldest == null) {
+                break;
+            }
+            responses.remove(oldest);
+        }
+    }
+
+    /**
+     * Returns the digest of the credentials of a connection, as held in a
+     * key.
+     */
+    private static String credentials(XmlaOlap4jConnection connection) {
+        return XmlaOlap4jUtil.credentialsDigest(
+            connection.serverInfos.getUsername(),
+            connection.serverInfos.getPassword());
+    }
+
+    /**
+     * Returns the number of responses held.
+     *
+     * @return Number of responses
+     */
+    int size() {
+        return responses.size();
+    }
+
+    /**
+     * Discards the responses held for a server, because its schema has
+     * changed.
+     *
+     * @param url URL of the server
+     */
+    void invalidate(String url) {
+        remove(url, null);
+    }
+
+    /**
+     * Discards the responses held for a server and, if not null,
+     * credentials.
+     */
+    private void remove(String url, String credentials) {
+        for (Iterator<List<String>> iterator = responses.keySet().iterator();
+            iterator.hasNext();)
+        {
+            final List<String> key = iterator.next();
+            if (key.get(0).equals(url)
+                && (credentials == null || key.get(1).equals(credentials)))
+            {
+                iterator.remove();
+                dirty = true;
+            }
+        }
+        for (Iterator<List<String>> iterator = keys.iterator();
+            iterator.hasNext();)
+        {
+            if (!responses.containsKey(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks, once per server and credentials, whether the held responses
+     * are still current, and discards them if not.
+     *
+     * <p>The first caller for a server and credentials sends the requests;
+     * later callers wait until it has finished. No lock is held meanwhile,
+     * so callers for other servers or credentials do not wait.
+     */
+    private void validate(
+        XmlaOlap4jConnection connection,
+        String url,
+        String credentials)
+    {
+        final List<String> validationKey = Arrays.asList(url, credentials);
+        CountDownLatch latch = validations.get(validationKey);
+        if (latch == null) {
+            final CountDownLatch newLatch = new CountDownLatch(1);
+            latch = validations.putIfAbsent(validationKey, newLatch);
+            if (latch == null) {
+                try {
+                    validateResponses(connection, url, credentials);
+                } finally {
+                    newLatch.countDown();
+                }
+                return;
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the held <code>MDSCHEMA_CUBES</code> requests of a server and
+     * credentials, and discards their responses if any cube has changed.
+     */
+    private void validateResponses(
+        XmlaOlap4jConnection connection,
+        String url,
+        String credentials)
+    {
+        boolean checked = false;
+        boolean current = true;
+        for (Map.Entry<List<String>, byte[]> entry : responses.entrySet()) {
+            final List<String> key = entry.getKey();
+            if (!key.get(0).equals(url)
+                || !key.get(1).equals(credentials)
+                || !"MDSCHEMA_CUBES".equals(requestType(key.get(2))))
+            {
+                continue;
+            }
+            checked = true;
+            try {
+                final byte[] response =
+                    connection.sendRequest(key.get(2), false);
+                if (!schemaUpdates(connection, key.get(2), entry.getValue())
+                    .equals(schemaUpdates(connection, key.get(2), response)))
+                {
+                    current = false;
+                    break;
+                }
+            } catch (OlapException e) {
+                current = false;
+                break;
+            }
+        }
+        if (checked && current) {
+            return;
+        }
+        remove(url, credentials);
+    }
+
+    /**
+     * Returns the LAST_SCHEMA_UPDATE of each cube in a response to an
+     * <code>MDSCHEMA_CUBES</code> request.
+     */
+    private static Map<String, String> schemaUpdates(
+        XmlaOlap4jConnection connection,
+        String request,
+        byte[] response)
+        throws OlapException
+    {
+        final Element root =
+            connection.parseMetadataResponse(request, response, false);
+        final Map<String, String> map = new HashMap<String, String>();
+        for (Element row : childElements(root)) {
+            if (row.getLocalName().equals("row")) {
+                map.put(
+                    stringElement(row, "CUBE_NAME"),
+                    stringElement(row, "LAST_SCHEMA_UPDATE"));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the type of an XMLA Discover request, or null.
+     */
+    private static String requestType(String request) {
+        final int start = request.indexOf("<RequestType>");
+        if (start < 0) {
+            return null;
+        }
+        final int end = request.indexOf("</RequestType>", start);
+        if (end < 0) {
+            return null;
+        }
+        return request.substring(start + "<RequestType>".length(), end)
+            .trim();
+    }
+
+    /**
+     * Saves the snapshot to its file, if it has changed since it was last
+     * saved. Failures are ignored; the snapshot is only an optimization.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(
+                new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tmpFile))));
+            out.writeInt(VERSION);
+            // Oldest first, so that the oldest are discarded first after
+            // loading, too.
+            final Map<List<String>, byte[]> map =
+                new LinkedHashMap<List<String>, byte[]>();
+            for (List<String> key : keys) {
+                final byte[] response = responses.get(key);
+                if (response != null) {
+                    map.put(key, response);
+                }
+            }
+            out.writeInt(map.size());
+            for (Map.Entry<List<String>, byte[]> entry : map.entrySet()) {
+                for (String s : entry.getKey()) {
+                    writeBytes(out, s.getBytes("UTF-8"));
+                }
+                writeBytes(out, entry.getValue());
+            }
+            out.close();
+            out = null;
+            file.delete();
+            tmpFile.renameTo(file);
+        } catch (IOException e) {
+            tmpFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the snapshot from its file. If the file cannot be read, the
+     * snapshot starts empty.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            final Map<List<String>, byte[]> map =
+                new LinkedHashMap<List<String>, byte[]>();
+            for (int n = in.readInt(); n > 0; --n) {
+                final List<String> key =
+                    Arrays.asList(
+                        new String(readBytes(in), "UTF-8"),
+                        new String(readBytes(in), "UTF-8"),
+                        new String(readBytes(in), "UTF-8"));
+                map.put(key, readBytes(in));
+            }
+            for (Map.Entry<List<String>, byte[]> entry : map.entrySet()) {
+                add(entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            // Start with an empty snapshot.
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes)
+        throws IOException
+    {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBytes}. The array is read
+     * in chunks, so that a corrupt length, which the compressed file's
+     * length does not bound, fails at the end of the file rather than
+     * allocating a huge buffer.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt metadata snapshot");
+        }
+        final ByteArrayOutputStream out =
+            new ByteArrayOutputStream(Math.min(length, 8192));
+        final byte[] buf = new byte[8192];
+        for (int remaining = length; remaining > 0;) {
+            final int n = in.read(buf, 0, Math.min(buf.length, remaining));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            out.write(buf, 0, n);
+            remaining -= n;
+        }
+        return out.toByteArray();
+    }
+}
+
+// End XmlaOlap4jMetadataSnapshot.java
@@ -0,0 +1,259 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.*;
+import org.olap4j.metadata.Member;
+
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * List of the members of a large level, which fetches its members a page at
+ * a time, as they are accessed.
+ *
+ * <p>Each page is fetched by an MDX query of the form
+ * <code>SELECT {} ON COLUMNS, SUBSET([Level].Members, start, count) ON ROWS
+ * FROM [Cube]</code>. At most a given number of pages are held; the page
+ * least recently used is discarded to make room for another.
+ *
+ * <p>The size of the list may be seeded with an estimate, such as the
+ * cardinality of the level. The estimate is corrected when a page comes back
+ * short, or when the page at the estimated end of the list turns out not to be
+ * the last; to find out, that page is fetched with one extra member. Until
+ * then, indexes beyond the estimated size are out of bounds. If there is no
+ * estimate, the size is fetched, the first time it is needed, by a query which
+ * counts the members of the level.
+ *
+ * <p>The members are those returned by the <code>Members</code> function in
+ * MDX, which may differ from those returned by an
+ * <code>MDSCHEMA_MEMBERS</code> request; for example, it does not include
+ * calculated members.
+ *
+ * <p>The list is read-only, and is safe for use by several threads at once.
+ *
+ * @see XmlaOlap4jDriver.Property#MEMBERPAGESIZE
+ * @see XmlaOlap4jDriver.Property#MEMBERPAGECOUNT
+ */
+class XmlaOlap4jPagedMemberList
+    extends AbstractList<Member>
+    implements RandomAccess
+{
+    private final XmlaOlap4jLevel level;
+    private final int pageSize;
+
+    /**
+     * Number of members in the level, or -1 if not yet known. Guarded by
+     * this.
+     */
+    private int size;
+
+    /**
+     * Whether {@link #size} is a count, as opposed to an estimate. Guarded
+     * by this.
+     */
+    private boolean exact;
+
+    /**
+     * Map from page number to the members of the page, in access order.
+     * Guarded by this.
+     */
+    private final LinkedHashMap<Integer, List<Member>> pages;
+
+    /**
+     * Creates an XmlaOlap4jPagedMemberList.
+     *
+     * @param level Level
+     * @param pageSize Number of members in a page
+     * @param maxPageCount Maximum number of pages to hold
+     * @param estimatedSize Estimated number of members in the level, or -1
+     *     to count them
+     */
+    XmlaOlap4jPagedMemberList(
+        XmlaOlap4jLevel level,
+        int pageSize,
+        final int maxPageCount,
+        int estimatedSize)
+    {
+        assert pageSize > 0;
+        assert maxPageCount > 0;
+        this.level = level;
+        this.pageSize = pageSize;
+        this.size = estimatedSize;
+        this.exact = false;
+        this.pages =
+            new LinkedHashMap<Integer, List<Member>>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                    Map.Entry<Integer, List<Member>> eldest)
+                {
+                    return size() > maxPageCount;
+                }
+            };
+    }
+
+    public synchronized int size() {
+        if (size < 0) {
+            try {
+                size = fetchSize();
+                exact = true;
+            } catch (OlapException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return size;
+    }
+
+    public synchronized Member get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", Size: " + size());
+        }
+        final Integer pageNumber = index / pageSize;
+        List<Member> page = pages.get(pageNumber);
+        if (page == null) {
+            try {
+                page = fetchPage(pageNumber * pageSize);
+            } catch (OlapException e) {
+                throw new RuntimeException(e);
+            }
+            pages.put(pageNumber, page);
+        }
+        final int offset = index % pageSize;
+        if (offset >= page.size()) {
+            // The estimated size was too large, or the level has shrunk
+            // since its size was fetched.
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", Size: "
+                + (pageNumber * pageSize + page.size()));
+        }
+        return page.get(offset);
+    }
+
+    /**
+     * Fetches the first page, if it is not held, without counting the
+     * members of the level.
+     *
+     * @throws OlapException on error
+     */
+    synchronized void prefetch() throws OlapException {
+        if (size != 0 && pages.get(0) == null) {
+            pages.put(0, fetchPage(0));
+        }
+    }
+
+    /**
+     * Counts the members of the level.
+     */
+    private int fetchSize() throws OlapException {
+        final String mdx =
+            "WITH MEMBER [Measures].[olap4j member count] AS 'Count("
+            + level.getUniqueName() + ".Members)'\n"
+            + "SELECT {[Measures].[olap4j member count]} ON COLUMNS\n"
+            + "FROM " + getCube().getUniqueName();
+        final OlapStatement statement = createStatement();
+        try {
+            final CellSet cellSet = statement.executeOlapQuery(mdx);
+            final Object value = cellSet.getCell(0).getValue();
+            return value == null ? 0 : ((Number) value).intValue();
+        } finally {
+            close(statement);
+        }
+    }
+
+    /**
+     * Fetches a page of members, and corrects the size of the list if it is
+     * an estimate which the page shows to be wrong.
+     *
+     * @param start Ordinal of the first member of the page
+     * @return Members of the page
+     */
+    private List<Member> fetchPage(int start) throws OlapException {
+        if (exact) {
+            return fetchMembers(start, pageSize);
+        }
+        // If this is the last page by the estimate, ask for one more member,
+        // to find out whether there are any beyond it. If there is no
+        // estimate yet, a short page still gives the size.
+        final boolean last = size >= 0 && start + pageSize >= size;
+        final List<Member> members =
+            fetchMembers(start, last ? pageSize + 1 : pageSize);
+        if (members.size() < pageSize
+            || (last && members.size() == pageSize))
+        {
+            size = start + members.size();
+            exact = true;
+            return members;
+        } else if (members.size() > pageSize) {
+            size = fetchSize();
+            exact = true;
+            return new ArrayList<Member>(members.subList(0, pageSize));
+        } else {
+            return members;
+        }
+    }
+
+    /**
+     * Fetches a range of members.
+     *
+     * @param start Ordinal of the first member
+     * @param count Number of members
+     * @return Members; fewer than requested if the level ends
+     */
+    private List<Member> fetchMembers(int start, int count)
+        throws OlapException
+    {
+        final String mdx =
+            "SELECT {} ON COLUMNS,\n"
+            + "SUBSET(" + level.getUniqueName() + ".Members, " + start + ", "
+            + count + ") ON ROWS\n"
+            + "FROM " + getCube().getUniqueName();
+        final OlapStatement statement = createStatement();
+        try {
+            final CellSet cellSet = statement.executeOlapQuery(mdx);
+            final List<Member> members = new ArrayList<Member>(count);
+            for (Position position
+                : cellSet.getAxes().get(Axis.ROWS.axisOrdinal())
+                    .getPositions())
+            {
+                members.add(position.getMembers().get(0));
+            }
+            return members;
+        } finally {
+            close(statement);
+        }
+    }
+
+    private XmlaOlap4jCube getCube() {
+        return level.olap4jHierarchy.olap4jDimension.olap4jCube;
+    }
+
+    private OlapStatement createStatement() {
+        return getCube().olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+            .olap4jConnection.createStatement();
+    }
+
+    private static void close(OlapStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+}
+
+// End XmlaOlap4jPagedMemberList.java
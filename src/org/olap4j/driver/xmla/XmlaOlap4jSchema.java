@@ -34,7 +34,7 @@ import java.util.*;
 class XmlaOlap4jSchema implements Schema, Named {
     final XmlaOlap4jCatalog olap4jCatalog;
     private final String name;
-    final NamedList<XmlaOlap4jCube> cubes;
+    final DeferredNamedListImpl<XmlaOlap4jCube> cubes;
     private final NamedList<XmlaOlap4jDimension> sharedDimensions;
 
     XmlaOlap4jSchema(
@@ -0,0 +1,251 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapException;
+import org.olap4j.impl.Olap4jUtil;
+import org.olap4j.metadata.Catalog;
+
+import org.w3c.dom.Element;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
+
+/**
+ * Task which periodically asks the server when each cube was last updated,
+ * and invalidates the cubes which have changed.
+ *
+ * <p>Each poll sends one MDSCHEMA_CUBES request per catalog, bypassing the
+ * SOAP cache, and compares the LAST_SCHEMA_UPDATE and LAST_DATA_UPDATE
+ * columns with those of the previous poll. The first poll, which happens as
+ * soon as the poller starts, only records them. Cubes which have been added
+ * or removed cause the list of cubes of their schema to be fetched again.
+ *
+ * <p>A poll which fails, typically because the server is unavailable, is
+ * logged and tried again after the interval. The first of a run of failures
+ * is logged at {@link Level#WARNING}, and the others at {@link Level#FINE}.
+ *
+ * <p>The poll itself, which blocks on the server, runs on the driver's
+ * executor; the scheduler only hands it over, so a slow server does not delay
+ * the polls of other connections. The next poll is scheduled when the
+ * previous one has finished, so polls of one connection never overlap.
+ *
+ * <p>The poller holds its connection through a weak reference. It is stopped
+ * when the connection is closed, or else when the connection is
+ * garbage-collected.
+ *
+ * @see XmlaOlap4jDriver.Property#UPDATEPOLLINTERVAL
+ */
+class XmlaOlap4jUpdatePoller implements Callable<Void> {
+    private static final Logger LOGGER =
+        Logger.getLogger(XmlaOlap4jUpdatePoller.class.getName());
+
+    private final WeakReference<XmlaOlap4jConnection> connectionRef;
+    private final long intervalMillis;
+
+    /**
+     * Map from catalog name to the update times of its cubes, as returned by
+     * the previous poll. Each value is a map from cube name to a list
+     * containing LAST_SCHEMA_UPDATE, LAST_DATA_UPDATE and SCHEMA_NAME.
+     */
+    private final Map<String, Map<String, List<String>>> lastUpdates =
+        new HashMap<String, Map<String, List<String>>>();
+
+    /**
+     * Pending scheduled hand-off of the next poll, or null.
+     */
+    private volatile Future<?> future;
+
+    private volatile boolean stopped;
+
+    /**
+     * Whether the previous poll failed. Accessed only by the poll, and polls
+     * never overlap.
+     */
+    private boolean failing;
+
+    /**
+     * Creates an XmlaOlap4jUpdatePoller. Call {@link #start} to schedule it.
+     *
+     * @param connection Connection whose cubes to watch
+     * @param seconds Number of seconds between polls
+     */
+    XmlaOlap4jUpdatePoller(XmlaOlap4jConnection connection, int seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException(
+                "Update poll interval must be positive, but was " + seconds);
+        }
+        this.connectionRef =
+            new WeakReference<XmlaOlap4jConnection>(connection);
+        this.intervalMillis = seconds * 1000L;
+    }
+
+    /**
+     * Starts this poller. Polls straight away, so that responses cached from
+     * now on can be compared with the first update times.
+     */
+    void start() {
+        scheduleNext(0);
+    }
+
+    /**
+     * Cancels this poller.
+     */
+    void stop() {
+        stopped = true;
+        final Future<?> future = this.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Schedules the next poll. When the delay has passed, the scheduler
+     * submits the poll to the executor.
+     */
+    private void scheduleNext(long delayMillis) {
+        if (stopped) {
+            return;
+        }
+        future = XmlaOlap4jDriver.schedule(
+            new Runnable() {
+                public void run() {
+                    if (!stopped) {
+                        XmlaOlap4jDriver.submit(XmlaOlap4jUpdatePoller.this);
+                    }
+                }
+            },
+            delayMillis);
+    }
+
+    /**
+     * Polls the cubes of every catalog, then schedules the next poll.
+     */
+    public Void call() {
+        final XmlaOlap4jConnection connection = connectionRef.get();
+        if (connection == null) {
+            stop();
+            return null;
+        }
+        try {
+            for (Catalog catalog : connection.getOlapCatalogs()) {
+                poll(connection, catalog.getName());
+            }
+            failing = false;
+        } catch (OlapException e) {
+            pollFailed(e);
+        } catch (RuntimeException e) {
+            // Do not let the exception cancel the schedule.
+            pollFailed(e);
+        } finally {
+            scheduleNext(intervalMillis);
+        }
+        return null;
+    }
+
+    /**
+     * Logs the failure of a poll. The server is probably unavailable; the
+     * poll is tried again after the interval.
+     */
+    private void pollFailed(Exception e) {
+        LOGGER.log(
+            failing ? Level.FINE : Level.WARNING,
+            "Polling for cube updates failed; will try again in "
+            + intervalMillis + " milliseconds",
+            e);
+        failing = true;
+    }
+
+    /**
+     * Polls the cubes of a catalog.
+     *
+     * @param connection Connection
+     * @param catalogName Catalog name
+     * @throws OlapException on error
+     */
+    void poll(
+        XmlaOlap4jConnection connection,
+        String catalogName)
+        throws OlapException
+    {
+        final XmlaOlap4jConnection.Context context =
+            new XmlaOlap4jConnection.Context(
+                connection,
+                connection.olap4jDatabaseMetaData,
+                null, null, null, null, null, null);
+        final String request =
+            connection.generateRequest(
+                context,
+                XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_CUBES,
+                new Object[] {"CATALOG_NAME", catalogName});
+        final Element root = connection.executeMetadataRequest(request, false);
+        final Map<String, List<String>> updates =
+            new HashMap<String, List<String>>();
+        for (Element row : childElements(root)) {
+            if (row.getLocalName().equals("row")) {
+                updates.put(
+                    stringElement(row, "CUBE_NAME"),
+                    Arrays.asList(
+                        stringElement(row, "LAST_SCHEMA_UPDATE"),
+                        stringElement(row, "LAST_DATA_UPDATE"),
+                        stringElement(row, "SCHEMA_NAME")));
+            }
+        }
+        final Map<String, List<String>> previousUpdates =
+            lastUpdates.put(catalogName, updates);
+        if (previousUpdates == null) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : updates.entrySet()) {
+            final List<String> update = entry.getValue();
+            final List<String> previous =
+                previousUpdates.get(entry.getKey());
+            final XmlaOlap4jConnection.CubeChange change;
+            if (previous == null) {
+                change = XmlaOlap4jConnection.CubeChange.ADDED_OR_REMOVED;
+            } else if (!Olap4jUtil.equal(previous.get(0), update.get(0))) {
+                change = XmlaOlap4jConnection.CubeChange.SCHEMA;
+            } else if (!Olap4jUtil.equal(previous.get(1), update.get(1))) {
+                change = XmlaOlap4jConnection.CubeChange.DATA;
+            } else {
+                continue;
+            }
+            connection.invalidateCube(
+                catalogName, update.get(2), entry.getKey(), change);
+        }
+        for (Map.Entry<String, List<String>> entry
+            : previousUpdates.entrySet())
+        {
+            if (!updates.containsKey(entry.getKey())) {
+                connection.invalidateCube(
+                    catalogName,
+                    entry.getValue().get(2),
+                    entry.getKey(),
+                    XmlaOlap4jConnection.CubeChange.ADDED_OR_REMOVED);
+            }
+        }
+    }
+}
+
+// End XmlaOlap4jUpdatePoller.java
@@ -27,6 +27,8 @@ import org.xml.sax.*;
 
 import java.io.*;
 import java.math.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -278,20 +280,63 @@ abstract class XmlaOlap4jUtil {
         for (int i = 0; i < childNodes.getLength(); i++) {
             final Node node = childNodes.item(i);
             if (name.equals(node.getLocalName())) {
-                String result = node.getTextContent();
-                // If content is not plain text then returns name of
-                // first child tag
-                if (result == null && node.hasChildNodes()) {
-                    result = node.getFirstChild().getLocalName();
-                }
-                return result;
+                return textContent(node);
             }
         }
         return null;
     }
 
+    /**
+     * Indexes the columns of a row by name, so that the value of each column
+     * can be read without scanning the row. Use this instead of repeated
+     * calls to {@link #stringElement(Element, String)} when decoding many
+     * columns of a row.
+     *
+     * <p>If a column occurs more than once, the index holds the first
+     * occurrence, as does {@link #stringElement(Element, String)}.
+     *
+     * @param row Row element
+     * @return Map from the local name of each child element to the element
+     */
+    static Map<String, Element> indexColumns(Element row) {
+        final Map<String, Element> columns = new HashMap<String, Element>();
+        for (Node node = row.getFirstChild(); node != null;
+            node = node.getNextSibling())
+        {
+            if (node instanceof Element) {
+                final String name = node.getLocalName();
+                if (!columns.containsKey(name)) {
+                    columns.put(name, (Element) node);
+                }
+            }
+        }
+        return columns;
+    }
+
+    static String stringElement(Map<String, Element> columns, String name) {
+        final Element column = columns.get(name);
+        return column == null ? null : textContent(column);
+    }
+
+    private static String textContent(Node node) {
+        String result = node.getTextContent();
+        // If content is not plain text then returns name of
+        // first child tag
+        if (result == null && node.hasChildNodes()) {
+            result = node.getFirstChild().getLocalName();
+        }
+        return result;
+    }
+
     static Integer integerElement(Element row, String name) {
-        final String s = stringElement(row, name);
+        return toInteger(stringElement(row, name));
+    }
+
+    static Integer integerElement(Map<String, Element> columns, String name) {
+        return toInteger(stringElement(columns, name));
+    }
+
+    private static Integer toInteger(String s) {
         if (s == null || s.equals("")) {
             return null;
         } else {
@@ -360,6 +405,40 @@ abstract class XmlaOlap4jUtil {
         return list;
     }
 
+    /**
+     * Returns a digest of a user and password, or the empty string if there
+     * is no user. Used to key state shared between connections, so that
+     * connections with different credentials do not share it, without
+     * holding the password.
+     *
+     * @param user User name, or null
+     * @param password Password, or null
+     * @return Digest of the credentials
+     */
+    static String credentialsDigest(String user, String password) {
+        if (user == null) {
+            return "";
+        }
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] digest;
+        try {
+            digest = md.digest((user + "\u0000" + password).getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (byte b : digest) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+
     /**
      * Converts a Node to a String.
      *
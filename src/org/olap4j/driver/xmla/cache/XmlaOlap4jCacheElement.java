@@ -34,6 +34,22 @@ class XmlaOlap4jCacheElement {
         new AtomicLong(Calendar.getInstance().getTimeInMillis());
 
 
+    /**
+     * The time in miliseconds when the response was stored. Unlike
+     * {@link #timestamp}, it is not updated when the entry is used, so it
+     * gives the age of the response.
+     */
+    private AtomicLong created =
+        new AtomicLong(Calendar.getInstance().getTimeInMillis());
+
+
+    /**
+     * The time in miliseconds when a background refresh of this entry was
+     * started, or 0 if no refresh is in progress.
+     */
+    private AtomicLong refreshStarted = new AtomicLong(0);
+
+
     /**
      * This holds the number of times the entry was used.
      */
@@ -46,6 +62,19 @@ class XmlaOlap4jCacheElement {
     private byte[] response = null;
 
 
+    /**
+     * Name of the catalog the request relates to, or null.
+     */
+    private String catalogName = null;
+
+
+    /**
+     * Name of the cube the request relates to, or null if the request relates
+     * to the whole catalog.
+     */
+    private String cubeName = null;
+
+
     /**
      * Updates this element's internal timestamp.
      */
@@ -62,6 +91,38 @@ class XmlaOlap4jCacheElement {
         this.hitMeter.incrementAndGet();
     }
 
+    /**
+     * Replaces the cached response by a fresher one. Resets the age of the
+     * entry and marks any background refresh as complete.
+     *
+     * @param response The new SOAP response
+     */
+    public void refreshResponse(byte[] response) {
+        this.response = response;
+        final long now = Calendar.getInstance().getTimeInMillis();
+        this.created.set(now);
+        this.timestamp.set(now);
+        this.refreshStarted.set(0);
+    }
+
+    /**
+     * Claims the right to refresh this entry in the background. Only one
+     * caller can hold the claim at a time; a claim older than
+     * <code>retryMillis</code> is considered abandoned (the refresh failed)
+     * and can be claimed again.
+     *
+     * @param now Current time in milliseconds
+     * @param retryMillis Time after which an unfinished refresh is abandoned
+     * @return Whether the caller obtained the claim
+     */
+    public boolean claimRefresh(long now, long retryMillis) {
+        final long started = this.refreshStarted.get();
+        if (started != 0 && now - started < retryMillis) {
+            return false;
+        }
+        return this.refreshStarted.compareAndSet(started, now);
+    }
+
     public byte[] getResponse() {
         return response;
     }
@@ -74,9 +135,29 @@ class XmlaOlap4jCacheElement {
         return timestamp;
     }
 
+    public AtomicLong getCreated() {
+        return created;
+    }
+
     public AtomicLong getHitCount() {
         return hitMeter;
     }
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public void setCatalogName(String catalogName) {
+        this.catalogName = catalogName;
+    }
+
+    public String getCubeName() {
+        return cubeName;
+    }
+
+    public void setCubeName(String cubeName) {
+        this.cubeName = cubeName;
+    }
 }
 
 // End XmlaOlap4jCacheElement.java
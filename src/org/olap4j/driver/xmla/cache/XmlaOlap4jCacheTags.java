@@ -0,0 +1,112 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.cache;
+
+/**
+ * Extracts the catalog and cube that a SOAP request relates to, so that cache
+ * implementations can tag their entries for
+ * {@link XmlaOlap4jInvalidatingCache#invalidate}.
+ */
+class XmlaOlap4jCacheTags {
+
+    private XmlaOlap4jCacheTags() {
+    }
+
+    /**
+     * Returns the catalog a request relates to, or null.
+     *
+     * <p>The catalog is taken from the <code>Catalog</code> property, or
+     * failing that the <code>CATALOG_NAME</code> restriction.
+     *
+     * @param request The SOAP complete message
+     * @return Catalog name, or null
+     */
+    static String getCatalogName(String request) {
+        final String catalogName = extractElement(request, "Catalog");
+        if (catalogName != null) {
+            return catalogName;
+        }
+        return extractElement(request, "CATALOG_NAME");
+    }
+
+    /**
+     * Returns the cube a request relates to, or null.
+     *
+     * <p>The cube is taken from the <code>CUBE_NAME</code> restriction;
+     * requests without one, such as MDX queries, relate to the whole catalog.
+     *
+     * @param request The SOAP complete message
+     * @return Cube name, or null
+     */
+    static String getCubeName(String request) {
+        final String cubeName = extractElement(request, "CUBE_NAME");
+        if (cubeName == null || cubeName.length() == 0) {
+            return null;
+        }
+        return cubeName;
+    }
+
+    /**
+     * Returns whether an entry must be removed when a cube is invalidated.
+     *
+     * @param entryCatalogName Catalog of the entry
+     * @param entryCubeName Cube of the entry
+     * @param catalogName Catalog being invalidated
+     * @param cubeName Cube being invalidated, or null for all cubes
+     * @return Whether the entry matches
+     */
+    static boolean matches(
+        String entryCatalogName,
+        String entryCubeName,
+        String catalogName,
+        String cubeName)
+    {
+        return catalogName.equals(entryCatalogName)
+            && (cubeName == null
+                || entryCubeName == null
+                || cubeName.equals(entryCubeName));
+    }
+
+    /**
+     * Returns the decoded text of the first element of a given name in a
+     * SOAP message, or null if there is no such element.
+     *
+     * @param request The SOAP complete message
+     * @param name Element name
+     * @return Text of the element, or null
+     */
+    private static String extractElement(String request, String name) {
+        final String start = "<" + name + ">";
+        final int i = request.indexOf(start);
+        if (i < 0) {
+            return null;
+        }
+        final int j = request.indexOf("</" + name + ">", i);
+        if (j < 0) {
+            return null;
+        }
+        return request.substring(i + start.length(), j)
+            .replace("&lt;", "<")
+            .replace("&gt;", ">")
+            .replace("&quot;", "\"")
+            .replace("&apos;", "'")
+            .replace("&amp;", "&");
+    }
+}
+
+// End XmlaOlap4jCacheTags.java
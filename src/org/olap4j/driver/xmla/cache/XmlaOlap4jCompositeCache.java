@@ -0,0 +1,447 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.cache;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.impl.Olap4jUtil;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Implementation of the XMLA SOAP cache which chains two caches: a small,
+ * fast first tier (L1) over a large, persistent second tier (L2).
+ *
+ * <p>A request is looked up in L1, then in L2. A response found in L2 is
+ * promoted to L1. New responses are stored in L1, and in L2 either
+ * immediately (write-through) or by a background thread (write-behind).
+ *
+ * <p>Each tier is configured with the properties which start with its name;
+ * for example, "<code>Cache.L1.SIZE=50</code>" sets the SIZE property of the
+ * first tier. Unless they are given a NAME, the tiers are named after the
+ * composite cache, so that connections which share a composite cache also
+ * share its tiers.
+ *
+ * <p>All parameters are optional, except that the default second tier
+ * requires "<code>L2.DIRECTORY</code>".
+ *
+ * <ul>
+ * <li><b>NAME</b><br />A unique identifier which allows two connections
+ * to share statistics and tiers. Defaults to a digest of the server URL and
+ * the credentials of the connection, so that connections of the same user to
+ * the same server share a cache, and find the entries of a persistent second
+ * tier again after a restart.</li>
+ * <li><b>L1</b><br />Class name of the first tier. Defaults to
+ * {@link XmlaOlap4jNamedMemoryCache}.</li>
+ * <li><b>L2</b><br />Class name of the second tier. Defaults to
+ * {@link XmlaOlap4jDiskCache}.</li>
+ * <li><b>WRITE_MODE</b><br />THROUGH (the default) or BEHIND.</li>
+ * </ul>
+ *
+ * <p>Requests for stale entries (see {@link XmlaOlap4jRefreshableCache}) are
+ * handled by L1, and invalidation (see {@link XmlaOlap4jInvalidatingCache})
+ * is forwarded to both tiers, if they support it.
+ *
+ * @see XmlaOlap4jCompositeCache.Property
+ */
+public class XmlaOlap4jCompositeCache
+    implements XmlaOlap4jRefreshableCache, XmlaOlap4jInvalidatingCache
+{
+    /**
+     * Map from cache name to the statistics of that cache.
+     */
+    private static final Map<String, Map<Statistic, AtomicLong>> statistics =
+        new ConcurrentHashMap<String, Map<Statistic, AtomicLong>>();
+
+    /**
+     * Executor which writes to the second tier in write-behind mode. It has a
+     * single thread, so that writes are performed in order.
+     */
+    private static final ExecutorService writer =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * Properties which will be considered for configuration.
+     *
+     * <p>All parameters are optional.
+     */
+    public static enum Property {
+        /**
+         * A unique identifier which allows two connections to share
+         * statistics and tiers.
+         */
+        NAME("Name of a cache to create or to share."),
+
+        /**
+         * Class name of the first tier. Properties which start with "L1."
+         * are passed to it.
+         */
+        L1("Class name of the first tier."),
+
+        /**
+         * Class name of the second tier. Properties which start with "L2."
+         * are passed to it.
+         */
+        L2("Class name of the second tier."),
+
+        /**
+         * When to write new responses to the second tier.
+         *
+         * @see WriteMode
+         */
+        WRITE_MODE("When to write new responses to the second tier.");
+
+        /**
+         * Creates a property.
+         *
+         * @param description Description of property
+         */
+        Property(String description) {
+            Olap4jUtil.discard(description);
+        }
+    }
+
+    /**
+     * Defines when new responses are written to the second tier.
+     */
+    public static enum WriteMode {
+        /** Responses are written to both tiers before the request returns. */
+        THROUGH,
+        /** Responses are written to the second tier in the background. */
+        BEHIND
+    }
+
+    /**
+     * Statistics maintained by each composite cache.
+     *
+     * @see XmlaOlap4jCompositeCache#getStatistics(String)
+     */
+    public static enum Statistic {
+        /** Number of requests answered by the first tier. */
+        L1_HITS,
+        /** Number of requests answered by the second tier. */
+        L2_HITS,
+        /** Number of requests found in neither tier. */
+        MISSES,
+        /** Number of writes to the second tier which failed. */
+        L2_WRITE_FAILURES
+    }
+
+    /**
+     * Tier of a composite cache.
+     */
+    public static enum Tier {
+        /** First tier. */
+        L1,
+        /** Second tier. */
+        L2
+    }
+
+    private XmlaOlap4jCache l1;
+    private XmlaOlap4jCache l2;
+    private String l1Id;
+    private String l2Id;
+    private WriteMode writeMode = WriteMode.THROUGH;
+    private Map<Statistic, AtomicLong> counters;
+
+    // implement XmlaOlap4jCache
+    public String setParameters(
+        Map<String, String> config,
+        Map<String, String> props)
+    {
+        String name = props.get(Property.NAME.name());
+        if (name == null) {
+            name = XmlaOlap4jShaEncoder.encodeSha1(
+                config.get(XmlaOlap4jDriver.Property.SERVER.name()) + "\n"
+                + XmlaOlap4jShaEncoder.encodeCredentials(config));
+            props.put(Property.NAME.name(), name);
+        }
+        if (props.containsKey(Property.WRITE_MODE.name())) {
+            writeMode =
+                WriteMode.valueOf(props.get(Property.WRITE_MODE.name()));
+        }
+        l1 = createTier(
+            props, Tier.L1, XmlaOlap4jNamedMemoryCache.class.getName());
+        l2 = createTier(props, Tier.L2, XmlaOlap4jDiskCache.class.getName());
+        l1Id = l1.setParameters(config, getTierProperties(props, Tier.L1));
+        l2Id = l2.setParameters(config, getTierProperties(props, Tier.L2));
+
+        synchronized (statistics) {
+            counters = statistics.get(name);
+            if (counters == null) {
+                counters = new EnumMap<Statistic, AtomicLong>(Statistic.class);
+                for (Statistic statistic : Statistic.values()) {
+                    counters.put(statistic, new AtomicLong());
+                }
+                statistics.put(name, counters);
+            }
+        }
+        return name;
+    }
+
+    // implement XmlaOlap4jCache
+    public byte[] get(
+        String id,
+        URL url,
+        byte[] request)
+        throws OlapException
+    {
+        this.validateState();
+        byte[] response = l1.get(l1Id, url, request);
+        if (response != null) {
+            counters.get(Statistic.L1_HITS).incrementAndGet();
+            return response;
+        }
+        response = l2.get(l2Id, url, request);
+        if (response != null) {
+            counters.get(Statistic.L2_HITS).incrementAndGet();
+            // Promote to the first tier.
+            l1.put(l1Id, url, request, response);
+            return response;
+        }
+        counters.get(Statistic.MISSES).incrementAndGet();
+        return null;
+    }
+
+    // implement XmlaOlap4jCache
+    public void put(
+        String id,
+        final URL url,
+        final byte[] request,
+        final byte[] response)
+        throws OlapException
+    {
+        this.validateState();
+        l1.put(l1Id, url, request, response);
+        switch (writeMode) {
+        case THROUGH:
+            l2.put(l2Id, url, request, response);
+            break;
+        case BEHIND:
+            writer.submit(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            l2.put(l2Id, url, request, response);
+                        } catch (Exception e) {
+                            counters.get(Statistic.L2_WRITE_FAILURES)
+                                .incrementAndGet();
+                        }
+                    }
+                });
+            break;
+        default:
+            throw Olap4jUtil.unexpected(writeMode);
+        }
+    }
+
+    // implement XmlaOlap4jRefreshableCache
+    public boolean claimRefresh(
+        String id,
+        URL url,
+        byte[] request)
+        throws OlapException
+    {
+        this.validateState();
+        return l1 instanceof XmlaOlap4jRefreshableCache
+            && ((XmlaOlap4jRefreshableCache) l1).claimRefresh(
+                l1Id, url, request);
+    }
+
+    // implement XmlaOlap4jInvalidatingCache
+    public void invalidate(
+        String id,
+        String catalogName,
+        String cubeName)
+        throws OlapException
+    {
+        this.validateState();
+        if (l1 instanceof XmlaOlap4jInvalidatingCache) {
+            ((XmlaOlap4jInvalidatingCache) l1).invalidate(
+                l1Id, catalogName, cubeName);
+        }
+        if (l2 instanceof XmlaOlap4jInvalidatingCache) {
+            ((XmlaOlap4jInvalidatingCache) l2).invalidate(
+                l2Id, catalogName, cubeName);
+        }
+    }
+
+    // implement XmlaOlap4jCache
+    public void flushCache() {
+        if (l1 != null) {
+            l1.flushCache();
+            l2.flushCache();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of a composite cache.
+     *
+     * @param id The cache name, as returned by
+     * {@link #setParameters(java.util.Map, java.util.Map)}
+     * @return Map of statistic values, or an empty map if there is no cache
+     * with that name
+     */
+    public Map<Statistic, Long> getStatistics(String id) {
+        final Map<Statistic, AtomicLong> counters = statistics.get(id);
+        if (counters == null) {
+            return Collections.emptyMap();
+        }
+        final Map<Statistic, Long> map =
+            new EnumMap<Statistic, Long>(Statistic.class);
+        for (Map.Entry<Statistic, AtomicLong> entry : counters.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    /**
+     * Returns the hit ratio of a tier of a composite cache: the number of
+     * requests it answered divided by the number of requests it received.
+     * The second tier only receives the requests which the first tier could
+     * not answer.
+     *
+     * @param id The cache name, as returned by
+     * {@link #setParameters(java.util.Map, java.util.Map)}
+     * @param tier Tier
+     * @return Hit ratio between 0 and 1, or 0 if the tier has not received
+     * any request
+     */
+    public double getHitRatio(String id, Tier tier) {
+        final Map<Statistic, Long> map = getStatistics(id);
+        if (map.isEmpty()) {
+            return 0d;
+        }
+        final long l1Hits = map.get(Statistic.L1_HITS);
+        final long l2Hits = map.get(Statistic.L2_HITS);
+        final long misses = map.get(Statistic.MISSES);
+        final long hits;
+        final long requests;
+        switch (tier) {
+        case L1:
+            hits = l1Hits;
+            requests = l1Hits + l2Hits + misses;
+            break;
+        case L2:
+            hits = l2Hits;
+            requests = l2Hits + misses;
+            break;
+        default:
+            throw Olap4jUtil.unexpected(tier);
+        }
+        return requests == 0 ? 0d : (double) hits / requests;
+    }
+
+    /**
+     * Instantiates the cache of a tier.
+     *
+     * @param props Properties of the composite cache
+     * @param tier Tier
+     * @param defaultClassName Class to use if the property is not set
+     * @return Cache
+     */
+    private static XmlaOlap4jCache createTier(
+        Map<String, String> props,
+        Tier tier,
+        String defaultClassName)
+    {
+        String className = props.get(tier.name());
+        if (className == null) {
+            className = defaultClassName;
+        }
+        try {
+            return (XmlaOlap4jCache) Class.forName(className)
+                .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(
+                "The cache class of tier " + tier + " could not be found : "
+                + className, e);
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException(
+                "The cache class of tier " + tier
+                + " could not be instanciated : " + className, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(
+                "The cache class of tier " + tier
+                + " could not be instanciated : " + className, e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(
+                "The cache class of tier " + tier
+                + " has no public constructor without arguments : "
+                + className, e);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            throw new IllegalArgumentException(
+                "The cache class of tier " + tier
+                + " could not be instanciated : " + className, e);
+        }
+    }
+
+    /**
+     * Returns the properties of a tier: those which start with the name of
+     * the tier and a dot, with that prefix removed. If the NAME property is
+     * not set, derives it from the name of the composite cache.
+     *
+     * @param props Properties of the composite cache
+     * @param tier Tier
+     * @return Properties of the tier
+     */
+    private static Map<String, String> getTierProperties(
+        Map<String, String> props,
+        Tier tier)
+    {
+        final String prefix = tier.name() + ".";
+        final Map<String, String> tierProps = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : props.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                tierProps.put(
+                    entry.getKey().substring(prefix.length()),
+                    entry.getValue());
+            }
+        }
+        if (!tierProps.containsKey(Property.NAME.name())) {
+            tierProps.put(
+                Property.NAME.name(),
+                props.get(Property.NAME.name()) + "." + tier.name());
+        }
+        return tierProps;
+    }
+
+    /**
+     * Helper method to validate that the cache is initialized.
+     *
+     * @throws XmlaOlap4jInvalidStateException When the cache is not
+     * initialized.
+     */
+    private void validateState() throws XmlaOlap4jInvalidStateException {
+        if (this.l1 == null) {
+            throw new XmlaOlap4jInvalidStateException();
+        }
+    }
+}
+
+// End XmlaOlap4jCompositeCache.java
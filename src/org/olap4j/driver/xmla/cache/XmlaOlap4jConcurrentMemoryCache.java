@@ -19,13 +19,14 @@ package org.olap4j.driver.xmla.cache;
 
 import org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache.Mode;
 import org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache.Property;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache.Statistic;
 import org.olap4j.impl.Olap4jUtil;
 
 import java.net.URL;
-import java.util.Calendar;
-import java.util.Map;
+import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Thread-safe cache object which supports concurrent access.
@@ -33,6 +34,14 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>It keeps its cache element objects in memory in an internal hash
  * table. Instantiate it and use. As simple as that.
  *
+ * <p>If a soft timeout is set, entries older than the soft timeout are still
+ * served, but the first caller to hit such a stale entry is asked to refresh
+ * it (see {@link #claimRefresh}). Entries older than the (hard) timeout are
+ * never served.
+ *
+ * <p>Entries are tagged with the catalog and cube named in their request (see
+ * {@link #invalidate}).
+ *
  * @author Luc Boudreau
  */
 class XmlaOlap4jConcurrentMemoryCache {
@@ -81,6 +90,18 @@ class XmlaOlap4jConcurrentMemoryCache {
      */
     private int cacheTimeout = DEFAULT_CACHE_TIMEOUT;
 
+    /**
+     * Soft cache timeout, in seconds, after which entries are served stale
+     * and refreshed. Zero if refresh-ahead is disabled.
+     */
+    private int softTimeout = 0;
+
+    /**
+     * Counters, one per statistic.
+     */
+    private final Map<Statistic, AtomicLong> statistics =
+        new EnumMap<Statistic, AtomicLong>(Statistic.class);
+
     /**
      * Creates an XmlaOlap4jConcurrentMemoryCache.
      *
@@ -107,8 +128,21 @@ class XmlaOlap4jConcurrentMemoryCache {
             {
                 this.setCacheMode(
                     entry.getValue().toString());
+            } else if (Property.SOFT_TIMEOUT.name().equalsIgnoreCase(
+                    entry.getKey().toString()))
+            {
+                this.setSoftTimeout(
+                    Integer.parseInt(entry.getValue().toString()));
             }
         }
+        if (softTimeout >= cacheTimeout) {
+            throw new IllegalArgumentException(
+                "Cache soft timeout must be less than the timeout ("
+                + cacheTimeout + "), but was " + softTimeout);
+        }
+        for (Statistic statistic : Statistic.values()) {
+            statistics.put(statistic, new AtomicLong());
+        }
     }
 
     /**
@@ -150,6 +184,34 @@ class XmlaOlap4jConcurrentMemoryCache {
         this.cacheTimeout = seconds;
     }
 
+    /**
+     * Sets the soft expiration timeout.
+     *
+     * @param seconds The number of seconds after which entries are served
+     * stale and refreshed in the background.
+     */
+    private void setSoftTimeout(int seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException(
+                "Cache soft timeout must be positive, but was " + seconds);
+        }
+        this.softTimeout = seconds;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return Map of statistic values
+     */
+    Map<Statistic, Long> getStatistics() {
+        final Map<Statistic, Long> map =
+            new EnumMap<Statistic, Long>(Statistic.class);
+        for (Entry<Statistic, AtomicLong> entry : statistics.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
     byte[] get(
         final URL url,
         final byte[] request)
@@ -168,6 +230,12 @@ class XmlaOlap4jConcurrentMemoryCache {
             if (entry != null) {
                 entry.incrementHitCount();
                 entry.refreshTimestamp();
+                statistics.get(Statistic.HITS).incrementAndGet();
+                if (isStale(entry, Calendar.getInstance().getTimeInMillis())) {
+                    statistics.get(Statistic.STALE_HITS).incrementAndGet();
+                }
+            } else {
+                statistics.get(Statistic.MISSES).incrementAndGet();
             }
 
             // Return a copy to prevent corruption
@@ -177,6 +245,37 @@ class XmlaOlap4jConcurrentMemoryCache {
         }
     }
 
+    /**
+     * Claims the right to refresh an entry. See
+     * {@link XmlaOlap4jRefreshableCache#claimRefresh}.
+     *
+     * @param url The URL where the SOAP message was sent
+     * @param request The SOAP complete message
+     * @return Whether the caller must refresh the entry
+     */
+    boolean claimRefresh(
+        final URL url,
+        final byte[] request)
+    {
+        if (softTimeout == 0) {
+            return false;
+        }
+        synchronized (this.cacheEntries) {
+            final XmlaOlap4jCacheElement entry = this.cacheEntries.get(
+                XmlaOlap4jShaEncoder.encodeSha1(
+                    url.toExternalForm() + new String(request)));
+            final long now = Calendar.getInstance().getTimeInMillis();
+            if (entry == null
+                || !isStale(entry, now)
+                || !entry.claimRefresh(now, softTimeout * 1000L))
+            {
+                return false;
+            }
+            statistics.get(Statistic.REFRESHES).incrementAndGet();
+            return true;
+        }
+    }
+
     void put(
         final URL url,
         final byte[] request,
@@ -184,6 +283,17 @@ class XmlaOlap4jConcurrentMemoryCache {
     {
         // Take the cache for ourself
         synchronized (this.cacheEntries) {
+            // A refreshed entry replaces the stale one in place.
+            final XmlaOlap4jCacheElement existing =
+                this.cacheEntries.get(
+                    XmlaOlap4jShaEncoder.encodeSha1(
+                        String.valueOf(url.toExternalForm())
+                        + new String(request)));
+            if (existing != null) {
+                existing.refreshResponse(response);
+                return;
+            }
+
             // Make some cleanup
             cleanExpired(true);
 
@@ -191,6 +301,11 @@ class XmlaOlap4jConcurrentMemoryCache {
                 // Create the entry
                 XmlaOlap4jCacheElement entry = new XmlaOlap4jCacheElement();
                 entry.setResponse(response);
+                final String requestString = new String(request);
+                entry.setCatalogName(
+                    XmlaOlap4jCacheTags.getCatalogName(requestString));
+                entry.setCubeName(
+                    XmlaOlap4jCacheTags.getCubeName(requestString));
 
                 this.cacheEntries.put(
                     XmlaOlap4jShaEncoder.encodeSha1(
@@ -204,6 +319,33 @@ class XmlaOlap4jConcurrentMemoryCache {
     }
 
 
+    /**
+     * Removes the entries which relate to a cube. See
+     * {@link XmlaOlap4jInvalidatingCache#invalidate}.
+     *
+     * @param catalogName Name of the catalog
+     * @param cubeName Name of the cube, or null for all cubes of the catalog
+     */
+    void invalidate(
+        final String catalogName,
+        final String cubeName)
+    {
+        synchronized (this.cacheEntries) {
+            final Iterator<XmlaOlap4jCacheElement> iterator =
+                this.cacheEntries.values().iterator();
+            while (iterator.hasNext()) {
+                final XmlaOlap4jCacheElement entry = iterator.next();
+                if (XmlaOlap4jCacheTags.matches(
+                        entry.getCatalogName(), entry.getCubeName(),
+                        catalogName, cubeName))
+                {
+                    iterator.remove();
+                    statistics.get(Statistic.INVALIDATIONS).incrementAndGet();
+                }
+            }
+        }
+    }
+
     /**
      * Cleans expired cache entries.
      *
@@ -230,9 +372,40 @@ class XmlaOlap4jConcurrentMemoryCache {
             && toBeEvicted != null)
         {
             this.cacheEntries.remove(toBeEvicted);
+            statistics.get(Statistic.EVICTIONS).incrementAndGet();
         }
     }
 
+    /**
+     * Returns whether an entry has expired and must not be served anymore.
+     *
+     * <p>Without a soft timeout, the timeout counts from the last use of the
+     * entry. With a soft timeout, it counts from the time the response was
+     * stored, so that popular entries still get refreshed.
+     *
+     * @param entry Cache entry
+     * @param now Current time in milliseconds
+     * @return Whether the entry has expired
+     */
+    private boolean isExpired(XmlaOlap4jCacheElement entry, long now) {
+        final long since = softTimeout == 0
+            ? entry.getTimestamp().longValue()
+            : entry.getCreated().longValue();
+        return now > since + (cacheTimeout * 1000L);
+    }
+
+    /**
+     * Returns whether an entry is past the soft timeout.
+     *
+     * @param entry Cache entry
+     * @param now Current time in milliseconds
+     * @return Whether the entry is stale
+     */
+    private boolean isStale(XmlaOlap4jCacheElement entry, long now) {
+        return softTimeout != 0
+            && now > entry.getCreated().longValue() + (softTimeout * 1000L);
+    }
+
     /**
      * Scans for the key of the cache entry to be evicted based
      * on the selected time based eviction mode.
@@ -256,12 +429,12 @@ class XmlaOlap4jConcurrentMemoryCache {
                 : this.cacheEntries.entrySet())
         {
             // Check if not expired
-            if (Calendar.getInstance().getTimeInMillis() >
-                (entry.getValue().getTimestamp().longValue()
-                    + (cacheTimeout * 1000)))
+            if (isExpired(
+                    entry.getValue(), Calendar.getInstance().getTimeInMillis()))
             {
                 // Evicts it.
                 this.cacheEntries.remove(entry.getKey());
+                statistics.get(Statistic.EVICTIONS).incrementAndGet();
                 continue;
             }
 
@@ -308,12 +481,12 @@ class XmlaOlap4jConcurrentMemoryCache {
             : this.cacheEntries.entrySet())
         {
             // Checks if not expired
-            if (Calendar.getInstance().getTimeInMillis() >
-                (entry.getValue().getTimestamp().longValue()
-                    + (cacheTimeout * 1000)))
+            if (isExpired(
+                    entry.getValue(), Calendar.getInstance().getTimeInMillis()))
             {
                 // Evicts it
                 this.cacheEntries.remove(entry.getKey());
+                statistics.get(Statistic.EVICTIONS).incrementAndGet();
                 continue;
             }
 
@@ -0,0 +1,600 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.cache;
+
+import org.olap4j.impl.Olap4jUtil;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * <p>Implementation of the XMLA SOAP cache that stores its entries as files
+ * in a directory, so that they survive a restart of the JVM. It is slower
+ * than {@link XmlaOlap4jNamedMemoryCache} but can hold many more entries; it
+ * is typically used as the second tier of a
+ * {@link XmlaOlap4jCompositeCache}.
+ *
+ * <p>Connections which use the same directory and name share a cache space.
+ * When the space holds more than SIZE entries, the least recently used
+ * entries are deleted. Entries are keyed on the user and password of the
+ * connection as well as on the request, so connections with different
+ * credentials never see each other's responses. The directories which the
+ * cache creates are readable only by their owner.
+ *
+ * <p>The cache keeps an index of the entries of each space in memory, built
+ * when the space is first opened, so that eviction and invalidation do not
+ * need to read every file. Entries which another process writes to the space
+ * later are not seen.
+ *
+ * <p>DIRECTORY is required; the other parameters are optional.
+ *
+ * <ul>
+ * <li><b>DIRECTORY</b><br />The directory under which to create the cache
+ * space. There is no default; in particular, the cache never stores
+ * responses in the shared temporary directory unless told to.</li>
+ * <li><b>NAME</b><br />The name of the cache space, which is a sub-directory
+ * of DIRECTORY. Defaults to <code>default</code>.</li>
+ * <li><b>SIZE</b><br />The maximum number of entries in the cache
+ * space. Defaults to 1000.</li>
+ * <li><b>TIMEOUT</b><br />The number of seconds after which entries
+ * expire. Defaults to one hour.</li>
+ * </ul>
+ *
+ * @see XmlaOlap4jDiskCache.Property
+ */
+public class XmlaOlap4jDiskCache implements XmlaOlap4jInvalidatingCache {
+
+    /**
+     * Default cache size.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /**
+     * Default cache timeout (1 hour). The value is in seconds.
+     */
+    private static final int DEFAULT_CACHE_TIMEOUT = 3600;
+
+    /**
+     * Suffix of the files which hold cache entries.
+     */
+    private static final String SUFFIX = ".response";
+
+    /**
+     * Map from the canonical path of a cache space to the space.
+     */
+    private static final Map<String, Space> SPACES =
+        new HashMap<String, Space>();
+
+    /**
+     * Properties which will be considered for configuration.
+     *
+     * <p>DIRECTORY is required; the other parameters are optional.
+     */
+    public static enum Property {
+        /**
+         * The directory under which to create the cache space. Required.
+         */
+        DIRECTORY("Directory under which to create the cache space."),
+
+        /**
+         * Name of the cache space. Connections which use the same directory
+         * and name share their entries.
+         */
+        NAME("Name of a cache space to create or to share."),
+
+        /**
+         * The maximum number of entries in the cache space.
+         */
+        SIZE("Maximum number of SOAP responses to store."),
+
+        /**
+         * The number of seconds after which entries expire.
+         */
+        TIMEOUT("Maximum TTL of the SOAP responses, in seconds.");
+
+        /**
+         * Creates a property.
+         *
+         * @param description Description of property
+         */
+        Property(String description) {
+            Olap4jUtil.discard(description);
+        }
+    }
+
+    private Space space;
+
+    /**
+     * Digest of the credentials of the connection, which is part of the key
+     * of every entry.
+     */
+    private String credentials;
+
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private int cacheTimeout = DEFAULT_CACHE_TIMEOUT;
+
+    /**
+     * Makes sure that the cache is not accessed before it is configured.
+     */
+    private boolean initDone = false;
+
+    // implement XmlaOlap4jCache
+    public String setParameters(
+        Map<String, String> config,
+        Map<String, String> props)
+    {
+        final String parent = props.get(Property.DIRECTORY.name());
+        if (parent == null) {
+            throw new IllegalArgumentException(
+                "Cache property " + Property.DIRECTORY.name()
+                + " must be specified");
+        }
+        String name = props.get(Property.NAME.name());
+        if (name == null) {
+            name = "default";
+        }
+        if (props.containsKey(Property.SIZE.name())) {
+            cacheSize = Integer.parseInt(props.get(Property.SIZE.name()));
+            if (cacheSize <= 0) {
+                throw new IllegalArgumentException(
+                    "Cache size must be positive, but was " + cacheSize);
+            }
+        }
+        if (props.containsKey(Property.TIMEOUT.name())) {
+            cacheTimeout =
+                Integer.parseInt(props.get(Property.TIMEOUT.name()));
+            if (cacheTimeout <= 0) {
+                throw new IllegalArgumentException(
+                    "Cache timeout must be positive, but was "
+                    + cacheTimeout);
+            }
+        }
+        final File parentDirectory = new File(parent);
+        final File directory = new File(parentDirectory, name);
+        mkdir(parentDirectory);
+        mkdir(directory);
+        final String path;
+        try {
+            path = directory.getCanonicalPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Invalid cache directory " + directory, e);
+        }
+        synchronized (SPACES) {
+            space = SPACES.get(path);
+            if (space == null) {
+                space = new Space(directory);
+                SPACES.put(path, space);
+            }
+        }
+        credentials = XmlaOlap4jShaEncoder.encodeCredentials(config);
+        this.initDone = true;
+        return path;
+    }
+
+    // implement XmlaOlap4jCache
+    public byte[] get(
+        String id,
+        URL url,
+        byte[] request)
+        throws XmlaOlap4jInvalidStateException
+    {
+        this.validateState();
+        final String name = getFileName(url, request);
+        final File file = new File(space.directory, name);
+        final IndexEntry indexEntry;
+        synchronized (space) {
+            // Lookup in an access-ordered map records the use.
+            indexEntry = space.index.get(name);
+            if (indexEntry == null) {
+                return null;
+            }
+            if (isExpired(indexEntry.created)) {
+                space.index.remove(name);
+                file.delete();
+                return null;
+            }
+        }
+        // Files are replaced by renaming, so it is safe to read outside the
+        // lock.
+        final Entry entry = read(file, true);
+        if (entry == null) {
+            synchronized (space) {
+                // Unless a concurrent put has replaced the entry since.
+                if (space.index.get(name) == indexEntry) {
+                    space.index.remove(name);
+                }
+            }
+            return null;
+        }
+        // Record the use, so that the LRU order survives a restart.
+        file.setLastModified(System.currentTimeMillis());
+        return entry.response;
+    }
+
+    // implement XmlaOlap4jCache
+    public void put(
+        String id,
+        URL url,
+        byte[] request,
+        byte[] response)
+        throws XmlaOlap4jInvalidStateException
+    {
+        this.validateState();
+        final String requestString = new String(request);
+        final Entry entry =
+            new Entry(
+                System.currentTimeMillis(),
+                XmlaOlap4jCacheTags.getCatalogName(requestString),
+                XmlaOlap4jCacheTags.getCubeName(requestString),
+                response);
+        final String name = getFileName(url, request);
+        final File file = new File(space.directory, name);
+        final File tmpFile = write(space.directory, entry);
+        if (tmpFile == null) {
+            return;
+        }
+        final List<File> evicted = new ArrayList<File>();
+        synchronized (space) {
+            if (!space.index.containsKey(name)) {
+                makeRoom(evicted);
+            }
+            // Rename over the old file, so that a concurrent get reads
+            // either the old entry or the new one. Some platforms cannot
+            // rename onto an existing file; there, delete it first.
+            if (tmpFile.renameTo(file)
+                || file.delete() && tmpFile.renameTo(file))
+            {
+                space.index.put(
+                    name,
+                    new IndexEntry(
+                        entry.created, entry.catalogName, entry.cubeName));
+            } else {
+                space.index.remove(name);
+                tmpFile.delete();
+            }
+        }
+        delete(evicted);
+    }
+
+    // implement XmlaOlap4jInvalidatingCache
+    public void invalidate(
+        String id,
+        String catalogName,
+        String cubeName)
+        throws XmlaOlap4jInvalidStateException
+    {
+        this.validateState();
+        final List<File> invalidated = new ArrayList<File>();
+        synchronized (space) {
+            final Iterator<Map.Entry<String, IndexEntry>> iterator =
+                space.index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, IndexEntry> entry = iterator.next();
+                final IndexEntry indexEntry = entry.getValue();
+                if (XmlaOlap4jCacheTags.matches(
+                        indexEntry.catalogName, indexEntry.cubeName,
+                        catalogName, cubeName))
+                {
+                    iterator.remove();
+                    invalidated.add(
+                        new File(space.directory, entry.getKey()));
+                }
+            }
+        }
+        delete(invalidated);
+    }
+
+    // implement XmlaOlap4jCache
+    public void flushCache() {
+        if (!initDone) {
+            return;
+        }
+        synchronized (space) {
+            space.index.clear();
+            delete(Arrays.asList(listFiles(space.directory)));
+        }
+    }
+
+    /**
+     * Removes expired entries from the index, then the least recently used
+     * entries until there is room for one more entry. Must be called while
+     * holding the lock on the space.
+     *
+     * @param evicted List to which to add the files to delete
+     */
+    private void makeRoom(List<File> evicted) {
+        final Iterator<Map.Entry<String, IndexEntry>> iterator =
+            space.index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, IndexEntry> entry = iterator.next();
+            if (isExpired(entry.getValue().created)
+                || space.index.size() >= cacheSize)
+            {
+                // Entries are in LRU order, least recently used first.
+                iterator.remove();
+                evicted.add(new File(space.directory, entry.getKey()));
+            }
+        }
+    }
+
+    private boolean isExpired(long created) {
+        return System.currentTimeMillis()
+            > created + cacheTimeout * 1000L;
+    }
+
+    private String getFileName(URL url, byte[] request) {
+        return XmlaOlap4jShaEncoder.encodeSha1(
+            credentials + "\n" + url.toExternalForm() + "\n"
+            + new String(request))
+            + SUFFIX;
+    }
+
+    private static File[] listFiles(File directory) {
+        final File[] files =
+            directory.listFiles(
+                new FilenameFilter() {
+                    public boolean accept(File dir, String name) {
+                        return name.endsWith(SUFFIX);
+                    }
+                });
+        return files == null ? new File[0] : files;
+    }
+
+    private static void delete(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates a directory, if it does not exist, and makes it accessible
+     * only to its owner.
+     *
+     * @param directory Directory
+     */
+    private static void mkdir(File directory) {
+        if (directory.isDirectory()) {
+            return;
+        }
+        if (!directory.mkdirs()) {
+            throw new IllegalArgumentException(
+                "Cannot create cache directory " + directory);
+        }
+        // File.setReadable etc. appeared in JDK 1.6, and this code compiles
+        // against JDK 1.5, so call them reflectively. First revoke access
+        // for everyone, then grant it to the owner.
+        for (String methodName
+            : new String[] {"setReadable", "setWritable", "setExecutable"})
+        {
+            try {
+                final java.lang.reflect.Method method =
+                    File.class.getMethod(
+                        methodName, boolean.class, boolean.class);
+                method.invoke(directory, false, false);
+                method.invoke(directory, true, true);
+            } catch (Exception e) {
+                // JDK 1.5. The directory has the default permissions.
+            }
+        }
+    }
+
+    /**
+     * Reads an entry from a file.
+     *
+     * @param file File
+     * @param withResponse Whether to read the response, or only the header
+     * @return Entry, or null if the file does not exist or cannot be read
+     */
+    private static Entry read(File file, boolean withResponse) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            final long created = in.readLong();
+            final String catalogName = readNullable(in);
+            final String cubeName = readNullable(in);
+            byte[] response = null;
+            if (withResponse) {
+                final int length = in.readInt();
+                if (length < 0 || length > file.length()) {
+                    // Corrupt length. Do not trust it to size the buffer.
+                    return null;
+                }
+                response = new byte[length];
+                in.readFully(response);
+            }
+            return new Entry(created, catalogName, cubeName, response);
+        } catch (IOException e) {
+            // Corrupt or concurrently deleted file. Treat it as a miss.
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes an entry to a new temporary file in a directory. The caller
+     * renames it, so that a reader never sees a partially written entry.
+     *
+     * @param directory Directory
+     * @param entry Entry
+     * @return Temporary file, or null if the entry could not be written
+     */
+    private static File write(File directory, Entry entry) {
+        File tmpFile = null;
+        DataOutputStream out = null;
+        try {
+            tmpFile = File.createTempFile("entry", ".tmp", directory);
+            out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeLong(entry.created);
+            writeNullable(out, entry.catalogName);
+            writeNullable(out, entry.cubeName);
+            out.writeInt(entry.response.length);
+            out.write(entry.response);
+            out.close();
+            out = null;
+            return tmpFile;
+        } catch (IOException e) {
+            // The cache is best-effort. The response will be fetched from
+            // the server next time.
+            close(out);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+            return null;
+        }
+    }
+
+    private static String readNullable(DataInputStream in)
+        throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String s)
+        throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Helper method to validate that the cache is initialized.
+     *
+     * @throws XmlaOlap4jInvalidStateException When the cache is not
+     * initialized.
+     */
+    private void validateState() throws XmlaOlap4jInvalidStateException {
+        if (!this.initDone) {
+            throw new XmlaOlap4jInvalidStateException();
+        }
+    }
+
+    /**
+     * A cache space: a directory, and the index of its entries. Access to the
+     * index is synchronized on the space.
+     */
+    private static class Space {
+        final File directory;
+
+        /**
+         * Map from file name to the header of the entry in that file, in
+         * least recently used order.
+         */
+        final LinkedHashMap<String, IndexEntry> index =
+            new LinkedHashMap<String, IndexEntry>(16, 0.75f, true);
+
+        /**
+         * Creates a Space, and builds its index from the files in its
+         * directory.
+         *
+         * @param directory Directory
+         */
+        Space(File directory) {
+            this.directory = directory;
+            final File[] files = listFiles(directory);
+            final long[] lastUsed = new long[files.length];
+            for (int i = 0; i < files.length; i++) {
+                lastUsed[i] = files[i].lastModified();
+            }
+            final Integer[] order = new Integer[files.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(
+                order,
+                new Comparator<Integer>() {
+                    public int compare(Integer o1, Integer o2) {
+                        final long t1 = lastUsed[o1];
+                        final long t2 = lastUsed[o2];
+                        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+                    }
+                });
+            for (Integer i : order) {
+                final Entry entry = read(files[i], false);
+                if (entry == null) {
+                    files[i].delete();
+                } else {
+                    index.put(
+                        files[i].getName(),
+                        new IndexEntry(
+                            entry.created, entry.catalogName,
+                            entry.cubeName));
+                }
+            }
+        }
+    }
+
+    /**
+     * Header of a cache file, as held in the index of its space.
+     */
+    private static class IndexEntry {
+        final long created;
+        final String catalogName;
+        final String cubeName;
+
+        IndexEntry(long created, String catalogName, String cubeName) {
+            this.created = created;
+            this.catalogName = catalogName;
+            this.cubeName = cubeName;
+        }
+    }
+
+    /**
+     * Contents of a cache file.
+     */
+    private static class Entry {
+        final long created;
+        final String catalogName;
+        final String cubeName;
+        final byte[] response;
+
+        Entry(
+            long created,
+            String catalogName,
+            String cubeName,
+            byte[] response)
+        {
+            this.created = created;
+            this.catalogName = catalogName;
+            this.cubeName = cubeName;
+            this.response = response;
+        }
+    }
+}
+
+// End XmlaOlap4jDiskCache.java
@@ -0,0 +1,54 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.cache;
+
+import org.olap4j.OlapException;
+
+/**
+ * XMLA driver cache which can invalidate the entries of a single cube.
+ *
+ * <p>Implementations tag each entry with the catalog and cube that its
+ * request relates to. The driver calls {@link #invalidate} when it detects
+ * that the schema or the data of a cube has changed on the server, which
+ * makes it safe to use long timeouts.
+ */
+public interface XmlaOlap4jInvalidatingCache extends XmlaOlap4jCache {
+
+    /**
+     * Removes the cached responses which relate to a cube.
+     *
+     * <p>Responses which relate to the catalog but to no particular cube
+     * (for example, the list of cubes, or the results of MDX queries) are
+     * removed too. Responses which do not relate to a catalog are kept.
+     *
+     * @param id The connection unique name which called this cache.
+     * @param catalogName Name of the catalog
+     * @param cubeName Name of the cube, or null to remove the responses of
+     * all the cubes in the catalog
+     *
+     * @throws OlapException when operations to the cache are
+     * performed but it hasn't been initialized.
+     */
+    public void invalidate(
+        String id,
+        String catalogName,
+        String cubeName)
+        throws OlapException;
+}
+
+// End XmlaOlap4jInvalidatingCache.java
@@ -20,8 +20,7 @@ package org.olap4j.driver.xmla.cache;
 import org.olap4j.impl.Olap4jUtil;
 
 import java.net.URL;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -45,11 +44,20 @@ import java.util.concurrent.ConcurrentHashMap;
  * <li><b>MODE</b><br />Supported eviction modes are LIFO (last in first out),
  * FIFO (first in first out), LFU (least frequently used) and MFU
  * (most frequently used)</li>
+ * <li><b>SOFT_TIMEOUT</b><br />The number of seconds after which entries
+ * are considered stale. A stale entry is still served, but the proxy
+ * refreshes it in the background. Must be less than TIMEOUT, which then
+ * becomes the age after which entries are no longer served.</li>
  * </ul>
  *
+ * <p>Entries are tagged with the catalog and cube named in their request, so
+ * that the driver can invalidate a single cube when it changes on the server.
+ *
  * @see XmlaOlap4jNamedMemoryCache.Property
  */
-public class XmlaOlap4jNamedMemoryCache implements XmlaOlap4jCache {
+public class XmlaOlap4jNamedMemoryCache
+    implements XmlaOlap4jRefreshableCache, XmlaOlap4jInvalidatingCache
+{
 
     /**
      * <p>Thread safe hashmap which will be used to keep track of
@@ -94,7 +102,16 @@ public class XmlaOlap4jNamedMemoryCache implements XmlaOlap4jCache {
          * LIFO (last in first out), FIFO (first in first out),
          * LFU (least frequently used) and MFU (most frequently used).
          */
-        MODE("Eviction mode to set to the given cache name.");
+        MODE("Eviction mode to set to the given cache name."),
+
+        /**
+         * The number of seconds after which entries are considered stale.
+         * Stale entries are still served while a single background refresh
+         * is issued. If not set, entries are never served stale.
+         */
+        SOFT_TIMEOUT(
+            "Age in seconds after which cached SOAP responses are served "
+            + "stale and refreshed in the background.");
 
         /**
          * Creates a property.
@@ -122,6 +139,27 @@ public class XmlaOlap4jNamedMemoryCache implements XmlaOlap4jCache {
     }
 
 
+    /**
+     * Statistics maintained by each cache space.
+     *
+     * @see XmlaOlap4jNamedMemoryCache#getStatistics(String)
+     */
+    public static enum Statistic {
+        /** Number of requests answered from the cache. */
+        HITS,
+        /** Number of requests not found in the cache. */
+        MISSES,
+        /** Number of hits which returned a stale response. */
+        STALE_HITS,
+        /** Number of background refreshes issued for stale entries. */
+        REFRESHES,
+        /** Number of entries removed because they expired or to make room. */
+        EVICTIONS,
+        /** Number of entries removed because their cube changed. */
+        INVALIDATIONS
+    }
+
+
     /**
      * Makes sure that the cache is not accessed before it is configured.
      */
@@ -229,6 +267,61 @@ public class XmlaOlap4jNamedMemoryCache implements XmlaOlap4jCache {
         }
     }
 
+    // implement XmlaOlap4jRefreshableCache
+    public boolean claimRefresh(
+        String id,
+        URL url,
+        byte[] request)
+        throws XmlaOlap4jInvalidStateException
+    {
+        this.validateState();
+
+        // Wait for exclusive access to the caches
+        synchronized (caches) {
+            if (caches.containsKey(id)) {
+                return caches.get(id).claimRefresh(url, request);
+            } else {
+                throw new XmlaOlap4jInvalidStateException();
+            }
+        }
+    }
+
+    // implement XmlaOlap4jInvalidatingCache
+    public void invalidate(
+        String id,
+        String catalogName,
+        String cubeName)
+        throws XmlaOlap4jInvalidStateException
+    {
+        this.validateState();
+
+        // Wait for exclusive access to the caches
+        synchronized (caches) {
+            if (caches.containsKey(id)) {
+                caches.get(id).invalidate(catalogName, cubeName);
+            } else {
+                throw new XmlaOlap4jInvalidStateException();
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of a cache space.
+     *
+     * @param id The cache name, as returned by
+     * {@link #setParameters(java.util.Map, java.util.Map)}
+     * @return Map of statistic values, or an empty map if there is no cache
+     * space with that name
+     */
+    public Map<Statistic, Long> getStatistics(String id) {
+        synchronized (caches) {
+            if (caches.containsKey(id)) {
+                return caches.get(id).getStatistics();
+            }
+            return Collections.emptyMap();
+        }
+    }
+
     // implement XmlaOlap4jCache
     public void flushCache() {
         // Wait for exclusive access to the caches
@@ -0,0 +1,58 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.cache;
+
+import org.olap4j.OlapException;
+
+import java.net.URL;
+
+/**
+ * XMLA driver cache which supports a refresh-ahead policy.
+ *
+ * <p>Such a cache keeps serving an entry for some time after it has become
+ * stale. The proxy which received the stale response is then expected to
+ * send the request to the server in the background and to store the fresh
+ * response with {@link #put}. Only one refresh is issued per entry, even if
+ * many threads hit the stale entry at the same time.
+ */
+public interface XmlaOlap4jRefreshableCache extends XmlaOlap4jCache {
+
+    /**
+     * Claims the right to refresh a cached SOAP response.
+     *
+     * <p>Returns true if the cached response is stale and no other caller
+     * is currently refreshing it. The caller is then responsible for
+     * fetching a fresh response and storing it with {@link #put}.
+     *
+     * @param id The connection unique name which called this cache.
+     * @param url The URL where the SOAP message was sent.
+     * @param request The SOAP complete message.
+     *
+     * @throws OlapException when operations to the cache are
+     * performed but it hasn't been initialized.
+     *
+     * @return Whether the caller must refresh the entry
+     */
+    public boolean claimRefresh(
+        String id,
+        URL url,
+        byte[] request)
+        throws OlapException;
+}
+
+// End XmlaOlap4jRefreshableCache.java
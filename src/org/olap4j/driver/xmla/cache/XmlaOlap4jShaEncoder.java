@@ -17,8 +17,11 @@
 */
 package org.olap4j.driver.xmla.cache;
 
+import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
 
 /**
  * SHA encoder to create unique hash strings for cache elements.
@@ -64,6 +67,23 @@ class XmlaOlap4jShaEncoder {
 
         return convertToHex(sha1hash);
     }
+
+    /**
+     * Returns a digest of the user and password of a connection, or the
+     * empty string if the connection has no user.
+     *
+     * @param config Connection properties
+     * @return Digest of the credentials
+     */
+    static String encodeCredentials(Map<String, String> config) {
+        final String user = config.get(XmlaOlap4jDriver.Property.USER.name());
+        if (user == null) {
+            return "";
+        }
+        return encodeSha1(
+            user + "\u0000"
+            + config.get(XmlaOlap4jDriver.Property.PASSWORD.name()));
+    }
 }
 
 // End XmlaOlap4jShaEncoder.java
@@ -20,11 +20,16 @@ package org.olap4j.driver.xmla.proxy;
 import org.olap4j.OlapException;
 import org.olap4j.driver.xmla.*;
 import org.olap4j.driver.xmla.cache.XmlaOlap4jCache;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jInvalidatingCache;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jRefreshableCache;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * <p>Abstract implementation of Proxy which adds a SOAP
@@ -37,10 +42,17 @@ import java.util.concurrent.Future;
  * to the server along with queries. The useful methods are
  * saveCookies(URL) and useCookies(URL).
  *
+ * <p>If the cache implements {@link XmlaOlap4jRefreshableCache}, a stale
+ * response is returned immediately and a single request is sent in the
+ * background to refresh it.
+ *
+ * <p>Asynchronous requests (see {@link #submit}) which hit the cache are
+ * answered immediately with a completed future, without using a thread.
+ *
  * @author Luc Boudreau
  */
 abstract class XmlaOlap4jAbstractHttpProxy
-    implements XmlaOlap4jCachedProxy
+    implements XmlaOlap4jCacheControlProxy
 {
     private final XmlaHelper helper = new XmlaHelper();
 
@@ -56,6 +68,11 @@ abstract class XmlaOlap4jAbstractHttpProxy
     private String cacheId;
 
 
+    /**
+     * Log in which to record requests, or null.
+     */
+    private XmlaOlap4jRequestLog requestLog = null;
+
     /**
      * Keeps a link to the cookie manager instance.
      */
@@ -83,7 +100,11 @@ abstract class XmlaOlap4jAbstractHttpProxy
     /**
      * Submits a request for background execution.
      *
-     * @param url URL
+     * <p>{@link #submit} calls this method for requests whose response it
+     * did not find in the cache. The job need not look in the cache again,
+     * but should cache the response, as {@link #getResponseAndCache} does.
+     *
+     * @param serverInfos Server infos
      * @param request Request
      * @return Future object representing the submitted job
      */
@@ -154,31 +175,63 @@ abstract class XmlaOlap4jAbstractHttpProxy
         }
     }
 
+    // implement XmlaOlap4jCacheControlProxy
+    public void setRequestLog(XmlaOlap4jRequestLog requestLog) {
+        this.requestLog = requestLog;
+    }
+
     // implement XmlaOlap4jProxy
     public byte[] get(
         XmlaOlap4jServerInfos serverInfos,
         String request)
         throws XmlaOlap4jProxyException
     {
-        byte[] response = null;
-        // Tries to fetch from cache
-        try {
-            response =
-                getFromCache(
-                    serverInfos.getUrl(),
-                    request.getBytes(getEncodingCharsetName()));
-            // Returns the cached value if found
-            if (response != null) {
-                return response;
-            }
-        } catch (Exception e) {
-            throw new XmlaOlap4jProxyException(
-                "An exception was encountered while browsing the proxy cache.",
-                e);
+        return get(serverInfos, request, true);
+    }
+
+    /**
+     * Sends a request, or returns its response from the cache.
+     *
+     * @param serverInfos Server infos
+     * @param request Request
+     * @param record Whether to record the request in the request log; false
+     *     when the request is replayed from the log
+     * @return Response
+     * @throws XmlaOlap4jProxyException on error
+     */
+    byte[] get(
+        XmlaOlap4jServerInfos serverInfos,
+        String request,
+        boolean record)
+        throws XmlaOlap4jProxyException
+    {
+        if (record && requestLog != null) {
+            requestLog.record(serverInfos.getUrl(), request);
+        }
+        // Returns the cached value if found
+        final byte[] response = getCached(serverInfos, request);
+        if (response != null) {
+            return response;
         }
+        return getResponseAndCache(serverInfos, request);
+    }
 
+    /**
+     * Sends a request to the server, without looking for its response in
+     * the cache, and caches the response.
+     *
+     * @param serverInfos Server infos
+     * @param request Request
+     * @return Response
+     * @throws XmlaOlap4jProxyException on error
+     */
+    protected byte[] getResponseAndCache(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+        throws XmlaOlap4jProxyException
+    {
         // Executes the query
-        response = getResponse(serverInfos, request);
+        final byte[] response = getResponse(serverInfos, request);
 
         try {
             // Adds to cache
@@ -196,6 +249,64 @@ abstract class XmlaOlap4jAbstractHttpProxy
     }
 
 
+    // implement XmlaOlap4jCacheControlProxy
+    public byte[] getUncached(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+        throws XmlaOlap4jProxyException
+    {
+        return getResponse(serverInfos, request);
+    }
+
+    // implement XmlaOlap4jCacheControlProxy
+    public void invalidateCache(
+        String catalogName,
+        String cubeName)
+        throws OlapException
+    {
+        if (this.cache instanceof XmlaOlap4jInvalidatingCache) {
+            ((XmlaOlap4jInvalidatingCache) this.cache).invalidate(
+                this.cacheId, catalogName, cubeName);
+        }
+    }
+
+    /**
+     * Tries to fetch a cached response, and refreshes it in the background
+     * if it is stale.
+     *
+     * @param serverInfos Server infos
+     * @param request The SOAP request
+     * @return Cached response, or null if the response is not in cache
+     * @throws XmlaOlap4jProxyException if the cache fails
+     */
+    private byte[] getCached(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+        throws XmlaOlap4jProxyException
+    {
+        final byte[] response;
+        try {
+            response =
+                getFromCache(
+                    serverInfos.getUrl(),
+                    request.getBytes(getEncodingCharsetName()));
+        } catch (Exception e) {
+            throw new XmlaOlap4jProxyException(
+                "An exception was encountered while browsing the proxy cache.",
+                e);
+        }
+        if (response != null) {
+            try {
+                refreshIfStale(serverInfos, request);
+            } catch (Exception e) {
+                // The refresh is only an optimization; for example, the
+                // executor may have rejected it. Serve the cached response,
+                // which stays stale until it expires or is refreshed later.
+            }
+        }
+        return response;
+    }
+
     /**
      * Tries to fetch a cached response from the cache implementation.
      *
@@ -215,6 +326,39 @@ abstract class XmlaOlap4jAbstractHttpProxy
     }
 
 
+    /**
+     * Refreshes a cached response in the background if the cache says it is
+     * stale. Failures are ignored: the stale entry keeps being served until
+     * it expires, and the cache allows another refresh later.
+     *
+     * @param serverInfos Server infos
+     * @param request The SOAP request whose response is cached
+     */
+    private void refreshIfStale(
+        final XmlaOlap4jServerInfos serverInfos,
+        final String request)
+        throws OlapException, UnsupportedEncodingException
+    {
+        if (!(this.cache instanceof XmlaOlap4jRefreshableCache)) {
+            return;
+        }
+        final byte[] requestBytes =
+            request.getBytes(getEncodingCharsetName());
+        if (!((XmlaOlap4jRefreshableCache) this.cache).claimRefresh(
+                this.cacheId, serverInfos.getUrl(), requestBytes))
+        {
+            return;
+        }
+        // Send the request on the driver's executor, bypassing the cache,
+        // and store the fresh response.
+        XmlaOlap4jDriver.submit(
+            new Callable<byte[]>() {
+                public byte[] call() throws XmlaOlap4jProxyException {
+                    return getResponseAndCache(serverInfos, request);
+                }
+            });
+    }
+
     /**
      * Caches an entry using the current cache implementation.
      * @param url The URL from which originated the request
@@ -234,13 +378,46 @@ abstract class XmlaOlap4jAbstractHttpProxy
         final XmlaOlap4jServerInfos serverInfos,
         final String request)
     {
-        // The submit operation doesn't need to be cached yet, since it will
-        // call the get operation to fetch the data later on. It will get cached
-        // then.
-        //
-        // I still overridden the submit method in case we need some caching
-        // done in the end. - Luc
-        return getResponseViaSubmit(serverInfos, request);
+        // Cache hits, and failures of the cache, are answered synchronously,
+        // so that they do not cost a hand-off to the executor. Misses are
+        // sent by getResponseViaSubmit, which need not look in the cache
+        // again.
+        final byte[] response;
+        try {
+            response = getCached(serverInfos, request);
+        } catch (final XmlaOlap4jProxyException e) {
+            return done(
+                new Callable<byte[]>() {
+                    public byte[] call() throws XmlaOlap4jProxyException {
+                        throw e;
+                    }
+                });
+        }
+        if (requestLog != null) {
+            requestLog.record(serverInfos.getUrl(), request);
+        }
+        if (response == null) {
+            return getResponseViaSubmit(serverInfos, request);
+        }
+        return done(
+            new Callable<byte[]>() {
+                public byte[] call() {
+                    return response;
+                }
+            });
+    }
+
+    /**
+     * Runs a task in the current thread, and returns a completed future
+     * holding its result.
+     *
+     * @param task Task
+     * @return Completed future
+     */
+    private static Future<byte[]> done(Callable<byte[]> task) {
+        final FutureTask<byte[]> future = new FutureTask<byte[]>(task);
+        future.run();
+        return future;
     }
 
     /**
@@ -0,0 +1,67 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jInvalidatingCache;
+
+/**
+ * Cached proxy whose SOAP cache the driver can bypass, invalidate and warm
+ * up.
+ *
+ * <p>The driver uses these methods only if its proxy implements this
+ * interface; other implementations of {@link XmlaOlap4jCachedProxy} keep
+ * working, without those features.
+ */
+public interface XmlaOlap4jCacheControlProxy extends XmlaOlap4jCachedProxy {
+    /**
+     * Sends a request to the server without looking it up in the cache, and
+     * without storing its response in the cache.
+     *
+     * @param serverInfos Server infos
+     * @param request Request
+     * @return Response
+     * @throws XmlaOlap4jProxyException on error
+     */
+    byte[] getUncached(
+        XmlaOlap4jServerInfos serverInfos,
+        String request) throws XmlaOlap4jProxyException;
+
+    /**
+     * Removes the cached responses which relate to a cube, if the cache
+     * implements {@link XmlaOlap4jInvalidatingCache}. Otherwise, does nothing.
+     *
+     * @param catalogName Name of the catalog
+     * @param cubeName Name of the cube, or null for all cubes in the catalog
+     * @throws OlapException on error
+     */
+    void invalidateCache(
+        String catalogName,
+        String cubeName) throws OlapException;
+
+    /**
+     * Sets the log in which to record the requests sent through this proxy,
+     * so that they can be replayed to warm up the cache.
+     *
+     * @param requestLog Request log, or null to stop recording
+     */
+    void setRequestLog(XmlaOlap4jRequestLog requestLog);
+}
+
+// End XmlaOlap4jCacheControlProxy.java
@@ -23,6 +23,7 @@ import org.olap4j.impl.Base64;
 
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
@@ -191,7 +192,12 @@ public class XmlaOlap4jHttpProxy extends XmlaOlap4jAbstractHttpProxy
         final XmlaOlap4jServerInfos serverInfos,
         final String request)
     {
-        return XmlaOlap4jDriver.getFuture(this, serverInfos, request);
+        return XmlaOlap4jDriver.submit(
+            new Callable<byte[]>() {
+                public byte[] call() throws XmlaOlap4jProxyException {
+                    return getResponseAndCache(serverInfos, request);
+                }
+            });
     }
 
     // implement XmlaOlap4jProxy
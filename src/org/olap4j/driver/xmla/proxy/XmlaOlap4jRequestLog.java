@@ -0,0 +1,444 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
+import org.olap4j.impl.Base64;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log of the requests sent through a proxy, with the number of times each
+ * was sent, which can be replayed to warm up the SOAP cache.
+ *
+ * <p>Only requests which do not modify the server are recorded:
+ * <code>Discover</code> requests, and <code>Execute</code> requests whose
+ * statement is a <code>SELECT</code> query.
+ *
+ * <p>There is one log per file in the JVM, shared by all open connections
+ * which use that file. The log is loaded when it is first used, and saved
+ * when a connection releases it and when the JVM exits. Each line of the file
+ * holds the number of hits, the URL of the server, and the request encoded in
+ * Base64.
+ *
+ * <p>A log holds at most {@link #MAX_REQUESTS} distinct requests. When it is
+ * full, it keeps the most frequent half.
+ *
+ * @see XmlaOlap4jDriver.Property#WARMUPLOG
+ */
+public class XmlaOlap4jRequestLog {
+
+    /**
+     * Maximum number of distinct requests in a log.
+     */
+    public static final int MAX_REQUESTS = 1000;
+
+    /**
+     * Map from the canonical path of a log file to the log. Holds only logs
+     * which are in use.
+     */
+    private static final Map<String, XmlaOlap4jRequestLog> LOGS =
+        new HashMap<String, XmlaOlap4jRequestLog>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+            new Thread() {
+                public void run() {
+                    final List<XmlaOlap4jRequestLog> logs;
+                    synchronized (LOGS) {
+                        logs = new ArrayList<XmlaOlap4jRequestLog>(
+                            LOGS.values());
+                    }
+                    for (XmlaOlap4jRequestLog log : logs) {
+                        log.save();
+                    }
+                }
+            });
+    }
+
+    private final File file;
+
+    /**
+     * Number of users of this log. Guarded by {@link #LOGS}.
+     */
+    private int useCount;
+
+    /**
+     * Map from a (URL, request) pair to its number of hits.
+     */
+    private final ConcurrentMap<List<String>, AtomicLong> hits =
+        new ConcurrentHashMap<List<String>, AtomicLong>();
+
+    /**
+     * URLs of the servers to which this log has been replayed.
+     */
+    private final ConcurrentMap<String, Boolean> replayedUrls =
+        new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Whether requests have been recorded since the log was last saved.
+     */
+    private volatile boolean dirty = false;
+
+    /**
+     * Creates a request log and loads the contents of its file, if it exists.
+     *
+     * @param file File
+     */
+    private XmlaOlap4jRequestLog(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the log which uses a given file, creating it if necessary.
+     * Call {@link #release} when it is no longer needed.
+     *
+     * @param file Log file
+     * @return Request log
+     */
+    public static XmlaOlap4jRequestLog get(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        synchronized (LOGS) {
+            XmlaOlap4jRequestLog log = LOGS.get(path);
+            if (log == null) {
+                log = new XmlaOlap4jRequestLog(new File(path));
+                LOGS.put(path, log);
+            }
+            ++log.useCount;
+            return log;
+        }
+    }
+
+    /**
+     * Releases this log, which was obtained by {@link #get}, and saves it.
+     * When the last user has released it, the log is discarded from memory;
+     * the next call to {@link #get} loads it again.
+     */
+    public void release() {
+        synchronized (LOGS) {
+            if (--useCount <= 0) {
+                LOGS.remove(file.getPath());
+            }
+        }
+        save();
+    }
+
+    /**
+     * Records that a request was sent, if it is a request which can be
+     * replayed.
+     *
+     * @param url URL of the server
+     * @param request Request
+     */
+    public void record(URL url, String request) {
+        if (!isReplayable(request)) {
+            return;
+        }
+        final List<String> key =
+            Arrays.asList(url.toExternalForm(), request);
+        AtomicLong count = hits.get(key);
+        if (count == null) {
+            final AtomicLong newCount = new AtomicLong();
+            count = hits.putIfAbsent(key, newCount);
+            if (count == null) {
+                count = newCount;
+                if (hits.size() > MAX_REQUESTS) {
+                    prune();
+                }
+            }
+        }
+        count.incrementAndGet();
+        dirty = true;
+    }
+
+    /**
+     * Removes the least frequent requests, keeping half of
+     * {@link #MAX_REQUESTS}.
+     */
+    private synchronized void prune() {
+        if (hits.size() <= MAX_REQUESTS) {
+            return;
+        }
+        final List<Map.Entry<List<String>, AtomicLong>> entries =
+            sortByHits(hits.entrySet());
+        for (Map.Entry<List<String>, AtomicLong> entry
+            : entries.subList(MAX_REQUESTS / 2, entries.size()))
+        {
+            hits.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Returns the requests to a server with the most hits, most frequent
+     * first.
+     *
+     * @param url URL of the server
+     * @param count Maximum number of requests to return
+     * @return List of requests
+     */
+    public List<String> getTopRequests(URL url, int count) {
+        final String urlString = url.toExternalForm();
+        final List<Map.Entry<List<String>, AtomicLong>> entries =
+            new ArrayList<Map.Entry<List<String>, AtomicLong>>();
+        for (Map.Entry<List<String>, AtomicLong> entry : hits.entrySet()) {
+            if (entry.getKey().get(0).equals(urlString)) {
+                entries.add(entry);
+            }
+        }
+        final List<String> requests = new ArrayList<String>();
+        for (Map.Entry<List<String>, AtomicLong> entry
+            : sortByHits(entries))
+        {
+            if (requests.size() >= count) {
+                break;
+            }
+            requests.add(entry.getKey().get(1));
+        }
+        return requests;
+    }
+
+    /**
+     * Returns a list of entries sorted by descending number of hits.
+     */
+    private static List<Map.Entry<List<String>, AtomicLong>> sortByHits(
+        Collection<Map.Entry<List<String>, AtomicLong>> entries)
+    {
+        final List<Map.Entry<List<String>, AtomicLong>> list =
+            new ArrayList<Map.Entry<List<String>, AtomicLong>>(entries);
+        Collections.sort(
+            list,
+            new Comparator<Map.Entry<List<String>, AtomicLong>>() {
+                public int compare(
+                    Map.Entry<List<String>, AtomicLong> o1,
+                    Map.Entry<List<String>, AtomicLong> o2)
+                {
+                    final long c1 = o1.getValue().get();
+                    final long c2 = o2.getValue().get();
+                    return c1 > c2 ? -1 : c1 == c2 ? 0 : 1;
+                }
+            });
+        return list;
+    }
+
+    /**
+     * Sends the most frequent requests to a server in the background, so
+     * that their responses are in the SOAP cache of the proxy before they
+     * are needed. Replayed requests are not recorded again.
+     *
+     * <p>A log is replayed only once to each server while it is in memory;
+     * subsequent calls for the same server do nothing and return null.
+     *
+     * @param proxy Proxy, whose cache to warm up
+     * @param serverInfos Server infos
+     * @param count Maximum number of requests to send
+     * @param concurrency Maximum number of requests to send at the same time
+     * @param executor Executor on which to send the requests
+     * @return Future which completes when all requests have been answered,
+     * or null if the log has already been replayed to this server
+     */
+    public Future<Integer> replay(
+        final XmlaOlap4jProxy proxy,
+        final XmlaOlap4jServerInfos serverInfos,
+        int count,
+        int concurrency,
+        final Executor executor)
+    {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException(
+                "Concurrency must be positive, but was " + concurrency);
+        }
+        if (replayedUrls.putIfAbsent(
+                serverInfos.getUrl().toExternalForm(), Boolean.TRUE)
+            != null)
+        {
+            return null;
+        }
+        final List<String> requests =
+            getTopRequests(serverInfos.getUrl(), count);
+        final Semaphore semaphore = new Semaphore(concurrency);
+        final FutureTask<Integer> replayTask = new FutureTask<Integer>(
+            new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    final List<Future<byte[]>> futures =
+                        new ArrayList<Future<byte[]>>();
+                    for (final String request : requests) {
+                        semaphore.acquire();
+                        final FutureTask<byte[]> future =
+                            new FutureTask<byte[]>(
+                                new Callable<byte[]>() {
+                                    public byte[] call() throws Exception {
+                                        try {
+                                            return send(
+                                                proxy, serverInfos, request);
+                                        } finally {
+                                            semaphore.release();
+                                        }
+                                    }
+                                });
+                        futures.add(future);
+                        executor.execute(future);
+                    }
+                    int answered = 0;
+                    for (Future<byte[]> future : futures) {
+                        try {
+                            future.get();
+                            ++answered;
+                        } catch (ExecutionException e) {
+                            // Warm-up is best-effort; skip this request.
+                        }
+                    }
+                    return answered;
+                }
+            });
+        executor.execute(replayTask);
+        return replayTask;
+    }
+
+    /**
+     * Sends a request through a proxy, without recording it.
+     */
+    private static byte[] send(
+        XmlaOlap4jProxy proxy,
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+        throws XmlaOlap4jProxyException
+    {
+        if (proxy instanceof XmlaOlap4jAbstractHttpProxy) {
+            return ((XmlaOlap4jAbstractHttpProxy) proxy).get(
+                serverInfos, request, false);
+        }
+        return proxy.get(serverInfos, request);
+    }
+
+    /**
+     * Saves the log to its file, if requests have been recorded since it was
+     * last saved. Failures are ignored; the log is only an optimization.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(tmpFile), "UTF-8"));
+            for (Map.Entry<List<String>, AtomicLong> entry : hits.entrySet()) {
+                pw.print(entry.getValue().get());
+                pw.print(' ');
+                pw.print(entry.getKey().get(0));
+                pw.print(' ');
+                pw.println(
+                    Base64.encodeBytes(
+                        entry.getKey().get(1).getBytes("UTF-8"),
+                        Base64.DONT_BREAK_LINES));
+            }
+            pw.close();
+            pw = null;
+            file.delete();
+            tmpFile.renameTo(file);
+        } catch (IOException e) {
+            tmpFile.delete();
+        } finally {
+            if (pw != null) {
+                pw.close();
+            }
+        }
+    }
+
+    /**
+     * Loads the log from its file. Lines which cannot be parsed are ignored.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ");
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    hits.put(
+                        Arrays.asList(
+                            fields[1],
+                            new String(Base64.decode(fields[2]), "UTF-8")),
+                        new AtomicLong(Long.parseLong(fields[0])));
+                } catch (NumberFormatException e) {
+                    // ignore line
+                }
+            }
+        } catch (IOException e) {
+            // Start with an empty log.
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a request can be replayed, that is, whether it is
+     * a <code>Discover</code> request or an <code>Execute</code> request for
+     * a <code>SELECT</code> statement.
+     *
+     * @param request Request
+     * @return Whether the request can be replayed
+     */
+    static boolean isReplayable(String request) {
+        if (request.contains("<Discover ")) {
+            return true;
+        }
+        if (!request.contains("<Execute ")) {
+            return false;
+        }
+        final int i = request.indexOf("<Statement>");
+        if (i < 0) {
+            return false;
+        }
+        final String statement =
+            request.substring(i + "<Statement>".length()).trim()
+                .toUpperCase();
+        return statement.startsWith("SELECT")
+            || statement.startsWith("WITH");
+    }
+}
+
+// End XmlaOlap4jRequestLog.java
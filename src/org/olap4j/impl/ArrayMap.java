@@ -21,11 +21,16 @@ import java.util.*;
 
 /**
  * Implementation of {@link java.util.Map} which uses an array and is therefore
- * not very fast but very space-efficient.
+ * very space-efficient.
  *
- * <p>This implementation uses very little space but is inefficient. The
- * operations {@link #put}, {@link #remove}, {@link #get} all take time
- * proportional to the number of keys.
+ * <p>Keys and values are held in one array, in insertion order. A small map
+ * is searched linearly. A map with more than {@link #INDEX_THRESHOLD} keys
+ * also has an open-addressing hash index into the array, so that
+ * {@link #get}, {@link #containsKey} and {@link #put} of an existing key take
+ * constant time. Adding or removing a key reallocates the array, and so
+ * takes time proportional to the number of keys; build a large map with
+ * {@link #ArrayMap(java.util.Map)} or {@link #putAll} rather than by
+ * repeated calls to {@link #put}.
  *
  * @author jhyde
  * @since Dec 9, 2007
@@ -33,9 +38,20 @@ import java.util.*;
 public class ArrayMap<K, V>
     implements Map<K, V>
 {
+    /**
+     * Number of keys above which a map has a hash index.
+     */
+    static final int INDEX_THRESHOLD = 8;
+
     private static final Object[] EMPTY_OBJECTS = new Object[0];
     private Object[] keyValues;
 
+    /**
+     * Open-addressing hash table of the positions of the keys, each plus 1,
+     * with 0 for an empty slot; or null if the map is small.
+     */
+    private int[] index;
+
     /**
      * Creates an empty <tt>ArrayMap</tt>.
      */
@@ -59,6 +75,7 @@ public class ArrayMap<K, V>
             keyValues[i++] = entry.getKey();
             keyValues[i++] = entry.getValue();
         }
+        buildIndex();
     }
 
     /**
@@ -138,6 +155,10 @@ public class ArrayMap<K, V>
     }
 
     private int indexOfKey(Object key) {
+        if (index != null) {
+            final int position = probe(index, keyValues, 2, key);
+            return position < 0 ? -1 : position * 2;
+        }
         for (int i = 0; i < keyValues.length; i += 2) {
             if (Olap4jUtil.equal(keyValues[i], key)) {
                 return i;
@@ -175,6 +196,11 @@ public class ArrayMap<K, V>
             System.arraycopy(old, 0, keyValues, 0, old.length);
             keyValues[old.length] = key;
             keyValues[old.length + 1] = value;
+            if (index != null && size() * 2 <= index.length) {
+                insert(index, keyValues, 2, size() - 1);
+            } else {
+                buildIndex();
+            }
             return null;
         }
     }
@@ -194,11 +220,15 @@ public class ArrayMap<K, V>
     private void removeInternal(int i) {
         if (keyValues.length == 2) {
             keyValues = EMPTY_OBJECTS;
+            index = null;
+            return;
         }
         Object[] old = keyValues;
         keyValues = new Object[keyValues.length - 2];
         System.arraycopy(old, 0, keyValues, 0, i);
         System.arraycopy(old, i + 2, keyValues, i, old.length - i - 2);
+        // Removing a key moves the keys after it, so rebuild the index.
+        buildIndex();
     }
 
     public void putAll(Map<? extends K, ? extends V> m) {
@@ -212,17 +242,115 @@ public class ArrayMap<K, V>
                 keyValues[i++] = entry.getValue();
             }
         } else {
-            // This algorithm is O(n^2): not great if m is large. But it's
-            // difficult to preallocate the array if we don't know how many
-            // keys overlap between this and m.
+            // Replace the values of keys which are already present, and
+            // collect the others, so that the array grows only once.
+            final Object[] added = new Object[m.size() * 2];
+            int n = 0;
             for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
-                put(entry.getKey(), entry.getValue());
+                final int i = indexOfKey(entry.getKey());
+                if (i >= 0) {
+                    keyValues[i + 1] = entry.getValue();
+                } else {
+                    added[n++] = entry.getKey();
+                    added[n++] = entry.getValue();
+                }
+            }
+            if (n == 0) {
+                return;
             }
+            final Object[] old = keyValues;
+            keyValues = new Object[old.length + n];
+            System.arraycopy(old, 0, keyValues, 0, old.length);
+            System.arraycopy(added, 0, keyValues, old.length, n);
         }
+        buildIndex();
     }
 
     public void clear() {
         keyValues = EMPTY_OBJECTS;
+        index = null;
+    }
+
+    /**
+     * Builds the hash index if the map is large enough to need one, or
+     * discards it if not.
+     */
+    private void buildIndex() {
+        index = size() > INDEX_THRESHOLD
+            ? buildIndex(keyValues, 2, size())
+            : null;
+    }
+
+    /**
+     * Builds an open-addressing hash index of keys held in an array.
+     *
+     * <p>The table has at least twice as many slots as keys. Each slot holds
+     * the position of a key plus 1, or 0 if it is empty.
+     *
+     * @param array Array holding the keys
+     * @param stride Distance between consecutive keys in the array; 2 if
+     *     keys and values alternate, 1 if the array holds only keys
+     * @param count Number of keys
+     * @return Hash index
+     */
+    static int[] buildIndex(Object[] array, int stride, int count) {
+        int capacity = 4;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        final int[] index = new int[capacity];
+        for (int position = 0; position < count; position++) {
+            insert(index, array, stride, position);
+        }
+        return index;
+    }
+
+    /**
+     * Adds the key at a given position to a hash index. The key must not
+     * already be in the index, and the index must have an empty slot.
+     */
+    private static void insert(
+        int[] index,
+        Object[] array,
+        int stride,
+        int position)
+    {
+        final int mask = index.length - 1;
+        int slot = hash(array[position * stride]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    /**
+     * Looks up a key in a hash index.
+     *
+     * @param index Hash index
+     * @param array Array holding the keys
+     * @param stride Distance between consecutive keys in the array
+     * @param key Key
+     * @return Position of the key, or -1 if not found
+     */
+    static int probe(int[] index, Object[] array, int stride, Object key) {
+        final int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = index[slot]) != 0) {
+            if (Olap4jUtil.equal(array[(entry - 1) * stride], key)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
     }
 
     public Set<K> keySet() {
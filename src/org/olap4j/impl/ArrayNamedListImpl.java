@@ -28,6 +28,13 @@ import java.util.*;
  * <p>Derived class must implement {@link #getName(Object)}, to indicate how
  * elements are named.
  *
+ * <p>Lookups by name in a list of more than a few elements use an index
+ * from name to position, which is built on the first lookup and rebuilt on
+ * the first lookup after the list is modified, including via
+ * {@link #subList(int, int)}. The name of an element must not change while
+ * it is in the list. A list which is not modified may be read by several
+ * threads at once.
+ *
  * @see NamedListImpl
  *
  * @author jhyde
@@ -37,6 +44,19 @@ public abstract class ArrayNamedListImpl<T>
     extends ArrayList<T>
     implements NamedList<T>
 {
+    /**
+     * Lists of this size or smaller are searched, not indexed.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    /**
+     * Index from name to position, or null if not built. Discarded by
+     * {@link #set(int, Object)} and by the sub-lists' set, which do not
+     * increment {@link #modCount}; stale after other modifications, which
+     * do.
+     */
+    private transient volatile NameIndex nameIndex;
+
     /**
      * Creates an empty list with the specified initial capacity.
      *
@@ -68,15 +88,20 @@ public abstract class ArrayNamedListImpl<T>
     }
 
     public T get(String name) {
-        for (T t : this) {
-            if (getName(t).equals(name)) {
-                return t;
-            }
-        }
-        return null;
+        final int i = indexOfName(name);
+        return i < 0 ? null : get(i);
     }
 
     public int indexOfName(String name) {
+        if (size() > INDEX_THRESHOLD) {
+            NameIndex index = nameIndex;
+            if (index == null || index.modCount != modCount) {
+                index = new NameIndex();
+                nameIndex = index;
+            }
+            final Integer i = index.map.get(name);
+            return i == null ? -1 : i;
+        }
         for (int i = 0; i < size(); ++i) {
             T t = get(i);
             if (getName(t).equals(name)) {
@@ -86,9 +111,77 @@ public abstract class ArrayNamedListImpl<T>
         return -1;
     }
 
+    public T set(int index, T element) {
+        nameIndex = null;
+        return super.set(index, element);
+    }
+
+    public List<T> subList(int fromIndex, int toIndex) {
+        return new NamedSubList(super.subList(fromIndex, toIndex));
+    }
+
     public Map<String, T> asMap() {
         return new NamedListMap<T>(this);
     }
+
+    /**
+     * View of a range of this list. Replacing an element of the range
+     * discards the index of this list. Other modifications of the range are
+     * structural; the underlying {@link ArrayList#subList} increments the
+     * modification count of this list, which makes the index stale.
+     */
+    private class NamedSubList extends AbstractList<T> implements RandomAccess {
+        private final List<T> list;
+
+        NamedSubList(List<T> list) {
+            this.list = list;
+        }
+
+        public T get(int index) {
+            return list.get(index);
+        }
+
+        public int size() {
+            return list.size();
+        }
+
+        public T set(int index, T element) {
+            final T previous = list.set(index, element);
+            nameIndex = null;
+            return previous;
+        }
+
+        public void add(int index, T element) {
+            list.add(index, element);
+            // This view's own count, which its iterators check; the
+            // underlying sub-list has incremented this list's count.
+            ++modCount;
+        }
+
+        public T remove(int index) {
+            final T previous = list.remove(index);
+            ++modCount;
+            return previous;
+        }
+    }
+
+    /**
+     * Index from the name of each element to its first position in this
+     * list, as of a given modification count.
+     */
+    private class NameIndex {
+        final int modCount;
+        final Map<String, Integer> map;
+
+        NameIndex() {
+            this.modCount = ArrayNamedListImpl.this.modCount;
+            final int size = size();
+            this.map = new HashMap<String, Integer>(size * 4 / 3 + 1);
+            for (int i = size - 1; i >= 0; --i) {
+                map.put(getName(get(i)), i);
+            }
+        }
+    }
 }
 
 // End ArrayNamedListImpl.java
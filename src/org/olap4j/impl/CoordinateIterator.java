@@ -32,6 +32,7 @@ public class CoordinateIterator implements Iterator<int[]> {
     private final int[] dimensions;
     private final boolean littleEndian;
     private final int[] current;
+    private final int[] buffer;
     private boolean hasNext;
 
     /**
@@ -52,9 +53,33 @@ public class CoordinateIterator implements Iterator<int[]> {
      * (and fastest changing) coordinate
      */
     public CoordinateIterator(int[] dimensions, boolean littleEndian) {
+        this(dimensions, littleEndian, false);
+    }
+
+    /**
+     * Creates a coordinate iterator which optionally returns the same array
+     * from each call to {@link #next()}.
+     *
+     * <p>With {@code reuse}, iterating allocates nothing per coordinate, but
+     * the array returned by {@code next()} is overwritten by the following
+     * call, so the caller must neither modify nor keep it.
+     *
+     * @param dimensions Array containing the number of elements of each
+     * coordinate axis
+     * @param littleEndian Whether coordinate 0 is the least significant
+     * (and fastest changing) coordinate
+     * @param reuse Whether to return the same array from each call to
+     * {@code next()}
+     */
+    public CoordinateIterator(
+        int[] dimensions,
+        boolean littleEndian,
+        boolean reuse)
+    {
         this.dimensions = dimensions;
         this.littleEndian = littleEndian;
         this.current = new int[dimensions.length];
+        this.buffer = reuse ? new int[dimensions.length] : null;
         this.hasNext = true;
         for (int dimension : dimensions) {
             if (dimension <= 0) {
@@ -95,7 +120,13 @@ public class CoordinateIterator implements Iterator<int[]> {
     }
 
     public int[] next() {
-        final int[] result = current.clone();
+        final int[] result;
+        if (buffer != null) {
+            System.arraycopy(current, 0, buffer, 0, current.length);
+            result = buffer;
+        } else {
+            result = current.clone();
+        }
         moveToNext();
         return result;
     }
@@ -24,6 +24,9 @@ import java.util.*;
 /**
  * Map backed by a {@link org.olap4j.metadata.NamedList}.
  *
+ * <p>Lookups by key use the list's lookups by name, so are as fast as
+ * those.
+ *
  * @author jhyde
  */
 class NamedListMap<T> extends AbstractMap<String, T> {
@@ -38,6 +41,17 @@ class NamedListMap<T> extends AbstractMap<String, T> {
         this.namedList = namedList;
     }
 
+    public T get(Object key) {
+        return key instanceof String
+            ? namedList.get((String) key)
+            : null;
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof String
+            && namedList.indexOfName((String) key) >= 0;
+    }
+
     public Set<Entry<String, T>> entrySet() {
         return new AbstractSet<Entry<String, T>>() {
             public Iterator<Entry<String, T>> iterator() {
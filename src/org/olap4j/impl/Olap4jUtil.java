@@ -17,6 +17,8 @@
 */
 package org.olap4j.impl;
 
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
 import org.olap4j.metadata.NamedList;
 
 import java.util.*;
@@ -608,6 +610,84 @@ public class Olap4jUtil {
         return formattedValue;
     }
 
+    /**
+     * Converts an array of cell coordinates to a cell ordinal.
+     *
+     * <p>Equivalent to {@link CellSet#coordinatesToOrdinal(java.util.List)},
+     * but does not box the coordinates. Together with
+     * {@link CellSet#getCell(int)}, allows a client to access the cells of a
+     * cell set by coordinates without allocating a list for each cell.
+     *
+     * @param cellSet Cell set
+     * @param coordinates Cell coordinates, one per axis
+     * @return Cell ordinal
+     * @throws IllegalArgumentException if the number of coordinates is not
+     *     the number of axes
+     * @throws IndexOutOfBoundsException if a coordinate is out of range
+     */
+    public static int coordinatesToOrdinal(
+        CellSet cellSet,
+        int... coordinates)
+    {
+        final List<CellSetAxis> axes = cellSet.getAxes();
+        if (coordinates.length != axes.size()) {
+            throw new IllegalArgumentException(
+                "Coordinates have different dimension " + coordinates.length
+                + " than axes " + axes.size());
+        }
+        int modulo = 1;
+        int ordinal = 0;
+        for (int k = 0; k < coordinates.length; k++) {
+            final int positionCount = axes.get(k).getPositionCount();
+            final int coordinate = coordinates[k];
+            if (coordinate < 0 || coordinate >= positionCount) {
+                throw new IndexOutOfBoundsException(
+                    "Coordinate " + coordinate
+                    + " of axis " + k
+                    + " is out of range (" + positionCount + ")");
+            }
+            ordinal += coordinate * modulo;
+            modulo *= positionCount;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Converts a cell ordinal to cell coordinates, writing them into an
+     * array supplied by the caller.
+     *
+     * <p>Equivalent to {@link CellSet#ordinalToCoordinates(int)}, but does
+     * not allocate.
+     *
+     * @param cellSet Cell set
+     * @param ordinal Cell ordinal
+     * @param coordinates Array into which to write the coordinates; must
+     *     have at least one element per axis
+     * @throws IndexOutOfBoundsException if the ordinal is out of range
+     */
+    public static void ordinalToCoordinates(
+        CellSet cellSet,
+        int ordinal,
+        int[] coordinates)
+    {
+        final List<CellSetAxis> axes = cellSet.getAxes();
+        int cellCount = 1;
+        for (int k = 0; k < axes.size(); k++) {
+            cellCount *= axes.get(k).getPositionCount();
+        }
+        if (ordinal < 0 || ordinal >= cellCount) {
+            throw new IndexOutOfBoundsException(
+                "Cell ordinal " + ordinal
+                + " lies outside CellSet bounds (" + cellCount + " cells)");
+        }
+        int remainder = ordinal;
+        for (int k = 0; k < axes.size(); k++) {
+            final int positionCount = axes.get(k).getPositionCount();
+            coordinates[k] = remainder % positionCount;
+            remainder /= positionCount;
+        }
+    }
+
     private enum DummyEnum {
     }
 
@@ -0,0 +1,181 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import java.util.*;
+
+/**
+ * Immutable list of keys which is shared by many unmodifiable maps, each of
+ * which holds only an array of values.
+ *
+ * <p>Useful when many maps have the same keys; for example, the property
+ * values of the members of a level, or of the cells of a cell set. Each map
+ * costs one object and one array, however many keys it has.
+ *
+ * <p>Like {@link ArrayMap}, a list of more than
+ * {@link ArrayMap#INDEX_THRESHOLD} keys has a hash index, so looking up a
+ * key in a map takes constant time.
+ *
+ * @param <K> Key type
+ */
+public class SharedKeys<K> {
+    private final Object[] keys;
+    private final int[] index;
+
+    private SharedKeys(Object[] keys) {
+        this.keys = keys;
+        this.index = keys.length > ArrayMap.INDEX_THRESHOLD
+            ? ArrayMap.buildIndex(keys, 1, keys.length)
+            : null;
+    }
+
+    /**
+     * Creates a SharedKeys.
+     *
+     * @param keys Keys; must not contain duplicates
+     * @param <K> Key type
+     * @return Shared keys
+     */
+    public static <K> SharedKeys<K> of(Collection<? extends K> keys) {
+        return new SharedKeys<K>(keys.toArray());
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the position of a key.
+     *
+     * @param key Key
+     * @return Position of the key, or -1 if it is not one of these keys
+     */
+    public int indexOf(Object key) {
+        if (index != null) {
+            return ArrayMap.probe(index, keys, 1, key);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (Olap4jUtil.equal(keys[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates an unmodifiable map from these keys to the given values.
+     *
+     * <p>The map holds the array; the caller must not modify it afterwards.
+     *
+     * @param values Values, one for each key, in the same order
+     * @param <V> Value type
+     * @return Unmodifiable map
+     */
+    public <V> Map<K, V> map(Object[] values) {
+        if (values.length != keys.length) {
+            throw new IllegalArgumentException(
+                "expected " + keys.length + " values, got " + values.length);
+        }
+        return new SharedKeyMap<K, V>(this, values);
+    }
+
+    /**
+     * Creates an unmodifiable map from these keys to their values in a given
+     * map.
+     *
+     * @param map Map whose keys are these keys
+     * @param <V> Value type
+     * @return Unmodifiable map with the same contents as the given map
+     */
+    public <V> Map<K, V> map(Map<?, ? extends V> map) {
+        final Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = map.get(keys[i]);
+        }
+        return new SharedKeyMap<K, V>(this, values);
+    }
+
+    /**
+     * Unmodifiable map which holds an array of values, and shares its keys
+     * with other maps.
+     */
+    private static class SharedKeyMap<K, V> extends AbstractMap<K, V> {
+        private final SharedKeys<K> sharedKeys;
+        private final Object[] values;
+
+        SharedKeyMap(SharedKeys<K> sharedKeys, Object[] values) {
+            this.sharedKeys = sharedKeys;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public boolean containsKey(Object key) {
+            return sharedKeys.indexOf(key) >= 0;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public V get(Object key) {
+            final int i = sharedKeys.indexOf(key);
+            return i < 0 ? null : (V) values[i];
+        }
+
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                public int size() {
+                    return values.length;
+                }
+
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<Entry<K, V>>() {
+                        private int i = 0;
+
+                        public boolean hasNext() {
+                            return i < values.length;
+                        }
+
+                        @SuppressWarnings({"unchecked"})
+                        public Entry<K, V> next() {
+                            if (i >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<K, V> entry =
+                                new Pair<K, V>(
+                                    (K) sharedKeys.keys[i], (V) values[i]);
+                            ++i;
+                            return entry;
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
+
+// End SharedKeys.java
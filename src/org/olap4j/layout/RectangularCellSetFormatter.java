@@ -191,16 +191,32 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         populateAxis(
             matrix, rowsAxis, rowsAxisInfo, false, yOffset);
 
-        // Populate cell values
-        for (Cell cell : cellIter(pageCoords, cellSet)) {
-            final List<Integer> coordList = cell.getCoordinateList();
+        // Populate cell values. The coordinates of the page are fixed; the
+        // iterator fills in the others, reusing the same arrays for each
+        // cell.
+        final int[] coords = new int[cellSet.getAxes().size()];
+        final int[] axisDimensions = new int[coords.length - pageCoords.length];
+        for (int i = 0; i < axisDimensions.length; i++) {
+            axisDimensions[i] = cellSet.getAxes().get(i).getPositionCount();
+        }
+        System.arraycopy(
+            pageCoords, 0, coords, axisDimensions.length, pageCoords.length);
+        final CoordinateIterator coordIter =
+            new CoordinateIterator(axisDimensions, true, true);
+        while (coordIter.hasNext()) {
+            final int[] axisCoords = coordIter.next();
+            System.arraycopy(
+                axisCoords, 0, coords, 0, axisCoords.length);
+            final Cell cell =
+                cellSet.getCell(
+                    Olap4jUtil.coordinatesToOrdinal(cellSet, coords));
             int x = xOffsset;
-            if (coordList.size() > 0) {
-                x += coordList.get(0);
+            if (coords.length > 0) {
+                x += coords[0];
             }
             int y = yOffset;
-            if (coordList.size() > 1) {
-                y += coordList.get(1);
+            if (coords.length > 1) {
+                y += coords[1];
             }
             matrix.set(
                 x, y, cell.getFormattedValue(), true, false);
@@ -424,54 +440,6 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         return axisInfo;
     }
 
-    /**
-     * Returns an iterator over cells in a result.
-     */
-    private static Iterable<Cell> cellIter(
-        final int[] pageCoords,
-        final CellSet cellSet)
-    {
-        return new Iterable<Cell>() {
-            public Iterator<Cell> iterator() {
-                int[] axisDimensions =
-                    new int[cellSet.getAxes().size() - pageCoords.length];
-                assert pageCoords.length <= axisDimensions.length;
-                for (int i = 0; i < axisDimensions.length; i++) {
-                    CellSetAxis axis = cellSet.getAxes().get(i);
-                    axisDimensions[i] = axis.getPositions().size();
-                }
-                final CoordinateIterator coordIter =
-                    new CoordinateIterator(axisDimensions, true);
-                return new Iterator<Cell>() {
-                    public boolean hasNext() {
-                        return coordIter.hasNext();
-                    }
-
-                    public Cell next() {
-                        final int[] ints = coordIter.next();
-                        final AbstractList<Integer> intList =
-                            new AbstractList<Integer>() {
-                                public Integer get(int index) {
-                                    return index < ints.length
-                                        ? ints[index]
-                                        : pageCoords[index - ints.length];
-                                }
-
-                                public int size() {
-                                    return pageCoords.length + ints.length;
-                                }
-                            };
-                        return cellSet.getCell(intList);
-                    }
-
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
-            }
-        };
-    }
-
     /**
      * Description of a particular hierarchy mapped to an axis.
      */
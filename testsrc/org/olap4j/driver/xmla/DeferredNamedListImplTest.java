@@ -0,0 +1,218 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapException;
+import org.olap4j.impl.Named;
+import org.olap4j.metadata.NamedList;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for {@link DeferredNamedListImpl}.
+ */
+public class DeferredNamedListImplTest extends TestCase {
+    /**
+     * Tests that a list which uses itself while it is being populated fails,
+     * rather than deadlocking, and can be populated afterwards.
+     */
+    public void testRecursion() {
+        final TestList list = new TestList("a", "b");
+        list.recurse = true;
+        try {
+            list.size();
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertEquals("recursive population", e.getCause().getMessage());
+        }
+        assertFalse(list.isPopulated());
+        list.recurse = false;
+        assertEquals(2, list.size());
+        assertEquals(1, list.semaphore.availablePermits());
+    }
+
+    /**
+     * Tests that after {@link DeferredNamedListImpl#reset()} the list is
+     * populated again on next use, and that elements obtained before the
+     * reset are not affected.
+     */
+    public void testReset() {
+        final TestList list = new TestList("a", "b");
+        assertEquals(2, list.size());
+        final Element a = list.get(0);
+        assertEquals(1, list.populateCount.get());
+
+        list.names = new String[] {"c"};
+        list.reset();
+        assertFalse(list.isPopulated());
+        assertEquals(1, list.populateCount.get());
+        assertEquals(1, list.size());
+        assertEquals("c", list.get(0).getName());
+        assertNull(list.get("a"));
+        assertEquals(2, list.populateCount.get());
+        assertEquals("a", a.getName());
+    }
+
+    /**
+     * Tests that if populating the list fails, the list is not populated,
+     * and the next use tries again.
+     */
+    public void testRetryAfterFailure() {
+        final TestList list = new TestList("a", "b");
+        list.failures = 1;
+        try {
+            list.get("a");
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof OlapException);
+        }
+        assertFalse(list.isPopulated());
+        assertNotNull(list.get("a"));
+        assertEquals(2, list.populateCount.get());
+        assertEquals(1, list.semaphore.availablePermits());
+    }
+
+    /**
+     * Tests that a thread which is interrupted while it waits for another
+     * thread to populate the list fails, without releasing a permit which it
+     * did not acquire.
+     *
+     * @throws Exception on error
+     */
+    public void testInterruptedWhileWaiting() throws Exception {
+        final TestList list = new TestList("a");
+        list.populating = new CountDownLatch(1);
+        list.release = new CountDownLatch(1);
+        final Thread populator =
+            new Thread() {
+                public void run() {
+                    list.size();
+                }
+            };
+        populator.start();
+        assertTrue(list.populating.await(10, TimeUnit.SECONDS));
+
+        final RuntimeException[] errors = {null};
+        final Thread waiter =
+            new Thread() {
+                public void run() {
+                    try {
+                        list.size();
+                    } catch (RuntimeException e) {
+                        errors[0] = e;
+                    }
+                }
+            };
+        waiter.start();
+        waiter.interrupt();
+        waiter.join();
+        assertNotNull(errors[0]);
+        assertTrue(errors[0].getCause() instanceof InterruptedException);
+
+        list.release.countDown();
+        populator.join();
+        assertEquals(1, list.size());
+        assertEquals(1, list.semaphore.availablePermits());
+    }
+
+    /**
+     * Tests that {@link DeferredNamedListImpl#replace} replaces one element
+     * of a populated list, leaves the others alone, and does not populate
+     * the list.
+     */
+    public void testReplace() {
+        final TestList list = new TestList("a", "b");
+        assertFalse(list.replace(new Element("a")));
+        assertEquals(2, list.size());
+        final Element a = list.get("a");
+        final Element b = list.get("b");
+
+        final Element newA = new Element("a");
+        assertTrue(list.replace(newA));
+        assertFalse(list.replace(new Element("z")));
+        assertSame(newA, list.get("a"));
+        assertSame(b, list.get("b"));
+        assertEquals(0, list.indexOfName("a"));
+        assertNotSame(a, list.get("a"));
+        assertEquals(1, list.populateCount.get());
+    }
+
+    /**
+     * Element of a {@link TestList}.
+     */
+    private static class Element implements Named {
+        private final String name;
+
+        Element(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * List which populates itself with elements of given names, without a
+     * connection.
+     */
+    private static class TestList extends DeferredNamedListImpl<Element> {
+        final AtomicInteger populateCount = new AtomicInteger();
+        volatile String[] names;
+        volatile boolean recurse;
+        volatile int failures;
+        volatile CountDownLatch populating;
+        volatile CountDownLatch release;
+
+        TestList(String... names) {
+            super(null, null, null, null);
+            this.names = names;
+        }
+
+        protected void populateList(NamedList<Element> list)
+            throws OlapException
+        {
+            populateCount.incrementAndGet();
+            if (populating != null) {
+                populating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (recurse) {
+                size();
+            }
+            if (failures > 0) {
+                --failures;
+                throw new OlapException("failed to populate");
+            }
+            for (String name : names) {
+                list.add(new Element(name));
+            }
+        }
+    }
+}
+
+// End DeferredNamedListImplTest.java
@@ -0,0 +1,446 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapException;
+import org.olap4j.metadata.*;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.*;
+import java.util.logging.Level;
+
+/**
+ * Unit test for the discovery of the metadata of an {@link XmlaOlap4jCube}.
+ */
+public class XmlaOlap4jCubeTest extends TestCase {
+    private final List<LogRecord> logRecords = new ArrayList<LogRecord>();
+    private final Handler logHandler =
+        new Handler() {
+            public void publish(LogRecord record) {
+                logRecords.add(record);
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+    private final Logger logger =
+        Logger.getLogger(XmlaOlap4jCube.class.getPackage().getName());
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        logger.addHandler(logHandler);
+        logger.setUseParentHandlers(false);
+    }
+
+    protected void tearDown() throws Exception {
+        logger.removeHandler(logHandler);
+        logger.setUseParentHandlers(true);
+        logRecords.clear();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that bulk discovery fetches the hierarchies and levels of all
+     * dimensions with one request each.
+     *
+     * @throws Exception on error
+     */
+    public void testBulkDiscovery() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube = server.salesCube("BulkDiscovery=true");
+        assertEquals(6, levelCount(cube));
+        assertEquals(1, server.getRequestCount("MDSCHEMA_HIERARCHIES"));
+        assertEquals(1, server.getRequestCount("MDSCHEMA_LEVELS"));
+        assertTrue(logRecords.isEmpty());
+    }
+
+    /**
+     * Tests that if a bulk request fails, the failure is logged and each
+     * hierarchy fetches its levels on first use.
+     *
+     * @throws Exception on error
+     */
+    public void testBulkDiscoveryFailure() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        server.fail("MDSCHEMA_LEVELS", 1);
+        final XmlaOlap4jCube cube = server.salesCube("BulkDiscovery=true");
+        assertEquals(1, logRecords.size());
+        assertEquals(Level.WARNING, logRecords.get(0).getLevel());
+        assertNotNull(logRecords.get(0).getThrown());
+        assertEquals(6, levelCount(cube));
+        assertEquals(1, server.getRequestCount("MDSCHEMA_HIERARCHIES"));
+        // One failed bulk request, then one request per hierarchy.
+        assertEquals(4, server.getRequestCount("MDSCHEMA_LEVELS"));
+    }
+
+    /**
+     * Tests that if a bulk response has no rows for some dimensions, only
+     * those dimensions fetch their hierarchies and levels on first use.
+     *
+     * @throws Exception on error
+     */
+    public void testBulkDiscoveryPartial() throws Exception {
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    final List<Map<String, String>> rows =
+                        super.select(requestType, restrictions);
+                    if (!requestType.equals("MDSCHEMA_HIERARCHIES")
+                        && !requestType.equals("MDSCHEMA_LEVELS")
+                        || restrictions.containsKey("DIMENSION_UNIQUE_NAME")
+                        || restrictions.containsKey("HIERARCHY_UNIQUE_NAME"))
+                    {
+                        return rows;
+                    }
+                    // Leave [Store] out of the bulk responses.
+                    final List<Map<String, String>> list =
+                        new ArrayList<Map<String, String>>();
+                    for (Map<String, String> row : rows) {
+                        if (!"[Store]".equals(
+                                row.get("DIMENSION_UNIQUE_NAME")))
+                        {
+                            list.add(row);
+                        }
+                    }
+                    return list;
+                }
+            };
+        final XmlaOlap4jCube cube = server.salesCube("BulkDiscovery=true");
+        final Dimension gender = cube.getDimensions().get("Gender");
+        assertEquals(2, gender.getHierarchies().get(0).getLevels().size());
+        assertEquals(1, server.getRequestCount("MDSCHEMA_HIERARCHIES"));
+        assertEquals(1, server.getRequestCount("MDSCHEMA_LEVELS"));
+
+        final Dimension store = cube.getDimensions().get("Store");
+        final NamedList<org.olap4j.metadata.Level> storeLevels =
+            store.getHierarchies().get(0).getLevels();
+        assertEquals(3, storeLevels.size());
+        assertEquals("Store City", storeLevels.get(2).getName());
+        assertEquals(2, server.getRequestCount("MDSCHEMA_HIERARCHIES"));
+        assertEquals(2, server.getRequestCount("MDSCHEMA_LEVELS"));
+        assertEquals(6, levelCount(cube));
+        assertTrue(logRecords.isEmpty());
+    }
+
+    /**
+     * Tests that parallel discovery fetches the hierarchies of each
+     * dimension and the levels of each hierarchy ahead of use.
+     *
+     * @throws Exception on error
+     */
+    public void testParallelDiscovery() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube =
+            server.salesCube("DiscoveryParallelism=2");
+        assertEquals(3, server.getRequestCount("MDSCHEMA_HIERARCHIES"));
+        assertEquals(3, server.getRequestCount("MDSCHEMA_LEVELS"));
+        assertEquals(6, levelCount(cube));
+        assertEquals(3, server.getRequestCount("MDSCHEMA_LEVELS"));
+        assertTrue(logRecords.isEmpty());
+    }
+
+    /**
+     * Tests that if parallel discovery cannot handle a response, the
+     * failure is logged and the lists populate themselves on first use.
+     *
+     * @throws Exception on error
+     */
+    public void testParallelDiscoveryFailure() throws Exception {
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                private boolean corrupted;
+
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    final List<Map<String, String>> rows =
+                        super.select(requestType, restrictions);
+                    if (!requestType.equals("MDSCHEMA_LEVELS")
+                        || corrupted)
+                    {
+                        return rows;
+                    }
+                    // Leave out the LEVEL_NUMBER column of the first
+                    // response, so that its handler throws.
+                    corrupted = true;
+                    final List<Map<String, String>> list =
+                        new ArrayList<Map<String, String>>();
+                    for (Map<String, String> row : rows) {
+                        final Map<String, String> copy =
+                            new LinkedHashMap<String, String>(row);
+                        copy.remove("LEVEL_NUMBER");
+                        list.add(copy);
+                    }
+                    return list;
+                }
+            };
+        final XmlaOlap4jCube cube =
+            server.salesCube("DiscoveryParallelism=2");
+        assertEquals(1, logRecords.size());
+        assertEquals(Level.WARNING, logRecords.get(0).getLevel());
+        assertTrue(
+            logRecords.get(0).getThrown() instanceof RuntimeException);
+        assertEquals(6, levelCount(cube));
+        // Three requests in parallel; the first response could not be
+        // handled, so each hierarchy sent its request again.
+        assertEquals(6, server.getRequestCount("MDSCHEMA_LEVELS"));
+    }
+
+    /**
+     * Tests that prefetching a paged level fetches the first page of the
+     * list which the level returns, without counting the members of the
+     * level.
+     *
+     * @throws Exception on error
+     */
+    public void testPrefetchPagedLevel() throws Exception {
+        // A server other than Mondrian, so that the list has no estimate of
+        // its size.
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    final List<Map<String, String>> rows =
+                        super.select(requestType, restrictions);
+                    if (!requestType.equals("DISCOVER_DATASOURCES")) {
+                        return rows;
+                    }
+                    final List<Map<String, String>> list =
+                        new ArrayList<Map<String, String>>();
+                    for (Map<String, String> row : rows) {
+                        final Map<String, String> copy =
+                            new LinkedHashMap<String, String>();
+                        for (Map.Entry<String, String> entry
+                            : row.entrySet())
+                        {
+                            copy.put(
+                                entry.getKey(),
+                                entry.getValue().replace("Mondrian", "Acme"));
+                        }
+                        list.add(copy);
+                    }
+                    return list;
+                }
+            };
+        final XmlaOlap4jCube cube = server.salesCube("MemberPageSize=10");
+        final XmlaOlap4jLevel cityLevel =
+            (XmlaOlap4jLevel) cube.getHierarchies().get("Store").getLevels()
+                .get("Store City");
+        server.resetRequestCounts();
+        cube.prefetch(Collections.singletonList(cityLevel)).get();
+        assertEquals(1, server.getRequestCount(XmlaOlap4jFakeServer.EXECUTE));
+
+        final List<Member> members = cityLevel.getMembers();
+        assertSame(cube.getPagedMembers(cityLevel), members);
+        assertEquals("[Store].[S0].[C9]", members.get(9).getUniqueName());
+        // Only the count, which get needs to check the index.
+        assertEquals(2, server.getRequestCount(XmlaOlap4jFakeServer.EXECUTE));
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, members.size());
+    }
+
+    /**
+     * Tests that a call which needs the root members of a hierarchy while
+     * prefetch is fetching them waits for that request rather than sending
+     * its own.
+     *
+     * @throws Exception on error
+     */
+    public void testPrefetchSharesRequestInProgress() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean block = new AtomicBoolean();
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    if (block.get()
+                        && requestType.equals("MDSCHEMA_MEMBERS"))
+                    {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return super.select(requestType, restrictions);
+                }
+            };
+        final XmlaOlap4jCube cube = server.salesCube();
+        final Hierarchy hierarchy = cube.getHierarchies().get("Store");
+        assertEquals(3, hierarchy.getLevels().size());
+        server.resetRequestCounts();
+        block.set(true);
+        final Future<Void> future =
+            cube.prefetch(Collections.singletonList(hierarchy));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        final List<Member> rootMembers =
+            Collections.synchronizedList(new ArrayList<Member>());
+        final Thread thread =
+            new Thread() {
+                public void run() {
+                    try {
+                        rootMembers.addAll(hierarchy.getRootMembers());
+                    } catch (OlapException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        thread.start();
+        // Wait until the thread waits, either for the request in progress
+        // or, if it were not shared, in its own request.
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != Thread.State.WAITING
+            && thread.getState() != Thread.State.BLOCKED
+            && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        thread.join();
+        future.get();
+        assertEquals(1, rootMembers.size());
+        assertEquals("[Store].[All Store]", rootMembers.get(0).getUniqueName());
+        assertEquals(1, server.getRequestCount("MDSCHEMA_MEMBERS"));
+    }
+
+    /**
+     * Tests that on Mondrian, looking up N members sends one request per
+     * batch of MemberLookupBatchSize members.
+     *
+     * @throws Exception on error
+     */
+    public void testMembersLookupBatches() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube =
+            server.salesCube("MemberLookupBatchSize=3");
+        final List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            names.add("[Store].[S0].[C" + i + "]");
+        }
+        server.resetRequestCounts();
+        final Map<String, XmlaOlap4jMember> memberMap =
+            new HashMap<String, XmlaOlap4jMember>();
+        cube.getMetadataReader().lookupMembersByUniqueName(names, memberMap);
+        assertEquals(new HashSet<String>(names), memberMap.keySet());
+        assertEquals(4, server.getRequestCount("MDSCHEMA_MEMBERS"));
+    }
+
+    /**
+     * Tests that on servers other than Mondrian, looking up members sends
+     * one request per distinct member, at most MemberLookupParallelism at a
+     * time, and that a failed request fails the lookup.
+     *
+     * @throws Exception on error
+     */
+    public void testMembersLookupParallel() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    if (!requestType.equals("MDSCHEMA_MEMBERS")) {
+                        return super.select(requestType, restrictions);
+                    }
+                    final int n = inFlight.incrementAndGet();
+                    try {
+                        for (;;) {
+                            final int max = maxInFlight.get();
+                            if (n <= max
+                                || maxInFlight.compareAndSet(max, n))
+                            {
+                                break;
+                            }
+                        }
+                        Thread.sleep(20);
+                        return super.select(requestType, restrictions);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            };
+        server.clearRows("DISCOVER_DATASOURCES");
+        server.row(
+            "DISCOVER_DATASOURCES",
+            "DataSourceName", "Provider=Generic",
+            "DataSourceDescription", "Fake data source",
+            "URL", "http://foo",
+            "DataSourceInfo", "Provider=Generic",
+            "ProviderName", "Generic",
+            "ProviderType", "MDP",
+            "AuthenticationMode", "Unauthenticated");
+        final XmlaOlap4jCube cube =
+            server.salesCube("MemberLookupParallelism=2");
+        final List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 6; i++) {
+            names.add("[Store].[S1].[C" + i + "]");
+            names.add("[Store].[S1].[C" + i + "]");
+        }
+        server.resetRequestCounts();
+        final Map<String, XmlaOlap4jMember> memberMap =
+            new HashMap<String, XmlaOlap4jMember>();
+        cube.getMetadataReader().lookupMembersByUniqueName(names, memberMap);
+        assertEquals(new HashSet<String>(names), memberMap.keySet());
+        assertEquals(6, server.getRequestCount("MDSCHEMA_MEMBERS"));
+        assertTrue(maxInFlight.get() <= 2);
+
+        server.fail("MDSCHEMA_MEMBERS", 1);
+        try {
+            cube.getMetadataReader().lookupMembersByUniqueName(
+                Arrays.asList("[Store].[S2].[C0]", "[Store].[S2].[C1]"),
+                new HashMap<String, XmlaOlap4jMember>());
+            fail("expected error");
+        } catch (OlapException e) {
+            // ok
+        }
+    }
+
+    private static int levelCount(XmlaOlap4jCube cube) {
+        int count = 0;
+        for (Dimension dimension : cube.getDimensions()) {
+            for (Hierarchy hierarchy : dimension.getHierarchies()) {
+                count += hierarchy.getLevels().size();
+            }
+        }
+        return count;
+    }
+}
+
+// End XmlaOlap4jCubeTest.java
@@ -0,0 +1,223 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.CellSet;
+import org.olap4j.OlapConnection;
+import org.olap4j.metadata.*;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jExtra}.
+ */
+public class XmlaOlap4jExtraTest extends TestCase {
+    private XmlaOlap4jFakeServer server;
+    private OlapConnection connection;
+    private XmlaOlap4jExtra extra;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        XmlaOlap4jMetadataRegistry.invalidate(null);
+        server = new XmlaOlap4jFakeServer();
+        connection =
+            server.connect("MemberSearchIndex=true", "ShareMetadata=true");
+        extra = connection.unwrap(XmlaOlap4jExtra.class);
+    }
+
+    protected void tearDown() throws Exception {
+        connection.close();
+        connection = null;
+        extra = null;
+        server = null;
+        super.tearDown();
+    }
+
+    /**
+     * Tests that a connection unwraps to the extra operations.
+     *
+     * @throws Exception on error
+     */
+    public void testUnwrap() throws Exception {
+        assertTrue(connection.isWrapperFor(XmlaOlap4jExtra.class));
+        assertSame(connection, extra);
+    }
+
+    /**
+     * Tests that the children of several members are fetched in one
+     * request, and are then cached.
+     *
+     * @throws Exception on error
+     */
+    public void testGetChildMembers() throws Exception {
+        final List<Member> states = storeLevel("Store State").getMembers();
+        assertEquals(4, states.size());
+        server.resetRequestCounts();
+        final Map<Member, List<Member>> children =
+            extra.getChildMembers(states);
+        assertEquals(1, server.getRequestCount("MDSCHEMA_MEMBERS"));
+        assertEquals(states, new ArrayList<Member>(children.keySet()));
+        for (Member state : states) {
+            final List<Member> cities = children.get(state);
+            assertEquals(XmlaOlap4jFakeServer.CITY_COUNT / 4, cities.size());
+            assertEquals(
+                state.getUniqueName() + ".[C0]",
+                cities.get(0).getUniqueName());
+            assertEquals(cities, state.getChildMembers());
+        }
+        assertEquals(1, server.getRequestCount("MDSCHEMA_MEMBERS"));
+    }
+
+    /**
+     * Tests searching the loaded members of a hierarchy and a level.
+     *
+     * @throws Exception on error
+     */
+    public void testSearchMembers() throws Exception {
+        final Level stateLevel = storeLevel("Store State");
+        assertTrue(
+            extra.searchMembers(stateLevel.getHierarchy(), "s1", 10)
+                .isEmpty());
+        assertEquals(4, stateLevel.getMembers().size());
+        final List<Member> found =
+            extra.searchMembers(stateLevel.getHierarchy(), "s1", 10);
+        assertEquals(1, found.size());
+        assertEquals("[Store].[S1]", found.get(0).getUniqueName());
+        assertEquals(4, extra.searchMembers(stateLevel, "s", 10).size());
+        assertEquals(2, extra.searchMembers(stateLevel, "s", 2).size());
+    }
+
+    /**
+     * Tests the ordinals of the non-empty cells of a cell set.
+     *
+     * @throws Exception on error
+     */
+    public void testGetNonEmptyOrdinals() throws Exception {
+        final CellSet cellSet =
+            connection.createStatement().executeOlapQuery(
+                "WITH MEMBER [Measures].[olap4j member count] AS "
+                + "'Count([Store].[Store City].Members)'\n"
+                + "SELECT {[Measures].[olap4j member count]} ON COLUMNS\n"
+                + "FROM [Sales]");
+        assertEquals(
+            XmlaOlap4jFakeServer.CITY_COUNT,
+            ((Number) cellSet.getCell(0).getValue()).intValue());
+        assertTrue(
+            Arrays.equals(new int[] {0}, extra.getNonEmptyOrdinals(cellSet)));
+    }
+
+    /**
+     * Tests that prefetching a level loads its members, so that using them
+     * sends no request.
+     *
+     * @throws Exception on error
+     */
+    public void testPrefetch() throws Exception {
+        final Level stateLevel = storeLevel("Store State");
+        extra.prefetch(
+            salesCube(connection),
+            Collections.singletonList(stateLevel)).get();
+        server.resetRequestCounts();
+        assertEquals(4, stateLevel.getMembers().size());
+        assertEquals(0, server.getRequestCount("MDSCHEMA_MEMBERS"));
+    }
+
+    /**
+     * Tests that the operations reject a cube or cell set of another
+     * connection.
+     *
+     * @throws Exception on error
+     */
+    public void testOtherConnection() throws Exception {
+        final OlapConnection connection2 = server.connect();
+        try {
+            final Cube cube2 = salesCube(connection2);
+            try {
+                extra.getMemberCacheStatistics(cube2);
+                fail("expected exception");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+            try {
+                extra.prefetch(cube2, Collections.<MetadataElement>emptyList());
+                fail("expected exception");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+            try {
+                extra.searchMembers(cube2.getHierarchies().get(0), "s", 1);
+                fail("expected exception");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+            assertNotNull(
+                connection2.unwrap(XmlaOlap4jExtra.class)
+                    .getMemberCacheStatistics(cube2));
+        } finally {
+            connection2.close();
+        }
+    }
+
+    /**
+     * Tests that invalidating shared metadata makes the next connection
+     * discover it from the server again.
+     *
+     * @throws Exception on error
+     */
+    public void testInvalidateSharedMetadata() throws Exception {
+        storeLevel("Store State");
+        final int levelRequests = server.getRequestCount("MDSCHEMA_LEVELS");
+        assertTrue(levelRequests > 0);
+
+        final OlapConnection connection2 =
+            server.connect("ShareMetadata=true");
+        try {
+            salesCube(connection2).getHierarchies().get("Store").getLevels();
+            assertEquals(
+                levelRequests, server.getRequestCount("MDSCHEMA_LEVELS"));
+        } finally {
+            connection2.close();
+        }
+
+        extra.invalidateSharedMetadata();
+        final OlapConnection connection3 =
+            server.connect("ShareMetadata=true");
+        try {
+            salesCube(connection3).getHierarchies().get("Store").getLevels();
+            assertTrue(
+                server.getRequestCount("MDSCHEMA_LEVELS") > levelRequests);
+        } finally {
+            connection3.close();
+        }
+    }
+
+    private Level storeLevel(String name) throws Exception {
+        return salesCube(connection).getHierarchies().get("Store").getLevels()
+            .get(name);
+    }
+
+    private static Cube salesCube(OlapConnection connection)
+        throws Exception
+    {
+        return connection.getOlapSchema().getCubes().get("Sales");
+    }
+}
+
+// End XmlaOlap4jExtraTest.java
@@ -0,0 +1,821 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxy;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxyException;
+import org.olap4j.metadata.Cube;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Implementation of {@link XmlaOlap4jProxy} which answers discover requests
+ * in-process from canned rowsets, so that the driver's metadata code can be
+ * tested without an XMLA server.
+ *
+ * <p>The server holds a small "FoodMart" catalog with a "Sales" cube. The
+ * cube has a [Measures] dimension, a [Gender] dimension with members
+ * [All Gender], [F] and [M], and a [Store] dimension whose [Store City]
+ * level has {@link #CITY_COUNT} members under four states.
+ *
+ * <p>Rows are filtered by the restrictions of each request. A
+ * MEMBER_UNIQUE_NAME restriction is combined with the TREE_OP restriction,
+ * if present, as a real server would. The server counts the requests of
+ * each type, and can be told to fail the requests of a given type, or
+ * to answer them with a SOAP fault.
+ *
+ * <p>The server also executes the two MDX queries by which a level's members
+ * are paged: one which counts the members of a level, and one which returns
+ * a <code>SUBSET</code> of them. It counts these as requests of type
+ * {@link #EXECUTE}.
+ */
+class XmlaOlap4jFakeServer implements XmlaOlap4jProxy {
+    /**
+     * Number of members of the [Store].[Store City] level.
+     */
+    static final int CITY_COUNT = 40;
+
+    /**
+     * Request type by which Execute requests are counted, failed and
+     * faulted.
+     */
+    static final String EXECUTE = "EXECUTE";
+
+    private static final Pattern REQUEST_TYPE_PATTERN =
+        Pattern.compile("<RequestType>([A-Z_]+)</RequestType>");
+    private static final Pattern RESTRICTION_LIST_PATTERN =
+        Pattern.compile(
+            "<RestrictionList>(.*)</RestrictionList>", Pattern.DOTALL);
+    private static final Pattern RESTRICTION_PATTERN =
+        Pattern.compile("<([A-Za-z_]+)>([^<]*)</\\1>");
+    private static final Pattern STATEMENT_PATTERN =
+        Pattern.compile("<!\\[CDATA\\[(.*)\\]\\]>", Pattern.DOTALL);
+    private static final Pattern COUNT_PATTERN =
+        Pattern.compile("Count\\((.*?)\\.Members\\)");
+    private static final Pattern SUBSET_PATTERN =
+        Pattern.compile("SUBSET\\((.*?)\\.Members, (\\d+), (\\d+)\\)");
+
+    private final Map<String, List<Map<String, String>>> rowsets =
+        new HashMap<String, List<Map<String, String>>>();
+    private final ConcurrentMap<String, Integer> requestCounts =
+        new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, Integer> failureCounts =
+        new ConcurrentHashMap<String, Integer>();
+    private final Set<String> faultingRequestTypes =
+        new CopyOnWriteArraySet<String>();
+
+    /**
+     * Creates a server with the standard dataset.
+     */
+    XmlaOlap4jFakeServer() {
+        row(
+            "DISCOVER_DATASOURCES",
+            "DataSourceName", "Provider=Mondrian",
+            "DataSourceDescription", "Fake data source",
+            "URL", "http://foo",
+            "DataSourceInfo", "Provider=Mondrian",
+            "ProviderName", "Mondrian",
+            "ProviderType", "MDP",
+            "AuthenticationMode", "Unauthenticated");
+        row(
+            "DBSCHEMA_CATALOGS",
+            "CATALOG_NAME", "FoodMart",
+            "ROLES", "");
+        row(
+            "DBSCHEMA_SCHEMATA",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart");
+        row(
+            "MDSCHEMA_CUBES",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "CUBE_CAPTION", "Sales",
+            "DESCRIPTION", "Sales cube");
+        dimension("Measures", 2, 0);
+        dimension("Gender", 3, 1);
+        dimension("Store", 3, 2);
+        level("Measures", "MeasuresLevel", 0, 0, 1);
+        level("Gender", "(All)", 0, 1, 1);
+        level("Gender", "Gender", 1, 0, 2);
+        level("Store", "(All)", 0, 1, 1);
+        level("Store", "Store State", 1, 0, 4);
+        level("Store", "Store City", 2, 0, CITY_COUNT);
+        row(
+            "MDSCHEMA_MEASURES",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "MEASURE_NAME", "Unit Sales",
+            "MEASURE_UNIQUE_NAME", "[Measures].[Unit Sales]",
+            "MEASURE_CAPTION", "Unit Sales",
+            "DESCRIPTION", "",
+            "DEFAULT_FORMAT_STRING", "Standard",
+            "MEASURE_AGGREGATOR", "1",
+            "DATA_TYPE", "5",
+            "MEASURE_IS_VISIBLE", "true");
+        member(
+            "[Measures].[MeasuresLevel]", "[Measures].[Unit Sales]",
+            "Unit Sales", null, 0, 3);
+        member(
+            "[Gender].[(All)]", "[Gender].[All Gender]", "All Gender",
+            null, 0, 2);
+        member("[Gender].[Gender]", "[Gender].[F]", "F",
+            "[Gender].[All Gender]", 1, 0);
+        member("[Gender].[Gender]", "[Gender].[M]", "M",
+            "[Gender].[All Gender]", 2, 0);
+        member(
+            "[Store].[(All)]", "[Store].[All Store]", "All Store",
+            null, 0, 4);
+        int ordinal = 1;
+        for (int s = 0; s < 4; s++) {
+            final String state = "[Store].[S" + s + "]";
+            member(
+                "[Store].[Store State]", state, "S" + s,
+                "[Store].[All Store]", ordinal++, CITY_COUNT / 4);
+            for (int c = 0; c < CITY_COUNT / 4; c++) {
+                member(
+                    "[Store].[Store City]",
+                    "[Store].[S" + s + "].[C" + c + "]", "C" + c,
+                    state, ordinal++, 0);
+            }
+        }
+    }
+
+    /**
+     * Registers this server with the driver and opens a connection to it.
+     *
+     * @param properties Additional connect string properties, such as
+     *     "MemberCacheSize=10"
+     * @return Connection
+     * @throws SQLException on error
+     */
+    OlapConnection connect(String... properties) throws SQLException {
+        final String cookie = XmlaOlap4jDriver.nextCookie();
+        XmlaOlap4jDriver.PROXY_MAP.put(cookie, this);
+        final StringBuilder buf =
+            new StringBuilder(
+                "jdbc:xmla:Server=http://foo;Catalog=FoodMart;"
+                + "TestProxyCookie=")
+                .append(cookie);
+        for (String property : properties) {
+            buf.append(';').append(property);
+        }
+        try {
+            Class.forName(XmlaOlap4jDriver.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        return (OlapConnection) DriverManager.getConnection(buf.toString());
+    }
+
+    /**
+     * Opens a connection to this server and returns its "Sales" cube.
+     *
+     * @param properties Additional connect string properties
+     * @return Sales cube
+     * @throws SQLException on error
+     */
+    XmlaOlap4jCube salesCube(String... properties) throws SQLException {
+        final Cube cube =
+            connect(properties).getOlapSchema().getCubes().get("Sales");
+        return (XmlaOlap4jCube) cube;
+    }
+
+    /**
+     * Adds a row to the rowset of a request type.
+     *
+     * @param requestType Request type, for example "MDSCHEMA_MEMBERS"
+     * @param columnValues Alternating column names and values; a null
+     *     value omits the column
+     */
+    void row(String requestType, String... columnValues) {
+        final Map<String, String> row = new LinkedHashMap<String, String>();
+        for (int i = 0; i < columnValues.length; i += 2) {
+            if (columnValues[i + 1] != null) {
+                row.put(columnValues[i], columnValues[i + 1]);
+            }
+        }
+        List<Map<String, String>> rowset = rowsets.get(requestType);
+        if (rowset == null) {
+            rowset = new ArrayList<Map<String, String>>();
+            rowsets.put(requestType, rowset);
+        }
+        rowset.add(row);
+    }
+
+    /**
+     * Removes all rows of a request type.
+     *
+     * @param requestType Request type
+     */
+    void clearRows(String requestType) {
+        rowsets.remove(requestType);
+    }
+
+    /**
+     * Makes requests of a given type throw, as if the server were
+     * unreachable.
+     *
+     * @param requestType Request type
+     */
+    void fail(String requestType) {
+        fail(requestType, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes the next few requests of a given type throw.
+     *
+     * @param requestType Request type
+     * @param count Number of requests to fail
+     */
+    void fail(String requestType, int count) {
+        failureCounts.put(requestType, count);
+    }
+
+    /**
+     * Makes requests of a given type return a SOAP fault.
+     *
+     * @param requestType Request type
+     */
+    void fault(String requestType) {
+        faultingRequestTypes.add(requestType);
+    }
+
+    /**
+     * Returns the number of requests of a given type received so far.
+     *
+     * @param requestType Request type
+     * @return Number of requests
+     */
+    int getRequestCount(String requestType) {
+        final Integer count = requestCounts.get(requestType);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Resets the request counts.
+     */
+    void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    /**
+     * Returns the SOAP response which this server sends for a list of
+     * rows.
+     *
+     * @param rows Rows
+     * @return Response
+     */
+    static String response(List<Map<String, String>> rows) {
+        final StringBuilder buf =
+            new StringBuilder(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\""
+                + "http://schemas.xmlsoap.org/soap/envelope/\">\n"
+                + "<SOAP-ENV:Body>\n"
+                + "<DiscoverResponse"
+                + " xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+                + "<return>\n"
+                + "<root xmlns=\""
+                + "urn:schemas-microsoft-com:xml-analysis:rowset\">\n");
+        for (Map<String, String> row : rows) {
+            buf.append("<row>");
+            for (Map.Entry<String, String> column : row.entrySet()) {
+                buf.append('<').append(column.getKey()).append('>');
+                buf.append(xmlEncode(column.getValue()));
+                buf.append("</").append(column.getKey()).append('>');
+            }
+            buf.append("</row>\n");
+        }
+        buf.append(
+            "</root>\n"
+            + "</return>\n"
+            + "</DiscoverResponse>\n"
+            + "</SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n");
+        return buf.toString();
+    }
+
+    /**
+     * Returns a SOAP fault response.
+     *
+     * @param message Fault string
+     * @return Response
+     */
+    static String faultResponse(String message) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\""
+            + "http://schemas.xmlsoap.org/soap/envelope/\">\n"
+            + "<SOAP-ENV:Body>\n"
+            + "<SOAP-ENV:Fault>\n"
+            + "<faultcode>SOAP-ENV:Server</faultcode>\n"
+            + "<faultstring>" + message + "</faultstring>\n"
+            + "<faultactor>Fake</faultactor>\n"
+            + "<detail><XA:error xmlns:XA=\"http://mondrian.sourceforge.net\">"
+            + "<code>00HSBE02</code><desc>" + message + "</desc>"
+            + "</XA:error></detail>\n"
+            + "</SOAP-ENV:Fault>\n"
+            + "</SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n";
+    }
+
+    public byte[] get(XmlaOlap4jServerInfos serverInfos, String request)
+        throws XmlaOlap4jProxyException
+    {
+        final Matcher matcher = REQUEST_TYPE_PATTERN.matcher(request);
+        final Matcher statementMatcher = STATEMENT_PATTERN.matcher(request);
+        final String requestType;
+        if (matcher.find()) {
+            requestType = matcher.group(1);
+        } else if (statementMatcher.find()) {
+            requestType = EXECUTE;
+        } else {
+            throw new XmlaOlap4jProxyException(
+                "Fake server cannot handle request", null);
+        }
+        count(requestType);
+        if (decrement(failureCounts, requestType)) {
+            throw new XmlaOlap4jProxyException(
+                "Fake server failed " + requestType, null);
+        }
+        final String response;
+        if (faultingRequestTypes.contains(requestType)) {
+            response = faultResponse("Fake fault in " + requestType);
+        } else if (requestType.equals(EXECUTE)) {
+            response = execute(statementMatcher.group(1));
+        } else {
+            response = response(select(requestType, restrictions(request)));
+        }
+        try {
+            return response.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new XmlaOlap4jProxyException("Encoding", e);
+        }
+    }
+
+    public Future<byte[]> submit(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+    {
+        return XmlaOlap4jDriver.getFuture(this, serverInfos, request);
+    }
+
+    public String getEncodingCharsetName() {
+        return "UTF-8";
+    }
+
+    /**
+     * Decrements the count of a key, if positive.
+     *
+     * @return whether the count was positive
+     */
+    private static boolean decrement(
+        ConcurrentMap<String, Integer> counts,
+        String key)
+    {
+        for (;;) {
+            final Integer count = counts.get(key);
+            if (count == null || count <= 0) {
+                return false;
+            }
+            if (count == Integer.MAX_VALUE
+                || counts.replace(key, count, count - 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    private void count(String requestType) {
+        for (;;) {
+            final Integer count = requestCounts.get(requestType);
+            if (count == null
+                ? requestCounts.putIfAbsent(requestType, 1) == null
+                : requestCounts.replace(requestType, count, count + 1))
+            {
+                return;
+            }
+        }
+    }
+
+    private static Map<String, List<String>> restrictions(String request) {
+        final Map<String, List<String>> restrictions =
+            new HashMap<String, List<String>>();
+        final Matcher listMatcher = RESTRICTION_LIST_PATTERN.matcher(request);
+        if (!listMatcher.find()) {
+            return restrictions;
+        }
+        final Matcher matcher =
+            RESTRICTION_PATTERN.matcher(listMatcher.group(1));
+        while (matcher.find()) {
+            List<String> values = restrictions.get(matcher.group(1));
+            if (values == null) {
+                values = new ArrayList<String>();
+                restrictions.put(matcher.group(1), values);
+            }
+            values.add(xmlDecode(matcher.group(2)));
+        }
+        return restrictions;
+    }
+
+    private static String xmlEncode(String s) {
+        return s.replace("&", "&amp;")
+            .replace("<", "&lt;")
+            .replace(">", "&gt;");
+    }
+
+    private static String xmlDecode(String s) {
+        return s.replace("&lt;", "<")
+            .replace("&gt;", ">")
+            .replace("&quot;", "\"")
+            .replace("&apos;", "'")
+            .replace("&amp;", "&");
+    }
+
+    /**
+     * Returns the rows which answer a request. Tests may override this
+     * method to return an incomplete response.
+     *
+     * @param requestType Request type
+     * @param restrictions Map from restriction name to values
+     * @return Rows
+     */
+    List<Map<String, String>> select(
+        String requestType,
+        Map<String, List<String>> restrictions)
+    {
+        final List<Map<String, String>> rowset = rowsets.get(requestType);
+        if (rowset == null) {
+            return Collections.emptyList();
+        }
+        final Map<String, List<String>> columnRestrictions =
+            new HashMap<String, List<String>>(restrictions);
+        final List<String> memberUniqueNames =
+            columnRestrictions.remove("MEMBER_UNIQUE_NAME");
+        final List<String> treeOps = columnRestrictions.remove("TREE_OP");
+        final int treeOp =
+            treeOps == null
+                ? 8 // MDTREEOP_SELF
+                : Integer.parseInt(treeOps.get(0));
+        final List<Map<String, String>> list =
+            new ArrayList<Map<String, String>>();
+        for (Map<String, String> row : rowset) {
+            if (matches(row, columnRestrictions)
+                && (memberUniqueNames == null
+                    || related(rowset, row, memberUniqueNames, treeOp)))
+            {
+                list.add(row);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Executes a query which counts the members of a level, or which returns
+     * a subset of them on rows.
+     *
+     * @param mdx MDX query
+     * @return Response
+     * @throws XmlaOlap4jProxyException if the query has another form
+     */
+    private String execute(String mdx) throws XmlaOlap4jProxyException {
+        final Matcher countMatcher = COUNT_PATTERN.matcher(mdx);
+        if (countMatcher.find()) {
+            final Map<String, String> countMember =
+                new HashMap<String, String>();
+            countMember.put(
+                "MEMBER_UNIQUE_NAME", "[Measures].[olap4j member count]");
+            countMember.put("MEMBER_CAPTION", "olap4j member count");
+            countMember.put("LEVEL_UNIQUE_NAME", "[Measures].[MeasuresLevel]");
+            countMember.put("HIERARCHY_UNIQUE_NAME", "[Measures]");
+            return executeResponse(
+                "Axis0",
+                Collections.singletonList(countMember),
+                String.valueOf(levelMembers(countMatcher.group(1)).size()));
+        }
+        final Matcher subsetMatcher = SUBSET_PATTERN.matcher(mdx);
+        if (subsetMatcher.find()) {
+            final List<Map<String, String>> members =
+                levelMembers(subsetMatcher.group(1));
+            final int start = Integer.parseInt(subsetMatcher.group(2));
+            final int end =
+                start + Integer.parseInt(subsetMatcher.group(3));
+            return executeResponse(
+                "Axis1",
+                members.subList(
+                    Math.min(start, members.size()),
+                    Math.min(end, members.size())),
+                null);
+        }
+        throw new XmlaOlap4jProxyException(
+            "Fake server cannot execute " + mdx, null);
+    }
+
+    /**
+     * Returns the member rows of a level, in order.
+     */
+    private List<Map<String, String>> levelMembers(String levelUniqueName) {
+        final Map<String, List<String>> restrictions =
+            new HashMap<String, List<String>>();
+        restrictions.put(
+            "LEVEL_UNIQUE_NAME", Collections.singletonList(levelUniqueName));
+        return select("MDSCHEMA_MEMBERS", restrictions);
+    }
+
+    /**
+     * Returns the response to an Execute request, with a list of members on
+     * one axis and at most one cell.
+     *
+     * @param axisName Name of the axis which holds the members, "Axis0" or
+     *     "Axis1"; in the latter case, "Axis0" is empty
+     * @param members Member rows
+     * @param value Integer value of the cell, or null if there are no cells
+     * @return Response
+     */
+    private String executeResponse(
+        String axisName,
+        List<Map<String, String>> members,
+        String value)
+    {
+        final String hierarchy =
+            members.isEmpty()
+                ? null
+                : members.get(0).get("HIERARCHY_UNIQUE_NAME");
+        final StringBuilder buf =
+            new StringBuilder(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\""
+                + "http://schemas.xmlsoap.org/soap/envelope/\">\n"
+                + "<SOAP-ENV:Body>\n"
+                + "<ExecuteResponse"
+                + " xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+                + "<return>\n"
+                + "<root xmlns=\""
+                + "urn:schemas-microsoft-com:xml-analysis:mddataset\""
+                + " xmlns:xsi=\""
+                + "http://www.w3.org/2001/XMLSchema-instance\">\n"
+                + "<OlapInfo>\n"
+                + "<CubeInfo><Cube><CubeName>Sales</CubeName></Cube>"
+                + "</CubeInfo>\n"
+                + "<AxesInfo>\n");
+        if (axisName.equals("Axis1")) {
+            buf.append("<AxisInfo name=\"Axis0\"/>\n");
+        }
+        buf.append("<AxisInfo name=\"").append(axisName).append("\">");
+        if (hierarchy != null) {
+            buf.append("<HierarchyInfo name=\"").append(hierarchy)
+                .append("\"/>");
+        }
+        buf.append(
+            "</AxisInfo>\n"
+            + "</AxesInfo>\n"
+            + "<CellInfo><Value name=\"VALUE\"/></CellInfo>\n"
+            + "</OlapInfo>\n"
+            + "<Axes>\n");
+        if (axisName.equals("Axis1")) {
+            buf.append("<Axis name=\"Axis0\"><Tuples/></Axis>\n");
+        }
+        buf.append("<Axis name=\"").append(axisName).append("\"><Tuples>\n");
+        for (Map<String, String> member : members) {
+            buf.append("<Tuple><Member Hierarchy=\"")
+                .append(hierarchy)
+                .append("\"><UName>")
+                .append(xmlEncode(member.get("MEMBER_UNIQUE_NAME")))
+                .append("</UName><Caption>")
+                .append(xmlEncode(member.get("MEMBER_CAPTION")))
+                .append("</Caption><LName>")
+                .append(xmlEncode(member.get("LEVEL_UNIQUE_NAME")))
+                .append("</LName><LNum>")
+                .append(levelNumber(member.get("LEVEL_UNIQUE_NAME")))
+                .append("</LNum><DisplayInfo>0</DisplayInfo></Member>"
+                    + "</Tuple>\n");
+        }
+        buf.append(
+            "</Tuples></Axis>\n"
+            + "</Axes>\n"
+            + "<CellData>\n");
+        if (value != null) {
+            buf.append(
+                "<Cell CellOrdinal=\"0\"><Value xsi:type=\"xsd:int\">")
+                .append(value)
+                .append("</Value></Cell>\n");
+        }
+        buf.append(
+            "</CellData>\n"
+            + "</root>\n"
+            + "</return>\n"
+            + "</ExecuteResponse>\n"
+            + "</SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n");
+        return buf.toString();
+    }
+
+    private String levelNumber(String levelUniqueName) {
+        for (Map<String, String> row : rowsets.get("MDSCHEMA_LEVELS")) {
+            if (levelUniqueName.equals(row.get("LEVEL_UNIQUE_NAME"))) {
+                return row.get("LEVEL_NUMBER");
+            }
+        }
+        return "0";
+    }
+
+    private static boolean matches(
+        Map<String, String> row,
+        Map<String, List<String>> restrictions)
+    {
+        for (Map.Entry<String, List<String>> restriction
+            : restrictions.entrySet())
+        {
+            final String value = row.get(restriction.getKey());
+            if (value != null && !restriction.getValue().contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a member row is related by a tree operation to one of
+     * a list of members. Supports the SELF, CHILDREN, PARENT, SIBLINGS and
+     * ANCESTORS operations.
+     */
+    private static boolean related(
+        List<Map<String, String>> rowset,
+        Map<String, String> row,
+        List<String> memberUniqueNames,
+        int treeOp)
+    {
+        final String uniqueName = row.get("MEMBER_UNIQUE_NAME");
+        final String parentUniqueName = row.get("PARENT_UNIQUE_NAME");
+        for (String memberUniqueName : memberUniqueNames) {
+            final Map<String, String> member =
+                find(rowset, memberUniqueName);
+            if (member == null) {
+                continue;
+            }
+            final String memberParent = member.get("PARENT_UNIQUE_NAME");
+            if ((treeOp & 8) != 0
+                && uniqueName.equals(memberUniqueName))
+            {
+                return true;
+            }
+            if ((treeOp & 1) != 0
+                && memberUniqueName.equals(parentUniqueName))
+            {
+                return true;
+            }
+            if ((treeOp & 4) != 0
+                && uniqueName.equals(memberParent))
+            {
+                return true;
+            }
+            if ((treeOp & 2) != 0
+                && !uniqueName.equals(memberUniqueName)
+                && memberParent != null
+                && memberParent.equals(parentUniqueName))
+            {
+                return true;
+            }
+            if ((treeOp & 32) != 0) {
+                for (Map<String, String> ancestor = find(rowset, memberParent);
+                    ancestor != null;
+                    ancestor =
+                        find(rowset, ancestor.get("PARENT_UNIQUE_NAME")))
+                {
+                    if (ancestor == row) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> find(
+        List<Map<String, String>> rowset,
+        String memberUniqueName)
+    {
+        if (memberUniqueName == null) {
+            return null;
+        }
+        for (Map<String, String> row : rowset) {
+            if (memberUniqueName.equals(row.get("MEMBER_UNIQUE_NAME"))) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private void dimension(String name, int type, int ordinal) {
+        final String uniqueName = "[" + name + "]";
+        row(
+            "MDSCHEMA_DIMENSIONS",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "DIMENSION_NAME", name,
+            "DIMENSION_UNIQUE_NAME", uniqueName,
+            "DIMENSION_CAPTION", name,
+            "DIMENSION_ORDINAL", String.valueOf(ordinal),
+            "DIMENSION_TYPE", String.valueOf(type),
+            "DEFAULT_HIERARCHY", uniqueName,
+            "DESCRIPTION", "");
+        final boolean hasAll = type != 2;
+        row(
+            "MDSCHEMA_HIERARCHIES",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "DIMENSION_UNIQUE_NAME", uniqueName,
+            "HIERARCHY_NAME", name,
+            "HIERARCHY_UNIQUE_NAME", uniqueName,
+            "HIERARCHY_CAPTION", name,
+            "DESCRIPTION", "",
+            "ALL_MEMBER",
+            hasAll ? "[" + name + "].[All " + name + "]" : null,
+            "DEFAULT_MEMBER",
+            hasAll
+                ? "[" + name + "].[All " + name + "]"
+                : "[Measures].[Unit Sales]");
+    }
+
+    private void level(
+        String dimension,
+        String name,
+        int number,
+        int type,
+        int cardinality)
+    {
+        row(
+            "MDSCHEMA_LEVELS",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "DIMENSION_UNIQUE_NAME", "[" + dimension + "]",
+            "HIERARCHY_UNIQUE_NAME", "[" + dimension + "]",
+            "LEVEL_NAME", name,
+            "LEVEL_UNIQUE_NAME", "[" + dimension + "].[" + name + "]",
+            "LEVEL_CAPTION", name,
+            "LEVEL_NUMBER", String.valueOf(number),
+            "LEVEL_CARDINALITY", String.valueOf(cardinality),
+            "LEVEL_TYPE", String.valueOf(type),
+            "DESCRIPTION", "");
+    }
+
+    private void member(
+        String levelUniqueName,
+        String uniqueName,
+        String name,
+        String parentUniqueName,
+        int ordinal,
+        int childCount)
+    {
+        final String dimensionUniqueName =
+            levelUniqueName.substring(0, levelUniqueName.indexOf(']') + 1);
+        row(
+            "MDSCHEMA_MEMBERS",
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "DIMENSION_UNIQUE_NAME", dimensionUniqueName,
+            "HIERARCHY_UNIQUE_NAME", dimensionUniqueName,
+            "LEVEL_UNIQUE_NAME", levelUniqueName,
+            "MEMBER_ORDINAL", String.valueOf(ordinal),
+            "MEMBER_NAME", name,
+            "MEMBER_UNIQUE_NAME", uniqueName,
+            "MEMBER_TYPE",
+            dimensionUniqueName.equals("[Measures]")
+                ? "3" // MDMEMBER_TYPE_MEASURE
+                : parentUniqueName == null
+                ? "2" // MDMEMBER_TYPE_ALL
+                : "1", // MDMEMBER_TYPE_REGULAR
+            "MEMBER_CAPTION", name,
+            "CHILDREN_CARDINALITY", String.valueOf(childCount),
+            "PARENT_UNIQUE_NAME", parentUniqueName);
+    }
+}
+
+// End XmlaOlap4jFakeServer.java
@@ -0,0 +1,165 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxyException;
+import org.olap4j.impl.LcidLocale;
+import org.olap4j.metadata.Cube;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Unit test for the metadata which an {@link XmlaOlap4jConnection} keeps
+ * for each locale.
+ */
+public class XmlaOlap4jLocaleTest extends TestCase {
+    private static final Pattern LOCALE_PATTERN =
+        Pattern.compile("<LocaleIdentifier>(\\d+)</LocaleIdentifier>");
+
+    private static final String DIMENSIONS = "MDSCHEMA_DIMENSIONS";
+    private static final String SETS = "MDSCHEMA_SETS";
+
+    /**
+     * Locale identifiers of the MDSCHEMA_SETS requests, in the order they
+     * were sent. A cube requests its named sets only when they are first
+     * used.
+     */
+    private final List<String> setLocales =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    private final XmlaOlap4jFakeServer server =
+        new XmlaOlap4jFakeServer() {
+            public byte[] get(
+                XmlaOlap4jServerInfos serverInfos,
+                String request)
+                throws XmlaOlap4jProxyException
+            {
+                if (request.contains(SETS)) {
+                    final Matcher matcher = LOCALE_PATTERN.matcher(request);
+                    setLocales.add(
+                        matcher.find() ? matcher.group(1) : null);
+                }
+                return super.get(serverInfos, request);
+            }
+        };
+
+    /**
+     * Tests that with LocaleCacheSize=2, switching from one locale to
+     * another and back sends no requests, and returns the same metadata
+     * objects.
+     *
+     * @throws Exception on error
+     */
+    public void testSwitchBack() throws Exception {
+        final OlapConnection connection = server.connect("LocaleCacheSize=2");
+        connection.setLocale(Locale.US);
+        final Cube usCube = salesCube(connection);
+        connection.setLocale(Locale.FRANCE);
+        final Cube frCube = salesCube(connection);
+        assertNotSame(usCube, frCube);
+
+        server.resetRequestCounts();
+        connection.setLocale(Locale.US);
+        assertSame(usCube, salesCube(connection));
+        connection.setLocale(Locale.FRANCE);
+        assertSame(frCube, salesCube(connection));
+        assertEquals(0, totalRequestCount());
+        connection.close();
+    }
+
+    /**
+     * Tests that by default only the current locale's metadata is kept, so
+     * that switching back to a locale fetches its metadata again.
+     *
+     * @throws Exception on error
+     */
+    public void testDefaultSize() throws Exception {
+        final OlapConnection connection = server.connect();
+        connection.setLocale(Locale.US);
+        final Cube usCube = salesCube(connection);
+        connection.setLocale(Locale.FRANCE);
+        salesCube(connection);
+
+        server.resetRequestCounts();
+        connection.setLocale(Locale.US);
+        assertNotSame(usCube, salesCube(connection));
+        assertTrue(server.getRequestCount(DIMENSIONS) > 0);
+        connection.close();
+    }
+
+    /**
+     * Tests that metadata which is first used after a switch to another
+     * locale is requested in the locale of the tree it belongs to, not the
+     * connection's current locale.
+     *
+     * @throws Exception on error
+     */
+    public void testLazyPopulationKeepsLocale() throws Exception {
+        final OlapConnection connection = server.connect("LocaleCacheSize=2");
+        connection.setLocale(Locale.US);
+        final Cube usCube =
+            connection.getOlapSchema().getCubes().get("Sales");
+        connection.setLocale(Locale.FRANCE);
+        final Cube frCube =
+            connection.getOlapSchema().getCubes().get("Sales");
+        setLocales.clear();
+
+        usCube.getSets().size();
+        frCube.getSets().size();
+        assertEquals(
+            Arrays.asList(lcid(Locale.US), lcid(Locale.FRANCE)),
+            setLocales);
+        connection.close();
+    }
+
+    /**
+     * Returns the "Sales" cube in the connection's current locale, and
+     * loads its dimensions.
+     */
+    private static Cube salesCube(OlapConnection connection)
+        throws Exception
+    {
+        final Cube cube = connection.getOlapSchema().getCubes().get("Sales");
+        assertNotNull(cube.getDimensions().get("Store"));
+        return cube;
+    }
+
+    private int totalRequestCount() {
+        int count = 0;
+        for (String requestType
+            : Arrays.asList(
+                "DISCOVER_DATASOURCES", "DBSCHEMA_CATALOGS",
+                "DBSCHEMA_SCHEMATA", "MDSCHEMA_CUBES", DIMENSIONS,
+                "MDSCHEMA_MEASURES"))
+        {
+            count += server.getRequestCount(requestType);
+        }
+        return count;
+    }
+
+    private static String lcid(Locale locale) {
+        return String.valueOf(LcidLocale.localeToLcid(locale));
+    }
+}
+
+// End XmlaOlap4jLocaleTest.java
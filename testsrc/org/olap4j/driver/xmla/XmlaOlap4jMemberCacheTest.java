@@ -0,0 +1,189 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jMemberCache}.
+ */
+public class XmlaOlap4jMemberCacheTest extends TestCase {
+    /**
+     * Tests that the cache never holds more than its bound, and that it
+     * does not cache a list which exceeds the bound on its own.
+     */
+    public void testWeightBound() {
+        final XmlaOlap4jMemberCache cache =
+            new XmlaOlap4jMemberCache(
+                100, XmlaOlap4jMemberCache.Eviction.LRU);
+        for (int i = 0; i < 50; i++) {
+            cache.putChildren("m" + i, members(i % 7 + 1));
+            assertTrue(cache.getWeight() <= 100);
+        }
+        cache.putChildren("big", members(101));
+        assertNull(cache.getChildren("big"));
+        cache.putChildren("full", members(100));
+        assertEquals(100, cache.getWeight());
+        assertNotNull(cache.getChildren("full"));
+        cache.clear();
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.getChildren("full"));
+    }
+
+    /**
+     * Tests that the FIFO policy evicts the oldest entries, down to seven
+     * eighths of the bound, and that the LRU policy spares an entry which
+     * was used recently.
+     */
+    public void testEviction() {
+        final XmlaOlap4jMemberCache fifo =
+            new XmlaOlap4jMemberCache(
+                16, XmlaOlap4jMemberCache.Eviction.FIFO);
+        final XmlaOlap4jMemberCache lru =
+            new XmlaOlap4jMemberCache(
+                16, XmlaOlap4jMemberCache.Eviction.LRU);
+        for (XmlaOlap4jMemberCache cache : Arrays.asList(fifo, lru)) {
+            for (int i = 0; i < 8; i++) {
+                cache.putChildren("m" + i, members(2));
+            }
+            assertEquals(16, cache.getWeight());
+            assertNotNull(cache.getChildren("m0"));
+            cache.putChildren("m8", members(2));
+            assertEquals(14, cache.getWeight());
+            assertNotNull(cache.getChildren("m8"));
+            assertNotNull(cache.getChildren("m7"));
+        }
+        // FIFO evicted the first entries, although "m0" was used.
+        assertNull(fifo.getChildren("m0"));
+        assertNull(fifo.getChildren("m1"));
+        assertNotNull(fifo.getChildren("m2"));
+        // LRU evicted the least recently used entries instead.
+        assertNotNull(lru.getChildren("m0"));
+        assertNull(lru.getChildren("m1"));
+        assertNull(lru.getChildren("m2"));
+        assertNotNull(lru.getChildren("m3"));
+    }
+
+    /**
+     * Tests the statistics of the cache.
+     */
+    public void testStatistics() {
+        final XmlaOlap4jMemberCache cache =
+            new XmlaOlap4jMemberCache(
+                3, XmlaOlap4jMemberCache.Eviction.LRU);
+        assertNull(cache.getChildren("a"));
+        cache.putChildren("a", members(2));
+        assertNotNull(cache.getChildren("a"));
+        assertNotNull(cache.getChildren("a"));
+        cache.putChildren("b", members(2));
+        assertNull(cache.getChildren("a"));
+        final Map<XmlaOlap4jMemberCache.Statistic, Long> statistics =
+            cache.getStatistics();
+        assertEquals(
+            Long.valueOf(2),
+            statistics.get(XmlaOlap4jMemberCache.Statistic.HITS));
+        assertEquals(
+            Long.valueOf(2),
+            statistics.get(XmlaOlap4jMemberCache.Statistic.MISSES));
+        assertEquals(
+            Long.valueOf(1),
+            statistics.get(XmlaOlap4jMemberCache.Statistic.EVICTIONS));
+    }
+
+    /**
+     * Tests that concurrent additions and lookups keep the weight of the
+     * cache consistent with its contents.
+     *
+     * @throws Exception on error
+     */
+    public void testConcurrentUse() throws Exception {
+        final XmlaOlap4jMemberCache cache =
+            new XmlaOlap4jMemberCache(
+                1000, XmlaOlap4jMemberCache.Eviction.LRU);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            threads.add(
+                new Thread() {
+                    public void run() {
+                        final Random random = new Random(seed);
+                        for (int i = 0; i < 10000; i++) {
+                            final String name = "m" + random.nextInt(500);
+                            if (cache.getChildren(name) == null) {
+                                cache.putChildren(
+                                    name, members(random.nextInt(10) + 1));
+                            }
+                        }
+                    }
+                });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(cache.getWeight() <= 1000);
+        int weight = 0;
+        for (int i = 0; i < 500; i++) {
+            final List<XmlaOlap4jMember> children =
+                cache.getChildren("m" + i);
+            if (children != null) {
+                weight += children.size();
+            }
+        }
+        assertEquals(weight, cache.getWeight());
+    }
+
+    /**
+     * Tests that the listener hears of each entry which is added, replaced,
+     * evicted or cleared, so that it holds as many members as the cache.
+     */
+    public void testListener() {
+        final int[] held = {0};
+        final XmlaOlap4jMemberCache cache =
+            new XmlaOlap4jMemberCache(
+                16,
+                XmlaOlap4jMemberCache.Eviction.LRU,
+                new XmlaOlap4jMemberCache.Listener() {
+                    public void added(List<XmlaOlap4jMember> members) {
+                        held[0] += members.size();
+                    }
+
+                    public void removed(List<XmlaOlap4jMember> members) {
+                        held[0] -= members.size();
+                    }
+                });
+        for (int i = 0; i < 20; i++) {
+            cache.putChildren("m" + i % 12, members(i % 3 + 1));
+            assertEquals(cache.getWeight(), held[0]);
+        }
+        cache.putChildren("big", members(17));
+        assertEquals(cache.getWeight(), held[0]);
+        cache.clear();
+        assertEquals(0, held[0]);
+    }
+
+    private static List<XmlaOlap4jMember> members(int n) {
+        return Collections.nCopies(n, null);
+    }
+}
+
+// End XmlaOlap4jMemberCacheTest.java
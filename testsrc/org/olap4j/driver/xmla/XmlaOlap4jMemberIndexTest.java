@@ -0,0 +1,188 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.metadata.Member;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jMemberIndex}.
+ */
+public class XmlaOlap4jMemberIndexTest extends TestCase {
+    /**
+     * Tests matching by caption and name, from the start of the text or of
+     * any word, ignoring case and accents.
+     *
+     * @throws Exception on error
+     */
+    public void testSearch() throws Exception {
+        final XmlaOlap4jLevel cityLevel =
+            level(new XmlaOlap4jFakeServer().salesCube(), "Store City");
+        final XmlaOlap4jMemberIndex index = new XmlaOlap4jMemberIndex();
+        final XmlaOlap4jMember losAngeles =
+            member(cityLevel, "LA", "Los Ángeles");
+        final XmlaOlap4jMember sanFrancisco =
+            member(cityLevel, "SF", "San Francisco");
+        final XmlaOlap4jMember angers = member(cityLevel, "AN", "Angers");
+        index.add(losAngeles);
+        index.add(sanFrancisco);
+        index.add(angers);
+        assertEquals(3, index.size());
+
+        assertEquals(
+            Arrays.asList(losAngeles), index.search("LOS  an", null, 10));
+        assertEquals(
+            Arrays.asList(angers, losAngeles),
+            index.search("ang", null, 10));
+        assertEquals(Arrays.asList(angers), index.search("ang", null, 1));
+        assertEquals(Arrays.asList(sanFrancisco), index.search("sf", null, 10));
+        assertTrue(index.search("geles", null, 10).isEmpty());
+        assertTrue(index.search("", null, 10).isEmpty());
+        assertTrue(
+            index.search(
+                "ang",
+                level(new XmlaOlap4jFakeServer().salesCube(), "Store State"),
+                10)
+                .isEmpty());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.search("ang", null, 10).isEmpty());
+    }
+
+    /**
+     * Tests that a member stays in the index until each reference to it has
+     * been removed.
+     *
+     * @throws Exception on error
+     */
+    public void testReferences() throws Exception {
+        final XmlaOlap4jLevel cityLevel =
+            level(new XmlaOlap4jFakeServer().salesCube(), "Store City");
+        final XmlaOlap4jMemberIndex index = new XmlaOlap4jMemberIndex();
+        final XmlaOlap4jMember member = member(cityLevel, "LA", "Los Angeles");
+        final XmlaOlap4jMember member2 =
+            member(cityLevel, "LA", "Los Angeles");
+        index.add(member);
+        index.add(member2);
+        assertEquals(1, index.size());
+        // The first instance stays in the index.
+        assertSame(member, index.search("los", null, 10).get(0));
+        index.remove(member2);
+        assertSame(member, index.search("angeles", null, 10).get(0));
+        index.remove(member);
+        assertEquals(0, index.size());
+        assertTrue(index.search("los", null, 10).isEmpty());
+        assertTrue(index.search("angeles", null, 10).isEmpty());
+        // Removing a member which is not indexed does nothing.
+        index.remove(member);
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Tests that members which the member cache of the cube evicts leave
+     * the index, and that the members of a level, which the level holds,
+     * stay.
+     *
+     * @throws Exception on error
+     */
+    public void testEviction() throws Exception {
+        final XmlaOlap4jCube cube =
+            new XmlaOlap4jFakeServer().salesCube(
+                "MemberSearchIndex=true", "MemberCacheSize=12");
+        final XmlaOlap4jLevel stateLevel = level(cube, "Store State");
+        final XmlaOlap4jHierarchy hierarchy = stateLevel.olap4jHierarchy;
+        final List<Member> states = stateLevel.getMembers();
+        assertEquals(4, states.size());
+        assertEquals(4, cube.getIndexedMemberCount(hierarchy));
+
+        assertEquals(10, states.get(0).getChildMembers().size());
+        assertEquals(14, cube.getIndexedMemberCount(hierarchy));
+        assertEquals(
+            Arrays.asList("[Store].[S0].[C3]"),
+            uniqueNames(cube.searchMembers(hierarchy, null, "c3", 10)));
+
+        // The children of [S1] push those of [S0] out of the cache, and so
+        // out of the index.
+        assertEquals(10, states.get(1).getChildMembers().size());
+        assertEquals(14, cube.getIndexedMemberCount(hierarchy));
+        assertEquals(
+            Arrays.asList("[Store].[S1].[C3]"),
+            uniqueNames(cube.searchMembers(hierarchy, null, "c3", 10)));
+        assertEquals(1, cube.searchMembers(hierarchy, null, "s1", 10).size());
+
+        cube.clearCache();
+        assertEquals(0, cube.getIndexedMemberCount(hierarchy));
+        assertTrue(cube.searchMembers(hierarchy, null, "c3", 10).isEmpty());
+    }
+
+    /**
+     * Tests that the members of a preloaded hierarchy are indexed, and stay
+     * in the index however small the member cache.
+     *
+     * @throws Exception on error
+     */
+    public void testPreloadedHierarchy() throws Exception {
+        final XmlaOlap4jCube cube =
+            new XmlaOlap4jFakeServer().salesCube(
+                "MemberSearchIndex=true",
+                "MemberCacheSize=0",
+                "PreloadHierarchies=[Store]");
+        final XmlaOlap4jLevel stateLevel = level(cube, "Store State");
+        final XmlaOlap4jHierarchy hierarchy = stateLevel.olap4jHierarchy;
+        assertEquals(4, stateLevel.getMembers().size());
+        assertEquals(
+            1 + 4 + XmlaOlap4jFakeServer.CITY_COUNT,
+            cube.getIndexedMemberCount(hierarchy));
+        assertEquals(
+            4, cube.searchMembers(hierarchy, null, "c9", 10).size());
+    }
+
+    private static List<String> uniqueNames(List<Member> members) {
+        final List<String> list = new ArrayList<String>();
+        for (Member member : members) {
+            list.add(member.getUniqueName());
+        }
+        return list;
+    }
+
+    private static XmlaOlap4jLevel level(XmlaOlap4jCube cube, String name) {
+        return (XmlaOlap4jLevel)
+            cube.getHierarchies().get("Store").getLevels().get(name);
+    }
+
+    /**
+     * Creates a member of the [Store] hierarchy with a given name and
+     * caption.
+     */
+    private static XmlaOlap4jMember member(
+        XmlaOlap4jLevel level,
+        String name,
+        String caption)
+    {
+        return new XmlaOlap4jMember(
+            level, "[Store].[" + name + "]", name, caption, "",
+            null, Member.Type.REGULAR, 0, 0,
+            Collections.<org.olap4j.metadata.Property, Object>emptyMap());
+    }
+}
+
+// End XmlaOlap4jMemberIndexTest.java
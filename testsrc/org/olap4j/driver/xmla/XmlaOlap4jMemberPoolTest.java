@@ -0,0 +1,163 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.metadata.Member;
+import org.olap4j.metadata.Property;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jMemberPool}.
+ */
+public class XmlaOlap4jMemberPoolTest extends TestCase {
+    /**
+     * Tests that equal strings are shared, and that a string which collides
+     * with another takes its slot.
+     */
+    public void testShare() {
+        final XmlaOlap4jMemberPool pool = new XmlaOlap4jMemberPool();
+        assertNull(pool.share(null));
+        final String s = new String("[Store].[S0]");
+        assertSame(s, pool.share(s));
+        assertSame(s, pool.share(new String("[Store].[S0]")));
+
+        // "Aa" and "BB" have the same hash code, so take the same slot.
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        final String aa = new String("Aa");
+        final String bb = new String("BB");
+        assertSame(aa, pool.share(aa));
+        assertSame(bb, pool.share(bb));
+        final String aa2 = new String("Aa");
+        assertSame(aa2, pool.share(aa2));
+        assertSame(s, pool.share(new String("[Store].[S0]")));
+    }
+
+    /**
+     * Tests that property maps have the same contents as the maps they were
+     * made from, and cannot be modified.
+     */
+    public void testPropertyMap() {
+        final XmlaOlap4jMemberPool pool = new XmlaOlap4jMemberPool();
+        final Map<Property, Object> empty =
+            new LinkedHashMap<Property, Object>();
+        assertEquals(empty, pool.propertyMap(empty));
+
+        final Map<Property, Object> one =
+            new LinkedHashMap<Property, Object>();
+        one.put(Property.StandardMemberProperty.DEPTH, 1);
+        assertEquals(one, pool.propertyMap(one));
+
+        final List<Map<Property, Object>> maps =
+            new ArrayList<Map<Property, Object>>();
+        for (int i = 0; i < 3; i++) {
+            final Map<Property, Object> map =
+                new LinkedHashMap<Property, Object>();
+            map.put(Property.StandardMemberProperty.DEPTH, i);
+            map.put(Property.StandardMemberProperty.MEMBER_KEY, "k" + i);
+            map.put(Property.StandardMemberProperty.DISPLAY_INFO, null);
+            final Map<Property, Object> pooled = pool.propertyMap(map);
+            assertEquals(map, pooled);
+            assertEquals(
+                "k" + i,
+                pooled.get(Property.StandardMemberProperty.MEMBER_KEY));
+            assertTrue(
+                pooled.containsKey(
+                    Property.StandardMemberProperty.DISPLAY_INFO));
+            assertFalse(
+                pooled.containsKey(
+                    Property.StandardMemberProperty.CHILDREN_CARDINALITY));
+            maps.add(pooled);
+        }
+        try {
+            maps.get(0).put(Property.StandardMemberProperty.DEPTH, 5);
+            fail("expected exception");
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+    /**
+     * Tests that siblings loaded in one response share the unique name of
+     * their parent.
+     *
+     * @throws Exception on error
+     */
+    public void testSiblingsShareParent() throws Exception {
+        final List<Member> states =
+            storeLevel(new XmlaOlap4jFakeServer().salesCube(), "Store State")
+                .getMembers();
+        final List<? extends Member> cities =
+            states.get(2).getChildMembers();
+        assertEquals(10, cities.size());
+        final String parentUniqueName =
+            ((XmlaOlap4jMember) cities.get(0)).getParentMemberUniqueName();
+        assertEquals("[Store].[S2]", parentUniqueName);
+        for (Member city : cities) {
+            assertSame(
+                parentUniqueName,
+                ((XmlaOlap4jMember) city).getParentMemberUniqueName());
+        }
+    }
+
+    /**
+     * Tests that members whose rows have no caption are loaded.
+     *
+     * @throws Exception on error
+     */
+    public void testMissingCaption() throws Exception {
+        final XmlaOlap4jFakeServer server =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    final List<Map<String, String>> rows =
+                        super.select(requestType, restrictions);
+                    if (!requestType.equals("MDSCHEMA_MEMBERS")) {
+                        return rows;
+                    }
+                    final List<Map<String, String>> list =
+                        new ArrayList<Map<String, String>>();
+                    for (Map<String, String> row : rows) {
+                        row = new LinkedHashMap<String, String>(row);
+                        row.remove("MEMBER_CAPTION");
+                        list.add(row);
+                    }
+                    return list;
+                }
+            };
+        final List<Member> states =
+            storeLevel(server.salesCube(), "Store State").getMembers();
+        assertEquals(4, states.size());
+        assertEquals("S1", states.get(1).getName());
+        assertEquals("[Store].[S1]", states.get(1).getUniqueName());
+    }
+
+    private static XmlaOlap4jLevel storeLevel(
+        XmlaOlap4jCube cube,
+        String name)
+    {
+        return (XmlaOlap4jLevel)
+            cube.getHierarchies().get("Store").getLevels().get(name);
+    }
+}
+
+// End XmlaOlap4jMemberPoolTest.java
@@ -0,0 +1,110 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.metadata.Member;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for the lookup of the relatives of an {@link XmlaOlap4jMember}.
+ */
+public class XmlaOlap4jMemberTest extends TestCase {
+    private static final String MEMBERS = "MDSCHEMA_MEMBERS";
+
+    /**
+     * Tests that walking up the hierarchy from a member costs one request,
+     * however many levels it crosses, and none once the ancestors are
+     * cached.
+     *
+     * @throws Exception on error
+     */
+    public void testAncestors() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube = server.salesCube();
+        final XmlaOlap4jMember city = lookup(cube, "[Store].[S1].[C3]");
+        server.resetRequestCounts();
+        assertEquals(
+            Arrays.asList("[Store].[S1]", "[Store].[All Store]"),
+            uniqueNames(city.getAncestorMembers()));
+        assertEquals(1, server.getRequestCount(MEMBERS));
+        assertEquals(2, city.getAncestorMembers().size());
+        assertEquals(1, server.getRequestCount(MEMBERS));
+
+        // The ancestors are cached, so a sibling finds them without a
+        // request.
+        final XmlaOlap4jMember sibling = lookup(cube, "[Store].[S1].[C4]");
+        server.resetRequestCounts();
+        assertSame(city.getParentMember(), sibling.getParentMember());
+        assertEquals(
+            Arrays.asList("[Store].[S1]", "[Store].[All Store]"),
+            uniqueNames(sibling.getAncestorMembers()));
+        assertEquals(0, server.getRequestCount(MEMBERS));
+
+        final XmlaOlap4jMember all = lookup(cube, "[Store].[All Store]");
+        server.resetRequestCounts();
+        assertNull(all.getParentMember());
+        assertTrue(all.getAncestorMembers().isEmpty());
+        assertEquals(0, server.getRequestCount(MEMBERS));
+    }
+
+    /**
+     * Tests that a member whose parent is cached gets its parent without a
+     * request, even if its grandparent is not cached, and that the
+     * grandparent is fetched when the parent needs it.
+     *
+     * @throws Exception on error
+     */
+    public void testParentCached() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube = server.salesCube();
+        final XmlaOlap4jMember state = lookup(cube, "[Store].[S2]");
+        final XmlaOlap4jMember city = lookup(cube, "[Store].[S2].[C0]");
+        server.resetRequestCounts();
+        assertSame(state, city.getParentMember());
+        assertEquals(0, server.getRequestCount(MEMBERS));
+
+        assertEquals(
+            Arrays.asList("[Store].[S2]", "[Store].[All Store]"),
+            uniqueNames(city.getAncestorMembers()));
+        assertEquals(1, server.getRequestCount(MEMBERS));
+    }
+
+    private static XmlaOlap4jMember lookup(
+        XmlaOlap4jCube cube,
+        String uniqueName)
+        throws Exception
+    {
+        final XmlaOlap4jMember member =
+            cube.getMetadataReader().lookupMemberByUniqueName(uniqueName);
+        assertNotNull(uniqueName, member);
+        return member;
+    }
+
+    private static List<String> uniqueNames(List<? extends Member> members) {
+        final List<String> list = new ArrayList<String>();
+        for (Member member : members) {
+            list.add(member.getUniqueName());
+        }
+        return list;
+    }
+}
+
+// End XmlaOlap4jMemberTest.java
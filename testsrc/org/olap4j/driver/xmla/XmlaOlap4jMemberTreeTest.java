@@ -0,0 +1,209 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.impl.Olap4jUtil;
+import org.olap4j.metadata.Member;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jMemberTree}, and for the preloading of
+ * hierarchies by {@link XmlaOlap4jCube}.
+ */
+public class XmlaOlap4jMemberTreeTest extends TestCase {
+    private XmlaOlap4jFakeServer server;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new XmlaOlap4jFakeServer();
+    }
+
+    protected void tearDown() throws Exception {
+        server = null;
+        super.tearDown();
+    }
+
+    /**
+     * Tests that building a tree links each member to its parent, and
+     * indexes the children and the members of each level.
+     *
+     * @throws Exception on error
+     */
+    public void testLinking() throws Exception {
+        final XmlaOlap4jCube cube =
+            server.salesCube("PreloadHierarchies=[Store]");
+        final XmlaOlap4jHierarchy hierarchy = storeHierarchy(cube);
+        final XmlaOlap4jMemberTree tree = cube.getMemberTree(hierarchy);
+        assertNotNull(tree);
+        assertEquals(1 + 4 + XmlaOlap4jFakeServer.CITY_COUNT, tree.size());
+
+        final XmlaOlap4jMember all = tree.lookupMember("[Store].[All Store]");
+        final XmlaOlap4jMember s1 = tree.lookupMember("[Store].[S1]");
+        final XmlaOlap4jMember c3 = tree.lookupMember("[Store].[S1].[C3]");
+        assertNull(tree.lookupMember("[Store].[S9]"));
+        assertSame(s1, c3.getParentMember());
+        assertSame(all, s1.getParentMember());
+        assertNull(all.getParentMember());
+
+        final List<XmlaOlap4jMember> children = tree.getChildren(s1);
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT / 4, children.size());
+        assertEquals("[Store].[S1].[C0]", children.get(0).getUniqueName());
+        assertSame(c3, children.get(3));
+        assertTrue(tree.getChildren(c3).isEmpty());
+
+        assertEquals(Arrays.asList(s1, all), tree.getAncestors(c3));
+        assertTrue(tree.getAncestors(all).isEmpty());
+
+        final XmlaOlap4jLevel cityLevel =
+            (XmlaOlap4jLevel) hierarchy.getLevels().get("Store City");
+        final List<XmlaOlap4jMember> cities = tree.getLevelMembers(cityLevel);
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, cities.size());
+        assertSame(c3, cities.get(XmlaOlap4jFakeServer.CITY_COUNT / 4 + 3));
+    }
+
+    /**
+     * Tests that a member whose parent is not in the list becomes a root of
+     * the tree.
+     *
+     * @throws Exception on error
+     */
+    public void testOrphans() throws Exception {
+        final XmlaOlap4jCube cube = server.salesCube();
+        final XmlaOlap4jLevel cityLevel =
+            (XmlaOlap4jLevel) storeHierarchy(cube).getLevels()
+                .get("Store City");
+        final List<XmlaOlap4jMember> cities =
+            Olap4jUtil.cast(cityLevel.getMembers());
+        final XmlaOlap4jMemberTree tree = new XmlaOlap4jMemberTree(cities);
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, tree.size());
+        final XmlaOlap4jMember c0 = tree.lookupMember("[Store].[S0].[C0]");
+        assertTrue(tree.getAncestors(c0).isEmpty());
+        assertTrue(tree.getChildren(c0).isEmpty());
+        final List<XmlaOlap4jMember> siblings =
+            new ArrayList<XmlaOlap4jMember>();
+        tree.getRelatives(
+            Olap4jUtil.enumSetOf(Member.TreeOp.SIBLINGS), c0, siblings);
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT - 1, siblings.size());
+        assertFalse(siblings.contains(c0));
+    }
+
+    /**
+     * Tests that relatives are returned in hierarchy order, whatever the
+     * order of the tree-operations.
+     *
+     * @throws Exception on error
+     */
+    public void testRelatives() throws Exception {
+        final XmlaOlap4jCube cube =
+            server.salesCube("PreloadHierarchies=[Store]");
+        final XmlaOlap4jMemberTree tree =
+            cube.getMemberTree(storeHierarchy(cube));
+        final XmlaOlap4jMember s1 = tree.lookupMember("[Store].[S1]");
+
+        final List<XmlaOlap4jMember> list = new ArrayList<XmlaOlap4jMember>();
+        tree.getRelatives(
+            Olap4jUtil.enumSetOf(
+                Member.TreeOp.SIBLINGS,
+                Member.TreeOp.SELF,
+                Member.TreeOp.PARENT),
+            s1,
+            list);
+        assertEquals(
+            "[[Store].[All Store], [Store].[S0], [Store].[S1], [Store].[S2],"
+            + " [Store].[S3]]",
+            uniqueNames(list).toString());
+
+        list.clear();
+        tree.getRelatives(
+            Olap4jUtil.enumSetOf(
+                Member.TreeOp.DESCENDANTS, Member.TreeOp.ANCESTORS),
+            s1,
+            list);
+        assertEquals(1 + XmlaOlap4jFakeServer.CITY_COUNT / 4, list.size());
+        assertEquals("[Store].[All Store]", list.get(0).getUniqueName());
+        assertEquals("[Store].[S1].[C0]", list.get(1).getUniqueName());
+
+        // Navigation through the cube is answered by the tree.
+        server.resetRequestCounts();
+        final List<XmlaOlap4jMember> relatives =
+            new ArrayList<XmlaOlap4jMember>();
+        cube.getMetadataReader().lookupMemberRelatives(
+            Olap4jUtil.enumSetOf(Member.TreeOp.CHILDREN),
+            "[Store].[S2]",
+            relatives);
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT / 4, relatives.size());
+        assertEquals(0, server.getRequestCount("MDSCHEMA_MEMBERS"));
+    }
+
+    /**
+     * Tests that a hierarchy is loaded once, and that clearing the cube's
+     * cache evicts its tree so that the next access loads it again.
+     *
+     * @throws Exception on error
+     */
+    public void testEviction() throws Exception {
+        final XmlaOlap4jCube cube =
+            server.salesCube("PreloadHierarchies=[Store]");
+        final XmlaOlap4jHierarchy hierarchy = storeHierarchy(cube);
+        server.resetRequestCounts();
+        final XmlaOlap4jMemberTree tree = cube.getMemberTree(hierarchy);
+        assertSame(tree, cube.getMemberTree(hierarchy));
+        assertEquals(1, server.getRequestCount("MDSCHEMA_MEMBERS"));
+
+        cube.clearCache();
+        final XmlaOlap4jMemberTree tree2 = cube.getMemberTree(hierarchy);
+        assertNotSame(tree, tree2);
+        assertEquals(2, server.getRequestCount("MDSCHEMA_MEMBERS"));
+        assertEquals(tree.size(), tree2.size());
+        assertNotSame(
+            tree.lookupMember("[Store].[S0]"),
+            tree2.lookupMember("[Store].[S0]"));
+    }
+
+    /**
+     * Tests that the threshold preloads small hierarchies only.
+     *
+     * @throws Exception on error
+     */
+    public void testThreshold() throws Exception {
+        final XmlaOlap4jCube cube = server.salesCube("PreloadThreshold=10");
+        assertNull(cube.getMemberTree(storeHierarchy(cube)));
+        final XmlaOlap4jHierarchy gender =
+            (XmlaOlap4jHierarchy) cube.getHierarchies().get("Gender");
+        final XmlaOlap4jMemberTree tree = cube.getMemberTree(gender);
+        assertNotNull(tree);
+        assertEquals(3, tree.size());
+    }
+
+    private static XmlaOlap4jHierarchy storeHierarchy(XmlaOlap4jCube cube) {
+        return (XmlaOlap4jHierarchy) cube.getHierarchies().get("Store");
+    }
+
+    private static List<String> uniqueNames(List<XmlaOlap4jMember> members) {
+        final List<String> list = new ArrayList<String>();
+        for (XmlaOlap4jMember member : members) {
+            list.add(member.getUniqueName());
+        }
+        return list;
+    }
+}
+
+// End XmlaOlap4jMemberTreeTest.java
@@ -0,0 +1,267 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.OlapException;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Unit test for {@link XmlaOlap4jMetadataCursor}, which checks that it reads
+ * the same rows from a response as the DOM-based result set.
+ */
+public class XmlaOlap4jMetadataCursorTest extends TestCase {
+    private static final XmlaOlap4jConnection.MetadataRequest CUBES =
+        XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_CUBES;
+
+    private static final String REQUEST = "<Discover/>";
+
+    private static final String ROWS =
+        "<xsd:schema><xsd:element name=\"row\"/></xsd:schema>\n"
+        + "<row>\n"
+        + "  <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "  <CUBE_NAME>Sales</CUBE_NAME>\n"
+        + "  <DESCRIPTION>Sales &amp; returns</DESCRIPTION>\n"
+        + "</row>\n"
+        + "<row>\n"
+        + "  <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "  <CUBE_NAME>Warehouse</CUBE_NAME>\n"
+        + "  <CUBE_NAME>Duplicate</CUBE_NAME>\n"
+        + "  <DESCRIPTION><![CDATA[<stock>]]> and <i>more</i></DESCRIPTION>\n"
+        + "  <CUBE_CAPTION/>\n"
+        + "</row>\n"
+        + "<v:extra xmlns:v=\"urn:vendor\">\n"
+        + "  <row><CUBE_NAME>Hidden</CUBE_NAME></row>\n"
+        + "</v:extra>\n"
+        + "<row>\n"
+        + "  <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "</row>\n"
+        + "<row>\n"
+        + "  <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "  <CUBE_NAME>HR</CUBE_NAME>\n"
+        + "</row>\n";
+
+    private XmlaOlap4jConnection connection;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        final OlapConnection olapConnection =
+            new XmlaOlap4jFakeServer().connect();
+        connection = olapConnection.unwrap(XmlaOlap4jConnection.class);
+    }
+
+    protected void tearDown() throws Exception {
+        connection.close();
+        connection = null;
+        super.tearDown();
+    }
+
+    /**
+     * Tests that the cursor reads the rows of a response, skipping vendor
+     * elements, taking the first of a repeated column, and reading the text
+     * of nested elements, as the DOM-based result set does.
+     *
+     * @throws Exception on error
+     */
+    public void testRows() throws Exception {
+        final Map<String, Matcher> noPredicates = Collections.emptyMap();
+        final Map<XmlaOlap4jConnection.MetadataColumn, String> noOverrides =
+            Collections.emptyMap();
+        final List<List<Object>> rows =
+            assertSameRows(response(ROWS), noOverrides, noPredicates);
+        assertEquals(4, rows.size());
+        final int cubeName = column("CUBE_NAME");
+        final int description = column("DESCRIPTION");
+        final int caption = column("CUBE_CAPTION");
+        assertEquals("Sales", rows.get(0).get(cubeName));
+        assertEquals("Sales & returns", rows.get(0).get(description));
+        assertNull(rows.get(0).get(caption));
+        assertEquals("Warehouse", rows.get(1).get(cubeName));
+        assertEquals("<stock> and more", rows.get(1).get(description));
+        assertEquals("", rows.get(1).get(caption));
+        assertNull(rows.get(2).get(cubeName));
+        assertEquals("HR", rows.get(3).get(cubeName));
+        assertEquals("s42", connection.serverInfos.getSessionId());
+    }
+
+    /**
+     * Tests that the cursor applies predicates and overrides as the
+     * DOM-based result set does, and skips a row which lacks a column that
+     * a predicate tests.
+     *
+     * @throws Exception on error
+     */
+    public void testPredicatesAndOverrides() throws Exception {
+        final Map<String, Matcher> predicates =
+            new HashMap<String, Matcher>();
+        predicates.put("CUBE_NAME", Pattern.compile("[SH].*").matcher(""));
+        final Map<XmlaOlap4jConnection.MetadataColumn, String> overrides =
+            new HashMap<XmlaOlap4jConnection.MetadataColumn, String>();
+        overrides.put(CUBES.getColumn("CATALOG_NAME"), "FoodMart 2");
+        final List<List<Object>> rows =
+            assertSameRows(response(ROWS), overrides, predicates);
+        assertEquals(2, rows.size());
+        final int catalogName = column("CATALOG_NAME");
+        final int cubeName = column("CUBE_NAME");
+        assertEquals("FoodMart 2", rows.get(0).get(catalogName));
+        assertEquals("Sales", rows.get(0).get(cubeName));
+        assertEquals("HR", rows.get(1).get(cubeName));
+    }
+
+    /**
+     * Tests a response which has no rows, and one which has no root
+     * element.
+     *
+     * @throws Exception on error
+     */
+    public void testEmpty() throws Exception {
+        final Map<String, Matcher> noPredicates = Collections.emptyMap();
+        final Map<XmlaOlap4jConnection.MetadataColumn, String> noOverrides =
+            Collections.emptyMap();
+        assertTrue(
+            assertSameRows(
+                response("<xsd:schema/>"), noOverrides, noPredicates)
+                .isEmpty());
+        assertTrue(
+            assertSameRows(response(""), noOverrides, noPredicates)
+                .isEmpty());
+
+        final XmlaOlap4jMetadataCursor cursor =
+            new XmlaOlap4jMetadataCursor(
+                connection, REQUEST,
+                envelope("", "<xmla:return/>").getBytes("UTF-8"),
+                CUBES.columns, noOverrides, noPredicates);
+        assertNull(cursor.nextRow());
+        assertNull(cursor.nextRow());
+    }
+
+    /**
+     * Tests that a SOAP fault is reported when the cursor is created, as it
+     * is when the DOM tree is built.
+     *
+     * @throws Exception on error
+     */
+    public void testFault() throws Exception {
+        final byte[] response =
+            envelope(
+                "",
+                "<SOAP-ENV:Fault>"
+                + "<faultcode>SOAP-ENV:Client.00HSBC01</faultcode>"
+                + "<faultstring>XMLA connection datasource not found"
+                + "</faultstring>"
+                + "<faultactor>Mondrian</faultactor>"
+                + "</SOAP-ENV:Fault>")
+                .getBytes("UTF-8");
+        try {
+            new XmlaOlap4jMetadataCursor(
+                connection, REQUEST, response, CUBES.columns,
+                Collections.<XmlaOlap4jConnection.MetadataColumn, String>
+                    emptyMap(),
+                Collections.<String, Matcher>emptyMap());
+            fail("expected exception");
+        } catch (OlapException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().contains(
+                    "XMLA connection datasource not found"));
+        }
+        try {
+            connection.parseMetadataResponse(REQUEST, response, false);
+            fail("expected exception");
+        } catch (OlapException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().contains(
+                    "XMLA connection datasource not found"));
+        }
+    }
+
+    /**
+     * Reads a response with a cursor and as a DOM tree, checks that both
+     * give the same rows, and returns them.
+     */
+    private List<List<Object>> assertSameRows(
+        byte[] response,
+        Map<XmlaOlap4jConnection.MetadataColumn, String> overrides,
+        Map<String, Matcher> predicates)
+        throws Exception
+    {
+        final List<List<Object>> domRows =
+            XmlaOlap4jDatabaseMetaData.rowList(
+                connection.parseMetadataResponse(REQUEST, response, false),
+                CUBES.columns, overrides, predicates);
+        final XmlaOlap4jMetadataCursor cursor =
+            new XmlaOlap4jMetadataCursor(
+                connection, REQUEST, response, CUBES.columns, overrides,
+                predicates);
+        final List<List<Object>> cursorRows = new ArrayList<List<Object>>();
+        for (List<Object> row; (row = cursor.nextRow()) != null;) {
+            assertEquals(CUBES.columns.size(), row.size());
+            cursorRows.add(row);
+        }
+        assertNull(cursor.nextRow());
+        cursor.close();
+        assertEquals(domRows, cursorRows);
+        return cursorRows;
+    }
+
+    /**
+     * Returns the position of a column of the MDSCHEMA_CUBES rowset.
+     */
+    private static int column(String name) {
+        return CUBES.columns.indexOf(CUBES.getColumn(name));
+    }
+
+    /**
+     * Returns a discover response whose root element contains the given
+     * XML.
+     */
+    private static byte[] response(String rows) throws Exception {
+        return envelope(
+            "<Session xmlns=\"urn:schemas-microsoft-com:xml-analysis\" "
+            + "SessionId=\"s42\"/>",
+            "<xmla:DiscoverResponse>\n"
+            + "<xmla:return>\n"
+            + "<root xmlns=\"urn:schemas-microsoft-com:xml-analysis:rowset\" "
+            + "xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">\n"
+            + rows
+            + "</root>\n"
+            + "</xmla:return>\n"
+            + "</xmla:DiscoverResponse>")
+            .getBytes("UTF-8");
+    }
+
+    private static String envelope(String header, String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<SOAP-ENV:Envelope "
+            + "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+            + "xmlns:xmla=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+            + "<SOAP-ENV:Header>" + header + "</SOAP-ENV:Header>\n"
+            + "<SOAP-ENV:Body>\n"
+            + body
+            + "\n</SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n";
+    }
+}
+
+// End XmlaOlap4jMetadataCursorTest.java
@@ -0,0 +1,133 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Hierarchy;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Unit test for {@link XmlaOlap4jMetadataRegistry}.
+ */
+public class XmlaOlap4jMetadataRegistryTest extends TestCase {
+    protected void setUp() throws Exception {
+        super.setUp();
+        XmlaOlap4jMetadataRegistry.invalidate(null);
+    }
+
+    /**
+     * Tests that connections share the responses to structural requests
+     * only if they have the same user and password, and never share
+     * members.
+     *
+     * @throws Exception on error
+     */
+    public void testCredentials() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final OlapConnection connection1 =
+            server.connect("ShareMetadata=true", "User=u", "Password=p");
+        final OlapConnection connection2 =
+            server.connect("ShareMetadata=true", "User=u", "Password=p");
+        final OlapConnection connection3 =
+            server.connect("ShareMetadata=true", "User=u", "Password=q");
+        try {
+            assertEquals(6, levelCount(connection1));
+            final int memberCount =
+                server.getRequestCount("MDSCHEMA_MEMBERS");
+            assertEquals(3, server.getRequestCount("MDSCHEMA_LEVELS"));
+
+            // Same credentials: levels are shared, members are not.
+            assertEquals(6, levelCount(connection2));
+            assertEquals(3, server.getRequestCount("MDSCHEMA_LEVELS"));
+            assertEquals(
+                2 * memberCount, server.getRequestCount("MDSCHEMA_MEMBERS"));
+
+            // Different password: nothing is shared.
+            assertEquals(6, levelCount(connection3));
+            assertEquals(6, server.getRequestCount("MDSCHEMA_LEVELS"));
+        } finally {
+            connection1.close();
+            connection2.close();
+            connection3.close();
+        }
+    }
+
+    /**
+     * Tests that an entry holds the responses to structural requests only,
+     * and at most {@link XmlaOlap4jMetadataRegistry#MAX_RESPONSES} of
+     * them, discarding the oldest first.
+     *
+     * @throws Exception on error
+     */
+    public void testBound() throws Exception {
+        final Document document =
+            DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .newDocument();
+        final Element root = document.createElement("root");
+        document.appendChild(root);
+        final XmlaOlap4jMetadataRegistry.Entry entry =
+            XmlaOlap4jMetadataRegistry.acquire(
+                "http://bound", "", null, null, Locale.US);
+        try {
+            entry.put(request("MDSCHEMA_MEMBERS", 0), root);
+            assertEquals(0, entry.size());
+            assertNull(entry.get(request("MDSCHEMA_MEMBERS", 0)));
+
+            final int max = XmlaOlap4jMetadataRegistry.MAX_RESPONSES;
+            for (int i = 0; i < max + 10; i++) {
+                entry.put(request("MDSCHEMA_LEVELS", i), root);
+                assertTrue(entry.size() <= max);
+            }
+            assertEquals(max, entry.size());
+            assertNull(entry.get(request("MDSCHEMA_LEVELS", 9)));
+            final Element copy = entry.get(request("MDSCHEMA_LEVELS", 10));
+            assertNotNull(copy);
+            assertNotSame(root, copy);
+            assertEquals("root", copy.getTagName());
+        } finally {
+            XmlaOlap4jMetadataRegistry.release(entry);
+        }
+    }
+
+    private static String request(String requestType, int i) {
+        return "<RequestType>" + requestType + "</RequestType>"
+            + "<RestrictionList><LEVEL_UNIQUE_NAME>[L" + i
+            + "]</LEVEL_UNIQUE_NAME></RestrictionList>";
+    }
+
+    private static int levelCount(OlapConnection connection)
+        throws Exception
+    {
+        final Cube cube = connection.getOlapSchema().getCubes().get("Sales");
+        int count = 0;
+        for (Hierarchy hierarchy : cube.getHierarchies()) {
+            count += hierarchy.getLevels().size();
+        }
+        return count;
+    }
+}
+
+// End XmlaOlap4jMetadataRegistryTest.java
@@ -0,0 +1,273 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Unit test for {@link XmlaOlap4jMetadataSnapshot}.
+ */
+public class XmlaOlap4jMetadataSnapshotTest extends TestCase {
+    private File file;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Each test uses its own file, hence its own snapshot.
+        file = File.createTempFile("olap4j-snapshot", ".gz");
+        file.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+        file = null;
+        super.tearDown();
+    }
+
+    /**
+     * Tests that the responses recorded by a connection are saved when it
+     * is closed, loaded again from the file, and used by a later
+     * connection instead of asking the server.
+     *
+     * @throws Exception on error
+     */
+    public void testRoundTrip() throws Exception {
+        discover(new XmlaOlap4jFakeServer(), snapshotProperty());
+        assertTrue(file.exists());
+        final XmlaOlap4jMetadataSnapshot snapshot =
+            XmlaOlap4jMetadataSnapshot.get(file);
+        assertTrue(snapshot.size() > 0);
+        final XmlaOlap4jMetadataSnapshot loaded =
+            new XmlaOlap4jMetadataSnapshot(file);
+        assertEquals(snapshot.size(), loaded.size());
+
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        discover(server, snapshotProperty());
+        assertEquals(0, server.getRequestCount("DBSCHEMA_CATALOGS"));
+        assertEquals(0, server.getRequestCount("MDSCHEMA_DIMENSIONS"));
+        assertEquals(0, server.getRequestCount("MDSCHEMA_LEVELS"));
+    }
+
+    /**
+     * Tests that a file which is not a snapshot is ignored.
+     *
+     * @throws Exception on error
+     */
+    public void testCorruptFile() throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write("not a snapshot".getBytes("UTF-8"));
+        out.close();
+        assertEquals(0, new XmlaOlap4jMetadataSnapshot(file).size());
+    }
+
+    /**
+     * Tests that a corrupt length in a snapshot file does not allocate a
+     * buffer of that length, but is treated like any other corrupt file.
+     *
+     * @throws Exception on error
+     */
+    public void testCorruptLength() throws Exception {
+        final DataOutputStream out =
+            new DataOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file)));
+        out.writeInt(XmlaOlap4jMetadataSnapshot.VERSION);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE);
+        out.write("short".getBytes("UTF-8"));
+        out.close();
+        assertEquals(0, new XmlaOlap4jMetadataSnapshot(file).size());
+    }
+
+    /**
+     * Tests that a snapshot holds at most
+     * {@link XmlaOlap4jMetadataSnapshot#MAX_RESPONSES} responses.
+     *
+     * @throws Exception on error
+     */
+    public void testBounded() throws Exception {
+        final OlapConnection olapConnection =
+            new XmlaOlap4jFakeServer().connect();
+        final XmlaOlap4jConnection connection =
+            olapConnection.unwrap(XmlaOlap4jConnection.class);
+        final XmlaOlap4jMetadataSnapshot snapshot =
+            new XmlaOlap4jMetadataSnapshot(file);
+        final byte[] response = new byte[0];
+        for (int i = 0; i < XmlaOlap4jMetadataSnapshot.MAX_RESPONSES + 10;
+            i++)
+        {
+            snapshot.put(connection, "request " + i, response);
+        }
+        assertEquals(XmlaOlap4jMetadataSnapshot.MAX_RESPONSES, snapshot.size());
+        olapConnection.close();
+    }
+
+    /**
+     * Tests that while the responses for one set of credentials are being
+     * validated, a connection with other credentials does not wait.
+     *
+     * @throws Exception on error
+     */
+    public void testValidationDoesNotBlockOthers() throws Exception {
+        discover(
+            new XmlaOlap4jFakeServer(),
+            snapshotProperty(), "User=u", "Password=p");
+        // The snapshot of this file has validated its responses. Load them
+        // into a new snapshot, which has not.
+        final File copy = File.createTempFile("olap4j-snapshot", ".gz");
+        copy(file, copy);
+        file.delete();
+        file = copy;
+
+        final CountDownLatch validating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final XmlaOlap4jFakeServer slowServer =
+            new XmlaOlap4jFakeServer() {
+                List<Map<String, String>> select(
+                    String requestType,
+                    Map<String, List<String>> restrictions)
+                {
+                    if (requestType.equals("MDSCHEMA_CUBES")
+                        && validating.getCount() > 0)
+                    {
+                        validating.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return super.select(requestType, restrictions);
+                }
+            };
+        final AtomicReference<Throwable> error =
+            new AtomicReference<Throwable>();
+        final Thread slow =
+            discoverInThread(
+                slowServer, error,
+                snapshotProperty(), "User=u", "Password=p");
+        try {
+            assertTrue(validating.await(10, TimeUnit.SECONDS));
+            final Thread other =
+                discoverInThread(
+                    new XmlaOlap4jFakeServer(), error,
+                    snapshotProperty(), "User=u", "Password=q");
+            other.join(10000);
+            assertFalse(other.isAlive());
+            assertTrue(slow.isAlive());
+        } finally {
+            release.countDown();
+            slow.join();
+        }
+        assertNull(error.get());
+        assertEquals(0, slowServer.getRequestCount("MDSCHEMA_DIMENSIONS"));
+    }
+
+    /**
+     * Tests that responses recorded for one password are not used by a
+     * connection with another password.
+     *
+     * @throws Exception on error
+     */
+    public void testCredentials() throws Exception {
+        discover(
+            new XmlaOlap4jFakeServer(),
+            snapshotProperty(), "User=u", "Password=p");
+
+        final XmlaOlap4jFakeServer wrongPassword = new XmlaOlap4jFakeServer();
+        discover(wrongPassword, snapshotProperty(), "User=u", "Password=q");
+        assertTrue(wrongPassword.getRequestCount("DBSCHEMA_CATALOGS") > 0);
+        assertTrue(wrongPassword.getRequestCount("MDSCHEMA_DIMENSIONS") > 0);
+
+        final XmlaOlap4jFakeServer rightPassword = new XmlaOlap4jFakeServer();
+        discover(rightPassword, snapshotProperty(), "User=u", "Password=p");
+        assertEquals(0, rightPassword.getRequestCount("DBSCHEMA_CATALOGS"));
+        assertEquals(0, rightPassword.getRequestCount("MDSCHEMA_DIMENSIONS"));
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        final InputStream in = new FileInputStream(from);
+        final OutputStream out = new FileOutputStream(to);
+        final byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) > 0;) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Starts a thread which calls {@link #discover}, and records its error,
+     * if any.
+     */
+    private static Thread discoverInThread(
+        final XmlaOlap4jFakeServer server,
+        final AtomicReference<Throwable> error,
+        final String... properties)
+    {
+        final Thread thread =
+            new Thread() {
+                public void run() {
+                    try {
+                        discover(server, properties);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+        thread.start();
+        return thread;
+    }
+
+    private String snapshotProperty() {
+        return "MetadataSnapshot=" + file.getPath();
+    }
+
+    /**
+     * Opens a connection, discovers the dimensions and levels of the
+     * "Sales" cube, and closes the connection.
+     */
+    private static void discover(
+        XmlaOlap4jFakeServer server,
+        String... properties)
+        throws Exception
+    {
+        final OlapConnection connection = server.connect(properties);
+        final XmlaOlap4jCube cube =
+            (XmlaOlap4jCube)
+                connection.getOlapSchema().getCubes().get("Sales");
+        assertNotNull(
+            cube.getHierarchies().get("Store").getLevels().get("Store City"));
+        connection.close();
+    }
+}
+
+// End XmlaOlap4jMetadataSnapshotTest.java
@@ -0,0 +1,203 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jPagedMemberList}.
+ */
+public class XmlaOlap4jPagedMemberListTest extends TestCase {
+    private static final String EXECUTE = XmlaOlap4jFakeServer.EXECUTE;
+
+    /**
+     * Tests that a level keeps its paged list until the cache of its cube
+     * is cleared, and that small levels are not paged.
+     *
+     * @throws Exception on error
+     */
+    public void testOneListPerLevel() throws Exception {
+        final XmlaOlap4jCube cube =
+            new XmlaOlap4jFakeServer().salesCube("MemberPageSize=10");
+        final Level cityLevel = cityLevel(cube);
+        final List<Member> members = cityLevel.getMembers();
+        assertTrue(members instanceof XmlaOlap4jPagedMemberList);
+        assertSame(members, cityLevel.getMembers());
+        cube.clearCache();
+        final List<Member> members2 = cityLevel.getMembers();
+        assertTrue(members2 instanceof XmlaOlap4jPagedMemberList);
+        assertNotSame(members, members2);
+        assertSame(members2, cityLevel.getMembers());
+
+        final Level stateLevel =
+            cube.getHierarchies().get("Store").getLevels().get("Store State");
+        assertFalse(
+            stateLevel.getMembers() instanceof XmlaOlap4jPagedMemberList);
+    }
+
+    /**
+     * Tests the members either side of a page boundary, and that the size
+     * of the list comes from the cardinality of the level, without a query.
+     *
+     * @throws Exception on error
+     */
+    public void testPageBoundaries() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube = server.salesCube("MemberPageSize=10");
+        final List<Member> members = cityLevel(cube).getMembers();
+        server.resetRequestCounts();
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, members.size());
+        assertEquals(0, server.getRequestCount(EXECUTE));
+
+        assertEquals("[Store].[S0].[C9]", members.get(9).getUniqueName());
+        assertEquals(1, server.getRequestCount(EXECUTE));
+        assertEquals("[Store].[S0].[C0]", members.get(0).getUniqueName());
+        assertEquals(1, server.getRequestCount(EXECUTE));
+        assertEquals("[Store].[S1].[C0]", members.get(10).getUniqueName());
+        assertEquals(2, server.getRequestCount(EXECUTE));
+        assertEquals("[Store].[S3].[C9]", members.get(39).getUniqueName());
+        assertEquals(3, server.getRequestCount(EXECUTE));
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, members.size());
+        try {
+            members.get(40);
+            fail("expected exception");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+        assertEquals(3, server.getRequestCount(EXECUTE));
+    }
+
+    /**
+     * Tests that the list holds at most the given number of pages, and
+     * discards the page least recently used.
+     *
+     * @throws Exception on error
+     */
+    public void testEviction() throws Exception {
+        final XmlaOlap4jFakeServer server = new XmlaOlap4jFakeServer();
+        final XmlaOlap4jCube cube =
+            server.salesCube("MemberPageSize=10", "MemberPageCount=2");
+        final List<Member> members = cityLevel(cube).getMembers();
+        server.resetRequestCounts();
+        members.get(0);
+        members.get(10);
+        members.get(20);
+        assertEquals(3, server.getRequestCount(EXECUTE));
+        // Pages 1 and 2 are held; page 0 was discarded.
+        members.get(15);
+        assertEquals(3, server.getRequestCount(EXECUTE));
+        members.get(5);
+        assertEquals(4, server.getRequestCount(EXECUTE));
+        // Page 1 was used more recently than page 2, so page 2 went.
+        members.get(19);
+        assertEquals(4, server.getRequestCount(EXECUTE));
+        members.get(25);
+        assertEquals(5, server.getRequestCount(EXECUTE));
+    }
+
+    /**
+     * Tests that an estimated size which is too large is corrected when the
+     * page at the end of the level comes back short.
+     *
+     * @throws Exception on error
+     */
+    public void testCardinalityTooLarge() throws Exception {
+        final XmlaOlap4jFakeServer server = serverWithCityCardinality(45);
+        final List<Member> members =
+            cityLevel(server.salesCube("MemberPageSize=10")).getMembers();
+        assertEquals(45, members.size());
+        assertEquals("[Store].[S3].[C9]", members.get(39).getUniqueName());
+        assertEquals(45, members.size());
+        try {
+            members.get(40);
+            fail("expected exception");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, members.size());
+    }
+
+    /**
+     * Tests that an estimated size which is too small is corrected when the
+     * page at the estimated end of the level turns out not to be the last.
+     *
+     * @throws Exception on error
+     */
+    public void testCardinalityTooSmall() throws Exception {
+        final XmlaOlap4jFakeServer server = serverWithCityCardinality(25);
+        final List<Member> members =
+            cityLevel(server.salesCube("MemberPageSize=10")).getMembers();
+        server.resetRequestCounts();
+        assertEquals(25, members.size());
+        assertEquals("[Store].[S2].[C0]", members.get(20).getUniqueName());
+        // One query for the page, and one to count the members.
+        assertEquals(2, server.getRequestCount(EXECUTE));
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, members.size());
+        assertEquals("[Store].[S3].[C9]", members.get(39).getUniqueName());
+
+        int count = 0;
+        for (Member member : members) {
+            assertNotNull(member);
+            ++count;
+        }
+        assertEquals(XmlaOlap4jFakeServer.CITY_COUNT, count);
+    }
+
+    private static Level cityLevel(XmlaOlap4jCube cube) {
+        return cube.getHierarchies().get("Store").getLevels().get("Store City");
+    }
+
+    /**
+     * Returns a server which reports a cardinality for the [Store City]
+     * level which differs from its number of members.
+     */
+    private static XmlaOlap4jFakeServer serverWithCityCardinality(
+        final int cardinality)
+    {
+        return new XmlaOlap4jFakeServer() {
+            List<Map<String, String>> select(
+                String requestType,
+                Map<String, List<String>> restrictions)
+            {
+                final List<Map<String, String>> rows =
+                    super.select(requestType, restrictions);
+                if (!requestType.equals("MDSCHEMA_LEVELS")) {
+                    return rows;
+                }
+                final List<Map<String, String>> list =
+                    new ArrayList<Map<String, String>>();
+                for (Map<String, String> row : rows) {
+                    if (row.get("LEVEL_NAME").equals("Store City")) {
+                        row = new LinkedHashMap<String, String>(row);
+                        row.put(
+                            "LEVEL_CARDINALITY", String.valueOf(cardinality));
+                    }
+                    list.add(row);
+                }
+                return list;
+            }
+        };
+    }
+}
+
+// End XmlaOlap4jPagedMemberListTest.java
@@ -0,0 +1,247 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Dimension;
+import org.olap4j.metadata.Schema;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.logging.*;
+
+/**
+ * Unit test for {@link XmlaOlap4jUpdatePoller}.
+ */
+public class XmlaOlap4jUpdatePollerTest extends TestCase {
+    private static final String CUBES = "MDSCHEMA_CUBES";
+    private static final String DIMENSIONS = "MDSCHEMA_DIMENSIONS";
+    private static final String MEMBERS = "MDSCHEMA_MEMBERS";
+
+    private XmlaOlap4jFakeServer server;
+    private XmlaOlap4jConnection connection;
+    private XmlaOlap4jUpdatePoller poller;
+
+    protected void setUp() throws Exception {
+        server = new XmlaOlap4jFakeServer();
+        cubes("1", "1", false);
+        final OlapConnection olapConnection = server.connect();
+        connection = olapConnection.unwrap(XmlaOlap4jConnection.class);
+        poller = new XmlaOlap4jUpdatePoller(connection, 3600);
+        poller.poll(connection, "FoodMart");
+    }
+
+    protected void tearDown() throws Exception {
+        poller.stop();
+        connection.close();
+        server = null;
+        connection = null;
+        poller = null;
+    }
+
+    /**
+     * Tests that when the data of a cube changes, the cube keeps its
+     * metadata objects but fetches its members again.
+     *
+     * @throws Exception on error
+     */
+    public void testDataUpdate() throws Exception {
+        final Cube cube = salesCube();
+        final Dimension dimension = cube.getDimensions().get("Store");
+        lookup(cube, "[Store].[S1]");
+        server.resetRequestCounts();
+        lookup(cube, "[Store].[S1]");
+        assertEquals(0, server.getRequestCount(MEMBERS));
+
+        cubes("1", "2", false);
+        poller.poll(connection, "FoodMart");
+        server.resetRequestCounts();
+        assertSame(cube, salesCube());
+        assertSame(dimension, cube.getDimensions().get("Store"));
+        assertEquals(0, server.getRequestCount(CUBES));
+        assertEquals(0, server.getRequestCount(DIMENSIONS));
+        lookup(cube, "[Store].[S1]");
+        assertEquals(1, server.getRequestCount(MEMBERS));
+    }
+
+    /**
+     * Tests that when the schema of a cube changes, only that cube is
+     * replaced, with new dimensions, and the list of cubes is not fetched
+     * again.
+     *
+     * @throws Exception on error
+     */
+    public void testSchemaUpdate() throws Exception {
+        cubes("1", "1", true);
+        poller.poll(connection, "FoodMart");
+        final Cube cube = salesCube();
+        final Cube warehouse = cube.getSchema().getCubes().get("Warehouse");
+        assertNotNull(warehouse);
+        warehouse.getDimensions().size();
+
+        cubes("2", "1", true);
+        poller.poll(connection, "FoodMart");
+        server.resetRequestCounts();
+        final Cube newCube = salesCube();
+        assertNotSame(cube, newCube);
+        assertEquals("Sales", newCube.getName());
+        assertEquals("Sales cube", newCube.getDescription());
+        assertSame(warehouse, cube.getSchema().getCubes().get("Warehouse"));
+        warehouse.getDimensions().size();
+        assertEquals(0, server.getRequestCount(CUBES));
+        assertEquals(0, server.getRequestCount(DIMENSIONS));
+
+        assertNotSame(
+            cube.getDimensions().get("Store"),
+            newCube.getDimensions().get("Store"));
+    }
+
+    /**
+     * Tests that when a cube is added or removed, the list of cubes is
+     * fetched again.
+     *
+     * @throws Exception on error
+     */
+    public void testCubeAddedAndRemoved() throws Exception {
+        final Schema schema = salesCube().getSchema();
+        assertEquals(1, schema.getCubes().size());
+
+        cubes("1", "1", true);
+        poller.poll(connection, "FoodMart");
+        server.resetRequestCounts();
+        assertEquals(2, schema.getCubes().size());
+        assertEquals(1, server.getRequestCount(CUBES));
+
+        cubes("1", "1", false);
+        poller.poll(connection, "FoodMart");
+        server.resetRequestCounts();
+        assertNull(schema.getCubes().get("Warehouse"));
+        assertEquals(1, server.getRequestCount(CUBES));
+    }
+
+    /**
+     * Tests that an unchanged cube is left alone.
+     *
+     * @throws Exception on error
+     */
+    public void testNoUpdate() throws Exception {
+        final Cube cube = salesCube();
+        lookup(cube, "[Store].[S1]");
+        poller.poll(connection, "FoodMart");
+        server.resetRequestCounts();
+        assertSame(cube, salesCube());
+        lookup(cube, "[Store].[S1]");
+        assertEquals(0, server.getRequestCount(CUBES));
+        assertEquals(0, server.getRequestCount(MEMBERS));
+    }
+
+    /**
+     * Tests that a failed poll is logged, as a warning the first time, and
+     * that a successful poll resets this.
+     *
+     * @throws Exception on error
+     */
+    public void testFailureLogged() throws Exception {
+        final Logger logger =
+            Logger.getLogger(XmlaOlap4jUpdatePoller.class.getName());
+        final List<Level> levels = new ArrayList<Level>();
+        final Handler handler =
+            new Handler() {
+                public void publish(LogRecord record) {
+                    assertNotNull(record.getThrown());
+                    levels.add(record.getLevel());
+                }
+
+                public void flush() {
+                }
+
+                public void close() {
+                }
+            };
+        final Level level = logger.getLevel();
+        final boolean useParentHandlers = logger.getUseParentHandlers();
+        logger.setLevel(Level.ALL);
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        try {
+            server.fail(CUBES, 2);
+            poller.call();
+            poller.call();
+            poller.call();
+            server.fail(CUBES, 1);
+            poller.call();
+        } finally {
+            poller.stop();
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(useParentHandlers);
+            logger.setLevel(level);
+        }
+        assertEquals(
+            Arrays.asList(Level.WARNING, Level.FINE, Level.WARNING),
+            levels);
+    }
+
+    /**
+     * Replaces the server's cubes with "Sales", and optionally "Warehouse",
+     * with the given update times for "Sales".
+     */
+    private void cubes(
+        String lastSchemaUpdate,
+        String lastDataUpdate,
+        boolean warehouse)
+    {
+        server.clearRows(CUBES);
+        server.row(
+            CUBES,
+            "CATALOG_NAME", "FoodMart",
+            "SCHEMA_NAME", "FoodMart",
+            "CUBE_NAME", "Sales",
+            "CUBE_CAPTION", "Sales",
+            "DESCRIPTION", "Sales cube",
+            "LAST_SCHEMA_UPDATE", lastSchemaUpdate,
+            "LAST_DATA_UPDATE", lastDataUpdate);
+        if (warehouse) {
+            server.row(
+                CUBES,
+                "CATALOG_NAME", "FoodMart",
+                "SCHEMA_NAME", "FoodMart",
+                "CUBE_NAME", "Warehouse",
+                "CUBE_CAPTION", "Warehouse",
+                "DESCRIPTION", "Warehouse cube",
+                "LAST_SCHEMA_UPDATE", "1",
+                "LAST_DATA_UPDATE", "1");
+        }
+    }
+
+    private Cube salesCube() throws Exception {
+        return connection.getOlapSchema().getCubes().get("Sales");
+    }
+
+    private static void lookup(Cube cube, String uniqueName)
+        throws Exception
+    {
+        assertNotNull(
+            uniqueName,
+            ((XmlaOlap4jCube) cube).getMetadataReader()
+                .lookupMemberByUniqueName(uniqueName));
+    }
+}
+
+// End XmlaOlap4jUpdatePollerTest.java
@@ -19,12 +19,31 @@ package org.olap4j.driver.xmla.proxy;
 
 import org.olap4j.OlapException;
 import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jCompositeCache;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jDiskCache;
+import org.olap4j.driver.xmla.cache.XmlaOlap4jInvalidStateException;
 import org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache;
 
 import junit.framework.TestCase;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Tests both the CachedProxy implementation (HttpProxy) and the
@@ -34,6 +53,7 @@ import java.util.Map;
  */
 public class XmlaCachedProxyTest extends TestCase {
     final XmlaOlap4jDriver dummyDriver = new XmlaOlap4jDriver() {};
+    final Executor executor = Executors.newCachedThreadPool();
 
     /**
      * <p>Tests if a simple and valid configuration can be used.
@@ -334,7 +354,715 @@ public class XmlaCachedProxyTest extends TestCase {
         }
     }
 
+    /**
+     * <p>Makes sure that the soft timeout must be less than the timeout.
+     * @throws Exception If the test fails.
+     */
+    public void testCacheSoftTimeoutError() throws Exception {
+        XmlaOlap4jCachedProxy proxy = new XmlaOlap4jHttpProxy(dummyDriver);
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            "org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testCacheSoftTimeoutError");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.TIMEOUT.name(),
+            "30");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.SOFT_TIMEOUT.name(),
+            "30");
+
+        try {
+            proxy.setCache(driverParameters, cacheProperties);
+        } catch (OlapException e) {
+            return;
+        }
+
+        fail("The cache soft timeout is not validated properly");
+    }
+
+    /**
+     * <p>Tests that an entry past its soft timeout is still served, and that
+     * exactly one background refresh replaces it.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testCacheRefreshAhead() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        final CountDownLatch refreshLatch = new CountDownLatch(1);
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    final int n = requestCount.incrementAndGet();
+                    if (n > 1) {
+                        // Hold the refresh until the test releases it.
+                        try {
+                            refreshLatch.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return ("response" + n).getBytes();
+                }
+            };
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            "org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testCacheRefreshAhead");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.TIMEOUT.name(),
+            "600");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.SOFT_TIMEOUT.name(),
+            "1");
+        proxy.setCache(driverParameters, cacheProperties);
+
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        assertEquals("response1", new String(proxy.get(serverInfos, "req")));
+        assertEquals("response1", new String(proxy.get(serverInfos, "req")));
+        assertEquals(1, requestCount.get());
+
+        // Past the soft timeout, the stale response is still served.
+        Thread.sleep(1100);
+        assertEquals("response1", new String(proxy.get(serverInfos, "req")));
+        assertEquals("response1", new String(proxy.get(serverInfos, "req")));
+        refreshLatch.countDown();
+
+        // Wait for the background refresh.
+        for (int i = 0; i < 50 && requestCount.get() < 2; i++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(100);
+        assertEquals(2, requestCount.get());
+        assertEquals("response2", new String(proxy.get(serverInfos, "req")));
+
+        final Map<XmlaOlap4jNamedMemoryCache.Statistic, Long> statistics =
+            new XmlaOlap4jNamedMemoryCache().getStatistics(
+                "testCacheRefreshAhead");
+        assertEquals(
+            Long.valueOf(1),
+            statistics.get(XmlaOlap4jNamedMemoryCache.Statistic.REFRESHES));
+        assertEquals(
+            Long.valueOf(2),
+            statistics.get(XmlaOlap4jNamedMemoryCache.Statistic.STALE_HITS));
+    }
+
+    /**
+     * <p>Tests that invalidating a cube removes the cached responses of that
+     * cube and of its catalog, but not those of other cubes or catalogs.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testCacheInvalidation() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    requestCount.incrementAndGet();
+                    return request.getBytes();
+                }
+            };
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            "org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testCacheInvalidation");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.TIMEOUT.name(),
+            "600");
+        proxy.setCache(driverParameters, cacheProperties);
+
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        final String[] requests = {
+            "<CUBE_NAME>Sales</CUBE_NAME><Catalog>FoodMart</Catalog>",
+            "<CUBE_NAME>Warehouse</CUBE_NAME><Catalog>FoodMart</Catalog>",
+            "<CATALOG_NAME>FoodMart</CATALOG_NAME>",
+            "<CUBE_NAME>Sales</CUBE_NAME><Catalog>Other</Catalog>",
+            "<RequestType>DISCOVER_DATASOURCES</RequestType>",
+        };
+        for (String request : requests) {
+            proxy.get(serverInfos, request);
+        }
+        assertEquals(5, requestCount.get());
+
+        // Only the Sales cube and the catalog-wide entry are sent again.
+        proxy.invalidateCache("FoodMart", "Sales");
+        for (String request : requests) {
+            proxy.get(serverInfos, request);
+        }
+        assertEquals(7, requestCount.get());
+
+        // All the cubes of the catalog.
+        proxy.invalidateCache("FoodMart", null);
+        for (String request : requests) {
+            proxy.get(serverInfos, request);
+        }
+        assertEquals(10, requestCount.get());
+
+        assertEquals(
+            Long.valueOf(5),
+            new XmlaOlap4jNamedMemoryCache().getStatistics(
+                "testCacheInvalidation").get(
+                    XmlaOlap4jNamedMemoryCache.Statistic.INVALIDATIONS));
+    }
+
+    /**
+     * <p>Tests that the composite cache answers from its second tier the
+     * requests which were evicted from its first tier, and promotes them.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testCompositeCache() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    requestCount.incrementAndGet();
+                    return ("response to " + request).getBytes();
+                }
+            };
+        final File directory =
+            File.createTempFile("testCompositeCache", "");
+        directory.delete();
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            "org.olap4j.driver.xmla.cache.XmlaOlap4jCompositeCache");
+        cacheProperties.put(
+            XmlaOlap4jCompositeCache.Property.NAME.name(),
+            "testCompositeCache");
+        cacheProperties.put("L1.SIZE", "1");
+        cacheProperties.put("L1.TIMEOUT", "600");
+        cacheProperties.put(
+            "L2." + XmlaOlap4jDiskCache.Property.DIRECTORY.name(),
+            directory.getPath());
+        proxy.setCache(driverParameters, cacheProperties);
+
+        try {
+            final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+            assertEquals(
+                "response to a", new String(proxy.get(serverInfos, "a")));
+            assertEquals(
+                "response to b", new String(proxy.get(serverInfos, "b")));
+            // "a" has been evicted from the first tier.
+            assertEquals(
+                "response to a", new String(proxy.get(serverInfos, "a")));
+            // "a" has been promoted to the first tier.
+            assertEquals(
+                "response to a", new String(proxy.get(serverInfos, "a")));
+            assertEquals(2, requestCount.get());
+
+            final XmlaOlap4jCompositeCache cache =
+                new XmlaOlap4jCompositeCache();
+            final Map<XmlaOlap4jCompositeCache.Statistic, Long> statistics =
+                cache.getStatistics("testCompositeCache");
+            assertEquals(
+                Long.valueOf(1),
+                statistics.get(XmlaOlap4jCompositeCache.Statistic.L1_HITS));
+            assertEquals(
+                Long.valueOf(1),
+                statistics.get(XmlaOlap4jCompositeCache.Statistic.L2_HITS));
+            assertEquals(
+                Long.valueOf(2),
+                statistics.get(XmlaOlap4jCompositeCache.Statistic.MISSES));
+            assertEquals(
+                0.25d,
+                cache.getHitRatio(
+                    "testCompositeCache", XmlaOlap4jCompositeCache.Tier.L1),
+                0.0001d);
+            assertEquals(
+                1d / 3d,
+                cache.getHitRatio(
+                    "testCompositeCache", XmlaOlap4jCompositeCache.Tier.L2),
+                0.0001d);
+        } finally {
+            final File[] files = new File(directory, "testCompositeCache.L2")
+                .listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            new File(directory, "testCompositeCache.L2").delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * <p>Tests the disk cache: its directory is required, entries are
+     * private to a user, the least recently used entry is evicted, and a
+     * corrupt entry is a miss.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testDiskCache() throws Exception {
+        final URL url = new URL("http://example.com");
+        final Map<String, String> cacheProperties =
+            new HashMap<String, String>();
+        try {
+            new XmlaOlap4jDiskCache().setParameters(
+                new HashMap<String, String>(), cacheProperties);
+            fail("expected error");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("DIRECTORY"));
+        }
+
+        final File directory = File.createTempFile("testDiskCache", "");
+        directory.delete();
+        cacheProperties.put(
+            XmlaOlap4jDiskCache.Property.DIRECTORY.name(),
+            directory.getPath());
+        cacheProperties.put(XmlaOlap4jDiskCache.Property.SIZE.name(), "2");
+        final Map<String, String> alice = new HashMap<String, String>();
+        alice.put(XmlaOlap4jDriver.Property.USER.name(), "alice");
+        alice.put(XmlaOlap4jDriver.Property.PASSWORD.name(), "secret");
+        final Map<String, String> bob = new HashMap<String, String>();
+        bob.put(XmlaOlap4jDriver.Property.USER.name(), "bob");
+        final XmlaOlap4jDiskCache aliceCache = new XmlaOlap4jDiskCache();
+        final String id = aliceCache.setParameters(alice, cacheProperties);
+        final XmlaOlap4jDiskCache bobCache = new XmlaOlap4jDiskCache();
+        bobCache.setParameters(bob, cacheProperties);
+        try {
+            aliceCache.put(id, url, "a".getBytes(), "response a".getBytes());
+            assertEquals(
+                "response a",
+                new String(aliceCache.get(id, url, "a".getBytes())));
+            assertNull(bobCache.get(id, url, "a".getBytes()));
+
+            // "b" is the least recently used entry when "c" arrives.
+            aliceCache.put(id, url, "b".getBytes(), "response b".getBytes());
+            assertNotNull(aliceCache.get(id, url, "a".getBytes()));
+            aliceCache.put(id, url, "c".getBytes(), "response c".getBytes());
+            assertNull(aliceCache.get(id, url, "b".getBytes()));
+            assertNotNull(aliceCache.get(id, url, "a".getBytes()));
+            assertNotNull(aliceCache.get(id, url, "c".getBytes()));
+            assertEquals(2, new File(id).list().length);
+
+            // An entry whose length exceeds the file is a miss.
+            for (File file : new File(id).listFiles()) {
+                final DataOutputStream out =
+                    new DataOutputStream(new FileOutputStream(file));
+                out.writeLong(System.currentTimeMillis());
+                out.writeBoolean(false);
+                out.writeBoolean(false);
+                out.writeInt(Integer.MAX_VALUE);
+                out.close();
+            }
+            assertNull(aliceCache.get(id, url, "a".getBytes()));
+        } finally {
+            aliceCache.flushCache();
+            new File(id).delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * <p>Tests that a disk cache entry which is being replaced is never
+     * missed by a concurrent get.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testDiskCacheConcurrentPut() throws Exception {
+        final URL url = new URL("http://example.com");
+        final File directory =
+            File.createTempFile("testDiskCacheConcurrentPut", "");
+        directory.delete();
+        final Map<String, String> cacheProperties =
+            new HashMap<String, String>();
+        cacheProperties.put(
+            XmlaOlap4jDiskCache.Property.DIRECTORY.name(),
+            directory.getPath());
+        final XmlaOlap4jDiskCache cache = new XmlaOlap4jDiskCache();
+        final String id =
+            cache.setParameters(
+                new HashMap<String, String>(), cacheProperties);
+        final byte[] request = "a".getBytes();
+        try {
+            cache.put(id, url, request, "response 0".getBytes());
+            final AtomicInteger misses = new AtomicInteger();
+            final AtomicBoolean done = new AtomicBoolean();
+            final Thread reader =
+                new Thread() {
+                    public void run() {
+                        try {
+                            while (!done.get()) {
+                                if (cache.get(id, url, request) == null) {
+                                    misses.incrementAndGet();
+                                }
+                            }
+                        } catch (XmlaOlap4jInvalidStateException e) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                };
+            reader.start();
+            try {
+                for (int i = 1; i <= 500; i++) {
+                    cache.put(
+                        id, url, request, ("response " + i).getBytes());
+                }
+            } finally {
+                done.set(true);
+                reader.join();
+            }
+            assertEquals(0, misses.get());
+            assertEquals(
+                "response 500",
+                new String(cache.get(id, url, request)));
+        } finally {
+            cache.flushCache();
+            new File(id).delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * <p>Tests that the request log records the requests sent through a
+     * proxy, survives a save and a load, and replays the most frequent
+     * requests into the cache of another proxy.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testRequestLogReplay() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        final String discoverA = "<Discover xmlns=\"\">a</Discover>";
+        final String discoverB = "<Discover xmlns=\"\">b</Discover>";
+        final String drop =
+            "<Execute xmlns=\"\"><Statement>DROP CUBE [Sales]</Statement>"
+            + "</Execute>";
+        final File file = File.createTempFile("testRequestLogReplay", ".log");
+        final File file2 = new File(file.getPath() + "2");
+        try {
+            XmlaOlap4jCacheControlProxy proxy =
+                createCountingProxy(requestCount, "testRequestLogReplay1");
+            final XmlaOlap4jRequestLog log = XmlaOlap4jRequestLog.get(file);
+            proxy.setRequestLog(log);
+            proxy.get(serverInfos, discoverB);
+            for (int i = 0; i < 3; i++) {
+                proxy.get(serverInfos, discoverA);
+            }
+            proxy.get(serverInfos, drop);
+            assertEquals(
+                Arrays.asList(discoverA, discoverB),
+                log.getTopRequests(serverInfos.getUrl(), 10));
+
+            // Load a copy of the log.
+            log.save();
+            assertTrue(file.renameTo(file2));
+            assertEquals(
+                Arrays.asList(discoverA, discoverB),
+                XmlaOlap4jRequestLog.get(file2).getTopRequests(
+                    serverInfos.getUrl(), 10));
+
+            // Replay the most frequent request into an empty cache.
+            requestCount.set(0);
+            proxy = createCountingProxy(requestCount, "testRequestLogReplay2");
+            final Future<Integer> future =
+                log.replay(proxy, serverInfos, 1, 2, executor);
+            assertEquals(Integer.valueOf(1), future.get());
+            assertEquals(1, requestCount.get());
+            proxy.get(serverInfos, discoverA);
+            assertEquals(1, requestCount.get());
+
+            // A log is replayed only once to each server, and replays are
+            // not recorded.
+            assertNull(log.replay(proxy, serverInfos, 1, 2, executor));
+            assertEquals(
+                Arrays.asList(discoverA, discoverB),
+                log.getTopRequests(serverInfos.getUrl(), 10));
+            final ServerInfos otherServerInfos =
+                new ServerInfos() {
+                    public URL getUrl() {
+                        try {
+                            return new URL("http://other.example.com");
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+            assertNotNull(
+                log.replay(proxy, otherServerInfos, 1, 2, executor));
+            log.release();
+        } finally {
+            file.delete();
+            file2.delete();
+        }
+    }
+
+    /**
+     * <p>Tests that a full request log keeps its most frequent requests.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testRequestLogBound() throws Exception {
+        final URL url = new ServerInfos().getUrl();
+        final String frequent = "<Discover xmlns=\"\">frequent</Discover>";
+        final File file = File.createTempFile("testRequestLogBound", ".log");
+        file.delete();
+        final XmlaOlap4jRequestLog log = XmlaOlap4jRequestLog.get(file);
+        try {
+            log.record(url, frequent);
+            log.record(url, frequent);
+            for (int i = 0; i < XmlaOlap4jRequestLog.MAX_REQUESTS; i++) {
+                log.record(url, "<Discover xmlns=\"\">" + i + "</Discover>");
+            }
+            final List<String> requests =
+                log.getTopRequests(url, Integer.MAX_VALUE);
+            assertEquals(
+                XmlaOlap4jRequestLog.MAX_REQUESTS / 2, requests.size());
+            assertEquals(frequent, requests.get(0));
+        } finally {
+            log.release();
+            file.delete();
+        }
+    }
+
+    /**
+     * <p>Tests that an asynchronous request which hits the cache returns a
+     * completed future, and that the response to one which misses is cached
+     * when it arrives.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testSubmitCacheHit() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        final XmlaOlap4jCachedProxy proxy =
+            createCountingProxy(
+                requestCount, "testSubmitCacheHit", CountingCache.class);
+        CountingCache.LOOKUPS.set(0);
+
+        // Miss: looked up once, sent in the background, and cached.
+        Future<byte[]> future = proxy.submit(serverInfos, "req");
+        assertEquals("req", new String(future.get()));
+        assertEquals(1, requestCount.get());
+        assertEquals(1, CountingCache.LOOKUPS.get());
+
+        // Hit: answered without a request.
+        future = proxy.submit(serverInfos, "req");
+        assertTrue(future.isDone());
+        assertEquals("req", new String(future.get()));
+        assertEquals(1, requestCount.get());
+    }
+
+    /**
+     * <p>Tests that an asynchronous request which misses the cache is sent
+     * by {@link XmlaOlap4jHttpProxy#getResponseViaSubmit}, so that a
+     * subclass can send it its own way, and that its response is cached.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testSubmitViaSubclass() throws Exception {
+        final AtomicInteger submitCount = new AtomicInteger();
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    return request.getBytes();
+                }
+
+                @Override
+                public Future<byte[]> getResponseViaSubmit(
+                    final XmlaOlap4jServerInfos serverInfos,
+                    final String request)
+                {
+                    submitCount.incrementAndGet();
+                    final FutureTask<byte[]> future =
+                        new FutureTask<byte[]>(
+                            new Callable<byte[]>() {
+                                public byte[] call() throws Exception {
+                                    return getResponseAndCache(
+                                        serverInfos, request);
+                                }
+                            });
+                    future.run();
+                    return future;
+                }
+            };
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            XmlaOlap4jNamedMemoryCache.class.getName());
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testSubmitViaSubclass");
+        proxy.setCache(driverParameters, cacheProperties);
+
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        assertEquals("req", new String(proxy.submit(serverInfos, "req").get()));
+        assertEquals(1, submitCount.get());
+        assertEquals("req", new String(proxy.submit(serverInfos, "req").get()));
+        assertEquals(1, submitCount.get());
+    }
+
+    /**
+     * <p>Tests that a cache hit is served even if the background refresh of
+     * the stale entry cannot be started.
+     *
+     * @throws Exception If the test fails.
+     */
+    public void testCacheRefreshFailure() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    requestCount.incrementAndGet();
+                    return request.getBytes();
+                }
+            };
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            RejectingCache.class.getName());
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testCacheRefreshFailure");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.TIMEOUT.name(),
+            "600");
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.SOFT_TIMEOUT.name(),
+            "1");
+        proxy.setCache(driverParameters, cacheProperties);
+
+        final XmlaOlap4jServerInfos serverInfos = new ServerInfos();
+        assertEquals("req", new String(proxy.get(serverInfos, "req")));
+        Thread.sleep(1100);
+        assertEquals("req", new String(proxy.get(serverInfos, "req")));
+        assertEquals(1, requestCount.get());
+    }
+
+    /**
+     * Cache which counts its lookups.
+     */
+    public static class CountingCache extends XmlaOlap4jNamedMemoryCache {
+        static final AtomicInteger LOOKUPS = new AtomicInteger();
+
+        @Override
+        public byte[] get(String id, URL url, byte[] request)
+            throws XmlaOlap4jInvalidStateException
+        {
+            LOOKUPS.incrementAndGet();
+            return super.get(id, url, request);
+        }
+    }
+
+    /**
+     * Cache whose refreshes are always rejected, as if the executor were
+     * shut down.
+     */
+    public static class RejectingCache extends XmlaOlap4jNamedMemoryCache {
+        @Override
+        public boolean claimRefresh(String id, URL url, byte[] request) {
+            throw new RejectedExecutionException();
+        }
+    }
 
+    private XmlaOlap4jCacheControlProxy createCountingProxy(
+        final AtomicInteger requestCount,
+        String cacheName)
+        throws OlapException
+    {
+        return createCountingProxy(
+            requestCount, cacheName, XmlaOlap4jNamedMemoryCache.class);
+    }
+
+    private XmlaOlap4jCacheControlProxy createCountingProxy(
+        final AtomicInteger requestCount,
+        String cacheName,
+        Class<? extends XmlaOlap4jNamedMemoryCache> cacheClass)
+        throws OlapException
+    {
+        XmlaOlap4jHttpProxy proxy =
+            new XmlaOlap4jHttpProxy(dummyDriver) {
+                @Override
+                public byte[] getResponse(
+                    XmlaOlap4jServerInfos serverInfos,
+                    String request)
+                {
+                    requestCount.incrementAndGet();
+                    return request.getBytes();
+                }
+            };
+        Map<String, String> driverParameters = new HashMap<String, String>();
+        Map<String, String> cacheProperties = new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            cacheClass.getName());
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            cacheName);
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.TIMEOUT.name(),
+            "600");
+        proxy.setCache(driverParameters, cacheProperties);
+        return proxy;
+    }
+
+    /**
+     * Server infos which point to a dummy URL.
+     */
+    static class ServerInfos implements XmlaOlap4jServerInfos {
+        private String sessionId;
+
+        public String getUsername() {
+            return null;
+        }
+
+        public String getPassword() {
+            return null;
+        }
+
+        public URL getUrl() {
+            try {
+                return new URL("http://example.com");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public void setSessionId(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
 }
 
 // End XmlaCachedProxyTest.java
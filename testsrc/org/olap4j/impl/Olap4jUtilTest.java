@@ -185,6 +185,24 @@ public class Olap4jUtilTest extends TestCase {
         assertFalse(iter.hasNext());
     }
 
+    /**
+     * Tests a {@link org.olap4j.impl.CoordinateIterator} which reuses the
+     * array it returns.
+     */
+    public void testCoordinateIteratorReuse() {
+        CoordinateIterator iter =
+            new CoordinateIterator(new int[]{2, 2}, true, true);
+        assertTrue(iter.hasNext());
+        final int[] first = iter.next();
+        assertEqualsArray(first, new int[] {0, 0});
+        assertEqualsArray(iter.next(), new int[] {1, 0});
+        assertEqualsArray(iter.next(), new int[] {0, 1});
+        final int[] last = iter.next();
+        assertEqualsArray(last, new int[] {1, 1});
+        assertSame(first, last);
+        assertFalse(iter.hasNext());
+    }
+
     /**
      * Tests {@link org.olap4j.impl.UnmodifiableArrayList}.
      */
@@ -247,6 +265,69 @@ public class Olap4jUtilTest extends TestCase {
         assertEquals(arrayList.hashCode(), list3.hashCode());
     }
 
+    /**
+     * Tests lookup by name in {@link org.olap4j.impl.ArrayNamedListImpl},
+     * which uses an index for longer lists, and that the index follows
+     * modifications to the list.
+     */
+    public void testArrayNamedListLookup() {
+        final ArrayNamedListImpl<String> list =
+            new ArrayNamedListImpl<String>() {
+                public String getName(Object element) {
+                    return ((String) element).substring(1);
+                }
+            };
+        for (int i = 0; i < 20; i++) {
+            list.add("a" + i);
+        }
+        list.add("b3");
+        assertEquals(21, list.size());
+        assertEquals(3, list.indexOfName("3"));
+        assertEquals("a3", list.get("3"));
+        assertEquals(-1, list.indexOfName("20"));
+        assertNull(list.get("20"));
+        assertEquals("a19", list.asMap().get("19"));
+        assertTrue(list.asMap().containsKey("0"));
+        assertFalse(list.asMap().containsKey("x"));
+
+        list.remove(0);
+        assertEquals(-1, list.indexOfName("0"));
+        assertEquals(2, list.indexOfName("3"));
+
+        list.set(2, "c20");
+        assertEquals(2, list.indexOfName("20"));
+        assertEquals("b3", list.get("3"));
+
+        // replacing via a sub-list does not increment modCount; look up the
+        // new name first, which the stale index would miss
+        list.subList(0, 3).set(2, "d21");
+        assertEquals(2, list.indexOfName("21"));
+        assertNull(list.get("20"));
+
+        // likewise via a sub-list of a sub-list, and via its iterator
+        list.subList(1, 10).subList(1, 3).set(0, "f22");
+        assertEquals(2, list.indexOfName("22"));
+        assertEquals(-1, list.indexOfName("21"));
+        final ListIterator<String> iterator =
+            list.subList(0, 5).listIterator();
+        iterator.next();
+        iterator.next();
+        iterator.next();
+        iterator.set("g23");
+        assertEquals(2, list.indexOfName("23"));
+        assertEquals(-1, list.indexOfName("22"));
+        list.subList(0, 3).remove(2);
+        assertEquals(-1, list.indexOfName("23"));
+        list.subList(0, 3).add(2, "h24");
+        assertEquals(2, list.indexOfName("24"));
+
+        list.add(0, "e3");
+        assertEquals("e3", list.get("3"));
+
+        list.clear();
+        assertNull(list.get("3"));
+    }
+
     /**
      * Unit test for {@link Olap4jUtil#parseUniqueName(String)}.
      */
@@ -18,6 +18,7 @@
 package org.olap4j.test;
 
 import org.olap4j.impl.ArrayMap;
+import org.olap4j.impl.SharedKeys;
 import org.olap4j.impl.UnmodifiableArrayMap;
 
 import junit.framework.TestCase;
@@ -373,6 +374,101 @@ public class ArrayMapTest extends TestCase {
             map4.toString());
         assertEquals("{}", map5.toString());
     }
+
+    /**
+     * Tests an {@link org.olap4j.impl.ArrayMap} which is large enough to
+     * have a hash index.
+     */
+    public void testLargeArrayMap() {
+        final ArrayMap<String, Integer> map = new ArrayMap<String, Integer>();
+        final Map<String, Integer> linkedMap =
+            new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, i);
+            linkedMap.put("k" + i, i);
+        }
+        map.put(null, -1);
+        linkedMap.put(null, -1);
+        assertEquals(101, map.size());
+        assertEquals(linkedMap, map);
+        assertEquals(map, linkedMap);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), map.get("k" + i));
+        }
+        assertEquals(Integer.valueOf(-1), map.get(null));
+        assertFalse(map.containsKey("k100"));
+
+        // keys keep their insertion order
+        assertEquals(
+            new ArrayList<String>(linkedMap.keySet()),
+            new ArrayList<String>(map.keySet()));
+
+        // replace, remove
+        assertEquals(Integer.valueOf(50), map.put("k50", 500));
+        assertEquals(Integer.valueOf(500), map.get("k50"));
+        assertEquals(Integer.valueOf(0), map.remove("k0"));
+        assertNull(map.get("k0"));
+        assertEquals(Integer.valueOf(99), map.get("k99"));
+        assertEquals(100, map.size());
+
+        // putAll into a non-empty map
+        final Map<String, Integer> map2 = new HashMap<String, Integer>();
+        map2.put("k1", 10);
+        map2.put("x", 11);
+        map.putAll(map2);
+        assertEquals(101, map.size());
+        assertEquals(Integer.valueOf(10), map.get("k1"));
+        assertEquals(Integer.valueOf(11), map.get("x"));
+
+        // remove down to a small map, then to an empty one
+        for (int i = 1; i < 100; i++) {
+            map.remove("k" + i);
+        }
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(11), map.get("x"));
+        map.remove("x");
+        map.remove(null);
+        assertTrue(map.isEmpty());
+    }
+
+    /**
+     * Tests {@link org.olap4j.impl.SharedKeys}.
+     */
+    public void testSharedKeys() {
+        final List<String> keyList = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            keyList.add("k" + i);
+        }
+        final SharedKeys<String> keys = SharedKeys.of(keyList);
+        assertEquals(20, keys.size());
+        assertEquals(7, keys.indexOf("k7"));
+        assertEquals(-1, keys.indexOf("k20"));
+
+        final Map<String, Integer> hashMap = new HashMap<String, Integer>();
+        for (int i = 0; i < 20; i++) {
+            hashMap.put("k" + i, i * 2);
+        }
+        final Map<String, Integer> map = keys.map(hashMap);
+        assertEquals(hashMap, map);
+        assertEquals(map, hashMap);
+        assertEquals(hashMap.hashCode(), map.hashCode());
+        assertEquals(Integer.valueOf(14), map.get("k7"));
+        assertNull(map.get("k20"));
+        try {
+            map.put("k1", 0);
+            fail("expected fail");
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+
+        // small map, without an index
+        final SharedKeys<String> smallKeys =
+            SharedKeys.of(Arrays.asList("a", null));
+        final Map<String, Integer> smallMap =
+            smallKeys.map(new Object[] {1, 2});
+        assertEquals(Integer.valueOf(2), smallMap.get(null));
+        assertEquals("{a=1, null=2}", smallMap.toString());
+    }
 }
 
 // End ArrayMapTest.java
@@ -87,6 +87,20 @@ public class TestContext {
         org.olap4j.impl.Base64Test.class,
         org.olap4j.test.ParserTest.class,
         org.olap4j.test.ArrayMapTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMemberCacheTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMemberTreeTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jCubeTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMetadataRegistryTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jPagedMemberListTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMetadataSnapshotTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jExtraTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMemberIndexTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMemberPoolTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMetadataCursorTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jMemberTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jUpdatePollerTest.class,
+        org.olap4j.driver.xmla.XmlaOlap4jLocaleTest.class,
+        org.olap4j.driver.xmla.DeferredNamedListImplTest.class,
         org.olap4j.driver.xmla.cache.XmlaShaEncoderTest.class,
         org.olap4j.driver.xmla.proxy.XmlaCookieManagerTest.class,
         org.olap4j.driver.xmla.proxy.XmlaCachedProxyTest.class,